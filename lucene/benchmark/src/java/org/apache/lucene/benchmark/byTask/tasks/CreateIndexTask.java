@@ -18,9 +18,11 @@ package org.apache.lucene.benchmark.byTask.tasks;
  */
 
 import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.benchmark.byTask.feeds.DocMaker;
 import org.apache.lucene.benchmark.byTask.utils.Config;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
 import org.apache.lucene.codecs.lucene410.Lucene410Codec;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexCommit;
@@ -53,7 +55,10 @@ import java.nio.charset.Charset;
  * org.apache.lucene.index.ConcurrentMergeScheduler),
  * concurrent.merge.scheduler.max.thread.count and
  * concurrent.merge.scheduler.max.merge.count (defaults per
- * ConcurrentMergeScheduler), default.codec </code>.
+ * ConcurrentMergeScheduler), default.codec, codec.postingsFormat,
+ * codec.id.bloom.filter (default false, wraps the postings format of the
+ * {@link DocMaker#ID_FIELD} field with a {@link BloomFilteringPostingsFormat})
+ * </code>.
  * <p>
  * This task also supports a "writer.info.stream" property with the following
  * values:
@@ -137,13 +142,15 @@ public class CreateIndexTask extends PerfTask {
     }
 
     final String postingsFormat = config.get("codec.postingsFormat",null);
-    if (defaultCodec == null && postingsFormat != null) {
+    final boolean idBloomFilter = config.get("codec.id.bloom.filter", false);
+    if (defaultCodec == null && (postingsFormat != null || idBloomFilter)) {
       try {
-        final PostingsFormat postingsFormatChosen = PostingsFormat.forName(postingsFormat);
+        final PostingsFormat postingsFormatChosen = PostingsFormat.forName(postingsFormat != null ? postingsFormat : "Lucene41");
+        final PostingsFormat idPostingsFormat = idBloomFilter ? new BloomFilteringPostingsFormat(postingsFormatChosen) : postingsFormatChosen;
         iwConf.setCodec(new Lucene410Codec(){
           @Override
           public PostingsFormat getPostingsFormatForField(String field) {
-            return postingsFormatChosen;
+            return DocMaker.ID_FIELD.equals(field) ? idPostingsFormat : postingsFormatChosen;
           }
         });
       } catch (Exception e) {
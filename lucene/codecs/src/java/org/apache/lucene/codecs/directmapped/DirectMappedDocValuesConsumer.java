@@ -0,0 +1,584 @@
+package org.apache.lucene.codecs.directmapped;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable; // javadocs
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.MathUtil;
+import org.apache.lucene.util.packed.DirectWriter;
+
+/** writer for {@link DirectMappedDocValuesFormat} */
+class DirectMappedDocValuesConsumer extends DocValuesConsumer implements Closeable {
+
+  // monotonic values are approximated in blocks of 16k values
+  static final int MONOTONIC_BLOCK_SHIFT = 14;
+  static final int MONOTONIC_BLOCK_SIZE = 1 << MONOTONIC_BLOCK_SHIFT;
+  // each block header is a long min delta and a float average increment
+  static final int MONOTONIC_HEADER_BYTES = 12;
+
+  /** Compressed using packed blocks of ints. */
+  public static final int DELTA_COMPRESSED = 0;
+  /** Compressed by computing the GCD. */
+  public static final int GCD_COMPRESSED = 1;
+  /** Compressed by giving IDs to unique values. */
+  public static final int TABLE_COMPRESSED = 2;
+  /** Only the documents which have a value and their values are stored:
+   *  used for fields which have a value in few documents. */
+  public static final int SPARSE_COMPRESSED = 3;
+
+  /** Numeric fields which have a value in less than 1/SPARSE_DENSITY_RATIO
+   *  of documents are encoded with {@link #SPARSE_COMPRESSED}. */
+  static final int SPARSE_DENSITY_RATIO = 100;
+
+  /** Uncompressed binary, written directly (fixed length). */
+  public static final int BINARY_FIXED_UNCOMPRESSED = 0;
+  /** Uncompressed binary, written directly (variable length). */
+  public static final int BINARY_VARIABLE_UNCOMPRESSED = 1;
+
+  /** Standard storage for sorted set values with 1 level of indirection:
+   *  docId -> address -> ord. */
+  public static final int SORTED_WITH_ADDRESSES = 0;
+  /** Single-valued sorted set values, encoded as sorted values, so no level
+   *  of indirection: docId -> ord. */
+  public static final int SORTED_SINGLE_VALUED = 1;
+
+  IndexOutput data, meta;
+  final int maxDoc;
+
+  /** expert: Creates a new writer */
+  public DirectMappedDocValuesConsumer(SegmentWriteState state, String dataCodec, String dataExtension, String metaCodec, String metaExtension) throws IOException {
+    boolean success = false;
+    try {
+      String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, dataExtension);
+      data = state.directory.createOutput(dataName, state.context);
+      CodecUtil.writeHeader(data, dataCodec, DirectMappedDocValuesFormat.VERSION_CURRENT);
+      String metaName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, metaExtension);
+      meta = state.directory.createOutput(metaName, state.context);
+      CodecUtil.writeHeader(meta, metaCodec, DirectMappedDocValuesFormat.VERSION_CURRENT);
+      maxDoc = state.segmentInfo.getDocCount();
+      success = true;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(this);
+      }
+    }
+  }
+
+  @Override
+  public void addNumericField(FieldInfo field, Iterable<Number> values) throws IOException {
+    addNumericField(field, values, true);
+  }
+
+  void addNumericField(FieldInfo field, Iterable<Number> values, boolean optimizeStorage) throws IOException {
+    long count = 0;
+    long minValue = Long.MAX_VALUE;
+    long maxValue = Long.MIN_VALUE;
+    long gcd = 0;
+    long numDocsWithValue = 0;
+    boolean missing = false;
+    HashSet<Long> uniqueValues = null;
+    if (optimizeStorage) {
+      uniqueValues = new HashSet<>();
+
+      for (Number nv : values) {
+        final long v;
+        if (nv == null) {
+          v = 0;
+          missing = true;
+        } else {
+          v = nv.longValue();
+          ++numDocsWithValue;
+        }
+
+        if (gcd != 1) {
+          if (v < Long.MIN_VALUE / 2 || v > Long.MAX_VALUE / 2) {
+            // in that case v - minValue might overflow and make the GCD computation return
+            // wrong results. Since these extreme values are unlikely, we just discard
+            // GCD computation for them
+            gcd = 1;
+          } else if (count != 0) { // minValue needs to be set first
+            gcd = MathUtil.gcd(gcd, v - minValue);
+          }
+        }
+
+        minValue = Math.min(minValue, v);
+        maxValue = Math.max(maxValue, v);
+
+        if (uniqueValues != null) {
+          if (uniqueValues.add(v)) {
+            if (uniqueValues.size() > 256) {
+              uniqueValues = null;
+            }
+          }
+        }
+
+        ++count;
+      }
+    } else {
+      for (Number nv : values) {
+        long v = nv.longValue();
+        minValue = Math.min(minValue, v);
+        maxValue = Math.max(maxValue, v);
+        ++count;
+      }
+    }
+
+    final long delta = maxValue - minValue;
+    final int deltaBitsRequired = DirectWriter.unsignedBitsRequired(delta);
+    final int tableBitsRequired = uniqueValues == null
+        ? Integer.MAX_VALUE
+        : DirectWriter.bitsRequired(uniqueValues.size() - 1);
+
+    final int format;
+    if (missing && numDocsWithValue < count / SPARSE_DENSITY_RATIO) {
+      format = SPARSE_COMPRESSED;
+    } else if (uniqueValues != null && tableBitsRequired < deltaBitsRequired) {
+      format = TABLE_COMPRESSED;
+    } else if (gcd != 0 && gcd != 1) {
+      final long gcdDelta = (maxValue - minValue) / gcd;
+      final long gcdBitsRequired = DirectWriter.unsignedBitsRequired(gcdDelta);
+      format = gcdBitsRequired < deltaBitsRequired ? GCD_COMPRESSED : DELTA_COMPRESSED;
+    } else {
+      format = DELTA_COMPRESSED;
+    }
+    meta.writeVInt(field.number);
+    meta.writeByte(DirectMappedDocValuesFormat.NUMERIC);
+    meta.writeVInt(format);
+    if (missing && format != SPARSE_COMPRESSED) {
+      meta.writeLong(data.getFilePointer());
+      writeMissingBitset(values);
+    } else {
+      meta.writeLong(-1L);
+    }
+    meta.writeLong(data.getFilePointer());
+    meta.writeVLong(count);
+
+    switch (format) {
+      case GCD_COMPRESSED:
+        meta.writeLong(minValue);
+        meta.writeLong(gcd);
+        final long maxDelta = (maxValue - minValue) / gcd;
+        final int bits = DirectWriter.unsignedBitsRequired(maxDelta);
+        meta.writeVInt(bits);
+        final DirectWriter quotientWriter = DirectWriter.getInstance(data, count, bits);
+        for (Number nv : values) {
+          long value = nv == null ? 0 : nv.longValue();
+          quotientWriter.add((value - minValue) / gcd);
+        }
+        quotientWriter.finish();
+        break;
+      case DELTA_COMPRESSED:
+        final long minDelta = delta < 0 ? 0 : minValue;
+        meta.writeLong(minDelta);
+        meta.writeVInt(deltaBitsRequired);
+        final DirectWriter writer = DirectWriter.getInstance(data, count, deltaBitsRequired);
+        for (Number nv : values) {
+          long v = nv == null ? 0 : nv.longValue();
+          writer.add(v - minDelta);
+        }
+        writer.finish();
+        break;
+      case TABLE_COMPRESSED:
+        final Long[] decode = uniqueValues.toArray(new Long[uniqueValues.size()]);
+        Arrays.sort(decode);
+        final HashMap<Long,Integer> encode = new HashMap<>();
+        meta.writeVInt(decode.length);
+        for (int i = 0; i < decode.length; i++) {
+          meta.writeLong(decode[i]);
+          encode.put(decode[i], i);
+        }
+        meta.writeVInt(tableBitsRequired);
+        final DirectWriter ordsWriter = DirectWriter.getInstance(data, count, tableBitsRequired);
+        for (Number nv : values) {
+          ordsWriter.add(encode.get(nv == null ? 0 : nv.longValue()));
+        }
+        ordsWriter.finish();
+        break;
+      case SPARSE_COMPRESSED:
+        // the doc IDs of documents which have a value, then the values
+        // themselves as a nested numeric entry, which has no missing values
+        meta.writeVLong(numDocsWithValue);
+        addMonotonic(docsWithValue(values), numDocsWithValue);
+        addNumericField(field, nonMissingValues(values), true);
+        break;
+      default:
+        throw new AssertionError();
+    }
+    meta.writeLong(data.getFilePointer());
+  }
+
+  /** Returns the doc IDs of the documents which have a value. */
+  private static Iterable<Number> docsWithValue(final Iterable<Number> values) {
+    return new Iterable<Number>() {
+      @Override
+      public Iterator<Number> iterator() {
+        final Iterator<Number> it = values.iterator();
+        return new Iterator<Number>() {
+          int doc = -1;
+          boolean hasNext;
+
+          @Override
+          public boolean hasNext() {
+            while (!hasNext && it.hasNext()) {
+              ++doc;
+              hasNext = it.next() != null;
+            }
+            return hasNext;
+          }
+
+          @Override
+          public Number next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            hasNext = false;
+            return doc;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns the values of the documents which have a value. */
+  private static Iterable<Number> nonMissingValues(final Iterable<Number> values) {
+    return new Iterable<Number>() {
+      @Override
+      public Iterator<Number> iterator() {
+        final Iterator<Number> it = values.iterator();
+        return new Iterator<Number>() {
+          Number next;
+
+          @Override
+          public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+              next = it.next();
+            }
+            return next != null;
+          }
+
+          @Override
+          public Number next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final Number v = next;
+            next = null;
+            return v;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  void writeMissingBitset(Iterable<?> values) throws IOException {
+    byte bits = 0;
+    int count = 0;
+    for (Object v : values) {
+      if (count == 8) {
+        data.writeByte(bits);
+        count = 0;
+        bits = 0;
+      }
+      if (v != null) {
+        bits |= 1 << (count & 7);
+      }
+      count++;
+    }
+    if (count > 0) {
+      data.writeByte(bits);
+    }
+  }
+
+  @Override
+  public void addBinaryField(FieldInfo field, final Iterable<BytesRef> values) throws IOException {
+    // write the byte[] data
+    meta.writeVInt(field.number);
+    meta.writeByte(DirectMappedDocValuesFormat.BINARY);
+    int minLength = Integer.MAX_VALUE;
+    int maxLength = Integer.MIN_VALUE;
+    final long startFP = data.getFilePointer();
+    long count = 0;
+    boolean missing = false;
+    for(BytesRef v : values) {
+      final int length;
+      if (v == null) {
+        length = 0;
+        missing = true;
+      } else {
+        length = v.length;
+      }
+      minLength = Math.min(minLength, length);
+      maxLength = Math.max(maxLength, length);
+      if (v != null) {
+        data.writeBytes(v.bytes, v.offset, v.length);
+      }
+      count++;
+    }
+    meta.writeVInt(minLength == maxLength ? BINARY_FIXED_UNCOMPRESSED : BINARY_VARIABLE_UNCOMPRESSED);
+    if (missing) {
+      meta.writeLong(data.getFilePointer());
+      writeMissingBitset(values);
+    } else {
+      meta.writeLong(-1L);
+    }
+    meta.writeVInt(minLength);
+    meta.writeVInt(maxLength);
+    meta.writeVLong(count);
+    meta.writeLong(startFP);
+
+    // if minLength == maxLength, its a fixed-length byte[], we are done (the addresses are implicit)
+    // otherwise, we need to record the addresses of values
+    if (minLength != maxLength) {
+      addMonotonic(startOffsets(new Iterable<Number>() {
+        @Override
+        public Iterator<Number> iterator() {
+          final Iterator<BytesRef> it = values.iterator();
+          return new Iterator<Number>() {
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Number next() {
+              final BytesRef v = it.next();
+              return v == null ? 0 : v.length;
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      }), count + 1);
+    }
+  }
+
+  @Override
+  public void addSortedField(FieldInfo field, Iterable<BytesRef> values, Iterable<Number> docToOrd) throws IOException {
+    meta.writeVInt(field.number);
+    meta.writeByte(DirectMappedDocValuesFormat.SORTED);
+    addBinaryField(field, values);
+    addNumericField(field, docToOrd, false);
+  }
+
+  @Override
+  public void addSortedNumericField(FieldInfo field, final Iterable<Number> docToValueCount, final Iterable<Number> values) throws IOException {
+    meta.writeVInt(field.number);
+    meta.writeByte(DirectMappedDocValuesFormat.SORTED_NUMERIC);
+    if (isSingleValued(docToValueCount)) {
+      meta.writeVInt(SORTED_SINGLE_VALUED);
+      // The field is single-valued, we can encode it as NUMERIC
+      addNumericField(field, singletonView(docToValueCount, values, null));
+    } else {
+      meta.writeVInt(SORTED_WITH_ADDRESSES);
+      // write the stream of values as a numeric field
+      addNumericField(field, values, true);
+      // write the doc -> value count as a absolute index to the stream
+      addMonotonic(startOffsets(docToValueCount), maxDoc + 1L);
+    }
+  }
+
+  @Override
+  public void addSortedSetField(FieldInfo field, Iterable<BytesRef> values, final Iterable<Number> docToOrdCount, final Iterable<Number> ords) throws IOException {
+    meta.writeVInt(field.number);
+    meta.writeByte(DirectMappedDocValuesFormat.SORTED_SET);
+
+    if (isSingleValued(docToOrdCount)) {
+      meta.writeVInt(SORTED_SINGLE_VALUED);
+      // The field is single-valued, we can encode it as SORTED
+      addSortedField(field, values, singletonView(docToOrdCount, ords, -1L));
+    } else {
+      meta.writeVInt(SORTED_WITH_ADDRESSES);
+
+      // write the ord -> byte[] as a binary field
+      addBinaryField(field, values);
+
+      // write the stream of ords as a numeric field
+      addNumericField(field, ords, false);
+
+      // write the doc -> ord count as a absolute index to the stream
+      addMonotonic(startOffsets(docToOrdCount), maxDoc + 1L);
+    }
+  }
+
+  /** Returns the offsets at which values start given their lengths,
+   *  followed by the offset at which the last value ends. */
+  private static Iterable<Number> startOffsets(final Iterable<Number> lengths) {
+    return new Iterable<Number>() {
+      @Override
+      public Iterator<Number> iterator() {
+        final Iterator<Number> it = lengths.iterator();
+        return new Iterator<Number>() {
+          long offset;
+          boolean done;
+
+          @Override
+          public boolean hasNext() {
+            return !done;
+          }
+
+          @Override
+          public Number next() {
+            if (done) {
+              throw new NoSuchElementException();
+            }
+            final long startOffset = offset;
+            if (it.hasNext()) {
+              offset += it.next().longValue();
+            } else {
+              done = true;
+            }
+            return startOffset;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Writes monotonically increasing values. Values are split into blocks of
+   * {@link #MONOTONIC_BLOCK_SIZE} values, whose headers store the average
+   * increment between values of the block and the minimum delta to the
+   * expected value; the deltas of all blocks are then written with the same
+   * number of bits per value so that they can be read by a single reader.
+   */
+  private void addMonotonic(Iterable<Number> values, long count) throws IOException {
+    final long headersOffset = data.getFilePointer();
+    final long[] block = new long[MONOTONIC_BLOCK_SIZE];
+    final long[] header = new long[2];
+    long maxDelta = 0;
+    int upto = 0;
+    for (Number v : values) {
+      block[upto++] = v.longValue();
+      if (upto == MONOTONIC_BLOCK_SIZE) {
+        maxDelta = Math.max(maxDelta, writeMonotonicHeader(block, upto, header));
+        upto = 0;
+      }
+    }
+    if (upto > 0) {
+      maxDelta = Math.max(maxDelta, writeMonotonicHeader(block, upto, header));
+    }
+    final int bitsPerValue = DirectWriter.unsignedBitsRequired(maxDelta);
+    final long deltasOffset = data.getFilePointer();
+    final DirectWriter writer = DirectWriter.getInstance(data, count, bitsPerValue);
+    upto = 0;
+    for (Number v : values) {
+      block[upto++] = v.longValue();
+      if (upto == MONOTONIC_BLOCK_SIZE) {
+        writeMonotonicDeltas(block, upto, header, writer);
+        upto = 0;
+      }
+    }
+    if (upto > 0) {
+      writeMonotonicDeltas(block, upto, header, writer);
+    }
+    writer.finish();
+
+    meta.writeVLong(count);
+    meta.writeLong(headersOffset);
+    meta.writeLong(deltasOffset);
+    meta.writeVInt(bitsPerValue);
+    meta.writeLong(data.getFilePointer());
+  }
+
+  /** Computes the header of a block of monotonic values into
+   *  <code>header</code>, and returns the maximum delta of the block. */
+  private static long computeMonotonicHeader(long[] block, int length, long[] header) {
+    final float avg = length == 1 ? 0f : (float) (block[length - 1] - block[0]) / (length - 1);
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < length; ++i) {
+      min = Math.min(min, block[i] - (long) (avg * i));
+    }
+    long maxDelta = 0;
+    for (int i = 0; i < length; ++i) {
+      maxDelta = Math.max(maxDelta, block[i] - (long) (avg * i) - min);
+    }
+    header[0] = min;
+    header[1] = Float.floatToIntBits(avg);
+    return maxDelta;
+  }
+
+  private long writeMonotonicHeader(long[] block, int length, long[] header) throws IOException {
+    final long maxDelta = computeMonotonicHeader(block, length, header);
+    data.writeLong(header[0]);
+    data.writeInt((int) header[1]);
+    return maxDelta;
+  }
+
+  private static void writeMonotonicDeltas(long[] block, int length, long[] header, DirectWriter writer) throws IOException {
+    computeMonotonicHeader(block, length, header);
+    final long min = header[0];
+    final float avg = Float.intBitsToFloat((int) header[1]);
+    for (int i = 0; i < length; ++i) {
+      writer.add(block[i] - (long) (avg * i) - min);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    boolean success = false;
+    try {
+      if (meta != null) {
+        meta.writeVInt(-1); // write EOF marker
+        CodecUtil.writeFooter(meta); // write checksum
+      }
+      if (data != null) {
+        CodecUtil.writeFooter(data); // write checksum
+      }
+      success = true;
+    } finally {
+      if (success) {
+        IOUtils.close(data, meta);
+      } else {
+        IOUtils.closeWhileHandlingException(data, meta);
+      }
+      meta = data = null;
+    }
+  }
+}
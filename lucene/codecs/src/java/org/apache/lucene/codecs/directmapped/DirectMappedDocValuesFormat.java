@@ -0,0 +1,85 @@
+package org.apache.lucene.codecs.directmapped;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.lucene410.Lucene410DocValuesFormat; // javadocs
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.store.MMapDirectory; // javadocs
+import org.apache.lucene.store.RandomAccessInput; // javadocs
+import org.apache.lucene.util.packed.DirectReader; // javadocs
+
+/**
+ * DocValues format which never loads values, addresses or ordinals in heap
+ * memory: every structure is read from the index with {@link DirectReader}
+ * or a {@link RandomAccessInput}, so that the heap used per segment doesn't
+ * depend on the number of documents or values, which is useful for indexes
+ * with many fields, in particular with {@link MMapDirectory}.
+ * <p>
+ * The encoding of numeric values is the same as {@link Lucene410DocValuesFormat}.
+ * The differences are:
+ * <ul>
+ *   <li>Addresses of variable-length binary values and of the values of
+ *       multi-valued fields are encoded in blocks of 16k values, each of
+ *       which stores a linear approximation of its values and the deltas
+ *       to this approximation, with the same number of bits per value for
+ *       all blocks so that they can be read with a single {@link DirectReader}.</li>
+ *   <li>The unique values of sorted and sorted set fields are not prefix
+ *       compressed and have no in-memory terms index: terms are looked up by
+ *       binary search on disk.</li>
+ *   <li>Numeric fields which have a value in less than 1% of documents only
+ *       store the doc IDs of these documents and their values. Lookups
+ *       start from the previous document, so that reading documents in
+ *       order stays fast.</li>
+ * </ul>
+ * @lucene.experimental
+ */
+public final class DirectMappedDocValuesFormat extends DocValuesFormat {
+
+  /** Sole Constructor */
+  public DirectMappedDocValuesFormat() {
+    super("DirectMapped");
+  }
+
+  @Override
+  public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+    return new DirectMappedDocValuesConsumer(state, DATA_CODEC, DATA_EXTENSION, META_CODEC, META_EXTENSION);
+  }
+
+  @Override
+  public DocValuesProducer fieldsProducer(SegmentReadState state) throws IOException {
+    return new DirectMappedDocValuesProducer(state, DATA_CODEC, DATA_EXTENSION, META_CODEC, META_EXTENSION);
+  }
+
+  static final String DATA_CODEC = "DirectMappedDocValuesData";
+  static final String DATA_EXTENSION = "dmd";
+  static final String META_CODEC = "DirectMappedDocValuesMetadata";
+  static final String META_EXTENSION = "dmm";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+  static final byte NUMERIC = 0;
+  static final byte BINARY = 1;
+  static final byte SORTED = 2;
+  static final byte SORTED_SET = 3;
+  static final byte SORTED_NUMERIC = 4;
+}
@@ -0,0 +1,831 @@
+package org.apache.lucene.codecs.directmapped;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.BINARY_FIXED_UNCOMPRESSED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.BINARY_VARIABLE_UNCOMPRESSED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.DELTA_COMPRESSED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.GCD_COMPRESSED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.MONOTONIC_BLOCK_SHIFT;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.MONOTONIC_HEADER_BYTES;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.SORTED_SINGLE_VALUED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.SORTED_WITH_ADDRESSES;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.SPARSE_COMPRESSED;
+import static org.apache.lucene.codecs.directmapped.DirectMappedDocValuesConsumer.TABLE_COMPRESSED;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.DirectReader;
+
+/** reader for {@link DirectMappedDocValuesFormat} */
+class DirectMappedDocValuesProducer extends DocValuesProducer implements Closeable {
+  private final Map<Integer,NumericEntry> numerics = new HashMap<>();
+  private final Map<Integer,BinaryEntry> binaries = new HashMap<>();
+  private final Map<Integer,SortedSetEntry> sortedSets = new HashMap<>();
+  private final Map<Integer,SortedSetEntry> sortedNumerics = new HashMap<>();
+  private final Map<Integer,NumericEntry> ords = new HashMap<>();
+  private final Map<Integer,MonotonicEntry> ordIndexes = new HashMap<>();
+  private final long ramBytesUsed;
+  private final IndexInput data;
+  private final int maxDoc;
+  private final int version;
+
+  /** expert: instantiates a new reader */
+  DirectMappedDocValuesProducer(SegmentReadState state, String dataCodec, String dataExtension, String metaCodec, String metaExtension) throws IOException {
+    String metaName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, metaExtension);
+    // read in the entries from the metadata file.
+    ChecksumIndexInput in = state.directory.openChecksumInput(metaName, state.context);
+    this.maxDoc = state.segmentInfo.getDocCount();
+    boolean success = false;
+    try {
+      version = CodecUtil.checkHeader(in, metaCodec,
+                                      DirectMappedDocValuesFormat.VERSION_START,
+                                      DirectMappedDocValuesFormat.VERSION_CURRENT);
+      readFields(in, state.fieldInfos);
+
+      CodecUtil.checkFooter(in);
+      success = true;
+    } finally {
+      if (success) {
+        IOUtils.close(in);
+      } else {
+        IOUtils.closeWhileHandlingException(in);
+      }
+    }
+
+    String dataName = IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, dataExtension);
+    this.data = state.directory.openInput(dataName, state.context);
+    success = false;
+    try {
+      final int version2 = CodecUtil.checkHeader(data, dataCodec,
+                                                 DirectMappedDocValuesFormat.VERSION_START,
+                                                 DirectMappedDocValuesFormat.VERSION_CURRENT);
+      if (version != version2) {
+        throw new CorruptIndexException("Format versions mismatch");
+      }
+
+      // NOTE: data file is too costly to verify checksum against all the bytes on open,
+      // but for now we at least verify proper structure of the checksum footer: which looks
+      // for FOOTER_MAGIC + algorithmID. This is cheap and can detect some forms of corruption
+      // such as file truncation.
+      CodecUtil.retrieveChecksum(data);
+
+      success = true;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(this.data);
+      }
+    }
+
+    // the only memory-resident structures are the metadata entries
+    long ramBytesUsed = RamUsageEstimator.shallowSizeOfInstance(getClass());
+    for (NumericEntry entry : numerics.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    for (NumericEntry entry : ords.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    for (BinaryEntry entry : binaries.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    for (SortedSetEntry entry : sortedSets.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    for (SortedSetEntry entry : sortedNumerics.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    for (MonotonicEntry entry : ordIndexes.values()) {
+      ramBytesUsed += entry.ramBytesUsed();
+    }
+    this.ramBytesUsed = ramBytesUsed;
+  }
+
+  private void readSortedField(int fieldNumber, IndexInput meta, FieldInfos infos) throws IOException {
+    // sorted = binary + numeric
+    if (meta.readVInt() != fieldNumber) {
+      throw new CorruptIndexException("sorted entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    if (meta.readByte() != DirectMappedDocValuesFormat.BINARY) {
+      throw new CorruptIndexException("sorted entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    BinaryEntry b = readBinaryEntry(meta);
+    binaries.put(fieldNumber, b);
+
+    if (meta.readVInt() != fieldNumber) {
+      throw new CorruptIndexException("sorted entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    if (meta.readByte() != DirectMappedDocValuesFormat.NUMERIC) {
+      throw new CorruptIndexException("sorted entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    NumericEntry n = readNumericEntry(fieldNumber, meta);
+    ords.put(fieldNumber, n);
+  }
+
+  private void readSortedSetFieldWithAddresses(int fieldNumber, IndexInput meta, FieldInfos infos) throws IOException {
+    // sortedset = binary + numeric (ords) + ordIndex
+    if (meta.readVInt() != fieldNumber) {
+      throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    if (meta.readByte() != DirectMappedDocValuesFormat.BINARY) {
+      throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    BinaryEntry b = readBinaryEntry(meta);
+    binaries.put(fieldNumber, b);
+
+    if (meta.readVInt() != fieldNumber) {
+      throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    if (meta.readByte() != DirectMappedDocValuesFormat.NUMERIC) {
+      throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+    }
+    NumericEntry n = readNumericEntry(fieldNumber, meta);
+    ords.put(fieldNumber, n);
+
+    ordIndexes.put(fieldNumber, readMonotonicEntry(meta));
+  }
+
+  private void readFields(IndexInput meta, FieldInfos infos) throws IOException {
+    int fieldNumber = meta.readVInt();
+    while (fieldNumber != -1) {
+      if (infos.fieldInfo(fieldNumber) == null) {
+        // trickier to validate more: because we use multiple entries
+        // for "composite" types like sortedset, etc.
+        throw new CorruptIndexException("Invalid field number: " + fieldNumber + " (resource=" + meta + ")");
+      }
+      byte type = meta.readByte();
+      if (type == DirectMappedDocValuesFormat.NUMERIC) {
+        numerics.put(fieldNumber, readNumericEntry(fieldNumber, meta));
+      } else if (type == DirectMappedDocValuesFormat.BINARY) {
+        BinaryEntry b = readBinaryEntry(meta);
+        binaries.put(fieldNumber, b);
+      } else if (type == DirectMappedDocValuesFormat.SORTED) {
+        readSortedField(fieldNumber, meta, infos);
+      } else if (type == DirectMappedDocValuesFormat.SORTED_SET) {
+        SortedSetEntry ss = readSortedSetEntry(meta);
+        sortedSets.put(fieldNumber, ss);
+        if (ss.format == SORTED_WITH_ADDRESSES) {
+          readSortedSetFieldWithAddresses(fieldNumber, meta, infos);
+        } else if (ss.format == SORTED_SINGLE_VALUED) {
+          if (meta.readVInt() != fieldNumber) {
+            throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+          }
+          if (meta.readByte() != DirectMappedDocValuesFormat.SORTED) {
+            throw new CorruptIndexException("sortedset entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+          }
+          readSortedField(fieldNumber, meta, infos);
+        } else {
+          throw new AssertionError();
+        }
+      } else if (type == DirectMappedDocValuesFormat.SORTED_NUMERIC) {
+        SortedSetEntry ss = readSortedSetEntry(meta);
+        sortedNumerics.put(fieldNumber, ss);
+        if (meta.readVInt() != fieldNumber) {
+          throw new CorruptIndexException("sortednumeric entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+        }
+        if (meta.readByte() != DirectMappedDocValuesFormat.NUMERIC) {
+          throw new CorruptIndexException("sortednumeric entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+        }
+        numerics.put(fieldNumber, readNumericEntry(fieldNumber, meta));
+        if (ss.format == SORTED_WITH_ADDRESSES) {
+          ordIndexes.put(fieldNumber, readMonotonicEntry(meta));
+        } else if (ss.format != SORTED_SINGLE_VALUED) {
+          throw new AssertionError();
+        }
+      } else {
+        throw new CorruptIndexException("invalid type: " + type + ", resource=" + meta);
+      }
+      fieldNumber = meta.readVInt();
+    }
+  }
+
+  static NumericEntry readNumericEntry(int fieldNumber, IndexInput meta) throws IOException {
+    NumericEntry entry = new NumericEntry();
+    entry.format = meta.readVInt();
+    entry.missingOffset = meta.readLong();
+    entry.offset = meta.readLong();
+    entry.count = meta.readVLong();
+    switch(entry.format) {
+      case GCD_COMPRESSED:
+        entry.minValue = meta.readLong();
+        entry.gcd = meta.readLong();
+        entry.bitsPerValue = meta.readVInt();
+        break;
+      case TABLE_COMPRESSED:
+        final int uniqueValues = meta.readVInt();
+        if (uniqueValues > 256) {
+          throw new CorruptIndexException("TABLE_COMPRESSED cannot have more than 256 distinct values, input=" + meta);
+        }
+        entry.table = new long[uniqueValues];
+        for (int i = 0; i < uniqueValues; ++i) {
+          entry.table[i] = meta.readLong();
+        }
+        entry.bitsPerValue = meta.readVInt();
+        break;
+      case DELTA_COMPRESSED:
+        entry.minValue = meta.readLong();
+        entry.bitsPerValue = meta.readVInt();
+        break;
+      case SPARSE_COMPRESSED:
+        entry.numDocsWithValue = meta.readVLong();
+        entry.docIDs = readMonotonicEntry(meta);
+        if (meta.readVInt() != fieldNumber) {
+          throw new CorruptIndexException("sparse numeric entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+        }
+        if (meta.readByte() != DirectMappedDocValuesFormat.NUMERIC) {
+          throw new CorruptIndexException("sparse numeric entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+        }
+        entry.nonMissingValues = readNumericEntry(fieldNumber, meta);
+        if (entry.nonMissingValues.format == SPARSE_COMPRESSED) {
+          throw new CorruptIndexException("sparse numeric entry for field: " + fieldNumber + " is corrupt (resource=" + meta + ")");
+        }
+        break;
+      default:
+        throw new CorruptIndexException("Unknown format: " + entry.format + ", input=" + meta);
+    }
+    entry.endOffset = meta.readLong();
+    return entry;
+  }
+
+  static BinaryEntry readBinaryEntry(IndexInput meta) throws IOException {
+    BinaryEntry entry = new BinaryEntry();
+    entry.format = meta.readVInt();
+    entry.missingOffset = meta.readLong();
+    entry.minLength = meta.readVInt();
+    entry.maxLength = meta.readVInt();
+    entry.count = meta.readVLong();
+    entry.offset = meta.readLong();
+    switch(entry.format) {
+      case BINARY_FIXED_UNCOMPRESSED:
+        break;
+      case BINARY_VARIABLE_UNCOMPRESSED:
+        entry.addresses = readMonotonicEntry(meta);
+        break;
+      default:
+        throw new CorruptIndexException("Unknown format: " + entry.format + ", input=" + meta);
+    }
+    return entry;
+  }
+
+  static MonotonicEntry readMonotonicEntry(IndexInput meta) throws IOException {
+    MonotonicEntry entry = new MonotonicEntry();
+    entry.count = meta.readVLong();
+    entry.headersOffset = meta.readLong();
+    entry.deltasOffset = meta.readLong();
+    entry.bitsPerValue = meta.readVInt();
+    entry.endOffset = meta.readLong();
+    return entry;
+  }
+
+  SortedSetEntry readSortedSetEntry(IndexInput meta) throws IOException {
+    SortedSetEntry entry = new SortedSetEntry();
+    entry.format = meta.readVInt();
+    if (entry.format != SORTED_SINGLE_VALUED && entry.format != SORTED_WITH_ADDRESSES) {
+      throw new CorruptIndexException("Unknown format: " + entry.format + ", input=" + meta);
+    }
+    return entry;
+  }
+
+  @Override
+  public NumericDocValues getNumeric(FieldInfo field) throws IOException {
+    NumericEntry entry = numerics.get(field.number);
+    return getNumeric(entry);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public void checkIntegrity() throws IOException {
+    CodecUtil.checksumEntireFile(data);
+  }
+
+  LongValues getNumeric(NumericEntry entry) throws IOException {
+    RandomAccessInput slice = this.data.randomAccessSlice(entry.offset, entry.endOffset - entry.offset);
+    switch (entry.format) {
+      case DELTA_COMPRESSED:
+        final long delta = entry.minValue;
+        final LongValues values = DirectReader.getInstance(slice, entry.bitsPerValue);
+        return new LongValues() {
+          @Override
+          public long get(long id) {
+            return delta + values.get(id);
+          }
+        };
+      case GCD_COMPRESSED:
+        final long min = entry.minValue;
+        final long mult = entry.gcd;
+        final LongValues quotientReader = DirectReader.getInstance(slice, entry.bitsPerValue);
+        return new LongValues() {
+          @Override
+          public long get(long id) {
+            return min + mult * quotientReader.get(id);
+          }
+        };
+      case TABLE_COMPRESSED:
+        final long table[] = entry.table;
+        final LongValues ords = DirectReader.getInstance(slice, entry.bitsPerValue);
+        return new LongValues() {
+          @Override
+          public long get(long id) {
+            return table[(int) ords.get(id)];
+          }
+        };
+      case SPARSE_COMPRESSED:
+        final SparseDocIDs docIDs = getSparseDocIDs(entry);
+        final LongValues nonMissingValues = getNumeric(entry.nonMissingValues);
+        return new LongValues() {
+          @Override
+          public long get(long id) {
+            final long index = docIDs.indexOf(id);
+            return index == -1 ? 0 : nonMissingValues.get(index);
+          }
+        };
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /** Returns a reader of monotonic values: the value at <code>index</code>
+   *  is the linear approximation of its block plus its delta. */
+  LongValues getMonotonic(MonotonicEntry entry) throws IOException {
+    final RandomAccessInput headers = data.randomAccessSlice(entry.headersOffset, entry.deltasOffset - entry.headersOffset);
+    final RandomAccessInput slice = data.randomAccessSlice(entry.deltasOffset, entry.endOffset - entry.deltasOffset);
+    final LongValues deltas = DirectReader.getInstance(slice, entry.bitsPerValue);
+    final long blockMask = (1L << MONOTONIC_BLOCK_SHIFT) - 1;
+    return new LongValues() {
+      @Override
+      public long get(long index) {
+        final long headerOffset = (index >>> MONOTONIC_BLOCK_SHIFT) * MONOTONIC_HEADER_BYTES;
+        try {
+          final long min = headers.readLong(headerOffset);
+          final float avg = Float.intBitsToFloat(headers.readInt(headerOffset + 8));
+          return min + (long) (avg * (index & blockMask)) + deltas.get(index);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public BinaryDocValues getBinary(FieldInfo field) throws IOException {
+    BinaryEntry bytes = binaries.get(field.number);
+    switch(bytes.format) {
+      case BINARY_FIXED_UNCOMPRESSED:
+        return getFixedBinary(field, bytes);
+      case BINARY_VARIABLE_UNCOMPRESSED:
+        return getVariableBinary(field, bytes);
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  private BinaryDocValues getFixedBinary(FieldInfo field, final BinaryEntry bytes) throws IOException {
+    final IndexInput data = this.data.slice("fixed-binary", bytes.offset, bytes.count * bytes.maxLength);
+
+    final BytesRef term = new BytesRef(bytes.maxLength);
+    final byte[] buffer = term.bytes;
+    final int length = term.length = bytes.maxLength;
+
+    return new LongBinaryDocValues() {
+      @Override
+      public BytesRef get(long id) {
+        try {
+          data.seek(id * length);
+          data.readBytes(buffer, 0, buffer.length);
+          return term;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  private BinaryDocValues getVariableBinary(FieldInfo field, final BinaryEntry bytes) throws IOException {
+    final LongValues addresses = getMonotonic(bytes.addresses);
+
+    final IndexInput data = this.data.slice("var-binary", bytes.offset, bytes.addresses.headersOffset - bytes.offset);
+    final BytesRef term = new BytesRef(Math.max(0, bytes.maxLength));
+    final byte buffer[] = term.bytes;
+
+    return new LongBinaryDocValues() {
+      @Override
+      public BytesRef get(long id) {
+        long startAddress = addresses.get(id);
+        long endAddress = addresses.get(id+1);
+        int length = (int) (endAddress - startAddress);
+        try {
+          data.seek(startAddress);
+          data.readBytes(buffer, 0, length);
+          term.length = length;
+          return term;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+  @Override
+  public SortedDocValues getSorted(FieldInfo field) throws IOException {
+    final int valueCount = (int) binaries.get(field.number).count;
+    final BinaryDocValues binary = getBinary(field);
+    NumericEntry entry = ords.get(field.number);
+    final LongValues ordinals = getNumeric(entry);
+    return new SortedDocValues() {
+
+      @Override
+      public int getOrd(int docID) {
+        return (int) ordinals.get(docID);
+      }
+
+      @Override
+      public BytesRef lookupOrd(int ord) {
+        return binary.get(ord);
+      }
+
+      @Override
+      public int getValueCount() {
+        return valueCount;
+      }
+    };
+  }
+
+  @Override
+  public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
+    SortedSetEntry ss = sortedNumerics.get(field.number);
+    NumericEntry numericEntry = numerics.get(field.number);
+    final LongValues values = getNumeric(numericEntry);
+    if (ss.format == SORTED_SINGLE_VALUED) {
+      final Bits docsWithField = getDocsWithField(numericEntry);
+      return DocValues.singleton(values, docsWithField);
+    } else if (ss.format == SORTED_WITH_ADDRESSES) {
+      final LongValues ordIndex = getMonotonic(ordIndexes.get(field.number));
+
+      return new SortedNumericDocValues() {
+        long startOffset;
+        long endOffset;
+
+        @Override
+        public void setDocument(int doc) {
+          startOffset = ordIndex.get(doc);
+          endOffset = ordIndex.get(doc+1L);
+        }
+
+        @Override
+        public long valueAt(int index) {
+          return values.get(startOffset + index);
+        }
+
+        @Override
+        public int count() {
+          return (int) (endOffset - startOffset);
+        }
+      };
+    } else {
+      throw new AssertionError();
+    }
+  }
+
+  @Override
+  public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
+    SortedSetEntry ss = sortedSets.get(field.number);
+    if (ss.format == SORTED_SINGLE_VALUED) {
+      final SortedDocValues values = getSorted(field);
+      return DocValues.singleton(values);
+    } else if (ss.format != SORTED_WITH_ADDRESSES) {
+      throw new AssertionError();
+    }
+
+    final long valueCount = binaries.get(field.number).count;
+    final LongBinaryDocValues binary = (LongBinaryDocValues) getBinary(field);
+    final LongValues ordinals = getNumeric(ords.get(field.number));
+    final LongValues ordIndex = getMonotonic(ordIndexes.get(field.number));
+
+    return new RandomAccessOrds() {
+      long startOffset;
+      long offset;
+      long endOffset;
+
+      @Override
+      public long nextOrd() {
+        if (offset == endOffset) {
+          return NO_MORE_ORDS;
+        } else {
+          long ord = ordinals.get(offset);
+          offset++;
+          return ord;
+        }
+      }
+
+      @Override
+      public void setDocument(int docID) {
+        startOffset = offset = ordIndex.get(docID);
+        endOffset = ordIndex.get(docID+1L);
+      }
+
+      @Override
+      public BytesRef lookupOrd(long ord) {
+        return binary.get(ord);
+      }
+
+      @Override
+      public long getValueCount() {
+        return valueCount;
+      }
+
+      @Override
+      public long ordAt(int index) {
+        return ordinals.get(startOffset + index);
+      }
+
+      @Override
+      public int cardinality() {
+        return (int) (endOffset - startOffset);
+      }
+    };
+  }
+
+  private Bits getDocsWithField(NumericEntry entry) throws IOException {
+    if (entry.format == SPARSE_COMPRESSED) {
+      final SparseDocIDs docIDs = getSparseDocIDs(entry);
+      return new Bits() {
+        @Override
+        public boolean get(int index) {
+          return docIDs.indexOf(index) != -1;
+        }
+
+        @Override
+        public int length() {
+          return maxDoc;
+        }
+      };
+    } else {
+      return getMissingBits(entry.missingOffset);
+    }
+  }
+
+  private SparseDocIDs getSparseDocIDs(NumericEntry entry) throws IOException {
+    return new SparseDocIDs(getMonotonic(entry.docIDs), entry.numDocsWithValue);
+  }
+
+  private Bits getMissingBits(final long offset) throws IOException {
+    if (offset == -1) {
+      return new Bits.MatchAllBits(maxDoc);
+    } else {
+      int length = (int) ((maxDoc + 7L) >>> 3);
+      final RandomAccessInput in = data.randomAccessSlice(offset, length);
+      return new Bits() {
+        @Override
+        public boolean get(int index) {
+          try {
+            return (in.readByte(index >> 3) & (1 << (index & 7))) != 0;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+
+        @Override
+        public int length() {
+          return maxDoc;
+        }
+      };
+    }
+  }
+
+  @Override
+  public Bits getDocsWithField(FieldInfo field) throws IOException {
+    switch(field.getDocValuesType()) {
+      case SORTED_SET:
+        return DocValues.docsWithValue(getSortedSet(field), maxDoc);
+      case SORTED_NUMERIC:
+        return DocValues.docsWithValue(getSortedNumeric(field), maxDoc);
+      case SORTED:
+        return DocValues.docsWithValue(getSorted(field), maxDoc);
+      case BINARY:
+        BinaryEntry be = binaries.get(field.number);
+        return getMissingBits(be.missingOffset);
+      case NUMERIC:
+        NumericEntry ne = numerics.get(field.number);
+        return getDocsWithField(ne);
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    data.close();
+  }
+
+  /** metadata entry for a numeric docvalues field */
+  static class NumericEntry {
+    private NumericEntry() {}
+    /** offset to the bitset representing docsWithField, or -1 if no documents have missing values */
+    long missingOffset;
+    /** offset to the actual numeric values */
+    long offset;
+    /** end offset to the actual numeric values */
+    long endOffset;
+    /** bits per value used to pack the numeric values */
+    int bitsPerValue;
+
+    int format;
+    /** count of values written */
+    long count;
+
+    long minValue;
+    long gcd;
+    long table[];
+
+    /** number of documents which have a value, if sparse */
+    long numDocsWithValue;
+    /** doc IDs of the documents which have a value, if sparse */
+    MonotonicEntry docIDs;
+    /** values of the documents which have a value, if sparse */
+    NumericEntry nonMissingValues;
+
+    long ramBytesUsed() {
+      long ramBytesUsed = RamUsageEstimator.shallowSizeOfInstance(NumericEntry.class);
+      if (table != null) {
+        ramBytesUsed += RamUsageEstimator.sizeOf(table);
+      }
+      if (docIDs != null) {
+        ramBytesUsed += docIDs.ramBytesUsed();
+      }
+      if (nonMissingValues != null) {
+        ramBytesUsed += nonMissingValues.ramBytesUsed();
+      }
+      return ramBytesUsed;
+    }
+  }
+
+  /**
+   * Finds the index of a document in the sorted doc IDs of a sparse field.
+   * Since documents are usually read in increasing order, the search starts
+   * from the index of the previous lookup and gallops forward before doing a
+   * binary search. The doc IDs around the previous target are cached so
+   * that iterating over all documents doesn't read the doc IDs for every
+   * document.
+   */
+  static final class SparseDocIDs {
+    private final LongValues docIDs;
+    private final long numDocsWithValue;
+    // index of the greatest doc ID which is less than or equal to the previous target
+    private long index;
+    // the doc IDs around the previous target: -1 before the first doc ID and
+    // Long.MAX_VALUE after the last one
+    private long docID = -1, nextDocID = -1;
+
+    SparseDocIDs(LongValues docIDs, long numDocsWithValue) {
+      this.docIDs = docIDs;
+      this.numDocsWithValue = numDocsWithValue;
+    }
+
+    /** Returns the index of <code>docID</code>, or -1 if the document doesn't have a value. */
+    long indexOf(long docID) {
+      if (this.docID <= docID && docID < nextDocID) {
+        return this.docID == docID ? index : -1;
+      } else if (numDocsWithValue == 0) {
+        return -1;
+      }
+      long lo;
+      if (this.docID != -1 && this.docID <= docID) {
+        lo = index;
+      } else if (docIDs.get(0) <= docID) {
+        lo = 0;
+      } else {
+        index = 0;
+        this.docID = -1;
+        nextDocID = docIDs.get(0);
+        return -1;
+      }
+      // gallop until docIDs[hi] > docID
+      long hi = lo + 1;
+      for (long step = 1; hi < numDocsWithValue && docIDs.get(hi) <= docID; step <<= 1) {
+        lo = hi;
+        hi = lo + step;
+      }
+      hi = Math.min(hi, numDocsWithValue);
+      // binary search in [lo, hi)
+      while (hi - lo > 1) {
+        final long mid = (lo + hi) >>> 1;
+        if (docIDs.get(mid) <= docID) {
+          lo = mid;
+        } else {
+          hi = mid;
+        }
+      }
+      index = lo;
+      this.docID = docIDs.get(lo);
+      nextDocID = lo + 1 < numDocsWithValue ? docIDs.get(lo + 1) : Long.MAX_VALUE;
+      return this.docID == docID ? lo : -1;
+    }
+  }
+
+  /** metadata entry for a binary docvalues field */
+  static class BinaryEntry {
+    private BinaryEntry() {}
+    /** offset to the bitset representing docsWithField, or -1 if no documents have missing values */
+    long missingOffset;
+    /** offset to the actual binary values */
+    long offset;
+
+    int format;
+    /** count of values written */
+    long count;
+    int minLength;
+    int maxLength;
+    /** addresses of values, if their length is variable */
+    MonotonicEntry addresses;
+
+    long ramBytesUsed() {
+      long ramBytesUsed = RamUsageEstimator.shallowSizeOfInstance(BinaryEntry.class);
+      if (addresses != null) {
+        ramBytesUsed += addresses.ramBytesUsed();
+      }
+      return ramBytesUsed;
+    }
+  }
+
+  /** metadata entry for monotonically increasing addresses */
+  static class MonotonicEntry {
+    private MonotonicEntry() {}
+    /** count of values written */
+    long count;
+    /** offset to the headers of blocks */
+    long headersOffset;
+    /** offset to the deltas */
+    long deltasOffset;
+    /** end offset of the deltas */
+    long endOffset;
+    /** bits per value used to pack the deltas */
+    int bitsPerValue;
+
+    long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOfInstance(MonotonicEntry.class);
+    }
+  }
+
+  /** metadata entry for a sorted-set docvalues field */
+  static class SortedSetEntry {
+    private SortedSetEntry() {}
+    int format;
+
+    long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOfInstance(SortedSetEntry.class);
+    }
+  }
+
+  // internally we compose complex dv (sorted/sortedset) from other ones
+  static abstract class LongBinaryDocValues extends BinaryDocValues {
+    @Override
+    public final BytesRef get(int docID) {
+      return get((long)docID);
+    }
+
+    abstract BytesRef get(long id);
+  }
+}
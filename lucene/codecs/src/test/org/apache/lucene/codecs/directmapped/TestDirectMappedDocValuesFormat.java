@@ -0,0 +1,90 @@
+package org.apache.lucene.codecs.directmapped;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.BaseDocValuesFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.TestUtil;
+
+/**
+ * Tests DirectMappedDocValuesFormat
+ */
+public class TestDirectMappedDocValuesFormat extends BaseDocValuesFormatTestCase {
+  private final Codec codec = TestUtil.alwaysDocValuesFormat(new DirectMappedDocValuesFormat());
+
+  @Override
+  protected Codec getCodec() {
+    return codec;
+  }
+
+  public void testSparseNumeric() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setCodec(codec);
+    IndexWriter w = new IndexWriter(dir, conf);
+    final int numDocs = atLeast(20000);
+    final Long[] values = new Long[numDocs];
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      if (random().nextInt(500) == 0) {
+        values[i] = random().nextLong();
+        doc.add(new NumericDocValuesField("sparse", values[i]));
+      }
+      w.addDocument(doc);
+    }
+    // make sure the field exists
+    Document doc = new Document();
+    doc.add(new NumericDocValuesField("sparse", 42L));
+    w.addDocument(doc);
+    w.forceMerge(1);
+    DirectoryReader r = DirectoryReader.open(w, true);
+    w.close();
+    AtomicReader reader = getOnlySegmentReader(r);
+
+    // in order
+    NumericDocValues dv = reader.getNumericDocValues("sparse");
+    Bits docsWithField = reader.getDocsWithField("sparse");
+    for (int i = 0; i < numDocs; ++i) {
+      assertEquals(values[i] != null, docsWithField.get(i));
+      assertEquals(values[i] == null ? 0L : values[i].longValue(), dv.get(i));
+    }
+    assertTrue(docsWithField.get(numDocs));
+    assertEquals(42L, dv.get(numDocs));
+
+    // random access
+    dv = reader.getNumericDocValues("sparse");
+    docsWithField = reader.getDocsWithField("sparse");
+    for (int iter = 0; iter < 1000; ++iter) {
+      final int i = random().nextInt(numDocs);
+      assertEquals(values[i] != null, docsWithField.get(i));
+      assertEquals(values[i] == null ? 0L : values[i].longValue(), dv.get(i));
+    }
+    r.close();
+    dir.close();
+  }
+}
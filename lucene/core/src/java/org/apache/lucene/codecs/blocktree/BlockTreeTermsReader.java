@@ -73,6 +73,10 @@ public final class BlockTreeTermsReader extends FieldsProducer {
   // Open input to the main terms dict file (_X.tib)
   final IndexInput in;
 
+  // Open input to the terms index file (_X.tip), if the
+  // terms index is read off-heap
+  private final IndexInput indexIn;
+
   //private static final boolean DEBUG = BlockTreeTermsWriter.DEBUG;
 
   // Reads the terms dict entries, to gather state to
@@ -91,11 +95,27 @@ public final class BlockTreeTermsReader extends FieldsProducer {
   
   private final int version;
 
-  /** Sole constructor. */
+  /** Creates a reader which loads the terms index in heap
+   *  memory. */
   public BlockTreeTermsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo info,
                               PostingsReaderBase postingsReader, IOContext ioContext,
                               String segmentSuffix)
     throws IOException {
+    this(dir, fieldInfos, info, postingsReader, ioContext, segmentSuffix, false);
+  }
+
+  /** Creates a reader which loads the terms index in heap
+   *  memory, or, if <code>offHeapIndex</code> is true, keeps
+   *  the terms index file open and reads the terms index
+   *  from it, so that only the root arcs of the terms index
+   *  of each field are loaded in heap memory.  Reading the
+   *  terms index off-heap is mostly useful when the index is
+   *  memory-mapped, eg. by {@link org.apache.lucene.store.MMapDirectory},
+   *  for fields with many unique terms. */
+  public BlockTreeTermsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo info,
+                              PostingsReaderBase postingsReader, IOContext ioContext,
+                              String segmentSuffix, boolean offHeapIndex)
+    throws IOException {
     
     this.postingsReader = postingsReader;
 
@@ -184,12 +204,17 @@ public final class BlockTreeTermsReader extends FieldsProducer {
         final long indexStartFP = indexIn.readVLong();
         FieldReader previous = fields.put(fieldInfo.name,       
                                           new FieldReader(this, fieldInfo, numTerms, rootCode, sumTotalTermFreq, sumDocFreq, docCount,
-                                                          indexStartFP, longsSize, indexIn, minTerm, maxTerm));
+                                                          indexStartFP, longsSize, indexIn, offHeapIndex, minTerm, maxTerm));
         if (previous != null) {
           throw new CorruptIndexException("duplicate field: " + fieldInfo.name + " (resource=" + in + ")");
         }
       }
-      indexIn.close();
+      if (offHeapIndex) {
+        this.indexIn = indexIn;
+      } else {
+        indexIn.close();
+        this.indexIn = null;
+      }
 
       success = true;
     } finally {
@@ -251,7 +276,7 @@ public final class BlockTreeTermsReader extends FieldsProducer {
   @Override
   public void close() throws IOException {
     try {
-      IOUtils.close(in, postingsReader);
+      IOUtils.close(in, indexIn, postingsReader);
     } finally { 
       // Clear so refs to terms index is GCable even if
       // app hangs onto us:
@@ -20,6 +20,7 @@ package org.apache.lucene.codecs.compressing;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.BYTE_ARR;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.CODEC_SFX_DAT;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.CODEC_SFX_IDX;
+import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.LARGE_FIELD;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.NUMERIC_DOUBLE;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.NUMERIC_FLOAT;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.NUMERIC_INT;
@@ -30,6 +31,7 @@ import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.VERSION_BIG_CHUNKS;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.VERSION_CHECKSUM;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.VERSION_CURRENT;
+import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.VERSION_LARGE_FIELDS;
 import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.VERSION_START;
 import static org.apache.lucene.codecs.lucene40.Lucene40StoredFieldsWriter.FIELDS_EXTENSION;
 import static org.apache.lucene.codecs.lucene40.Lucene40StoredFieldsWriter.FIELDS_INDEX_EXTENSION;
@@ -78,7 +80,10 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
   private final int packedIntsVersion;
   private final CompressionMode compressionMode;
   private final Decompressor decompressor;
+  private final int dictionaryLength;
   private final BytesRef bytes;
+  private final BytesRef largeFieldBytes;
+  private int[] largeFieldLengths, compressedLargeFieldLengths;
   private final int numDocs;
   private boolean closed;
 
@@ -93,8 +98,11 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
     this.packedIntsVersion = reader.packedIntsVersion;
     this.compressionMode = reader.compressionMode;
     this.decompressor = reader.decompressor.clone();
+    this.dictionaryLength = reader.dictionaryLength;
     this.numDocs = reader.numDocs;
     this.bytes = new BytesRef(reader.bytes.bytes.length);
+    this.largeFieldBytes = new BytesRef();
+    this.largeFieldLengths = this.compressedLargeFieldLengths = new int[0];
     this.closed = false;
   }
 
@@ -151,8 +159,18 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
         chunkSize = -1;
       }
       packedIntsVersion = fieldsStream.readVInt();
-      decompressor = compressionMode.newDecompressor();
+      if (compressionMode instanceof DictionaryCompressionMode) {
+        final byte[] dictionary = new byte[fieldsStream.readVInt()];
+        fieldsStream.readBytes(dictionary, 0, dictionary.length);
+        dictionaryLength = dictionary.length;
+        decompressor = ((DictionaryCompressionMode) compressionMode).newDecompressor(dictionary);
+      } else {
+        dictionaryLength = 0;
+        decompressor = compressionMode.newDecompressor();
+      }
       this.bytes = new BytesRef();
+      this.largeFieldBytes = new BytesRef();
+      this.largeFieldLengths = this.compressedLargeFieldLengths = new int[0];
       
       if (version >= VERSION_CHECKSUM) {
         // NOTE: data file is too costly to verify checksum against all the bytes on open,
@@ -236,11 +254,64 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
       case NUMERIC_DOUBLE:
         in.readLong();
         break;
+      case LARGE_FIELD:
+        in.readVLong();
+        break;
       default:
         throw new AssertionError("Unknown type flag: " + Integer.toHexString(bits));
     }
   }
 
+  /**
+   * Read <code>length</code> ints which have been written like the lengths
+   * of documents.
+   */
+  private int[] readInts(DataInput in, int length, int[] values) throws IOException {
+    if (values.length < length) {
+      values = new int[ArrayUtil.oversize(length, 4)];
+    }
+    if (length == 1) {
+      values[0] = in.readVInt();
+    } else {
+      final int bitsRequired = in.readVInt();
+      if (bitsRequired == 0) {
+        Arrays.fill(values, 0, length, in.readVInt());
+      } else if (bitsRequired > 31) {
+        throw new CorruptIndexException("bitsRequired=" + bitsRequired + " (resource=" + in + ")");
+      } else {
+        final PackedInts.ReaderIterator it = PackedInts.getReaderIteratorNoHeader(in, PackedInts.Format.PACKED, packedIntsVersion, length, bitsRequired, 1);
+        for (int i = 0; i < length; ++i) {
+          values[i] = (int) it.next();
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Read a value which has been compressed separately from the documents of
+   * its chunk: only the values that the visitor needs are decompressed.
+   */
+  private void readLargeField(DataInput in, StoredFieldVisitor visitor, FieldInfo info, int numLargeFields, long largeFieldsStart) throws IOException {
+    final long indexAndBits = in.readVLong();
+    final int index = (int) (indexAndBits >>> TYPE_BITS);
+    if (index >= numLargeFields) {
+      throw new CorruptIndexException("Large field index=" + index + ", numLargeFields=" + numLargeFields + " (resource=" + fieldsStream + ")");
+    }
+    long start = largeFieldsStart;
+    for (int i = 0; i < index; ++i) {
+      start += compressedLargeFieldLengths[i];
+    }
+    final int length = largeFieldLengths[index];
+    final BytesRef bytes = length <= BUFFER_REUSE_THRESHOLD ? this.largeFieldBytes : new BytesRef();
+    // the document may be read lazily from fieldsStream
+    final long pointer = fieldsStream.getFilePointer();
+    fieldsStream.seek(start);
+    decompressor.decompress(fieldsStream, length, 0, length, bytes);
+    fieldsStream.seek(pointer);
+    readField(new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length), visitor, info, (int) (indexAndBits & TYPE_MASK));
+  }
+
   @Override
   public void visitDocument(int docID, StoredFieldVisitor visitor)
       throws IOException {
@@ -306,6 +377,23 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
       return;
     }
 
+    int numLargeFields = 0;
+    long largeFieldsStart = -1;
+    if (version >= VERSION_LARGE_FIELDS) {
+      numLargeFields = fieldsStream.readVInt();
+      if (numLargeFields > 0) {
+        largeFieldLengths = readInts(fieldsStream, numLargeFields, largeFieldLengths);
+        compressedLargeFieldLengths = readInts(fieldsStream, numLargeFields, compressedLargeFieldLengths);
+        largeFieldsStart = fieldsStream.getFilePointer();
+        long compressedLength = 0;
+        for (int i = 0; i < numLargeFields; ++i) {
+          compressedLength += compressedLargeFieldLengths[i];
+        }
+        // large values are only decompressed if needed
+        fieldsStream.seek(largeFieldsStart + compressedLength);
+      }
+    }
+
     final DataInput documentInput;
     if (version >= VERSION_BIG_CHUNKS && totalLength >= 2 * chunkSize) {
       assert chunkSize > 0;
@@ -362,11 +450,15 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
       final FieldInfo fieldInfo = fieldInfos.fieldInfo(fieldNumber);
 
       final int bits = (int) (infoAndBits & TYPE_MASK);
-      assert bits <= NUMERIC_DOUBLE: "bits=" + Integer.toHexString(bits);
+      assert bits <= LARGE_FIELD: "bits=" + Integer.toHexString(bits);
 
       switch(visitor.needsField(fieldInfo)) {
         case YES:
-          readField(documentInput, visitor, fieldInfo, bits);
+          if (bits == LARGE_FIELD) {
+            readLargeField(documentInput, visitor, fieldInfo, numLargeFields, largeFieldsStart);
+          } else {
+            readField(documentInput, visitor, fieldInfo, bits);
+          }
           break;
         case NO:
           skipField(documentInput, bits);
@@ -409,6 +501,8 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
     int chunkDocs;
     int[] numStoredFields;
     int[] lengths;
+    int numLargeFields;
+    int[] largeFieldLengths;
 
     private ChunkIterator(int startDocId) throws IOException {
       this.docBase = -1;
@@ -416,6 +510,7 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
       spare = new BytesRef();
       numStoredFields = new int[1];
       lengths = new int[1];
+      largeFieldLengths = new int[0];
 
       IndexInput in = CompressingStoredFieldsReader.this.fieldsStream;
       in.seek(0);
@@ -486,6 +581,22 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
           }
         }
       }
+
+      numLargeFields = 0;
+      if (version >= VERSION_LARGE_FIELDS) {
+        numLargeFields = fieldsStream.readVInt();
+        if (numLargeFields > 0) {
+          // skip large values, documents which reference them can't be copied as-is:
+          // read original lengths, then compressed lengths
+          largeFieldLengths = readInts(fieldsStream, numLargeFields, largeFieldLengths);
+          largeFieldLengths = readInts(fieldsStream, numLargeFields, largeFieldLengths);
+          long compressedLength = 0;
+          for (int i = 0; i < numLargeFields; ++i) {
+            compressedLength += largeFieldLengths[i];
+          }
+          fieldsStream.seek(fieldsStream.getFilePointer() + compressedLength);
+        }
+      }
     }
 
     /**
@@ -526,7 +637,7 @@ public final class CompressingStoredFieldsReader extends StoredFieldsReader {
 
   @Override
   public long ramBytesUsed() {
-    return indexReader.ramBytesUsed();
+    return indexReader.ramBytesUsed() + dictionaryLength;
   }
 
   @Override
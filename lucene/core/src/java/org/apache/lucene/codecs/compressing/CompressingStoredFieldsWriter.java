@@ -27,6 +27,7 @@ import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.StoredFieldsReader;
 import org.apache.lucene.codecs.StoredFieldsWriter;
 import org.apache.lucene.codecs.compressing.CompressingStoredFieldsReader.ChunkIterator;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.FieldInfo;
@@ -57,14 +58,20 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   // hard limit on the maximum number of documents per chunk
   static final int MAX_DOCUMENTS_PER_CHUNK = 128;
 
+  // string and binary values which are at least max(MIN_LARGE_FIELD_LENGTH, chunkSize / 8)
+  // bytes long are compressed separately from the documents of the chunk so that
+  // reading other fields doesn't require decompressing them
+  static final int MIN_LARGE_FIELD_LENGTH = 1024;
+
   static final int         STRING = 0x00;
   static final int       BYTE_ARR = 0x01;
   static final int    NUMERIC_INT = 0x02;
   static final int  NUMERIC_FLOAT = 0x03;
   static final int   NUMERIC_LONG = 0x04;
   static final int NUMERIC_DOUBLE = 0x05;
+  static final int    LARGE_FIELD = 0x06;
 
-  static final int TYPE_BITS = PackedInts.bitsRequired(NUMERIC_DOUBLE);
+  static final int TYPE_BITS = PackedInts.bitsRequired(LARGE_FIELD);
   static final int TYPE_MASK = (int) PackedInts.maxValue(TYPE_BITS);
 
   static final String CODEC_SFX_IDX = "Index";
@@ -72,7 +79,8 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   static final int VERSION_START = 0;
   static final int VERSION_BIG_CHUNKS = 1;
   static final int VERSION_CHECKSUM = 2;
-  static final int VERSION_CURRENT = VERSION_CHECKSUM;
+  static final int VERSION_LARGE_FIELDS = 3;
+  static final int VERSION_CURRENT = VERSION_LARGE_FIELDS;
 
   private final Directory directory;
   private final String segment;
@@ -81,8 +89,9 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private IndexOutput fieldsStream;
 
   private final CompressionMode compressionMode;
-  private final Compressor compressor;
+  private Compressor compressor; // null until the dictionary is written if the compression mode uses one
   private final int chunkSize;
+  private final int largeFieldLength;
 
   private final GrowableByteArrayDataOutput bufferedDocs;
   private int[] numStoredFields; // number of stored fields
@@ -90,6 +99,12 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
   private int docBase; // doc ID at the beginning of the chunk
   private int numBufferedDocs; // docBase + numBufferedDocs == current doc ID
 
+  private final GrowableByteArrayDataOutput largeFields; // large values of the chunk
+  private final GrowableByteArrayDataOutput compressedLargeFields;
+  private int[] largeFieldEndOffsets; // end offsets in largeFields
+  private int[] compressedLargeFieldLengths;
+  private int numLargeFields;
+
   /** Sole constructor. */
   public CompressingStoredFieldsWriter(Directory directory, SegmentInfo si, String segmentSuffix, IOContext context,
       String formatName, CompressionMode compressionMode, int chunkSize) throws IOException {
@@ -98,13 +113,18 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     this.segment = si.name;
     this.segmentSuffix = segmentSuffix;
     this.compressionMode = compressionMode;
-    this.compressor = compressionMode.newCompressor();
+    this.compressor = compressionMode instanceof DictionaryCompressionMode ? null : compressionMode.newCompressor();
     this.chunkSize = chunkSize;
+    this.largeFieldLength = Math.max(MIN_LARGE_FIELD_LENGTH, chunkSize / 8);
     this.docBase = 0;
     this.bufferedDocs = new GrowableByteArrayDataOutput(chunkSize);
     this.numStoredFields = new int[16];
     this.endOffsets = new int[16];
     this.numBufferedDocs = 0;
+    this.largeFields = new GrowableByteArrayDataOutput(largeFieldLength);
+    this.compressedLargeFields = new GrowableByteArrayDataOutput(largeFieldLength);
+    this.largeFieldEndOffsets = new int[4];
+    this.compressedLargeFieldLengths = new int[4];
 
     boolean success = false;
     IndexOutput indexStream = directory.createOutput(IndexFileNames.segmentFileName(segment, segmentSuffix, FIELDS_INDEX_EXTENSION), 
@@ -212,10 +232,47 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
 
   private boolean triggerFlush() {
     return bufferedDocs.length >= chunkSize || // chunks of at least chunkSize bytes
-        numBufferedDocs >= MAX_DOCUMENTS_PER_CHUNK;
+        numBufferedDocs >= MAX_DOCUMENTS_PER_CHUNK ||
+        largeFields.length >= 8 * chunkSize; // don't buffer too many large values
+  }
+
+  private void writeLargeFields() throws IOException {
+    fieldsStream.writeVInt(numLargeFields);
+    if (numLargeFields == 0) {
+      return;
+    }
+    if (compressedLargeFieldLengths.length < numLargeFields) {
+      compressedLargeFieldLengths = new int[largeFieldEndOffsets.length];
+    }
+    // compress every value separately so that they can be read independently
+    compressedLargeFields.length = 0;
+    for (int i = 0; i < numLargeFields; ++i) {
+      final int start = i == 0 ? 0 : largeFieldEndOffsets[i - 1];
+      final int compressedStart = compressedLargeFields.length;
+      compressor.compress(largeFields.bytes, start, largeFieldEndOffsets[i] - start, compressedLargeFields);
+      compressedLargeFieldLengths[i] = compressedLargeFields.length - compressedStart;
+    }
+    // transform end offsets into lengths
+    final int[] lengths = largeFieldEndOffsets;
+    for (int i = numLargeFields - 1; i > 0; --i) {
+      lengths[i] = largeFieldEndOffsets[i] - largeFieldEndOffsets[i - 1];
+    }
+    saveInts(lengths, numLargeFields, fieldsStream);
+    saveInts(compressedLargeFieldLengths, numLargeFields, fieldsStream);
+    fieldsStream.writeBytes(compressedLargeFields.bytes, compressedLargeFields.length);
+  }
+
+  private void writeDictionary(byte[] dictionary) throws IOException {
+    fieldsStream.writeVInt(dictionary.length);
+    fieldsStream.writeBytes(dictionary, dictionary.length);
+    compressor = ((DictionaryCompressionMode) compressionMode).newCompressor(dictionary);
   }
 
   private void flush() throws IOException {
+    if (compressor == null) {
+      // the dictionary is trained on the first chunk and written before it
+      writeDictionary(((DictionaryCompressionMode) compressionMode).trainDictionary(bufferedDocs.bytes, 0, bufferedDocs.length));
+    }
     indexWriter.writeIndex(numBufferedDocs, fieldsStream.getFilePointer());
 
     // transform end offsets into lengths
@@ -226,6 +283,9 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     }
     writeHeader(docBase, numBufferedDocs, numStoredFields, lengths);
 
+    // compress large values of the chunk, they are read lazily
+    writeLargeFields();
+
     // compress stored fields to fieldsStream
     if (bufferedDocs.length >= 2 * chunkSize) {
       // big chunk, slice it
@@ -240,6 +300,8 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     docBase += numBufferedDocs;
     numBufferedDocs = 0;
     bufferedDocs.length = 0;
+    numLargeFields = 0;
+    largeFields.length = 0;
   }
 
   @Override
@@ -281,6 +343,24 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
       }
     }
 
+    if ((bytes != null && bytes.length >= largeFieldLength)
+        || (string != null && string.length() >= largeFieldLength)) {
+      // write a reference to the value, which is compressed separately
+      bufferedDocs.writeVLong((((long) info.number) << TYPE_BITS) | LARGE_FIELD);
+      bufferedDocs.writeVLong((((long) numLargeFields) << TYPE_BITS) | bits);
+      if (bytes != null) {
+        largeFields.writeVInt(bytes.length);
+        largeFields.writeBytes(bytes.bytes, bytes.offset, bytes.length);
+      } else {
+        largeFields.writeString(string);
+      }
+      if (numLargeFields == largeFieldEndOffsets.length) {
+        largeFieldEndOffsets = Arrays.copyOf(largeFieldEndOffsets, ArrayUtil.oversize(numLargeFields + 1, 4));
+      }
+      largeFieldEndOffsets[numLargeFields++] = largeFields.length;
+      return;
+    }
+
     final long infoAndBits = (((long) info.number) << TYPE_BITS) | bits;
     bufferedDocs.writeVLong(infoAndBits);
 
@@ -319,6 +399,10 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
     } else {
       assert bufferedDocs.length == 0;
     }
+    if (compressor == null) {
+      // no chunks, but readers still expect a dictionary
+      writeDictionary(new byte[0]);
+    }
     if (docBase != numDocs) {
       throw new RuntimeException("Wrote " + docBase + " docs, finish called with numDocs=" + numDocs);
     }
@@ -362,10 +446,26 @@ public final class CompressingStoredFieldsWriter extends StoredFieldsWriter {
         if (docID < maxDoc) {
           // not all docs were deleted
           final ChunkIterator it = matchingFieldsReader.chunkIterator(docID);
+          StoredFieldsReader docReader = null;
           int[] startOffsets = new int[0];
           do {
             // go to the next chunk that contains docID
             it.next(docID);
+            if (it.numLargeFields > 0) {
+              // documents reference values which are stored out of the
+              // documents of the chunk: copy them one by one
+              if (docReader == null) {
+                docReader = matchingFieldsReader.clone();
+              }
+              for (; docID < it.docBase + it.chunkDocs; docID = nextLiveDoc(docID + 1, liveDocs, maxDoc)) {
+                final DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+                docReader.visitDocument(docID, visitor);
+                addDocument(visitor.getDocument(), mergeState.fieldInfos);
+                ++docCount;
+                mergeState.checkAbort.work(300);
+              }
+              continue;
+            }
             // transform lengths into offsets
             if (startOffsets.length < it.chunkDocs) {
               startOffsets = new int[ArrayUtil.oversize(it.chunkDocs, 4)];
@@ -774,10 +774,20 @@ public final class CompressingTermVectorsWriter extends TermVectorsWriter {
             final int docBase = vectorsStream.readVInt();
             final int chunkDocs = vectorsStream.readVInt();
             assert docBase + chunkDocs <= matchingSegmentReader.maxDoc();
-            if (docBase + chunkDocs < matchingSegmentReader.maxDoc()
+            final boolean lastChunk = docBase + chunkDocs == matchingSegmentReader.maxDoc();
+            final long chunkEnd;
+            if (lastChunk) {
+              // its data ends where the footer starts
+              chunkEnd = vectorsStream.length() - CodecUtil.footerLength();
+            } else {
+              chunkEnd = index.getStartPointer(docBase + chunkDocs);
+            }
+            final long chunkLength = chunkEnd - vectorsStream.getFilePointer();
+            // the last chunk is usually incomplete, only copy it as-is if it
+            // is full, otherwise re-encode it so that it gets merged with the
+            // docs of the next segment instead of adding a small chunk
+            if ((!lastChunk || chunkDocs >= MAX_DOCUMENTS_PER_CHUNK || chunkLength >= chunkSize)
                 && nextDeletedDoc(docBase, liveDocs, docBase + chunkDocs) == docBase + chunkDocs) {
-              final long chunkEnd = index.getStartPointer(docBase + chunkDocs);
-              final long chunkLength = chunkEnd - vectorsStream.getFilePointer();
               indexWriter.writeIndex(chunkDocs, this.vectorsStream.getFilePointer());
               this.vectorsStream.writeVInt(docCount);
               this.vectorsStream.writeVInt(chunkDocs);
@@ -787,6 +797,7 @@ public final class CompressingTermVectorsWriter extends TermVectorsWriter {
               mergeState.checkAbort.work(300 * chunkDocs);
               i = nextLiveDoc(docBase + chunkDocs, liveDocs, maxDoc);
             } else {
+              // re-encode the live docs of the chunk
               for (; i < docBase + chunkDocs; i = nextLiveDoc(i + 1, liveDocs, maxDoc)) {
                 final Fields vectors = reader.getTermVectors(i);
                 addAllDocVectors(vectors, mergeState);
@@ -0,0 +1,50 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A {@link CompressionMode} which compresses all chunks of a segment with a
+ * shared dictionary. {@link CompressingStoredFieldsFormat} trains the
+ * dictionary on the first chunk of the segment and writes it before the
+ * first chunk; other formats use {@link #newCompressor()} and
+ * {@link #newDecompressor()}, which don't use a dictionary.
+ * @lucene.experimental
+ */
+public abstract class DictionaryCompressionMode extends CompressionMode {
+
+  /** Sole constructor. */
+  protected DictionaryCompressionMode() {}
+
+  /**
+   * Build a dictionary for data which is similar to
+   * <code>bytes[off:off+len]</code>. Implementations may only look at a
+   * prefix of the data in order to bound the cost of training.
+   */
+  public abstract byte[] trainDictionary(byte[] bytes, int off, int len);
+
+  /**
+   * Create a new {@link Compressor} instance which uses the given dictionary.
+   */
+  public abstract Compressor newCompressor(byte[] dictionary);
+
+  /**
+   * Create a new {@link Decompressor} instance which uses the given dictionary.
+   */
+  public abstract Decompressor newDecompressor(byte[] dictionary);
+
+}
@@ -0,0 +1,118 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Builds compression dictionaries out of a sample of the data to compress.
+ * <p>
+ * The sample is split into as many epochs as there are segments in the
+ * dictionary and the segment of each epoch which contains the most frequent
+ * n-grams of the sample is selected. The n-grams of selected segments are not
+ * counted anymore so that segments don't repeat each other. Segments are
+ * then sorted by increasing score so that the most useful ones are at the end
+ * of the dictionary, where they are the cheapest to reference.
+ */
+final class DictionaryTrainer {
+
+  /** Size of the segments of the dictionary. */
+  static final int SEGMENT_LENGTH = 32;
+  /** Length of the n-grams whose frequencies are counted. */
+  static final int GRAM_LENGTH = 6;
+  /** Minimum length of an epoch, as a multiple of the segment length. */
+  static final int MIN_EPOCH_SEGMENTS = 4;
+  /** Maximum number of bytes of the sample which are looked at. */
+  static final int MAX_SAMPLE_LENGTH = 64 * 1024;
+
+  private static final int HASH_LOG = 16;
+
+  private DictionaryTrainer() {}
+
+  private static int hash(byte[] bytes, int off) {
+    long gram = 0;
+    for (int i = 0; i < GRAM_LENGTH; ++i) {
+      gram = (gram << 8) | (bytes[off + i] & 0xFF);
+    }
+    return (int) ((gram * 0x9E3779B97F4A7C15L) >>> (64 - HASH_LOG));
+  }
+
+  /**
+   * Return a dictionary of at most <code>maxLength</code> bytes for data
+   * which is similar to <code>bytes[off:off+len]</code>. Only the first
+   * {@link #MAX_SAMPLE_LENGTH} bytes are used, so that training on a large
+   * sample doesn't allocate memory in proportion to its length.
+   */
+  static byte[] train(byte[] bytes, int off, int len, int maxLength) {
+    len = Math.min(len, MAX_SAMPLE_LENGTH);
+    final int numGrams = len - GRAM_LENGTH + 1;
+    final int numSegments = Math.min(maxLength / SEGMENT_LENGTH, len / (MIN_EPOCH_SEGMENTS * SEGMENT_LENGTH));
+    if (numGrams <= 0 || numSegments == 0) {
+      return new byte[0];
+    }
+
+    // count the frequencies of n-grams
+    final int[] hashes = new int[numGrams];
+    final int[] counts = new int[1 << HASH_LOG];
+    for (int i = 0; i < numGrams; ++i) {
+      hashes[i] = hash(bytes, off + i);
+      counts[hashes[i]]++;
+    }
+
+    // select the best segment of every epoch
+    final int gramsPerSegment = SEGMENT_LENGTH - GRAM_LENGTH + 1;
+    final int epochLength = len / numSegments;
+    final long[] segments = new long[numSegments]; // score << 32 | start
+    int numSelected = 0;
+    for (int epoch = 0; epoch < numSegments; ++epoch) {
+      final int epochStart = epoch * epochLength;
+      final int epochEnd = Math.min(epochStart + epochLength, len) - SEGMENT_LENGTH;
+      // sliding sum of the counts of the n-grams of the segment
+      long score = 0;
+      for (int i = 0; i < gramsPerSegment; ++i) {
+        score += counts[hashes[epochStart + i]];
+      }
+      long bestScore = score;
+      int bestStart = epochStart;
+      for (int start = epochStart + 1; start <= epochEnd; ++start) {
+        score += counts[hashes[start + gramsPerSegment - 1]] - counts[hashes[start - 1]];
+        if (score > bestScore) {
+          bestScore = score;
+          bestStart = start;
+        }
+      }
+      // n-grams which occur once are not worth referencing
+      assert bestScore <= (long) gramsPerSegment * numGrams; // fits in 32 bits
+      if (bestScore > gramsPerSegment) {
+        segments[numSelected++] = (bestScore << 32) | bestStart;
+        for (int i = 0; i < gramsPerSegment; ++i) {
+          counts[hashes[bestStart + i]] = 0;
+        }
+      }
+    }
+
+    Arrays.sort(segments, 0, numSelected);
+    final byte[] dictionary = new byte[numSelected * SEGMENT_LENGTH];
+    for (int i = 0; i < numSelected; ++i) {
+      final int start = (int) segments[i];
+      System.arraycopy(bytes, off + start, dictionary, i * SEGMENT_LENGTH, SEGMENT_LENGTH);
+    }
+    return dictionary;
+  }
+
+}
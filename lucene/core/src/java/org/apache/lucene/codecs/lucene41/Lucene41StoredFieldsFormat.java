@@ -56,7 +56,7 @@ import org.apache.lucene.util.packed.PackedInts;
  * <li>Header --&gt; {@link CodecUtil#writeHeader CodecHeader}</li>
  * <li>PackedIntsVersion --&gt; {@link PackedInts#VERSION_CURRENT} as a {@link DataOutput#writeVInt VInt}</li>
  * <li>ChunkCount is not known in advance and is the number of chunks necessary to store all document of the segment</li>
- * <li>Chunk --&gt; DocBase, ChunkDocs, DocFieldCounts, DocLengths, &lt;CompressedDocs&gt;</li>
+ * <li>Chunk --&gt; DocBase, ChunkDocs, DocFieldCounts, DocLengths, LargeFields, &lt;CompressedDocs&gt;</li>
  * <li>DocBase --&gt; the ID of the first document of the chunk as a {@link DataOutput#writeVInt VInt}</li>
  * <li>ChunkDocs --&gt; the number of documents in the chunk as a {@link DataOutput#writeVInt VInt}</li>
  * <li>DocFieldCounts --&gt; the number of stored fields of every document in the chunk, encoded as followed:<ul>
@@ -67,6 +67,11 @@ import org.apache.lucene.util.packed.PackedInts;
  *   </ul></li>
  * </ul></li>
  * <li>DocLengths --&gt; the lengths of all documents in the chunk, encoded with the same method as DocFieldCounts</li>
+ * <li>LargeFields --&gt; LargeFieldCount, LargeFieldLengths, CompressedLargeFieldLengths, &lt;CompressedLargeField&gt;<sup>LargeFieldCount</sup></li>
+ * <li>LargeFieldCount --&gt; the number of large values in the chunk as a {@link DataOutput#writeVInt VInt}, LargeFieldLengths and the following entries are only present if it is greater than 0</li>
+ * <li>LargeFieldLengths --&gt; the lengths of all large values of the chunk before compression, encoded with the same method as DocFieldCounts</li>
+ * <li>CompressedLargeFieldLengths --&gt; the lengths of all compressed large values of the chunk, encoded with the same method as DocFieldCounts</li>
+ * <li>CompressedLargeField --&gt; a compressed representation of a String or BinaryValue using the LZ4 compression format</li>
  * <li>CompressedDocs --&gt; a compressed representation of &lt;Docs&gt; using the LZ4 compression format</li>
  * <li>Docs --&gt; &lt;Doc&gt;<sup>ChunkDocs</sup></li>
  * <li>Doc --&gt; &lt;FieldNumAndType, Value&gt;<sup>DocFieldCount</sup></li>
@@ -78,11 +83,13 @@ import org.apache.lucene.util.packed.PackedInts;
  *   <li>3: Value is Float</li>
  *   <li>4: Value is Long</li>
  *   <li>5: Value is Double</li>
- *   <li>6, 7: unused</li>
+ *   <li>6: Value is LargeFieldRef</li>
+ *   <li>7: unused</li>
  * </ul></li>
  * <li>FieldNum --&gt; an ID of the field</li>
- * <li>Value --&gt; {@link DataOutput#writeString(String) String} | BinaryValue | Int | Float | Long | Double depending on Type</li>
+ * <li>Value --&gt; {@link DataOutput#writeString(String) String} | BinaryValue | Int | Float | Long | Double | LargeFieldRef depending on Type</li>
  * <li>BinaryValue --&gt; ValueLength &lt;Byte&gt;<sup>ValueLength</sup></li>
+ * <li>LargeFieldRef --&gt; a {@link DataOutput#writeVLong VLong}, whose 3 last bits are the Type of the value (String or BinaryValue) and other bits are the index of the value in the large values of the chunk</li>
  * </ul>
  * <p>Notes</p>
  * <ul>
@@ -94,6 +101,12 @@ import org.apache.lucene.util.packed.PackedInts;
  * blocks of 16KB. This allows {@link StoredFieldVisitor}s which are only
  * interested in the first fields of a document to not have to decompress 10MB
  * of data if the document is 10MB, but only 16KB.</li>
+ * <li>String and binary values of 2KB or more are not stored in the documents
+ * of the chunk: they are compressed separately and documents only store a
+ * reference to them. This allows {@link StoredFieldVisitor}s which are not
+ * interested in these values to not decompress them at all, for instance
+ * when only the identifier and the title of documents that have large
+ * bodies are loaded.</li>
  * <li>Given that the original lengths are written in the metadata of the chunk,
  * the decompressor can leverage this information to stop decoding as soon as
  * enough data has been decompressed.</li>
@@ -23,6 +23,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -34,6 +37,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 
 /* Tracks the stream of {@link BufferedDeletes}.
@@ -49,7 +53,10 @@ import org.apache.lucene.util.InfoStream;
  * Each packet is assigned a generation, and each flushed or
  * merged segment is also assigned a generation, so we can
  * track which BufferedDeletes packets to apply to any given
- * segment. */
+ * segment.
+ *
+ * If an executor is provided, the segments that packets must be
+ * applied to are resolved concurrently. */
 
 class BufferedUpdatesStream implements Accountable {
 
@@ -61,15 +68,19 @@ class BufferedUpdatesStream implements Accountable {
   // will be correct:
   private long nextGen = 1;
 
-  // used only by assert
-  private Term lastDeleteTerm;
-
   private final InfoStream infoStream;
+  private final ExecutorService executor;
   private final AtomicLong bytesUsed = new AtomicLong();
   private final AtomicInteger numTerms = new AtomicInteger();
+  private volatile boolean resolvingConcurrently;
 
   public BufferedUpdatesStream(InfoStream infoStream) {
+    this(infoStream, null);
+  }
+
+  public BufferedUpdatesStream(InfoStream infoStream, ExecutorService executor) {
     this.infoStream = infoStream;
+    this.executor = executor;
   }
 
   // Appends a new packet of buffered deletes to the stream,
@@ -143,9 +154,57 @@ class BufferedUpdatesStream implements Accountable {
     }
   };
   
+  /** Deletes and doc values updates which must be applied to a single
+   *  segment. They are resolved against the segment's reader by
+   *  {@link #resolve}, which only locks the segment's
+   *  {@link ReadersAndUpdates}, so that several segments can be resolved
+   *  concurrently. */
+  private static final class SegmentUpdates {
+    final SegmentCommitInfo info;
+    final ReadersAndUpdates rld;
+    // updates coalesced from the packets which are newer than the segment, may be null
+    final CoalescedUpdates coalesced;
+    // the segment private packet, if it has one
+    final FrozenBufferedUpdates packet;
+    final DocValuesFieldUpdates.Container dvUpdates = new DocValuesFieldUpdates.Container();
+    long delCount;
+    boolean resolved;
+
+    SegmentUpdates(SegmentCommitInfo info, ReadersAndUpdates rld, CoalescedUpdates coalesced, FrozenBufferedUpdates packet) {
+      this.info = info;
+      this.rld = rld;
+      this.coalesced = coalesced;
+      this.packet = packet;
+    }
+
+    void resolve() throws IOException {
+      assert !resolved;
+      final SegmentReader reader = rld.getReader(IOContext.READ);
+      try {
+        if (coalesced != null) {
+          delCount += applyTermDeletes(coalesced.termsIterable(), rld, reader);
+          delCount += applyQueryDeletes(coalesced.queriesIterable(), rld, reader);
+          applyDocValuesUpdates(coalesced.numericDVUpdates, rld, reader, dvUpdates);
+          applyDocValuesUpdates(coalesced.binaryDVUpdates, rld, reader, dvUpdates);
+        }
+        if (packet != null) {
+          // Don't delete by Term here; DocumentsWriterPerThread
+          // already did that on flush:
+          delCount += applyQueryDeletes(packet.queriesIterable(), rld, reader);
+          applyDocValuesUpdates(Arrays.asList(packet.numericDVUpdates), rld, reader, dvUpdates);
+          applyDocValuesUpdates(Arrays.asList(packet.binaryDVUpdates), rld, reader, dvUpdates);
+        }
+      } finally {
+        rld.release(reader);
+      }
+      resolved = true;
+    }
+  }
+
   /** Resolves the buffered deleted Term/Query/docIDs, into
    *  actual deleted docIDs in the liveDocs MutableBits for
-   *  each SegmentReader. */
+   *  each SegmentReader. If an executor was provided, the
+   *  segments are resolved concurrently. */
   public synchronized ApplyDeletesResult applyDeletesAndUpdates(IndexWriter.ReaderPool readerPool, List<SegmentCommitInfo> infos) throws IOException {
     final long t0 = System.currentTimeMillis();
 
@@ -173,152 +232,179 @@ class BufferedUpdatesStream implements Accountable {
     Collections.sort(infos2, sortSegInfoByDelGen);
 
     CoalescedUpdates coalescedDeletes = null;
+    // copy of coalescedDeletes which is shared by segments until the next
+    // packet is coalesced, since segments may be resolved concurrently
+    CoalescedUpdates coalescedCopy = null;
     boolean anyNewDeletes = false;
 
     int infosIDX = infos2.size()-1;
     int delIDX = updates.size()-1;
 
     List<SegmentCommitInfo> allDeleted = null;
+    final List<SegmentUpdates> segUpdates = new ArrayList<>();
+
+    boolean success = false;
+    try {
+      // First figure out which packets must be applied to which segments
+      while (infosIDX >= 0) {
+        //System.out.println("BD: cycle delIDX=" + delIDX + " infoIDX=" + infosIDX);
+
+        final FrozenBufferedUpdates packet = delIDX >= 0 ? updates.get(delIDX) : null;
+        final SegmentCommitInfo info = infos2.get(infosIDX);
+        final long segGen = info.getBufferedDeletesGen();
+
+        if (packet != null && segGen < packet.delGen()) {
+//          System.out.println("  coalesce");
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedUpdates();
+          }
+          if (!packet.isSegmentPrivate) {
+            /*
+             * Only coalesce if we are NOT on a segment private del packet: the segment private del packet
+             * must only applied to segments with the same delGen.  Yet, if a segment is already deleted
+             * from the SI since it had no more documents remaining after some del packets younger than
+             * its segPrivate packet (higher delGen) have been applied, the segPrivate packet has not been
+             * removed.
+             */
+            coalescedDeletes.update(packet);
+            coalescedCopy = null;
+          }
+
+          delIDX--;
+        } else if (packet != null && segGen == packet.delGen()) {
+          assert packet.isSegmentPrivate : "Packet and Segments deletegen can only match on a segment private del packet gen=" + segGen;
+          //System.out.println("  eq");
 
-    while (infosIDX >= 0) {
-      //System.out.println("BD: cycle delIDX=" + delIDX + " infoIDX=" + infosIDX);
+          // Lock order: IW -> BD -> RP
+          assert readerPool.infoIsLive(info);
+          if (coalescedDeletes != null && coalescedCopy == null) {
+            coalescedCopy = coalescedDeletes.copy();
+          }
+          segUpdates.add(new SegmentUpdates(info, readerPool.get(info, true), coalescedCopy, packet));
 
-      final FrozenBufferedUpdates packet = delIDX >= 0 ? updates.get(delIDX) : null;
-      final SegmentCommitInfo info = infos2.get(infosIDX);
-      final long segGen = info.getBufferedDeletesGen();
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedUpdates();
+          }
 
-      if (packet != null && segGen < packet.delGen()) {
-//        System.out.println("  coalesce");
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedUpdates();
-        }
-        if (!packet.isSegmentPrivate) {
           /*
-           * Only coalesce if we are NOT on a segment private del packet: the segment private del packet
-           * must only applied to segments with the same delGen.  Yet, if a segment is already deleted
-           * from the SI since it had no more documents remaining after some del packets younger than
-           * its segPrivate packet (higher delGen) have been applied, the segPrivate packet has not been
-           * removed.
+           * Since we are on a segment private del packet we must not
+           * update the coalescedDeletes here! We can simply advance to the
+           * next packet and seginfo.
            */
-          coalescedDeletes.update(packet);
-        }
+          delIDX--;
+          infosIDX--;
+
+        } else {
+          //System.out.println("  gt");
 
-        delIDX--;
-      } else if (packet != null && segGen == packet.delGen()) {
-        assert packet.isSegmentPrivate : "Packet and Segments deletegen can only match on a segment private del packet gen=" + segGen;
-        //System.out.println("  eq");
-
-        // Lock order: IW -> BD -> RP
-        assert readerPool.infoIsLive(info);
-        final ReadersAndUpdates rld = readerPool.get(info, true);
-        final SegmentReader reader = rld.getReader(IOContext.READ);
-        int delCount = 0;
-        final boolean segAllDeletes;
-        try {
-          final DocValuesFieldUpdates.Container dvUpdates = new DocValuesFieldUpdates.Container();
           if (coalescedDeletes != null) {
-            //System.out.println("    del coalesced");
-            delCount += applyTermDeletes(coalescedDeletes.termsIterable(), rld, reader);
-            delCount += applyQueryDeletes(coalescedDeletes.queriesIterable(), rld, reader);
-            applyDocValuesUpdates(coalescedDeletes.numericDVUpdates, rld, reader, dvUpdates);
-            applyDocValuesUpdates(coalescedDeletes.binaryDVUpdates, rld, reader, dvUpdates);
-          }
-          //System.out.println("    del exact");
-          // Don't delete by Term here; DocumentsWriterPerThread
-          // already did that on flush:
-          delCount += applyQueryDeletes(packet.queriesIterable(), rld, reader);
-          applyDocValuesUpdates(Arrays.asList(packet.numericDVUpdates), rld, reader, dvUpdates);
-          applyDocValuesUpdates(Arrays.asList(packet.binaryDVUpdates), rld, reader, dvUpdates);
-          if (dvUpdates.any()) {
-            rld.writeFieldUpdates(info.info.dir, dvUpdates);
+            // Lock order: IW -> BD -> RP
+            assert readerPool.infoIsLive(info);
+            if (coalescedCopy == null) {
+              coalescedCopy = coalescedDeletes.copy();
+            }
+            segUpdates.add(new SegmentUpdates(info, readerPool.get(info, true), coalescedCopy, null));
+          } else {
+            info.setBufferedDeletesGen(gen);
           }
-          final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
-          assert fullDelCount <= rld.info.info.getDocCount();
-          segAllDeletes = fullDelCount == rld.info.info.getDocCount();
-        } finally {
-          rld.release(reader);
-          readerPool.release(rld);
+
+          infosIDX--;
         }
-        anyNewDeletes |= delCount > 0;
+      }
+
+      if (executor != null && segUpdates.size() > 1) {
+        resolveConcurrently(segUpdates);
+      }
+
+      for (SegmentUpdates su : segUpdates) {
+        if (!su.resolved) {
+          su.resolve();
+        }
+        final ReadersAndUpdates rld = su.rld;
+        if (su.dvUpdates.any()) {
+          rld.writeFieldUpdates(su.info.info.dir, su.dvUpdates);
+        }
+        final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
+        assert fullDelCount <= rld.info.info.getDocCount();
+        final boolean segAllDeletes = fullDelCount == rld.info.info.getDocCount();
+        anyNewDeletes |= su.delCount > 0;
 
         if (segAllDeletes) {
           if (allDeleted == null) {
             allDeleted = new ArrayList<>();
           }
-          allDeleted.add(info);
+          allDeleted.add(su.info);
         }
 
         if (infoStream.isEnabled("BD")) {
-          infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " segDeletes=[" + packet + "]; coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
+          infoStream.message("BD", "seg=" + su.info + " segGen=" + su.info.getBufferedDeletesGen() + (su.packet == null ? "" : " segDeletes=[" + su.packet + "];") + " coalesced deletes=[" + (su.coalesced == null ? "null" : su.coalesced) + "] newDelCount=" + su.delCount + (segAllDeletes ? " 100% deleted" : ""));
         }
 
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedUpdates();
-        }
-        
-        /*
-         * Since we are on a segment private del packet we must not
-         * update the coalescedDeletes here! We can simply advance to the 
-         * next packet and seginfo.
-         */
-        delIDX--;
-        infosIDX--;
-        info.setBufferedDeletesGen(gen);
-
-      } else {
-        //System.out.println("  gt");
-
-        if (coalescedDeletes != null) {
-          // Lock order: IW -> BD -> RP
-          assert readerPool.infoIsLive(info);
-          final ReadersAndUpdates rld = readerPool.get(info, true);
-          final SegmentReader reader = rld.getReader(IOContext.READ);
-          int delCount = 0;
-          final boolean segAllDeletes;
-          try {
-            delCount += applyTermDeletes(coalescedDeletes.termsIterable(), rld, reader);
-            delCount += applyQueryDeletes(coalescedDeletes.queriesIterable(), rld, reader);
-            DocValuesFieldUpdates.Container dvUpdates = new DocValuesFieldUpdates.Container();
-            applyDocValuesUpdates(coalescedDeletes.numericDVUpdates, rld, reader, dvUpdates);
-            applyDocValuesUpdates(coalescedDeletes.binaryDVUpdates, rld, reader, dvUpdates);
-            if (dvUpdates.any()) {
-              rld.writeFieldUpdates(info.info.dir, dvUpdates);
-            }
-            final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
-            assert fullDelCount <= rld.info.info.getDocCount();
-            segAllDeletes = fullDelCount == rld.info.info.getDocCount();
-          } finally {
-            rld.release(reader);
-            readerPool.release(rld);
-          }
-          anyNewDeletes |= delCount > 0;
-
-          if (segAllDeletes) {
-            if (allDeleted == null) {
-              allDeleted = new ArrayList<>();
-            }
-            allDeleted.add(info);
-          }
-
-          if (infoStream.isEnabled("BD")) {
-            infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " coalesced deletes=[" + coalescedDeletes + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
+        su.info.setBufferedDeletesGen(gen);
+      }
+      success = true;
+    } finally {
+      Throwable th = null;
+      for (SegmentUpdates su : segUpdates) {
+        try {
+          readerPool.release(su.rld);
+        } catch (Throwable t) {
+          if (th == null) {
+            th = t;
           }
         }
-        info.setBufferedDeletesGen(gen);
-
-        infosIDX--;
+      }
+      if (success) {
+        IOUtils.reThrow(th);
       }
     }
 
     assert checkDeleteStats();
     if (infoStream.isEnabled("BD")) {
-      infoStream.message("BD", "applyDeletes took " + (System.currentTimeMillis()-t0) + " msec");
+      infoStream.message("BD", "applyDeletes took " + (System.currentTimeMillis()-t0) + " msec" + (executor != null && segUpdates.size() > 1 ? " (concurrently)" : ""));
     }
     // assert infos != segmentInfos || !any() : "infos=" + infos + " segmentInfos=" + segmentInfos + " any=" + any;
 
     return new ApplyDeletesResult(anyNewDeletes, gen, allDeleted);
   }
 
+  /* Resolves the given segments with tasks of the executor, and the first one
+   * on the calling thread. The calling thread holds the IndexWriter lock and
+   * waits for the tasks, which only lock the ReadersAndUpdates of their own
+   * segment; writing doc values updates is left to the calling thread since it
+   * must checkpoint the IndexWriter. */
+  private void resolveConcurrently(List<SegmentUpdates> segUpdates) throws IOException {
+    assert Thread.holdsLock(this);
+    final List<Future<?>> tasks = new ArrayList<>();
+    boolean success = false;
+    resolvingConcurrently = true;
+    try {
+      for (final SegmentUpdates su : segUpdates.subList(1, segUpdates.size())) {
+        tasks.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            su.resolve();
+            return null;
+          }
+        }));
+      }
+      segUpdates.get(0).resolve();
+      success = true;
+    } finally {
+      try {
+        DocumentsWriterPerThread.waitFor(tasks, success);
+      } finally {
+        resolvingConcurrently = false;
+      }
+    }
+  }
+
+  /** Returns true while segments are being resolved by tasks of the executor,
+   *  on behalf of a thread which holds the IndexWriter lock. */
+  boolean isResolvingConcurrently() {
+    return resolvingConcurrently;
+  }
+
   synchronized long getNextGen() {
     return nextGen++;
   }
@@ -375,7 +461,7 @@ class BufferedUpdatesStream implements Accountable {
   }
 
   // Delete by Term
-  private synchronized long applyTermDeletes(Iterable<Term> termsIter, ReadersAndUpdates rld, SegmentReader reader) throws IOException {
+  private static long applyTermDeletes(Iterable<Term> termsIter, ReadersAndUpdates rld, SegmentReader reader) throws IOException {
     long delCount = 0;
     Fields fields = reader.fields();
     if (fields == null) {
@@ -388,34 +474,92 @@ class BufferedUpdatesStream implements Accountable {
     String currentField = null;
     DocsEnum docs = null;
 
-    assert checkDeleteTerm(null);
+    // used only by assert
+    Term lastDeleteTerm = null;
+
+    // Since we visit terms sorted, we intersect them with the
+    // terms dictionary: the TermsEnum only seeks forward, and
+    // deleted terms which sort before the term it is positioned
+    // on do not exist in this segment, so they need no seek
+    boolean positioned = false;
+    boolean exhausted = false;
+
+    // Primary key fields, eg. the id field of updateDocument,
+    // have one term per document, so deleted terms are spread
+    // over the whole terms dictionary and rarely exist in a
+    // given segment. For these fields we first check the range
+    // of terms of the segment, and then seek each term exactly,
+    // which bloom filtering postings formats can answer
+    // without reading the terms dictionary
+    boolean primaryKey = false;
+    BytesRef minTerm = null;
+    BytesRef maxTerm = null;
 
     boolean any = false;
 
     //System.out.println(Thread.currentThread().getName() + " del terms reader=" + reader);
     for (Term term : termsIter) {
-      // Since we visit terms sorted, we gain performance
-      // by re-using the same TermsEnum and seeking only
-      // forwards
       if (!term.field().equals(currentField)) {
         assert currentField == null || currentField.compareTo(term.field()) < 0;
         currentField = term.field();
         Terms terms = fields.terms(currentField);
         if (terms != null) {
           termsEnum = terms.iterator(termsEnum);
+          final long size = terms.size();
+          primaryKey = size != -1 && size == terms.getDocCount();
+          if (primaryKey) {
+            minTerm = terms.getMin();
+            maxTerm = terms.getMax();
+            primaryKey = minTerm != null && maxTerm != null;
+          }
         } else {
           termsEnum = null;
         }
+        positioned = false;
+        exhausted = false;
       }
 
-      if (termsEnum == null) {
+      if (termsEnum == null || exhausted) {
         continue;
       }
-      assert checkDeleteTerm(term);
+      assert lastDeleteTerm == null || term.compareTo(lastDeleteTerm) > 0: "lastTerm=" + lastDeleteTerm + " vs term=" + term;
+      // TODO: we re-use term now in our merged iterable, but we shouldn't clone, instead copy for this assert
+      assert (lastDeleteTerm = new Term(term.field(), BytesRef.deepCopyOf(term.bytes))) != null;
 
       // System.out.println("  term=" + term);
 
-      if (termsEnum.seekExact(term.bytes())) {
+      final boolean found;
+      if (primaryKey) {
+        if (term.bytes().compareTo(minTerm) < 0) {
+          found = false;
+        } else if (term.bytes().compareTo(maxTerm) > 0) {
+          // no more terms in this field
+          exhausted = true;
+          found = false;
+        } else {
+          found = termsEnum.seekExact(term.bytes());
+        }
+      } else {
+        final int cmp = positioned ? termsEnum.term().compareTo(term.bytes()) : -1;
+        if (cmp > 0) {
+          // the segment has no terms between the previous deleted term and this one
+          found = false;
+        } else if (cmp == 0) {
+          found = true;
+        } else {
+          final TermsEnum.SeekStatus status = termsEnum.seekCeil(term.bytes());
+          if (status == TermsEnum.SeekStatus.END) {
+            // no more terms in this field
+            exhausted = true;
+            found = false;
+          } else {
+            positioned = true;
+            found = status == TermsEnum.SeekStatus.FOUND;
+          }
+        }
+      }
+
+      if (found) {
         // we don't need term frequencies for this
         DocsEnum docsEnum = termsEnum.docs(rld.getLiveDocs(), docs, DocsEnum.FLAG_NONE);
         //System.out.println("BDS: got docsEnum=" + docsEnum);
@@ -448,7 +592,7 @@ class BufferedUpdatesStream implements Accountable {
   }
 
   // DocValues updates
-  private synchronized void applyDocValuesUpdates(Iterable<? extends DocValuesUpdate> updates, 
+  private static void applyDocValuesUpdates(Iterable<? extends DocValuesUpdate> updates, 
       ReadersAndUpdates rld, SegmentReader reader, DocValuesFieldUpdates.Container dvUpdatesContainer) throws IOException {
     Fields fields = reader.fields();
     if (fields == null) {
@@ -469,6 +613,9 @@ class BufferedUpdatesStream implements Accountable {
     String currentField = null;
     TermsEnum termsEnum = null;
     DocsEnum docs = null;
+    // range of terms of primary key fields, see applyTermDeletes
+    BytesRef minTerm = null;
+    BytesRef maxTerm = null;
     
     //System.out.println(Thread.currentThread().getName() + " numericDVUpdate reader=" + reader);
     for (DocValuesUpdate update : updates) {
@@ -492,6 +639,13 @@ class BufferedUpdatesStream implements Accountable {
         Terms terms = fields.terms(currentField);
         if (terms != null) {
           termsEnum = terms.iterator(termsEnum);
+          final long size = terms.size();
+          if (size != -1 && size == terms.getDocCount()) {
+            minTerm = terms.getMin();
+            maxTerm = terms.getMax();
+          } else {
+            minTerm = maxTerm = null;
+          }
         } else {
           termsEnum = null;
           continue; // no terms in that field
@@ -501,6 +655,9 @@ class BufferedUpdatesStream implements Accountable {
       if (termsEnum == null) {
         continue;
       }
+      if (minTerm != null && maxTerm != null && (term.bytes().compareTo(minTerm) < 0 || term.bytes().compareTo(maxTerm) > 0)) {
+        continue;
+      }
       // System.out.println("  term=" + term);
 
       if (termsEnum.seekExact(term.bytes())) {
@@ -568,16 +725,6 @@ class BufferedUpdatesStream implements Accountable {
     return delCount;
   }
 
-  // used only by assert
-  private boolean checkDeleteTerm(Term term) {
-    if (term != null) {
-      assert lastDeleteTerm == null || term.compareTo(lastDeleteTerm) > 0: "lastTerm=" + lastDeleteTerm + " vs term=" + term;
-    }
-    // TODO: we re-use term now in our merged iterable, but we shouldn't clone, instead copy for this assert
-    lastDeleteTerm = term == null ? null : new Term(term.field(), BytesRef.deepCopyOf(term.bytes));
-    return true;
-  }
-
   // only for assert
   private boolean checkDeleteStats() {
     int numTerms2 = 0;
@@ -44,6 +44,17 @@ class CoalescedUpdates {
         + ",binaryDVUpdates=" + binaryDVUpdates.size() + ")";
   }
 
+  /** Returns a copy of these updates, which is not affected by subsequent
+   *  calls to {@link #update}. */
+  CoalescedUpdates copy() {
+    final CoalescedUpdates copy = new CoalescedUpdates();
+    copy.queries.putAll(queries);
+    copy.iterables.addAll(iterables);
+    copy.numericDVUpdates.addAll(numericDVUpdates);
+    copy.binaryDVUpdates.addAll(binaryDVUpdates);
+    return copy;
+  }
+
   void update(FrozenBufferedUpdates in) {
     iterables.add(in.termsIterable());
 
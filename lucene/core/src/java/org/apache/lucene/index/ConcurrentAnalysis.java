@@ -0,0 +1,389 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Analyzes the documents of a block concurrently, ahead of the
+ * {@link DocumentsWriterPerThread} which indexes them. The token streams of
+ * the tokenized fields of every document are consumed by a task of an
+ * {@link ExecutorService} and their tokens are captured, so that the indexing
+ * thread only replays them when it inverts the document. Documents are
+ * submitted lazily as the indexing thread iterates over the block, at most
+ * {@link #MAX_PENDING_DOCS} ahead of it, which bounds the memory used by the
+ * captured tokens. The documents of the block must therefore be distinct
+ * instances: an iterable which reuses its documents would modify documents
+ * which have been submitted but not indexed yet. This is detected when the
+ * same document is returned again while it is still pending, in which case
+ * an {@link IllegalArgumentException} is thrown.
+ * <p>
+ * Once the block has been indexed, or indexing it failed, {@link #finish()}
+ * cancels the tasks which have not started and waits for the running ones,
+ * so that the caller owns its documents again when {@link IndexWriter}
+ * returns.
+ * <p>
+ * Exceptions hit while analyzing a field are recorded and rethrown by the
+ * replayed token stream at the same point, after the same tokens, so that they
+ * have the same effect as if the field had been analyzed by the indexing
+ * thread.
+ *
+ * @see IndexWriterConfig#setAnalysisExecutor(ExecutorService)
+ */
+final class ConcurrentAnalysis implements Iterable<IndexDocument> {
+
+  /** Maximum number of documents that are analyzed ahead of the indexing thread. */
+  static final int MAX_PENDING_DOCS = 256;
+
+  private final Iterable<? extends IndexDocument> docs;
+  private final Analyzer analyzer;
+  private final ExecutorService executor;
+  // tasks which might not be done yet, in the order they were submitted
+  private final Queue<AnalysisTask> tasks = new ArrayDeque<>();
+
+  /** Wraps the given documents so that their tokenized fields are analyzed by
+   *  tasks of <code>executor</code> as they are iterated. {@link #finish()}
+   *  must be called once the documents have been indexed, even on exception. */
+  ConcurrentAnalysis(Iterable<? extends IndexDocument> docs, Analyzer analyzer, ExecutorService executor) {
+    this.docs = docs;
+    this.analyzer = analyzer;
+    this.executor = executor;
+  }
+
+  @Override
+  public Iterator<IndexDocument> iterator() {
+    final Iterator<? extends IndexDocument> it = docs.iterator();
+    final Queue<IndexDocument> pending = new ArrayDeque<>();
+    // the documents of the iterable which are pending, in the same order
+    final Queue<IndexDocument> pendingOriginals = new ArrayDeque<>();
+    final Set<IndexDocument> pendingSet = Collections.newSetFromMap(new IdentityHashMap<IndexDocument,Boolean>());
+    return new Iterator<IndexDocument>() {
+
+      @Override
+      public boolean hasNext() {
+        return !pending.isEmpty() || it.hasNext();
+      }
+
+      @Override
+      public IndexDocument next() {
+        while (!tasks.isEmpty() && tasks.peek().future.isDone()) {
+          tasks.poll();
+        }
+        while (pending.size() < MAX_PENDING_DOCS && it.hasNext()) {
+          final IndexDocument doc = it.next();
+          if (!pendingSet.add(doc)) {
+            // the pending document has been modified before it could be indexed
+            throw new IllegalArgumentException("the same document instance was returned twice within "
+                + MAX_PENDING_DOCS + " documents: documents can't be reused when using an analysis executor");
+          }
+          pendingOriginals.add(doc);
+          pending.add(submit(doc));
+        }
+        if (pending.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        pendingSet.remove(pendingOriginals.poll());
+        return pending.poll();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /** Cancels the analysis tasks which have not started yet and waits for the
+   *  running ones, so that no task accesses the documents once this method
+   *  returns. */
+  void finish() {
+    boolean interrupted = false;
+    for (AnalysisTask task : tasks) {
+      if (task.cancel()) {
+        continue;
+      }
+      while (true) {
+        try {
+          task.future.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          // the task catches everything
+          throw new AssertionError(ee);
+        }
+      }
+    }
+    tasks.clear();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static boolean isAnalyzed(IndexableField field) {
+    final IndexableFieldType fieldType = field.fieldType();
+    if (!fieldType.indexed() || !fieldType.tokenized()) {
+      return false;
+    }
+    // numeric fields don't use the analyzer and are cheap to replay as-is
+    return !(field instanceof Field) || ((Field) field).fieldType().numericType() == null;
+  }
+
+  private IndexDocument submit(final IndexDocument doc) {
+    final List<IndexableField> fields = new ArrayList<>();
+    final List<IndexableField> analyzedFields = new ArrayList<>();
+    for (IndexableField field : doc.indexableFields()) {
+      fields.add(field);
+      if (isAnalyzed(field)) {
+        analyzedFields.add(field);
+      }
+    }
+    if (analyzedFields.isEmpty()) {
+      return doc;
+    }
+
+    final AnalysisTask task = new AnalysisTask(analyzedFields, analyzer);
+    task.future = executor.submit(task);
+    tasks.add(task);
+    final Future<Object[]> tokens = task.future;
+
+    final List<IndexableField> indexableFields = new ArrayList<>(fields.size());
+    int analyzedField = 0;
+    for (IndexableField field : fields) {
+      if (analyzedField < analyzedFields.size() && analyzedFields.get(analyzedField) == field) {
+        indexableFields.add(new AnalyzedField(field, tokens, analyzedField++));
+      } else {
+        indexableFields.add(field);
+      }
+    }
+    return new IndexDocument() {
+      @Override
+      public Iterable<? extends IndexableField> indexableFields() {
+        return indexableFields;
+      }
+
+      @Override
+      public Iterable<? extends StorableField> storableFields() {
+        return doc.storableFields();
+      }
+    };
+  }
+
+  /** Captures the tokens of the analyzed fields of a document, unless it is
+   *  cancelled before it starts. */
+  private static final class AnalysisTask implements Callable<Object[]> {
+    private final List<IndexableField> analyzedFields;
+    private final Analyzer analyzer;
+    // set by whoever comes first between the task and cancel()
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    Future<Object[]> future;
+
+    AnalysisTask(List<IndexableField> analyzedFields, Analyzer analyzer) {
+      this.analyzedFields = analyzedFields;
+      this.analyzer = analyzer;
+    }
+
+    @Override
+    public Object[] call() {
+      if (!claimed.compareAndSet(false, true)) {
+        // cancelled
+        return null;
+      }
+      // one CapturedTokens or Throwable per analyzed field
+      final Object[] tokens = new Object[analyzedFields.size()];
+      for (int i = 0; i < tokens.length; ++i) {
+        try {
+          tokens[i] = capture(analyzedFields.get(i), analyzer);
+        } catch (Throwable t) {
+          tokens[i] = t;
+        }
+      }
+      return tokens;
+    }
+
+    /** Prevents this task from running if it has not started yet and
+     *  returns true, or returns false if it is running or done. */
+    boolean cancel() {
+      return claimed.compareAndSet(false, true);
+    }
+  }
+
+  // the calls of a token stream, in the order they are made
+  private static final int RESET = 0, INCREMENT_TOKEN = 1, END = 2, CLOSE = 3, DONE = 4;
+
+  private static CapturedTokens capture(IndexableField field, Analyzer analyzer) throws IOException {
+    final TokenStream stream = field.tokenStream(analyzer, null);
+    final List<AttributeSource.State> states = new ArrayList<>();
+    AttributeSource.State finalState = null;
+    int call = RESET;
+    Throwable failure = null;
+    try {
+      stream.reset();
+      call = INCREMENT_TOKEN;
+      while (stream.incrementToken()) {
+        states.add(stream.captureState());
+      }
+      call = END;
+      stream.end();
+      finalState = stream.captureState();
+      call = CLOSE;
+      stream.close();
+      call = DONE;
+    } catch (Throwable t) {
+      failure = t;
+      if (call != CLOSE) {
+        IOUtils.closeWhileHandlingException(stream);
+      }
+    }
+    return new CapturedTokens(stream.cloneAttributes(), states, finalState, call, failure);
+  }
+
+  /** The tokens of a field, as they were produced by its token stream, and
+   *  the exception that the token stream threw, if any. */
+  private static final class CapturedTokens {
+    final AttributeSource attributes;
+    final List<AttributeSource.State> states;
+    final AttributeSource.State finalState;
+    final int failedCall;
+    final Throwable failure;
+
+    CapturedTokens(AttributeSource attributes, List<AttributeSource.State> states, AttributeSource.State finalState,
+        int failedCall, Throwable failure) {
+      this.attributes = attributes;
+      this.states = states;
+      this.finalState = finalState;
+      this.failedCall = failedCall;
+      this.failure = failure;
+    }
+
+    void maybeRethrow(int call) throws IOException {
+      if (call == failedCall) {
+        IOUtils.reThrow(failure);
+      }
+    }
+  }
+
+  /** Replays {@link CapturedTokens}. */
+  private static final class CapturedTokenStream extends TokenStream {
+    private final CapturedTokens tokens;
+    private Iterator<AttributeSource.State> iterator;
+
+    CapturedTokenStream(CapturedTokens tokens) {
+      super(tokens.attributes);
+      this.tokens = tokens;
+    }
+
+    @Override
+    public void reset() throws IOException {
+      tokens.maybeRethrow(RESET);
+      iterator = tokens.states.iterator();
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (!iterator.hasNext()) {
+        tokens.maybeRethrow(INCREMENT_TOKEN);
+        return false;
+      }
+      restoreState(iterator.next());
+      return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+      tokens.maybeRethrow(END);
+      if (tokens.finalState != null) {
+        restoreState(tokens.finalState);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      tokens.maybeRethrow(CLOSE);
+    }
+  }
+
+  /** A field whose token stream replays the tokens captured by an analysis task. */
+  private static final class AnalyzedField implements IndexableField {
+    private final IndexableField in;
+    private final Future<Object[]> tokens;
+    private final int index;
+
+    AnalyzedField(IndexableField in, Future<Object[]> tokens, int index) {
+      this.in = in;
+      this.tokens = tokens;
+      this.index = index;
+    }
+
+    @Override
+    public String name() {
+      return in.name();
+    }
+
+    @Override
+    public IndexableFieldType fieldType() {
+      return in.fieldType();
+    }
+
+    @Override
+    public float boost() {
+      return in.boost();
+    }
+
+    @Override
+    public TokenStream tokenStream(Analyzer analyzer, TokenStream reuse) throws IOException {
+      final Object result;
+      try {
+        result = tokens.get()[index];
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      } catch (ExecutionException e) {
+        // the task catches everything
+        throw new AssertionError(e);
+      }
+      assert result != null : "analysis task was cancelled";
+      if (result instanceof Throwable) {
+        IOUtils.reThrow((Throwable) result);
+      }
+      return new CapturedTokenStream((CapturedTokens) result);
+    }
+  }
+
+}
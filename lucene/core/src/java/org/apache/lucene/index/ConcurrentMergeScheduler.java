@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.ThreadInterruptedException;
 import org.apache.lucene.util.CollectionUtil;
 
@@ -25,6 +26,11 @@ import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /** A {@link MergeScheduler} that runs each merge using a
  *  separate thread.
@@ -41,6 +47,12 @@ import java.util.Comparator;
  *  requested then this class will forcefully throttle the
  *  incoming threads by pausing until one more more merges
  *  complete.</p>
+ *
+ *  <p>Merges may also be IO throttled automatically, see
+ *  {@link #enableAutoIOThrottle}.</p>
+ *
+ *  <p>The different parts of a single merge can be merged
+ *  concurrently, see {@link #setMergePartsThreadCount}.</p>
  */ 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
@@ -82,6 +94,31 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
    *  to name them). */
   protected int mergeThreadCount;
 
+  /** Floor for the IO write rate limit of merges, we never go lower than this. */
+  static final double MIN_MERGE_MB_PER_SEC = 5.0;
+
+  /** Ceiling for the IO write rate limit of merges, we never go higher than this. */
+  static final double MAX_MERGE_MB_PER_SEC = 10240.0;
+
+  /** Initial IO write rate limit of merges when the automatic IO throttle is enabled. */
+  static final double START_MB_PER_SEC = 20.0;
+
+  /** The IO throttle is only adjusted when merges of at least this size start:
+   *  smaller merges are too short-lived to tell whether merging is falling behind. */
+  static final double MIN_BIG_MERGE_MB = 50.0;
+
+  private boolean doAutoIOThrottle;
+
+  /** Current IO write rate limit of merges, in MB/sec. */
+  private double targetMBPerSec = START_MB_PER_SEC;
+
+  private long totalStallTimeMS;
+
+  // number of threads that merge parts of segments concurrently, 0 to disable
+  private int mergePartsThreadCount;
+  private ThreadPoolExecutor mergePartsExecutor;
+  private int mergePartsThreadNumber;
+
   /** Sole constructor, with all settings set to default
    *  values. */
   public ConcurrentMergeScheduler() {
@@ -125,6 +162,197 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     return maxMergeCount;
   }
 
+  /** Sets the number of additional threads that merge the stored fields,
+   *  postings, doc values, norms and term vectors of a segment concurrently
+   *  with the thread that runs the merge. These threads are shared by all
+   *  running merges. This makes large merges, such as those triggered by
+   *  {@link IndexWriter#forceMerge}, complete faster on machines that have
+   *  spare CPU and IO capacity, up to the number of parts that the merged
+   *  segment has. By default this is 0 and each merge runs on a single
+   *  thread.
+   *  <p>
+   *  <b>NOTE</b>: the new value only applies to merges that start after this
+   *  call. */
+  public synchronized void setMergePartsThreadCount(int mergePartsThreadCount) {
+    if (mergePartsThreadCount < 0) {
+      throw new IllegalArgumentException("mergePartsThreadCount must be >= 0, got " + mergePartsThreadCount);
+    }
+    this.mergePartsThreadCount = mergePartsThreadCount;
+    // running merges may still submit tasks to the executor, so we resize it
+    // rather than shutting it down
+    if (mergePartsExecutor != null && mergePartsThreadCount > 0) {
+      if (mergePartsThreadCount > mergePartsExecutor.getMaximumPoolSize()) {
+        mergePartsExecutor.setMaximumPoolSize(mergePartsThreadCount);
+        mergePartsExecutor.setCorePoolSize(mergePartsThreadCount);
+      } else {
+        mergePartsExecutor.setCorePoolSize(mergePartsThreadCount);
+        mergePartsExecutor.setMaximumPoolSize(mergePartsThreadCount);
+      }
+    }
+  }
+
+  /** Returns the number of threads that merge the parts of segments
+   *  concurrently.
+   *
+   *  @see #setMergePartsThreadCount(int) */
+  public synchronized int getMergePartsThreadCount() {
+    return mergePartsThreadCount;
+  }
+
+  @Override
+  public synchronized ExecutorService getMergePartsExecutor() {
+    if (mergePartsThreadCount == 0) {
+      return null;
+    }
+    if (mergePartsExecutor == null) {
+      initMergeThreadPriority();
+      mergePartsExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(mergePartsThreadCount, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          final Thread thread = new Thread(r);
+          thread.setDaemon(true);
+          synchronized (ConcurrentMergeScheduler.this) {
+            thread.setName("Lucene Merge Parts Thread #" + mergePartsThreadNumber++);
+            thread.setPriority(mergeThreadPriority);
+          }
+          return thread;
+        }
+      });
+    }
+    return mergePartsExecutor;
+  }
+
+  private synchronized void shutdownMergePartsExecutor() {
+    if (mergePartsExecutor != null) {
+      mergePartsExecutor.shutdown();
+      mergePartsExecutor = null;
+    }
+  }
+
+  /** Turn on automatic IO throttling of merges. Each merge is then written
+   *  at no more than {@link #getIORateLimitMBPerSec()}, which adapts to the
+   *  merge backlog: it is increased by 20% when a big merge starts while other
+   *  big merges are still running or merges are pending, and when incoming
+   *  indexing threads need to be stalled because merging fell behind. It is
+   *  decreased by 10% when a big merge starts without any backlog. This way,
+   *  merges use as little IO bandwidth as needed to keep up with indexing,
+   *  which leaves more IO for searches. Merges that are run because of
+   *  {@link IndexWriter#forceMerge} are never throttled, and merges that
+   *  are already running when this method is called are not throttled
+   *  either. This is disabled by default. */
+  public synchronized void enableAutoIOThrottle() {
+    doAutoIOThrottle = true;
+    targetMBPerSec = START_MB_PER_SEC;
+    updateMergeRateLimiters();
+  }
+
+  /** Turn off automatic IO throttling of merges. Running merges are
+   *  unthrottled immediately.
+   *
+   *  @see #enableAutoIOThrottle() */
+  public synchronized void disableAutoIOThrottle() {
+    doAutoIOThrottle = false;
+    updateMergeRateLimiters();
+  }
+
+  /** Returns true if automatic IO throttling of merges is enabled.
+   *
+   *  @see #enableAutoIOThrottle() */
+  public synchronized boolean getAutoIOThrottle() {
+    return doAutoIOThrottle;
+  }
+
+  /** Returns the current IO write rate limit of merges in MB/sec, or
+   *  {@link Double#POSITIVE_INFINITY} if the automatic IO throttle is
+   *  disabled.
+   *
+   *  @see #enableAutoIOThrottle() */
+  public synchronized double getIORateLimitMBPerSec() {
+    return doAutoIOThrottle ? targetMBPerSec : Double.POSITIVE_INFINITY;
+  }
+
+  /** Returns the number of merges that are waiting for a merge thread, ie.
+   *  the number of merges that the {@link MergePolicy} asked for and that are
+   *  not running yet. */
+  public synchronized int getMergeBacklog() {
+    return writer == null ? 0 : writer.getPendingMergeCount();
+  }
+
+  /** Returns the total time, in milliseconds, that incoming indexing threads
+   *  have been stalled because merging could not keep up. */
+  public synchronized long getTotalStallTimeMS() {
+    return totalStallTimeMS;
+  }
+
+  private static double bytesToMB(long bytes) {
+    return bytes / 1024. / 1024.;
+  }
+
+  /** Called before a merge starts: adjusts the IO throttle according to the
+   *  merge backlog and assigns a rate limiter to the merge. */
+  private synchronized void updateIOThrottle(MergePolicy.OneMerge newMerge) {
+    if (!doAutoIOThrottle) {
+      return;
+    }
+    if (newMerge.maxNumSegments != -1) {
+      // forced merge: the app is waiting for it, don't throttle
+      return;
+    }
+
+    if (bytesToMB(newMerge.estimatedMergeBytes) >= MIN_BIG_MERGE_MB) {
+      // Simplistic closed-loop feedback control: if other big merges are
+      // still running, or more merges are already waiting, then merging is
+      // falling behind and we bump up the IO throttle, else we lower it
+      int bigMergeCount = 0;
+      for (MergeThread mergeThread : mergeThreads) {
+        final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+        if (merge != null && merge != newMerge && mergeThread.isAlive()
+            && bytesToMB(merge.estimatedMergeBytes) >= MIN_BIG_MERGE_MB) {
+          bigMergeCount++;
+        }
+      }
+      final int backlog = writer.getPendingMergeCount();
+      if (bigMergeCount > 0 || backlog > 0) {
+        targetMBPerSec = Math.min(MAX_MERGE_MB_PER_SEC, targetMBPerSec * 1.20);
+      } else {
+        targetMBPerSec = Math.max(MIN_MERGE_MB_PER_SEC, targetMBPerSec / 1.10);
+      }
+      if (verbose()) {
+        message("io throttle: " + bigMergeCount + " other big merges running, " + backlog + " merges pending; now "
+            + String.format(Locale.ROOT, "%.1f", targetMBPerSec) + " MB/sec");
+      }
+    }
+
+    newMerge.setRateLimiter(new RateLimiter.SimpleRateLimiter(targetMBPerSec));
+    updateMergeRateLimiters();
+  }
+
+  /** Called when incoming indexing threads need to be stalled because
+   *  merging fell behind. */
+  private synchronized void increaseIOThrottle() {
+    if (doAutoIOThrottle && targetMBPerSec < MAX_MERGE_MB_PER_SEC) {
+      targetMBPerSec = Math.min(MAX_MERGE_MB_PER_SEC, targetMBPerSec * 1.20);
+      if (verbose()) {
+        message("io throttle: indexing is stalled; now " + String.format(Locale.ROOT, "%.1f", targetMBPerSec) + " MB/sec");
+      }
+      updateMergeRateLimiters();
+    }
+  }
+
+  /** Applies the current IO throttle to all running merges. */
+  private synchronized void updateMergeRateLimiters() {
+    final double mbPerSec = doAutoIOThrottle ? targetMBPerSec : Double.MAX_VALUE;
+    for (MergeThread mergeThread : mergeThreads) {
+      final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+      if (merge != null) {
+        final RateLimiter rateLimiter = merge.getRateLimiter();
+        if (rateLimiter != null && rateLimiter.getMbPerSec() != mbPerSec) {
+          rateLimiter.setMbPerSec(mbPerSec);
+        }
+      }
+    }
+  }
+
   /** Return the priority that merge threads run at.  By
    *  default the priority is 1 plus the priority of (ie,
    *  slightly higher priority than) the first thread that
@@ -260,6 +488,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
   @Override
   public void close() {
     sync();
+    shutdownMergePartsExecutor();
   }
 
   /** Wait for any running merge threads to finish. This call is not interruptible as used by {@link #close()}. */
@@ -335,6 +564,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     while (true) {
 
       long startStallTime = 0;
+      boolean stalled = false;
       while (writer.hasPendingMerges() && mergeThreadCount() >= maxMergeCount) {
         // This means merging has fallen too far behind: we
         // have already created maxMergeCount threads, and
@@ -349,6 +579,11 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
         if (verbose()) {
           message("    too many merges; stalling...");
         }
+        if (stalled == false) {
+          // merges can't keep up with indexing: give them more IO
+          increaseIOThrottle();
+          stalled = true;
+        }
         try {
           wait();
         } catch (InterruptedException ie) {
@@ -356,9 +591,11 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
         }
       }
 
-      if (verbose()) {
-        if (startStallTime != 0) {
-          message("  stalled for " + (System.currentTimeMillis()-startStallTime) + " msec");
+      if (startStallTime != 0) {
+        final long stallTimeMS = System.currentTimeMillis()-startStallTime;
+        totalStallTimeMS += stallTimeMS;
+        if (verbose()) {
+          message("  stalled for " + stallTimeMS + " msec");
         }
       }
 
@@ -376,6 +613,8 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           message("  consider merge " + writer.segString(merge.segments));
         }
 
+        updateIOThrottle(merge);
+
         // OK to spawn a new merge thread to handle this
         // merge:
         final MergeThread merger = getMergeThread(writer, merge);
@@ -493,6 +732,8 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           }
 
           if (merge != null) {
+            setRunningMerge(merge);
+            updateIOThrottle(merge);
             updateMergeThreads();
             if (verbose()) {
               message("  merge thread: do another merge " + tWriter.segString(merge.segments));
@@ -562,7 +803,9 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     StringBuilder sb = new StringBuilder(getClass().getSimpleName() + ": ");
     sb.append("maxThreadCount=").append(maxThreadCount).append(", ");    
     sb.append("maxMergeCount=").append(maxMergeCount).append(", ");    
-    sb.append("mergeThreadPriority=").append(mergeThreadPriority);
+    sb.append("mergeThreadPriority=").append(mergeThreadPriority).append(", ");
+    sb.append("autoIOThrottle=").append(doAutoIOThrottle).append(", ");
+    sb.append("mergePartsThreadCount=").append(mergePartsThreadCount);
     return sb.toString();
   }
 }
@@ -0,0 +1,218 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.SearcherManager; // javadocs
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * A segment warmer which reads the data that searches need most, so that it
+ * is loaded before the segment becomes searchable: the terms index of every
+ * indexed field, every value of norms and doc values, and the postings of
+ * <code>hot terms</code>, which are typically sampled from a query log.
+ * Fields are warmed in parallel by the tasks of an {@link ExecutorService},
+ * and {@link #warm} returns once all of them are done.
+ * <p>
+ * This warmer can be used both to warm merged segments, see {@link
+ * IndexWriterConfig#setMergedSegmentWarmer}, and to warm the new segments of
+ * near-real-time readers before they are published by a {@link
+ * SearcherManager}, see {@link org.apache.lucene.search.WarmingSearcherFactory}.
+ *
+ * @lucene.experimental
+ */
+public class ConcurrentSegmentWarmer extends SimpleMergedSegmentWarmer {
+  private final InfoStream infoStream;
+  private final ExecutorService executor;
+  private final Map<String,List<Term>> hotTerms;
+
+  /**
+   * Creates a new ConcurrentSegmentWarmer.
+   * @param infoStream InfoStream to log statistics about warming.
+   * @param executor the executor which warms fields in parallel, or
+   *        <code>null</code> to warm them in the calling thread.
+   * @param hotTerms terms whose postings are read when a segment is
+   *        warmed.
+   */
+  public ConcurrentSegmentWarmer(InfoStream infoStream, ExecutorService executor, Collection<Term> hotTerms) {
+    super(infoStream);
+    this.infoStream = infoStream;
+    this.executor = executor;
+    final Map<String,List<Term>> byField = new HashMap<>();
+    for (Term term : hotTerms) {
+      List<Term> terms = byField.get(term.field());
+      if (terms == null) {
+        terms = new ArrayList<>();
+        byField.put(term.field(), terms);
+      }
+      terms.add(term);
+    }
+    this.hotTerms = byField;
+  }
+
+  @Override
+  public void warm(final AtomicReader reader) throws IOException {
+    final long startTime = System.currentTimeMillis();
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    for (final FieldInfo info : reader.getFieldInfos()) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          warmField(reader, info);
+          if (info.hasDocValues()) {
+            warmBits(reader.maxDoc(), reader.getDocsWithField(info.name));
+          }
+          return null;
+        }
+      });
+    }
+
+    if (executor == null) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (Exception e) {
+          IOUtils.reThrow(e);
+        }
+      }
+    } else {
+      final List<Future<Void>> futures = new ArrayList<>(tasks.size());
+      for (Callable<Void> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      Throwable th = null;
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+          if (th == null) {
+            th = e.getCause();
+          }
+        }
+      }
+      IOUtils.reThrow(th);
+    }
+
+    if (infoStream.isEnabled("CSW")) {
+      infoStream.message("CSW",
+          "Finished warming segment: " + reader +
+          ", fields=" + reader.getFieldInfos().size() +
+          ", tasks=" + tasks.size() +
+          ", time=" + (System.currentTimeMillis() - startTime));
+    }
+  }
+
+  @Override
+  void warmTerms(String field, Terms terms) throws IOException {
+    if (terms == null) {
+      return;
+    }
+    // walks the terms index down to the first term
+    final TermsEnum termsEnum = terms.iterator(null);
+    termsEnum.next();
+    DocsEnum docsEnum = null;
+    for (Term term : getHotTerms(field)) {
+      if (termsEnum.seekExact(term.bytes())) {
+        docsEnum = termsEnum.docs(null, docsEnum);
+        while (docsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+          docsEnum.freq();
+        }
+      }
+    }
+  }
+
+  private List<Term> getHotTerms(String field) {
+    final List<Term> terms = hotTerms.get(field);
+    return terms == null ? Collections.<Term>emptyList() : terms;
+  }
+
+  @Override
+  void warmNumeric(AtomicReader reader, NumericDocValues values) {
+    if (values == null) {
+      return;
+    }
+    for (int doc = 0; doc < reader.maxDoc(); ++doc) {
+      values.get(doc);
+    }
+  }
+
+  @Override
+  void warmBinary(AtomicReader reader, BinaryDocValues values) {
+    for (int doc = 0; doc < reader.maxDoc(); ++doc) {
+      values.get(doc);
+    }
+  }
+
+  @Override
+  void warmSorted(AtomicReader reader, SortedDocValues values) {
+    for (int doc = 0; doc < reader.maxDoc(); ++doc) {
+      values.getOrd(doc);
+    }
+    for (int ord = 0; ord < values.getValueCount(); ++ord) {
+      values.lookupOrd(ord);
+    }
+  }
+
+  @Override
+  void warmSortedNumeric(AtomicReader reader, SortedNumericDocValues values) {
+    for (int doc = 0; doc < reader.maxDoc(); ++doc) {
+      values.setDocument(doc);
+      for (int i = 0; i < values.count(); ++i) {
+        values.valueAt(i);
+      }
+    }
+  }
+
+  @Override
+  void warmSortedSet(AtomicReader reader, SortedSetDocValues values) {
+    for (int doc = 0; doc < reader.maxDoc(); ++doc) {
+      values.setDocument(doc);
+      while (values.nextOrd() != SortedSetDocValues.NO_MORE_ORDS) {
+        // just read ords
+      }
+    }
+    for (long ord = 0; ord < values.getValueCount(); ++ord) {
+      values.lookupOrd(ord);
+    }
+  }
+
+  private static void warmBits(int maxDoc, Bits docsWithField) {
+    if (docsWithField != null) {
+      for (int doc = 0; doc < maxDoc; ++doc) {
+        docsWithField.get(doc);
+      }
+    }
+  }
+}
@@ -18,9 +18,14 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.codecs.DocValuesConsumer;
@@ -85,33 +90,62 @@ final class DefaultIndexingChain extends DocConsumer {
   }
 
   @Override
-  public void flush(SegmentWriteState state) throws IOException {
+  public void flush(final SegmentWriteState state) throws IOException {
 
     // NOTE: caller (DocumentsWriterPerThread) handles
     // aborting on any exception from this method
 
     int numDocs = state.segmentInfo.getDocCount();
-    writeNorms(state);
-    writeDocValues(state);
+    finishDocValues(numDocs);
+
+    final ExecutorService executor = docWriter.flushExecutor;
+    final List<Future<?>> tasks = new ArrayList<>();
+    boolean success = false;
+    try {
+      if (executor == null) {
+        writeNorms(state);
+        writeDocValues(state);
+      } else {
+        // norms and doc values have their own files: write them concurrently
+        // with stored fields and postings
+        tasks.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            writeNorms(state);
+            return null;
+          }
+        }));
+        tasks.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            writeDocValues(state);
+            return null;
+          }
+        }));
+      }
     
-    // its possible all docs hit non-aborting exceptions...
-    initStoredFieldsWriter();
-    fillStoredFields(numDocs);
-    storedFieldsWriter.finish(state.fieldInfos, numDocs);
-    storedFieldsWriter.close();
+      // its possible all docs hit non-aborting exceptions...
+      initStoredFieldsWriter();
+      fillStoredFields(numDocs);
+      storedFieldsWriter.finish(state.fieldInfos, numDocs);
+      storedFieldsWriter.close();
 
-    Map<String,TermsHashPerField> fieldsToFlush = new HashMap<>();
-    for (int i=0;i<fieldHash.length;i++) {
-      PerField perField = fieldHash[i];
-      while (perField != null) {
-        if (perField.invertState != null) {
-          fieldsToFlush.put(perField.fieldInfo.name, perField.termsHashPerField);
+      Map<String,TermsHashPerField> fieldsToFlush = new HashMap<>();
+      for (int i=0;i<fieldHash.length;i++) {
+        PerField perField = fieldHash[i];
+        while (perField != null) {
+          if (perField.invertState != null) {
+            fieldsToFlush.put(perField.fieldInfo.name, perField.termsHashPerField);
+          }
+          perField = perField.next;
         }
-        perField = perField.next;
       }
-    }
 
-    termsHash.flush(fieldsToFlush, state);
+      termsHash.flush(fieldsToFlush, state);
+      success = true;
+    } finally {
+      DocumentsWriterPerThread.waitFor(tasks, success);
+    }
 
     // Important to save after asking consumer to flush so
     // consumer can alter the FieldInfo* if necessary.  EG,
@@ -121,9 +155,22 @@ final class DefaultIndexingChain extends DocConsumer {
     infosWriter.write(state.directory, state.segmentInfo.name, "", state.fieldInfos, IOContext.DEFAULT);
   }
 
+  /** Finishes all buffered doc values, so that they can then be written
+   *  without modifying state that is shared with other fields. */
+  private void finishDocValues(int docCount) {
+    for (int i=0;i<fieldHash.length;i++) {
+      PerField perField = fieldHash[i];
+      while (perField != null) {
+        if (perField.docValuesWriter != null) {
+          perField.docValuesWriter.finish(docCount);
+        }
+        perField = perField.next;
+      }
+    }
+  }
+
   /** Writes all buffered doc values (called from {@link #flush}). */
   private void writeDocValues(SegmentWriteState state) throws IOException {
-    int docCount = state.segmentInfo.getDocCount();
     DocValuesConsumer dvConsumer = null;
     boolean success = false;
     try {
@@ -137,7 +184,6 @@ final class DefaultIndexingChain extends DocConsumer {
               dvConsumer = fmt.fieldsConsumer(state);
             }
 
-            perField.docValuesWriter.finish(docCount);
             perField.docValuesWriter.flush(state, dvConsumer);
             perField.docValuesWriter = null;
           }
@@ -20,8 +20,12 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -35,10 +39,13 @@ import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.ByteBlockPool.Allocator;
 import org.apache.lucene.util.ByteBlockPool.DirectTrackingAllocator;
 import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.IntBlockPool;
 import org.apache.lucene.util.MutableBits;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RecyclingByteBlockAllocator;
+import org.apache.lucene.util.RecyclingIntBlockAllocator;
 import org.apache.lucene.util.Version;
 
 import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_MASK;
@@ -157,6 +164,8 @@ class DocumentsWriterPerThread {
   final IntBlockPool.Allocator intBlockAllocator;
   private final AtomicLong pendingNumDocs;
   private final LiveIndexWriterConfig indexWriterConfig;
+  // Runs parts of the flush concurrently, or null to flush on the calling thread
+  final ExecutorService flushExecutor;
   
   public DocumentsWriterPerThread(String segmentName, Directory directory, LiveIndexWriterConfig indexWriterConfig, InfoStream infoStream, DocumentsWriterDeleteQueue deleteQueue,
                                   FieldInfos.Builder fieldInfos, AtomicLong pendingNumDocs) throws IOException {
@@ -166,13 +175,24 @@ class DocumentsWriterPerThread {
     this.indexWriterConfig = indexWriterConfig;
     this.infoStream = infoStream;
     this.codec = indexWriterConfig.getCodec();
+    this.flushExecutor = indexWriterConfig.getFlushExecutor();
     this.docState = new DocState(this, infoStream);
     this.docState.similarity = indexWriterConfig.getSimilarity();
     this.pendingNumDocs = pendingNumDocs;
     bytesUsed = Counter.newCounter();
-    byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+    final double maxPooledBufferMB = indexWriterConfig.getMaxPooledBufferMB();
+    if (maxPooledBufferMB > 0) {
+      // recycled blocks keep being accounted for in bytesUsed
+      final long maxPooledBytes = (long) (maxPooledBufferMB * 1024 * 1024);
+      final int maxByteBlocks = (int) Math.min(Integer.MAX_VALUE, maxPooledBytes / BYTE_BLOCK_SIZE);
+      final int maxIntBlocks = (int) Math.min(Integer.MAX_VALUE, maxPooledBytes / (IntBlockPool.INT_BLOCK_SIZE * RamUsageEstimator.NUM_BYTES_INT));
+      byteBlockAllocator = new RecyclingByteBlockAllocator(BYTE_BLOCK_SIZE, maxByteBlocks, bytesUsed);
+      intBlockAllocator = new RecyclingIntBlockAllocator(IntBlockPool.INT_BLOCK_SIZE, maxIntBlocks, bytesUsed);
+    } else {
+      byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+      intBlockAllocator = new IntBlockAllocator(bytesUsed);
+    }
     pendingUpdates = new BufferedUpdates();
-    intBlockAllocator = new IntBlockAllocator(bytesUsed);
     this.deleteQueue = deleteQueue;
     assert numDocsInRAM == 0 : "num docs " + numDocsInRAM;
     pendingUpdates.clear();
@@ -488,6 +508,38 @@ class DocumentsWriterPerThread {
   
   private final Set<String> filesToDelete = new HashSet<>();
   
+  /** Waits for all tasks that were submitted to the {@link #flushExecutor}
+   *  to complete. If <code>rethrow</code> is true, the first exception that
+   *  was hit by a task is rethrown, otherwise exceptions are ignored since the
+   *  caller is already propagating another exception. */
+  static void waitFor(List<Future<?>> tasks, boolean rethrow) throws IOException {
+    Throwable th = null;
+    boolean interrupted = false;
+    for (Future<?> task : tasks) {
+      // keep on waiting even if a task failed: files must not be deleted
+      // while other tasks are still writing
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          if (th == null) {
+            th = ee.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (rethrow) {
+      IOUtils.reThrow(th);
+    }
+  }
+
   public Set<String> pendingFilesToDelete() {
     return filesToDelete;
   }
@@ -501,6 +553,9 @@ class DocumentsWriterPerThread {
     SegmentCommitInfo newSegment = flushedSegment.segmentInfo;
 
     IndexWriter.setDiagnostics(newSegment.info, IndexWriter.SOURCE_FLUSH);
+    // must be called before the .si is written so that diagnostics are saved
+    indexWriterConfig.getMergePolicy().segmentFlushed(
+        new SegmentReadState(directory, newSegment.info, flushedSegment.fieldInfos, IOContext.READONCE));
     
     IOContext context = new IOContext(new FlushInfo(newSegment.info.getDocCount(), newSegment.sizeInBytes()));
 
@@ -309,7 +309,7 @@ public final class FieldInfo {
   /**
    * Get a codec attribute value, or null if it does not exist
    */
-  public String getAttribute(String key) {
+  public synchronized String getAttribute(String key) {
     if (attributes == null) {
       return null;
     } else {
@@ -326,8 +326,12 @@ public final class FieldInfo {
    * <p>
    * If a value already exists for the field, it will be replaced with 
    * the new value.
+   * <p>
+   * This method is synchronized since postings and doc values formats may
+   * put attributes concurrently when a segment is flushed concurrently,
+   * see {@link IndexWriterConfig#setFlushExecutor}.
    */
-  public String putAttribute(String key, String value) {
+  public synchronized String putAttribute(String key, String value) {
     if (attributes == null) {
       attributes = new HashMap<>();
     }
@@ -337,7 +341,7 @@ public final class FieldInfo {
   /**
    * Returns internal codec attributes map. May be null if no mappings exist.
    */
-  public Map<String,String> attributes() {
+  public synchronized Map<String,String> attributes() {
     return attributes;
   }
 }
@@ -22,6 +22,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.codecs.FieldsConsumer;
 import org.apache.lucene.util.CollectionUtil;
@@ -29,8 +32,11 @@ import org.apache.lucene.util.IOUtils;
 
 final class FreqProxTermsWriter extends TermsHash {
 
+  private final ExecutorService flushExecutor;
+
   public FreqProxTermsWriter(DocumentsWriterPerThread docWriter, TermsHash termVectors) {
     super(docWriter, true, termVectors);
+    this.flushExecutor = docWriter.flushExecutor;
   }
 
   private void applyDeletes(SegmentWriteState state, Fields fields) throws IOException {
@@ -88,12 +94,13 @@ final class FreqProxTermsWriter extends TermsHash {
     for (TermsHashPerField f : fieldsToFlush.values()) {
       final FreqProxTermsWriterPerField perField = (FreqProxTermsWriterPerField) f;
       if (perField.bytesHash.size() > 0) {
-        perField.sortPostings();
         assert perField.fieldInfo.isIndexed();
         allFields.add(perField);
       }
     }
 
+    sortPostings(allFields);
+
     // Sort by field name
     CollectionUtil.introSort(allFields);
 
@@ -116,6 +123,34 @@ final class FreqProxTermsWriter extends TermsHash {
 
   }
 
+  /** Sorts the terms of each field, concurrently if a flush executor is
+   *  configured: fields only read from the shared byte pool. */
+  private void sortPostings(List<FreqProxTermsWriterPerField> fields) throws IOException {
+    if (flushExecutor == null || fields.size() < 2) {
+      for (FreqProxTermsWriterPerField perField : fields) {
+        perField.sortPostings();
+      }
+      return;
+    }
+
+    final List<Future<?>> tasks = new ArrayList<>();
+    boolean success = false;
+    try {
+      for (final FreqProxTermsWriterPerField perField : fields) {
+        tasks.add(flushExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            perField.sortPostings();
+            return null;
+          }
+        }));
+      }
+      success = true;
+    } finally {
+      DocumentsWriterPerThread.waitFor(tasks, success);
+    }
+  }
+
   @Override
   public TermsHashPerField addField(FieldInvertState invertState, FieldInfo fieldInfo) {
     return new FreqProxTermsWriterPerField(invertState, this, fieldInfo, nextTermsHash.addField(invertState, fieldInfo));
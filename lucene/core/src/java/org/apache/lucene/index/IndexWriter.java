@@ -36,6 +36,7 @@ import java.util.Map.Entry;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -56,6 +57,8 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.store.MergeInfo;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Bits;
@@ -249,6 +252,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
 
   private final Directory directory;  // where this index resides
   private final Analyzer analyzer;    // how to analyze text
+  private final ExecutorService analysisExecutor; // analyzes blocks of documents concurrently, or null
 
   private volatile long changeCount; // increments every time a change is completed
   private volatile long lastCommitChangeCount; // last changeCount that was committed
@@ -742,11 +746,12 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     config = conf;
     directory = d;
     analyzer = config.getAnalyzer();
+    analysisExecutor = config.getAnalysisExecutor();
     infoStream = config.getInfoStream();
     mergeScheduler = config.getMergeScheduler();
     codec = config.getCodec();
 
-    bufferedUpdatesStream = new BufferedUpdatesStream(infoStream);
+    bufferedUpdatesStream = new BufferedUpdatesStream(infoStream, config.getFlushExecutor());
     poolReaders = config.getReaderPooling();
 
     writeLock = directory.makeLock(WRITE_LOCK_NAME);
@@ -1198,6 +1203,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    */
   public void updateDocuments(Term delTerm, Iterable<? extends IndexDocument> docs, Analyzer analyzer) throws IOException {
     ensureOpen();
+    ConcurrentAnalysis analysis = null;
+    if (analysisExecutor != null && analyzer != null) {
+      docs = analysis = new ConcurrentAnalysis(docs, analyzer, analysisExecutor);
+    }
     try {
       boolean success = false;
       try {
@@ -1206,6 +1215,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
         }
         success = true;
       } finally {
+        if (analysis != null) {
+          // analysis tasks must not access the documents after we return
+          analysis.finish();
+        }
         if (!success) {
           if (infoStream.isEnabled("IW")) {
             infoStream.message("IW", "hit exception updating document");
@@ -1529,6 +1542,52 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       handleOOM(oom, "updateDocValues");
     }
   }
+
+  /**
+   * Updates the {@link NumericDocValues} of <code>field</code> of many
+   * documents at once: the documents that are associated with
+   * <code>terms[i]</code> are updated to <code>values[i]</code>. This is
+   * equivalent to calling {@link #updateNumericDocValue(Term, String, long)}
+   * for every term, except that all updates are buffered in one go and are
+   * atomically applied and flushed together.
+   * 
+   * <p>
+   * <b>NOTE</b>: if this method hits an OutOfMemoryError you should immediately
+   * close the writer. See <a href="#OOME">above</a> for details.
+   * </p>
+   * 
+   * @param field
+   *          field name of the {@link NumericDocValues} field
+   * @param terms
+   *          the terms to identify the documents to be updated
+   * @param values
+   *          the new values, one per term
+   * @throws CorruptIndexException
+   *           if the index is corrupt
+   * @throws IOException
+   *           if there is a low-level IO error
+   * @see IndexWriterConfig#setMaxSparseUpdatesRatio(double)
+   */
+  public void updateNumericDocValues(String field, Term[] terms, long[] values) throws IOException {
+    ensureOpen();
+    if (terms.length != values.length) {
+      throw new IllegalArgumentException("terms and values must have the same length, got " + terms.length + " and " + values.length);
+    }
+    if (!globalFieldNumberMap.contains(field, DocValuesType.NUMERIC)) {
+      throw new IllegalArgumentException("can only update existing numeric-docvalues fields!");
+    }
+    final DocValuesUpdate[] dvUpdates = new DocValuesUpdate[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      dvUpdates[i] = new NumericDocValuesUpdate(terms[i], field, values[i]);
+    }
+    try {
+      if (docWriter.updateDocValues(dvUpdates)) {
+        processEvents(true, false);
+      }
+    } catch (OutOfMemoryError oom) {
+      handleOOM(oom, "updateNumericDocValues");
+    }
+  }
   
   // for test purpose
   final synchronized int getSegmentCount(){
@@ -1965,6 +2024,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     return pendingMerges.size() != 0;
   }
 
+  /** Returns the number of merges that have been registered but not started yet. */
+  synchronized int getPendingMergeCount() {
+    return pendingMerges.size();
+  }
+
   /**
    * Close the <code>IndexWriter</code> without committing
    * any changes that have occurred since the last commit
@@ -3899,7 +3963,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     IOContext context = new IOContext(merge.getMergeInfo());
 
     final MergeState.CheckAbort checkAbort = new MergeState.CheckAbort(merge, directory);
-    final TrackingDirectoryWrapper dirWrapper = new TrackingDirectoryWrapper(directory);
+    final RateLimiter rateLimiter = merge.getRateLimiter();
+    final Directory mergeDirectory;
+    if (rateLimiter != null) {
+      final RateLimitedDirectoryWrapper rateLimitedDirectory = new RateLimitedDirectoryWrapper(directory);
+      rateLimitedDirectory.setRateLimiter(rateLimiter, IOContext.Context.MERGE);
+      mergeDirectory = rateLimitedDirectory;
+    } else {
+      mergeDirectory = directory;
+    }
+    final TrackingDirectoryWrapper dirWrapper = new TrackingDirectoryWrapper(mergeDirectory);
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "merging " + segString(merge.segments));
@@ -3980,7 +4053,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       final SegmentMerger merger = new SegmentMerger(merge.getMergeReaders(),
           merge.info.info, infoStream, dirWrapper,
           checkAbort, globalFieldNumberMap, 
-          context, config.getCheckIntegrityAtMerge());
+          context, config.getCheckIntegrityAtMerge(), mergeScheduler.getMergePartsExecutor());
 
       merge.checkAborted(directory);
 
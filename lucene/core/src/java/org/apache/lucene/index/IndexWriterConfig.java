@@ -18,9 +18,12 @@ package org.apache.lucene.index;
  */
 
 import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document; // javadocs
+import org.apache.lucene.document.Field; // javadocs
 import org.apache.lucene.index.DocumentsWriterPerThread.IndexingChain;
 import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
 import org.apache.lucene.search.similarities.Similarity;
@@ -98,6 +101,12 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
 
   /** Default value is 1945. Change using {@link #setRAMPerThreadHardLimitMB(int)} */
   public static final int DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB = 1945;
+
+  /** Default value is 0 (recycling disabled). Change using {@link #setMaxPooledBufferMB(double)} */
+  public static final double DEFAULT_MAX_POOLED_BUFFER_MB = 0.0;
+
+  /** Default value is 0 (sparse updates disabled). Change using {@link #setMaxSparseUpdatesRatio(double)} */
+  public static final double DEFAULT_MAX_SPARSE_UPDATES_RATIO = 0.0;
   
   /** The maximum number of simultaneous threads that may be
    *  indexing documents at once in IndexWriter; if more
@@ -420,6 +429,137 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
   public int getRAMPerThreadHardLimitMB() {
     return perThreadHardLimitMB;
   }
+
+  /**
+   * Expert: Sets the {@link ExecutorService} used to flush segments
+   * concurrently. When set, norms and doc values of a flushing
+   * {@link DocumentsWriterPerThread} are written by tasks of this executor
+   * while the flushing thread writes stored fields and postings, and the
+   * terms of the different fields are sorted in parallel. This reduces the
+   * time it takes to flush large RAM buffers, and thus the time that
+   * indexing threads may be stalled waiting for flushes. Buffered deletes and
+   * updates are also resolved against the segments of the index concurrently
+   * by this executor. By default this is null and segments are flushed, and
+   * deletes resolved, on the calling thread.
+   * <p>
+   * <b>NOTE</b>: the flushing thread waits for the tasks it submitted, so
+   * don't index from threads of this executor. The executor is not shut down
+   * by {@link IndexWriter}.
+   * <p>
+   * Only takes effect when IndexWriter is first created.
+   */
+  public IndexWriterConfig setFlushExecutor(ExecutorService flushExecutor) {
+    this.flushExecutor = flushExecutor;
+    return this;
+  }
+
+  @Override
+  public ExecutorService getFlushExecutor() {
+    return flushExecutor;
+  }
+
+  /**
+   * Expert: Sets the {@link ExecutorService} used to analyze blocks of
+   * documents concurrently. When set, the tokenized fields of the documents
+   * passed to {@link IndexWriter#addDocuments(Iterable)} and
+   * {@link IndexWriter#updateDocuments(Term, Iterable)} are analyzed by tasks
+   * of this executor, a bounded number of documents ahead of the indexing
+   * thread, which only inverts the resulting tokens. This allows a single
+   * thread that indexes large blocks of documents to use several cores for
+   * analysis, at the cost of the memory used to buffer the tokens of the
+   * documents that are analyzed ahead. Documents that are added one at a time
+   * are still analyzed on the indexing thread. By default this is null and
+   * all documents are analyzed on the indexing thread.
+   * <p>
+   * <b>NOTE</b>: the token streams of the fields are consumed on threads of
+   * this executor, so they must not depend on the indexing thread. The
+   * indexing thread waits for the tasks it submitted, so don't index from
+   * threads of this executor. The executor is not shut down by
+   * {@link IndexWriter}.
+   * <p>
+   * <b>NOTE</b>: up to 256 documents are pulled from the iterable and
+   * analyzed before the previous ones are indexed, so the iterable must
+   * return distinct {@link Document} and {@link Field} instances, whose values
+   * don't change until the call to {@link IndexWriter#addDocuments(Iterable)}
+   * returns. Reusing a document or a field and changing its value on every
+   * call to {@link java.util.Iterator#next()}, which is fine without an
+   * analysis executor, would index wrong values. Returning the same document
+   * instance again within 256 documents throws an
+   * {@link IllegalArgumentException}, but reused fields can't be detected.
+   * <p>
+   * Only takes effect when IndexWriter is first created.
+   */
+  public IndexWriterConfig setAnalysisExecutor(ExecutorService analysisExecutor) {
+    this.analysisExecutor = analysisExecutor;
+    return this;
+  }
+
+  @Override
+  public ExecutorService getAnalysisExecutor() {
+    return analysisExecutor;
+  }
+
+  /**
+   * Expert: Sets the maximum amount of memory that each
+   * {@link DocumentsWriterPerThread} keeps in order to recycle the byte blocks,
+   * and the int blocks, that buffer postings and term vectors. Term vectors
+   * are buffered one document at a time, so without recycling every document
+   * with term vectors allocates new blocks, which become garbage as soon as
+   * the document is indexed. Recycled blocks are zero-filled before they are
+   * reused.
+   * <p>
+   * Recycled blocks count towards the RAM buffer (see
+   * {@link #setRAMBufferSizeMB(double)}) and are released when the segment is
+   * flushed. Set this to 0 to disable recycling, which is the default.
+   * <p>
+   * Only takes effect when IndexWriter is first created.
+   *
+   * @see #DEFAULT_MAX_POOLED_BUFFER_MB
+   */
+  public IndexWriterConfig setMaxPooledBufferMB(double maxPooledBufferMB) {
+    if (maxPooledBufferMB < 0 || Double.isNaN(maxPooledBufferMB) || Double.isInfinite(maxPooledBufferMB)) {
+      throw new IllegalArgumentException("maxPooledBufferMB must be a finite number >= 0, got " + maxPooledBufferMB);
+    }
+    this.maxPooledBufferMB = maxPooledBufferMB;
+    return this;
+  }
+
+  @Override
+  public double getMaxPooledBufferMB() {
+    return maxPooledBufferMB;
+  }
+
+  /**
+   * Expert: Sets the maximum ratio of the documents of a segment that
+   * numeric doc values updates may be stored sparsely for. By default, when
+   * updates of a numeric doc values field are written, the field is rewritten
+   * with the values of all documents of the segment. With sparse updates, only
+   * the updated documents and their values are written, in a new generation
+   * that is stacked on top of the last complete generation of the field and
+   * that readers merge with it on the fly. Each sparse generation also holds
+   * the updates of the previous one, so that there is at most one per field.
+   * Once the updated documents exceed this ratio of the documents of the
+   * segment, the field is rewritten entirely again.
+   * <p>
+   * This makes frequent updates of a small subset of the documents much
+   * cheaper to write, at the cost of a binary search over the updated
+   * documents for every value that is read. Set this to 0 to disable sparse
+   * updates, which is the default.
+   *
+   * @see #DEFAULT_MAX_SPARSE_UPDATES_RATIO
+   */
+  public IndexWriterConfig setMaxSparseUpdatesRatio(double maxSparseUpdatesRatio) {
+    if (maxSparseUpdatesRatio < 0 || maxSparseUpdatesRatio > 1 || Double.isNaN(maxSparseUpdatesRatio)) {
+      throw new IllegalArgumentException("maxSparseUpdatesRatio must be between 0 and 1, got " + maxSparseUpdatesRatio);
+    }
+    this.maxSparseUpdatesRatio = maxSparseUpdatesRatio;
+    return this;
+  }
+
+  @Override
+  public double getMaxSparseUpdatesRatio() {
+    return maxSparseUpdatesRatio;
+  }
   
   @Override
   FlushPolicy getFlushPolicy() {
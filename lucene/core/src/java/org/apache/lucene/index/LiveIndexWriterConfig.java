@@ -17,6 +17,8 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.index.DocumentsWriterPerThread.IndexingChain;
@@ -91,6 +93,22 @@ public class LiveIndexWriterConfig {
    *  segment, after which the segment is forced to flush. */
   protected volatile int perThreadHardLimitMB;
 
+  /** {@link ExecutorService} used to run parts of a segment flush
+   *  concurrently, or null to flush on the calling thread. */
+  protected volatile ExecutorService flushExecutor;
+
+  /** {@link ExecutorService} used to analyze blocks of documents
+   *  concurrently, or null to analyze on the indexing thread. */
+  protected volatile ExecutorService analysisExecutor;
+
+  /** Maximum amount of memory that each DWPT may keep in order to recycle
+   *  indexing buffer blocks, or 0 to disable recycling. */
+  protected volatile double maxPooledBufferMB;
+
+  /** Maximum ratio of the documents of a segment that numeric doc values
+   *  updates may be stored sparsely for, or 0 to always rewrite the field. */
+  protected volatile double maxSparseUpdatesRatio;
+
   /** True if segment flushes should use compound file format */
   protected volatile boolean useCompoundFile = IndexWriterConfig.DEFAULT_USE_COMPOUND_FILE_SYSTEM;
   
@@ -125,6 +143,8 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new DocumentsWriterPerThreadPool(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    maxPooledBufferMB = IndexWriterConfig.DEFAULT_MAX_POOLED_BUFFER_MB;
+    maxSparseUpdatesRatio = IndexWriterConfig.DEFAULT_MAX_SPARSE_UPDATES_RATIO;
   }
   
   /** Returns the default analyzer to use for indexing documents. */
@@ -420,6 +440,47 @@ public class LiveIndexWriterConfig {
   public int getRAMPerThreadHardLimitMB() {
     return perThreadHardLimitMB;
   }
+
+  /**
+   * Returns the {@link ExecutorService} used to flush segments concurrently,
+   * or null if segments are flushed on the calling thread.
+   *
+   * @see IndexWriterConfig#setFlushExecutor(ExecutorService)
+   */
+  public ExecutorService getFlushExecutor() {
+    return flushExecutor;
+  }
+
+  /**
+   * Returns the {@link ExecutorService} used to analyze blocks of documents
+   * concurrently, or null if documents are analyzed on the indexing thread.
+   *
+   * @see IndexWriterConfig#setAnalysisExecutor(ExecutorService)
+   */
+  public ExecutorService getAnalysisExecutor() {
+    return analysisExecutor;
+  }
+
+  /**
+   * Returns the maximum amount of memory that each indexing thread keeps in
+   * order to recycle indexing buffers, or 0 if recycling is disabled.
+   *
+   * @see IndexWriterConfig#setMaxPooledBufferMB(double)
+   */
+  public double getMaxPooledBufferMB() {
+    return maxPooledBufferMB;
+  }
+
+  /**
+   * Returns the maximum ratio of the documents of a segment that numeric doc
+   * values updates are stored sparsely for, or 0 if sparse updates are
+   * disabled.
+   *
+   * @see IndexWriterConfig#setMaxSparseUpdatesRatio(double)
+   */
+  public double getMaxSparseUpdatesRatio() {
+    return maxSparseUpdatesRatio;
+  }
   
   /**
    * @see IndexWriterConfig#setFlushPolicy(FlushPolicy)
@@ -512,6 +573,10 @@ public class LiveIndexWriterConfig {
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
+    sb.append("flushExecutor=").append(getFlushExecutor()).append("\n");
+    sb.append("analysisExecutor=").append(getAnalysisExecutor()).append("\n");
+    sb.append("maxPooledBufferMB=").append(getMaxPooledBufferMB()).append("\n");
+    sb.append("maxSparseUpdatesRatio=").append(getMaxSparseUpdatesRatio()).append("\n");
     sb.append("useCompoundFile=").append(getUseCompoundFile()).append("\n");
     sb.append("checkIntegrityAtMerge=").append(getCheckIntegrityAtMerge()).append("\n");
     sb.append("commitOnClose=").append(getCommitOnClose()).append("\n");
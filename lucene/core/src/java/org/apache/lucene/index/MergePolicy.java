@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MergeInfo;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.FixedBitSet;
 
 import java.io.IOException;
@@ -112,6 +113,7 @@ public abstract class MergePolicy {
     boolean aborted;
     Throwable error;
     boolean paused;
+    private volatile RateLimiter rateLimiter;
 
     /** Sole constructor.
      * @param segments List of {@link SegmentCommitInfo}s
@@ -233,6 +235,24 @@ public abstract class MergePolicy {
       return paused;
     }
 
+    /** Set the {@link RateLimiter} that limits the rate at which this merge
+     *  writes files, or null (the default) to not throttle this merge. This
+     *  must be called before the merge starts, but the rate of the limiter
+     *  may be changed while the merge is running (for example
+     *  {@link ConcurrentMergeScheduler} does so when its automatic IO
+     *  throttle is enabled). */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+      this.rateLimiter = rateLimiter;
+    }
+
+    /** Returns the {@link RateLimiter} of this merge, or null if it is not
+     *  throttled.
+     *
+     *  @see #setRateLimiter(RateLimiter) */
+    public RateLimiter getRateLimiter() {
+      return rateLimiter;
+    }
+
     /** Returns a readable description of the current merge
      *  state. */
     public String segString(Directory dir) {
@@ -446,6 +466,20 @@ public abstract class MergePolicy {
   public abstract MergeSpecification findForcedDeletesMerges(
       SegmentInfos segmentInfos, IndexWriter writer) throws IOException;
 
+  /**
+   * Expert: called by the thread that flushes a new segment, once the files
+   * of the segment have been written but before its {@link SegmentInfo} is,
+   * so that information about the segment can be recorded in its
+   * {@link SegmentInfo#getDiagnostics() diagnostics} instead of being
+   * computed when merges are selected, under the {@link IndexWriter} lock.
+   * The given state can be used to open the files of the segment. The default
+   * implementation does nothing.
+   *
+   * @lucene.experimental
+   */
+  public void segmentFlushed(SegmentReadState state) throws IOException {
+  }
+
   /**
    * Returns true if a new segment (regardless of its origin) should use the
    * compound file format. The default implementation returns <code>true</code>
@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 /** <p>Expert: {@link IndexWriter} uses an instance
  *  implementing this interface to execute the merges
@@ -43,6 +44,16 @@ public abstract class MergeScheduler implements Closeable {
    * */
   public abstract void merge(IndexWriter writer, MergeTrigger trigger, boolean newMergesFound) throws IOException;
 
+  /** Returns the {@link ExecutorService} that {@link IndexWriter} uses to
+   *  merge the stored fields, postings, doc values, norms and term vectors of
+   *  a segment concurrently, or null to merge them one after the other on the
+   *  thread that runs the merge. The thread that runs the merge waits for the
+   *  tasks it submitted, so they must not run merges themselves. The default
+   *  implementation returns null. */
+  public ExecutorService getMergePartsExecutor() {
+    return null;
+  }
+
   /** Close this MergeScheduler. */
   @Override
   public abstract void close() throws IOException;
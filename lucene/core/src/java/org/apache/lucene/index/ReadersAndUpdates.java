@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -40,6 +41,7 @@ import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.MutableBits;
+import org.apache.lucene.util.Version;
 
 // Used by IndexWriter to hold open SegmentReaders (for
 // searching or merging), plus pending deletes and updates,
@@ -127,7 +129,7 @@ class ReadersAndUpdates {
   }
 
   /** Returns a {@link SegmentReader}. */
-  public SegmentReader getReader(IOContext context) throws IOException {
+  public synchronized SegmentReader getReader(IOContext context) throws IOException {
     if (reader == null) {
       // We steal returned ref:
       reader = new SegmentReader(info, context);
@@ -148,7 +150,7 @@ class ReadersAndUpdates {
 
   public synchronized boolean delete(int docID) {
     assert liveDocs != null;
-    assert Thread.holdsLock(writer);
+    assert Thread.holdsLock(writer) || writer.bufferedUpdatesStream.isResolvingConcurrently();
     assert docID >= 0 && docID < liveDocs.length() : "out of bounds: docid=" + docID + " liveDocsLength=" + liveDocs.length() + " seg=" + info.info.name + " docCount=" + info.info.getDocCount();
     assert !liveDocsShared;
     final boolean didDelete = liveDocs.get(docID);
@@ -198,7 +200,7 @@ class ReadersAndUpdates {
   }
 
   public synchronized void initWritableLiveDocs() throws IOException {
-    assert Thread.holdsLock(writer);
+    assert Thread.holdsLock(writer) || writer.bufferedUpdatesStream.isResolvingConcurrently();
     assert info.info.getDocCount() > 0;
     //System.out.println("initWritableLivedocs seg=" + info + " liveDocs=" + liveDocs + " shared=" + shared);
     if (liveDocsShared) {
@@ -218,7 +220,7 @@ class ReadersAndUpdates {
   }
 
   public synchronized Bits getLiveDocs() {
-    assert Thread.holdsLock(writer);
+    assert Thread.holdsLock(writer) || writer.bufferedUpdatesStream.isResolvingConcurrently();
     return liveDocs;
   }
 
@@ -305,11 +307,40 @@ class ReadersAndUpdates {
       final NumericDocValuesFieldUpdates fieldUpdates = e.getValue();
 
       final long nextDocValuesGen = info.getNextDocValuesGen();
+      final FieldInfo fieldInfo = infos.fieldInfo(field);
+      assert fieldInfo != null;
+
+      final FieldInfo currentInfo = reader.getFieldInfos().fieldInfo(field);
+      final SparseNumericDocValuesUpdates sparseUpdates = newSparseUpdates(currentInfo, fieldUpdates, reader);
+      if (sparseUpdates != null) {
+        final String currentBaseGen = currentInfo.getAttribute(SparseNumericDocValuesUpdates.BASE_GEN_KEY);
+        final long baseGen = currentBaseGen == null ? currentInfo.getDocValuesGen() : Long.parseLong(currentBaseGen);
+        fieldInfo.setDocValuesGen(nextDocValuesGen);
+        fieldInfo.putAttribute(SparseNumericDocValuesUpdates.BASE_GEN_KEY, Long.toString(baseGen));
+        final long estUpdatesSize = sparseUpdates.ramBytesUsed();
+        final IOContext updatesContext = new IOContext(new FlushInfo(sparseUpdates.size(), estUpdatesSize));
+        final TrackingDirectoryWrapper trackingDir = new TrackingDirectoryWrapper(dir);
+        sparseUpdates.write(trackingDir, info.info, nextDocValuesGen, updatesContext);
+        info.advanceDocValuesGen();
+        // the field also needs the files of its base generation, but not
+        // those of the previous sparse generation
+        final Set<String> files = new HashSet<>(trackingDir.getCreatedFiles());
+        final Set<String> currentFiles = info.getDocValuesUpdatesFiles().get(fieldInfo.number);
+        if (baseGen != -1 && currentFiles != null) {
+          for (String file : currentFiles) {
+            if (!IndexFileNames.matchesExtension(file, SparseNumericDocValuesUpdates.EXTENSION)) {
+              files.add(file);
+            }
+          }
+        }
+        assert !fieldFiles.containsKey(fieldInfo.number);
+        fieldFiles.put(fieldInfo.number, files);
+        continue;
+      }
+
       final String segmentSuffix = Long.toString(nextDocValuesGen, Character.MAX_RADIX);
       final long estUpdatesSize = fieldUpdates.ramBytesPerDoc() * info.info.getDocCount();
       final IOContext updatesContext = new IOContext(new FlushInfo(info.info.getDocCount(), estUpdatesSize));
-      final FieldInfo fieldInfo = infos.fieldInfo(field);
-      assert fieldInfo != null;
       fieldInfo.setDocValuesGen(nextDocValuesGen);
       final FieldInfos fieldInfos = new FieldInfos(new FieldInfo[] { fieldInfo });
       // separately also track which files were created for this gen
@@ -370,6 +401,30 @@ class ReadersAndUpdates {
     }
   }
 
+  /* Returns the updates of the given field merged with its current sparse
+   * updates if they may be written sparsely, or null if the field must be
+   * rewritten entirely. */
+  @SuppressWarnings("deprecation")
+  private SparseNumericDocValuesUpdates newSparseUpdates(FieldInfo currentInfo, NumericDocValuesFieldUpdates fieldUpdates,
+      SegmentReader reader) throws IOException {
+    final double maxRatio = writer.getConfig().getMaxSparseUpdatesRatio();
+    final Version version = info.info.getVersion();
+    if (maxRatio == 0 || version == null || !version.onOrAfter(Version.LUCENE_4_9_0)
+        || currentInfo == null || reader.getNumericDocValues(currentInfo.name) == null) {
+      // no values to stack the updates on
+      return null;
+    }
+    SparseNumericDocValuesUpdates current = null;
+    if (currentInfo.getAttribute(SparseNumericDocValuesUpdates.BASE_GEN_KEY) != null) {
+      current = SparseNumericDocValuesUpdates.read(info.info.dir, info.info, currentInfo.getDocValuesGen(), IOContext.READONCE);
+    }
+    final SparseNumericDocValuesUpdates updates = SparseNumericDocValuesUpdates.merge(current, fieldUpdates);
+    if (updates == null || updates.size() > maxRatio * info.info.getDocCount()) {
+      return null;
+    }
+    return updates;
+  }
+
   @SuppressWarnings("synthetic-access")
   private void handleBinaryDVUpdates(FieldInfos infos, Map<String,BinaryDocValuesFieldUpdates> updates, 
       TrackingDirectoryWrapper dir, DocValuesFormat dvFormat, final SegmentReader reader, Map<Integer,Set<String>> fieldFiles) throws IOException {
@@ -492,6 +547,11 @@ class ReadersAndUpdates {
           // copy the stuff FieldInfos.Builder doesn't copy
           if (fi.attributes() != null) {
             for (Entry<String,String> e : fi.attributes().entrySet()) {
+              if (e.getKey().equals(SparseNumericDocValuesUpdates.BASE_GEN_KEY) && dvUpdates.numericDVUpdates.containsKey(fi.name)) {
+                // the updated field gets a new generation, which is sparse
+                // again only if handleNumericDVUpdates says so
+                continue;
+              }
               clone.putAttribute(e.getKey(), e.getValue());
             }
           }
@@ -74,6 +74,31 @@ final class SegmentDocValues {
     return dvp.get();
   }
   
+  /** Returns the {@link DocValuesProducer} for the given sparse generation,
+   *  which is stacked on top of the producer of its base generation. The
+   *  caller must hold a reference to the base producer as long as it uses
+   *  the returned producer. */
+  synchronized DocValuesProducer getSparseUpdatesProducer(final long gen, SegmentCommitInfo si, DocValuesProducer base) throws IOException {
+    RefCount<DocValuesProducer> dvp = genDVProducers.get(gen);
+    if (dvp == null) {
+      final SparseNumericDocValuesUpdates updates = SparseNumericDocValuesUpdates.read(si.info.dir, si.info, gen, IOContext.READONCE);
+      dvp = new RefCount<DocValuesProducer>(updates.newProducer(base)) {
+        @SuppressWarnings("synthetic-access")
+        @Override
+        protected void release() throws IOException {
+          object.close();
+          synchronized (SegmentDocValues.this) {
+            genDVProducers.remove(gen);
+          }
+        }
+      };
+      genDVProducers.put(gen, dvp);
+    } else {
+      dvp.incRef();
+    }
+    return dvp.get();
+  }
+
   /**
    * Decrement the reference count of the given {@link DocValuesProducer}
    * generations. 
@@ -25,6 +25,7 @@ import java.util.Set;
 import java.util.regex.Matcher;
 
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.Constants;
@@ -48,6 +49,10 @@ public final class SegmentInfo {
    *  norms, deletions). */
   public static final int YES = 1;          // e.g. have norms; have deletes;
 
+  /** Key of the {@link #getDiagnostics() diagnostic} that records the
+   *  {@link Sort} that the documents of this segment are sorted by. */
+  public static final String SORT_DIAGNOSTIC = "sorter";
+
   /** Unique segment name in the directory. */
   public final String name;
 
@@ -79,6 +84,20 @@ public final class SegmentInfo {
     return diagnostics;
   }
 
+  /** Records that the documents of this segment are sorted according to
+   *  <code>sort</code>. This is typically called by merge policies which
+   *  reorder documents while merging. */
+  public void setSortedBy(Sort sort) {
+    diagnostics.put(SORT_DIAGNOSTIC, sort.toString());
+  }
+
+  /** Returns true if the documents of this segment are sorted according to
+   *  <code>sort</code>. Sorts are compared through their
+   *  {@link Sort#toString() string representation}. */
+  public boolean isSortedBy(Sort sort) {
+    return diagnostics != null && sort.toString().equals(diagnostics.get(SORT_DIAGNOSTIC));
+  }
+
   /**
    * Construct a new complete SegmentInfo instance from input.
    * <p>Note: this is public only to allow access from
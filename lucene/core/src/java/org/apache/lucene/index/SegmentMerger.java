@@ -20,6 +20,9 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.DocValuesConsumer;
@@ -51,9 +54,20 @@ final class SegmentMerger {
   private final MergeState mergeState;
   private final FieldInfos.Builder fieldInfosBuilder;
 
+  // merges the different parts of the segment concurrently, or null
+  private final ExecutorService executor;
+
   // note, just like in codec apis Directory 'dir' is NOT the same as segmentInfo.dir!!
   SegmentMerger(List<AtomicReader> readers, SegmentInfo segmentInfo, InfoStream infoStream, Directory dir,
                 MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context, boolean validate) throws IOException {
+    this(readers, segmentInfo, infoStream, dir, checkAbort, fieldNumbers, context, validate, null);
+  }
+
+  /** Same as above, but stored fields, postings, doc values, norms and term
+   *  vectors are merged concurrently if <code>executor</code> is not null. */
+  SegmentMerger(List<AtomicReader> readers, SegmentInfo segmentInfo, InfoStream infoStream, Directory dir,
+                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context, boolean validate,
+                ExecutorService executor) throws IOException {
     // validate incoming readers
     if (validate) {
       for (AtomicReader reader : readers) {
@@ -65,6 +79,7 @@ final class SegmentMerger {
     this.codec = segmentInfo.getCodec();
     this.context = context;
     this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
+    this.executor = executor;
     mergeState.segmentInfo.setDocCount(setDocMaps());
   }
   
@@ -91,67 +106,101 @@ final class SegmentMerger {
     // threads.
     mergeFieldInfos();
     setMatchingSegmentReaders();
-    long t0 = 0;
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
-    int numMerged = mergeFields();
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge stored fields [" + numMerged + " docs]");
-    }
-    assert numMerged == mergeState.segmentInfo.getDocCount();
 
     final SegmentWriteState segmentWriteState = new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
                                                                       mergeState.fieldInfos, null, context);
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
-    mergeTerms(segmentWriteState);
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge postings [" + numMerged + " docs]");
-    }
-
-    if (mergeState.infoStream.isEnabled("SM")) {
-      t0 = System.nanoTime();
-    }
+    final List<MergePart> parts = new ArrayList<>();
+    parts.add(new MergePart("stored fields") {
+      @Override
+      void doMerge() throws IOException {
+        int numMerged = mergeFields();
+        assert numMerged == mergeState.segmentInfo.getDocCount();
+      }
+    });
+    parts.add(new MergePart("postings") {
+      @Override
+      void doMerge() throws IOException {
+        mergeTerms(segmentWriteState);
+      }
+    });
     if (mergeState.fieldInfos.hasDocValues()) {
-      mergeDocValues(segmentWriteState);
-    }
-    if (mergeState.infoStream.isEnabled("SM")) {
-      long t1 = System.nanoTime();
-      mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge doc values [" + numMerged + " docs]");
+      parts.add(new MergePart("doc values") {
+        @Override
+        void doMerge() throws IOException {
+          mergeDocValues(segmentWriteState);
+        }
+      });
     }
-    
     if (mergeState.fieldInfos.hasNorms()) {
-      if (mergeState.infoStream.isEnabled("SM")) {
-        t0 = System.nanoTime();
+      parts.add(new MergePart("norms") {
+        @Override
+        void doMerge() throws IOException {
+          mergeNorms(segmentWriteState);
+        }
+      });
+    }
+    if (mergeState.fieldInfos.hasVectors()) {
+      parts.add(new MergePart("vectors") {
+        @Override
+        void doMerge() throws IOException {
+          int numMerged = mergeVectors();
+          assert numMerged == mergeState.segmentInfo.getDocCount();
+        }
+      });
+    }
+
+    if (executor == null) {
+      for (MergePart part : parts) {
+        part.call();
       }
-      mergeNorms(segmentWriteState);
-      if (mergeState.infoStream.isEnabled("SM")) {
-        long t1 = System.nanoTime();
-        mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge norms [" + numMerged + " docs]");
+    } else {
+      // each part has its own files and only reads the merge state, so they
+      // can be merged concurrently: the merging thread takes care of stored
+      // fields while the other parts are merged by the executor
+      final List<Future<?>> tasks = new ArrayList<>();
+      boolean success = false;
+      try {
+        for (MergePart part : parts.subList(1, parts.size())) {
+          tasks.add(executor.submit(part));
+        }
+        parts.get(0).call();
+        success = true;
+      } finally {
+        DocumentsWriterPerThread.waitFor(tasks, success);
       }
     }
 
-    if (mergeState.fieldInfos.hasVectors()) {
+    // write the merged infos
+    FieldInfosWriter fieldInfosWriter = codec.fieldInfosFormat().getFieldInfosWriter();
+    fieldInfosWriter.write(directory, mergeState.segmentInfo.name, "", mergeState.fieldInfos, context);
+
+    return mergeState;
+  }
+
+  /** One part of the merge, which writes its own files. */
+  private abstract class MergePart implements Callable<Void> {
+
+    private final String name;
+
+    MergePart(String name) {
+      this.name = name;
+    }
+
+    abstract void doMerge() throws IOException;
+
+    @Override
+    public Void call() throws IOException {
+      long t0 = 0;
       if (mergeState.infoStream.isEnabled("SM")) {
         t0 = System.nanoTime();
       }
-      numMerged = mergeVectors();
+      doMerge();
       if (mergeState.infoStream.isEnabled("SM")) {
         long t1 = System.nanoTime();
-        mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge vectors [" + numMerged + " docs]");
+        mergeState.infoStream.message("SM", ((t1-t0)/1000000) + " msec to merge " + name + " [" + mergeState.segmentInfo.getDocCount() + " docs]");
       }
-      assert numMerged == mergeState.segmentInfo.getDocCount();
+      return null;
     }
-    
-    // write the merged infos
-    FieldInfosWriter fieldInfosWriter = codec.fieldInfosFormat().getFieldInfosWriter();
-    fieldInfosWriter.write(directory, mergeState.segmentInfo.name, "", mergeState.fieldInfos, context);
-
-    return mergeState;
   }
 
   private void mergeDocValues(SegmentWriteState segmentWriteState) throws IOException {
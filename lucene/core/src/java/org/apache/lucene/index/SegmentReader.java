@@ -206,24 +206,34 @@ public final class SegmentReader extends AtomicReader implements Accountable {
       for (FieldInfo fi : fieldInfos) {
         if (!fi.hasDocValues()) continue;
         long docValuesGen = fi.getDocValuesGen();
-        if (docValuesGen == -1) {
+        // sparse updates are stacked on top of the values of their base generation
+        final String sparseBaseGen = fi.getAttribute(SparseNumericDocValuesUpdates.BASE_GEN_KEY);
+        final long codecGen = sparseBaseGen == null ? docValuesGen : Long.parseLong(sparseBaseGen);
+        DocValuesProducer dvp;
+        if (codecGen == -1) {
           if (baseProducer == null) {
 //        System.out.println("[" + Thread.currentThread().getName() + "] SR.initDocValuesProducers: segInfo=" + si + "; gen=" + docValuesGen + "; field=" + fi.name);
             // the base producer gets all the fields, so the Codec can validate properly
-            baseProducer = segDocValues.getDocValuesProducer(docValuesGen, si, IOContext.READ, dir, dvFormat, fieldInfos);
-            dvGens.add(docValuesGen);
+            baseProducer = segDocValues.getDocValuesProducer(codecGen, si, IOContext.READ, dir, dvFormat, fieldInfos);
+            dvGens.add(codecGen);
             dvProducers.add(baseProducer);
           }
 //        System.out.println("[" + Thread.currentThread().getName() + "] SR.initDocValuesProducers: segInfo=" + si + "; gen=" + docValuesGen + "; field=" + fi.name);
-          dvProducersByField.put(fi.name, baseProducer);
+          dvp = baseProducer;
         } else {
-          assert !dvGens.contains(docValuesGen);
+          assert !dvGens.contains(codecGen);
 //        System.out.println("[" + Thread.currentThread().getName() + "] SR.initDocValuesProducers: segInfo=" + si + "; gen=" + docValuesGen + "; field=" + fi.name);
-          final DocValuesProducer dvp = segDocValues.getDocValuesProducer(docValuesGen, si, IOContext.READ, dir, dvFormat, new FieldInfos(new FieldInfo[] { fi }));
+          dvp = segDocValues.getDocValuesProducer(codecGen, si, IOContext.READ, dir, dvFormat, new FieldInfos(new FieldInfo[] { fi }));
+          dvGens.add(codecGen);
+          dvProducers.add(dvp);
+        }
+        if (sparseBaseGen != null) {
+          assert !dvGens.contains(docValuesGen);
+          dvp = segDocValues.getSparseUpdatesProducer(docValuesGen, si, dvp);
           dvGens.add(docValuesGen);
           dvProducers.add(dvp);
-          dvProducersByField.put(fi.name, dvp);
         }
+        dvProducersByField.put(fi.name, dvp);
       }
     } else {
       // For pre-4.9 indexes, especially with doc-values updates, multiple
@@ -44,38 +44,16 @@ public class SimpleMergedSegmentWarmer extends IndexReaderWarmer {
     int docValuesCount = 0;
     int normsCount = 0;
     for (FieldInfo info : reader.getFieldInfos()) {
+      warmField(reader, info);
       if (info.isIndexed()) {
-        reader.terms(info.name); 
         indexedCount++;
-        
         if (info.hasNorms()) {
-          reader.getNormValues(info.name);
           normsCount++;
         }
       }
-      
       if (info.hasDocValues()) {
-        switch(info.getDocValuesType()) {
-          case NUMERIC:
-            reader.getNumericDocValues(info.name);
-            break;
-          case BINARY:
-            reader.getBinaryDocValues(info.name);
-            break;
-          case SORTED:
-            reader.getSortedDocValues(info.name);
-            break;
-          case SORTED_NUMERIC:
-            reader.getSortedNumericDocValues(info.name);
-            break;
-          case SORTED_SET:
-            reader.getSortedSetDocValues(info.name);
-            break;
-          default:
-            assert false; // unknown dv type
-        }
         docValuesCount++;
-      }   
+      }
     }
     
     reader.document(0);
@@ -90,4 +68,52 @@ public class SimpleMergedSegmentWarmer extends IndexReaderWarmer {
              ", time=" + (System.currentTimeMillis() - startTime));
     }
   }
+
+  /** Initializes the terms, norms and doc values of a single field, and
+   *  passes them to the <code>warm*</code> methods below. */
+  void warmField(AtomicReader reader, FieldInfo info) throws IOException {
+    if (info.isIndexed()) {
+      warmTerms(info.name, reader.terms(info.name));
+      
+      if (info.hasNorms()) {
+        warmNumeric(reader, reader.getNormValues(info.name));
+      }
+    }
+    
+    if (info.hasDocValues()) {
+      switch(info.getDocValuesType()) {
+        case NUMERIC:
+          warmNumeric(reader, reader.getNumericDocValues(info.name));
+          break;
+        case BINARY:
+          warmBinary(reader, reader.getBinaryDocValues(info.name));
+          break;
+        case SORTED:
+          warmSorted(reader, reader.getSortedDocValues(info.name));
+          break;
+        case SORTED_NUMERIC:
+          warmSortedNumeric(reader, reader.getSortedNumericDocValues(info.name));
+          break;
+        case SORTED_SET:
+          warmSortedSet(reader, reader.getSortedSetDocValues(info.name));
+          break;
+        default:
+          assert false; // unknown dv type
+      }
+    }
+  }
+
+  // these are no-ops: initializing the data structures is enough
+
+  void warmTerms(String field, Terms terms) throws IOException {}
+
+  void warmNumeric(AtomicReader reader, NumericDocValues values) {}
+
+  void warmBinary(AtomicReader reader, BinaryDocValues values) {}
+
+  void warmSorted(AtomicReader reader, SortedDocValues values) {}
+
+  void warmSortedNumeric(AtomicReader reader, SortedNumericDocValues values) {}
+
+  void warmSortedSet(AtomicReader reader, SortedSetDocValues values) {}
 }
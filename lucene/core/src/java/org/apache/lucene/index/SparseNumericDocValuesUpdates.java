@@ -0,0 +1,259 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Numeric doc values updates of a single field of a segment, which are
+ * stored sparsely: only the updated documents and their values are written,
+ * in a doc values generation which is stacked on top of a base generation
+ * that has the values of all documents. The base generation is recorded in
+ * the {@link #BASE_GEN_KEY} attribute of the {@link FieldInfo}, and readers
+ * merge both generations when values are read.
+ * <p>
+ * A sparse generation holds all updates since the base generation, so that
+ * there is at most one sparse generation per field.
+ *
+ * @see IndexWriterConfig#setMaxSparseUpdatesRatio(double)
+ */
+final class SparseNumericDocValuesUpdates implements Accountable {
+
+  static final String CODEC_NAME = "SparseNumericDocValuesUpdates";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  /** Extension of sparse doc values updates files. */
+  static final String EXTENSION = "dvu";
+
+  /** {@link FieldInfo} attribute which records the base generation of
+   *  fields whose doc values generation is sparse. */
+  static final String BASE_GEN_KEY = SparseNumericDocValuesUpdates.class.getSimpleName() + ".baseGen";
+
+  private final int[] docs;
+  private final long[] values;
+
+  private SparseNumericDocValuesUpdates(int[] docs, long[] values) {
+    assert docs.length == values.length;
+    this.docs = docs;
+    this.values = values;
+  }
+
+  /** Returns the number of documents that have an updated value. */
+  int size() {
+    return docs.length;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return RamUsageEstimator.sizeOf(docs) + RamUsageEstimator.sizeOf(values);
+  }
+
+  /** Returns the name of the file of the given sparse generation. */
+  static String fileName(SegmentInfo si, long gen) {
+    return IndexFileNames.segmentFileName(si.name, Long.toString(gen, Character.MAX_RADIX), EXTENSION);
+  }
+
+  /**
+   * Merges <code>updates</code> into the <code>previous</code> sparse updates,
+   * which may be null. Returns null if <code>updates</code> unset the value
+   * of a document, which can only be represented by rewriting the field.
+   */
+  static SparseNumericDocValuesUpdates merge(SparseNumericDocValuesUpdates previous, NumericDocValuesFieldUpdates updates) {
+    final NumericDocValuesFieldUpdates.Iterator it = updates.iterator();
+    int numUpdates = 0;
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      if (it.value() == null) {
+        return null;
+      }
+      ++numUpdates;
+    }
+    it.reset();
+
+    final int[] previousDocs = previous == null ? new int[0] : previous.docs;
+    final long[] previousValues = previous == null ? new long[0] : previous.values;
+    int[] docs = new int[previousDocs.length + numUpdates];
+    long[] values = new long[docs.length];
+    int size = 0;
+    int i = 0;
+    int doc = it.nextDoc();
+    while (i < previousDocs.length || doc != DocIdSetIterator.NO_MORE_DOCS) {
+      if (doc == DocIdSetIterator.NO_MORE_DOCS || (i < previousDocs.length && previousDocs[i] < doc)) {
+        docs[size] = previousDocs[i];
+        values[size] = previousValues[i];
+        ++i;
+      } else {
+        if (i < previousDocs.length && previousDocs[i] == doc) {
+          // overridden by the new update
+          ++i;
+        }
+        docs[size] = doc;
+        values[size] = it.value();
+        doc = it.nextDoc();
+      }
+      ++size;
+    }
+    if (size < docs.length) {
+      docs = Arrays.copyOf(docs, size);
+      values = Arrays.copyOf(values, size);
+    }
+    return new SparseNumericDocValuesUpdates(docs, values);
+  }
+
+  /** Writes these updates to the file of the given sparse generation. */
+  void write(Directory dir, SegmentInfo si, long gen, IOContext context) throws IOException {
+    try (IndexOutput out = dir.createOutput(fileName(si, gen), context)) {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+      out.writeVInt(docs.length);
+      int previousDoc = -1;
+      for (int i = 0; i < docs.length; ++i) {
+        out.writeVInt(docs[i] - previousDoc);
+        out.writeZLong(values[i]);
+        previousDoc = docs[i];
+      }
+      CodecUtil.writeFooter(out);
+    }
+  }
+
+  /** Reads the updates of the given sparse generation. */
+  static SparseNumericDocValuesUpdates read(Directory dir, SegmentInfo si, long gen, IOContext context) throws IOException {
+    try (ChecksumIndexInput in = dir.openChecksumInput(fileName(si, gen), context)) {
+      CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+      final int size = in.readVInt();
+      if (size < 0 || size > si.getDocCount()) {
+        throw new CorruptIndexException("invalid number of updated documents: " + size + " (resource=" + in + ")");
+      }
+      final int[] docs = new int[size];
+      final long[] values = new long[size];
+      int doc = -1;
+      for (int i = 0; i < size; ++i) {
+        final int delta = in.readVInt();
+        doc += delta;
+        if (delta <= 0 || doc < 0 || doc >= si.getDocCount()) {
+          throw new CorruptIndexException("invalid updated document: " + doc + " (resource=" + in + ")");
+        }
+        docs[i] = doc;
+        values[i] = in.readZLong();
+      }
+      CodecUtil.checkFooter(in);
+      return new SparseNumericDocValuesUpdates(docs, values);
+    }
+  }
+
+  /** Returns a {@link DocValuesProducer} which returns the values of the
+   *  field from <code>base</code> for documents that were not updated. */
+  DocValuesProducer newProducer(final DocValuesProducer base) {
+    return new DocValuesProducer() {
+
+      @Override
+      public NumericDocValues getNumeric(FieldInfo field) throws IOException {
+        final NumericDocValues baseValues = base.getNumeric(field);
+        return new NumericDocValues() {
+          // documents are often read in order, so only search from the last updated document
+          int from = 0;
+
+          @Override
+          public long get(int docID) {
+            if (from > 0 && docID <= docs[from - 1]) {
+              from = 0;
+            }
+            final int index = Arrays.binarySearch(docs, from, docs.length, docID);
+            if (index >= 0) {
+              from = index + 1;
+              return values[index];
+            } else {
+              from = -1 - index;
+              return baseValues.get(docID);
+            }
+          }
+        };
+      }
+
+      @Override
+      public Bits getDocsWithField(FieldInfo field) throws IOException {
+        final Bits baseDocsWithField = base.getDocsWithField(field);
+        return new Bits() {
+
+          @Override
+          public boolean get(int index) {
+            return Arrays.binarySearch(docs, index) >= 0 || baseDocsWithField.get(index);
+          }
+
+          @Override
+          public int length() {
+            return baseDocsWithField.length();
+          }
+        };
+      }
+
+      @Override
+      public BinaryDocValues getBinary(FieldInfo field) throws IOException {
+        throw new IllegalStateException("sparse updates are only supported by numeric doc values, field=" + field.name);
+      }
+
+      @Override
+      public SortedDocValues getSorted(FieldInfo field) throws IOException {
+        throw new IllegalStateException("sparse updates are only supported by numeric doc values, field=" + field.name);
+      }
+
+      @Override
+      public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
+        throw new IllegalStateException("sparse updates are only supported by numeric doc values, field=" + field.name);
+      }
+
+      @Override
+      public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
+        throw new IllegalStateException("sparse updates are only supported by numeric doc values, field=" + field.name);
+      }
+
+      @Override
+      public void checkIntegrity() throws IOException {
+        // the checksum was verified when the updates were read, and the base
+        // producer is checked on its own
+      }
+
+      @Override
+      public void close() throws IOException {
+        // the base producer is ref-counted on its own by SegmentDocValues
+      }
+
+      @Override
+      public long ramBytesUsed() {
+        return SparseNumericDocValuesUpdates.this.ramBytesUsed();
+      }
+
+      @Override
+      public String toString() {
+        return "SparseNumericDocValuesUpdates(size=" + size() + ",base=" + base + ")";
+      }
+    };
+  }
+
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 import org.apache.lucene.util.ByteBlockPool;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IntBlockPool;
+import org.apache.lucene.util.RecyclingByteBlockAllocator;
 
 /** This class is passed each token produced by the analyzer
  *  on each field during indexing, and it stores these
@@ -44,6 +45,9 @@ abstract class TermsHash {
 
   final boolean trackAllocations;
 
+  // true if the allocators reuse the blocks that we recycle
+  private final boolean zeroFillBuffers;
+
   TermsHash(final DocumentsWriterPerThread docWriter, boolean trackAllocations, TermsHash nextTermsHash) {
     this.docState = docWriter.docState;
     this.trackAllocations = trackAllocations; 
@@ -51,6 +55,7 @@ abstract class TermsHash {
     this.bytesUsed = trackAllocations ? docWriter.bytesUsed : Counter.newCounter();
     intPool = new IntBlockPool(docWriter.intBlockAllocator);
     bytePool = new ByteBlockPool(docWriter.byteBlockAllocator);
+    zeroFillBuffers = docWriter.byteBlockAllocator instanceof RecyclingByteBlockAllocator;
 
     if (nextTermsHash != null) {
       // We are primary
@@ -71,9 +76,10 @@ abstract class TermsHash {
 
   // Clear all state
   void reset() {
-    // we don't reuse so we drop everything and don't fill with 0
-    intPool.reset(false, false); 
-    bytePool.reset(false, false);
+    // we don't reuse so we drop everything, slices need recycled blocks to
+    // be filled with 0
+    intPool.reset(zeroFillBuffers, false); 
+    bytePool.reset(zeroFillBuffers, false);
   }
 
   void flush(Map<String,TermsHashPerField> fieldsToFlush, final SegmentWriteState state) throws IOException {
@@ -0,0 +1,750 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocValuesDocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.Bits;
+
+/**
+ *  Merges segments of append-only time series, such as
+ *  logs, without mixing old and new data. Every document
+ *  has a timestamp, which is indexed as a {@link
+ *  NumericDocValues} field, and time is split into windows
+ *  of {@link #getWindowSize() a fixed size}. A segment
+ *  belongs to the window of its most recent timestamp, and
+ *  segments are only merged with segments of the same
+ *  window, so that old data is not rewritten again and
+ *  again when new data is merged.
+ *
+ *  <p>Within a window, segments are merged by levels of
+ *  sizes, like {@link LogMergePolicy}: a merge is started
+ *  once {@link #setSegmentsPerWindow segmentsPerWindow}
+ *  segments of about the same size exist. Once a newer
+ *  window exists, the window does not receive new data
+ *  anymore, and its segments are merged into a single one,
+ *  up to {@link #setMaxMergedSegmentMB}. Windows whose
+ *  data is older than {@link #setMaxMergeAge} are never
+ *  merged anymore, except by {@link IndexWriter#forceMerge}
+ *  and {@link IndexWriter#forceMergeDeletes}, which
+ *  never merge across windows either: {@link
+ *  IndexWriter#forceMerge(int)} leaves one segment per
+ *  window, unless the index already has few enough
+ *  segments.
+ *
+ *  <p>The minimum and maximum timestamps of a segment are
+ *  computed from its doc values by the thread that flushes
+ *  it (see {@link MergePolicy#segmentFlushed}), and recorded
+ *  in the {@link SegmentInfo#getDiagnostics() diagnostics}
+ *  of flushed segments and of the segments that this policy
+ *  merges, so that selecting merges doesn't need to read
+ *  segments. Segments which have been written without this
+ *  policy are read once, the first time they are seen.
+ *  Timestamps are also used by {@link #newOlderThanQuery(long)}
+ *  to expire data cheaply: since segments of old windows
+ *  only contain old data, deleting old documents mostly
+ *  deletes whole segments, which {@link IndexWriter} drops
+ *  without merging them.
+ *
+ *  <p><b>NOTE</b>: timestamps are expected not to be
+ *  updated, since bounds that were computed before an
+ *  update are not recomputed.
+ *
+ *  @lucene.experimental
+ */
+public class TimeSeriesMergePolicy extends MergePolicy {
+
+  /** Default noCFSRatio.  If a merge's size is >= 10% of
+   *  the index, then we disable compound file for it.
+   *  @see MergePolicy#setNoCFSRatio */
+  public static final double DEFAULT_NO_CFS_RATIO = 0.1;
+
+  // keys of the segment diagnostics that record the timestamps of merged segments
+  private static final String FIELD_DIAGNOSTIC = "timeSeriesField";
+  private static final String MIN_DIAGNOSTIC = "timeSeriesMin";
+  private static final String MAX_DIAGNOSTIC = "timeSeriesMax";
+  private static final String ALL_DOCS_DIAGNOSTIC = "timeSeriesAllDocs";
+
+  // window of the segments that have no timestamp at all
+  private static final long NO_WINDOW = Long.MIN_VALUE;
+
+  private final String field;
+  private final long windowSize;
+  private long maxMergeAge = Long.MAX_VALUE;
+  private int segmentsPerWindow = 10;
+  private int maxMergeAtOnce = 10;
+  private int maxMergeAtOnceExplicit = 30;
+  private long maxMergedSegmentBytes = 5*1024*1024*1024L;
+  private long floorSegmentBytes = 2*1024*1024L;
+  private double forceMergeDeletesPctAllowed = 10.0;
+
+  // timestamps of segments which don't record them in their diagnostics, or
+  // which have been parsed already; segments are immutable so they are only
+  // computed once
+  private final Map<SegmentInfo,Timestamps> timestamps = Collections.synchronizedMap(new WeakHashMap<SegmentInfo,Timestamps>());
+
+  /** Creates a new policy which reads timestamps from the
+   *  given {@link NumericDocValues} field, and groups
+   *  segments by windows of <code>windowSize</code>, in the
+   *  unit of the timestamps (eg. milliseconds). */
+  public TimeSeriesMergePolicy(String field, long windowSize) {
+    super(DEFAULT_NO_CFS_RATIO, MergePolicy.DEFAULT_MAX_CFS_SEGMENT_SIZE);
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be > 0 (got " + windowSize + ")");
+    }
+    this.field = field;
+    this.windowSize = windowSize;
+  }
+
+  /** Returns the field that timestamps are read from. */
+  public String getField() {
+    return field;
+  }
+
+  /** Returns the size of time windows. */
+  public long getWindowSize() {
+    return windowSize;
+  }
+
+  /** Windows which end more than this amount of time
+   *  before the most recent timestamp of the index are
+   *  never merged anymore by normal merging.  Default is
+   *  {@link Long#MAX_VALUE}, ie. all windows are merged. */
+  public TimeSeriesMergePolicy setMaxMergeAge(long v) {
+    if (v < 0) {
+      throw new IllegalArgumentException("maxMergeAge must be >= 0 (got " + v + ")");
+    }
+    maxMergeAge = v;
+    return this;
+  }
+
+  /** Returns the current maxMergeAge setting.
+   *
+   * @see #setMaxMergeAge */
+  public long getMaxMergeAge() {
+    return maxMergeAge;
+  }
+
+  /** Sets the number of segments of about the same size
+   *  that a window may have before they get merged. Default
+   *  is 10. */
+  public TimeSeriesMergePolicy setSegmentsPerWindow(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("segmentsPerWindow must be > 1 (got " + v + ")");
+    }
+    segmentsPerWindow = v;
+    return this;
+  }
+
+  /** Returns the current segmentsPerWindow setting.
+   *
+   * @see #setSegmentsPerWindow */
+  public int getSegmentsPerWindow() {
+    return segmentsPerWindow;
+  }
+
+  /** Maximum number of segments to be merged at a time
+   *  during "normal" merging.  Default is 10. */
+  public TimeSeriesMergePolicy setMaxMergeAtOnce(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("maxMergeAtOnce must be > 1 (got " + v + ")");
+    }
+    maxMergeAtOnce = v;
+    return this;
+  }
+
+  /** Returns the current maxMergeAtOnce setting.
+   *
+   * @see #setMaxMergeAtOnce */
+  public int getMaxMergeAtOnce() {
+    return maxMergeAtOnce;
+  }
+
+  /** Maximum number of segments to be merged at a time,
+   *  during forceMerge or forceMergeDeletes. Default is 30. */
+  public TimeSeriesMergePolicy setMaxMergeAtOnceExplicit(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("maxMergeAtOnceExplicit must be > 1 (got " + v + ")");
+    }
+    maxMergeAtOnceExplicit = v;
+    return this;
+  }
+
+  /** Returns the current maxMergeAtOnceExplicit setting.
+   *
+   * @see #setMaxMergeAtOnceExplicit */
+  public int getMaxMergeAtOnceExplicit() {
+    return maxMergeAtOnceExplicit;
+  }
+
+  /** Maximum sized segment to produce during normal
+   *  merging.  Segments of more than half this size are
+   *  not merged anymore.  Default is 5 GB. */
+  public TimeSeriesMergePolicy setMaxMergedSegmentMB(double v) {
+    if (v < 0.0) {
+      throw new IllegalArgumentException("maxMergedSegmentMB must be >=0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    maxMergedSegmentBytes = (v > Long.MAX_VALUE) ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current maxMergedSegmentMB setting.
+   *
+   * @see #setMaxMergedSegmentMB */
+  public double getMaxMergedSegmentMB() {
+    return maxMergedSegmentBytes/1024/1024.;
+  }
+
+  /** Segments smaller than this are "rounded up" to this
+   *  size, ie treated as equal (floor) size for merge
+   *  selection.  Default is 2 MB. */
+  public TimeSeriesMergePolicy setFloorSegmentMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("floorSegmentMB must be > 0.0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    floorSegmentBytes = (v > Long.MAX_VALUE) ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current floorSegmentMB.
+   *
+   *  @see #setFloorSegmentMB */
+  public double getFloorSegmentMB() {
+    return floorSegmentBytes/(1024*1024.);
+  }
+
+  /** When forceMergeDeletes is called, we only merge away a
+   *  segment if its delete percentage is over this
+   *  threshold.  Default is 10%. */
+  public TimeSeriesMergePolicy setForceMergeDeletesPctAllowed(double v) {
+    if (v < 0.0 || v > 100.0) {
+      throw new IllegalArgumentException("forceMergeDeletesPctAllowed must be between 0.0 and 100.0 inclusive (got " + v + ")");
+    }
+    forceMergeDeletesPctAllowed = v;
+    return this;
+  }
+
+  /** Returns the current forceMergeDeletesPctAllowed setting.
+   *
+   * @see #setForceMergeDeletesPctAllowed */
+  public double getForceMergeDeletesPctAllowed() {
+    return forceMergeDeletesPctAllowed;
+  }
+
+  /** Bounds of the timestamps of a segment. */
+  private static final class Timestamps {
+    final long min, max;
+    // true if all documents have a timestamp
+    final boolean allDocs;
+
+    Timestamps(long min, long max, boolean allDocs) {
+      this.min = min;
+      this.max = max;
+      this.allDocs = allDocs;
+    }
+  }
+
+  /** Returns true if the timestamps of the given segment
+   *  are recorded in its diagnostics. */
+  private boolean hasRecordedTimestamps(SegmentInfo info) {
+    final Map<String,String> diagnostics = info.getDiagnostics();
+    return diagnostics != null && field.equals(diagnostics.get(FIELD_DIAGNOSTIC));
+  }
+
+  /** Returns the timestamps recorded in the diagnostics of the
+   *  given segment, or null if none of its documents has a
+   *  timestamp. */
+  private Timestamps readTimestamps(SegmentInfo info) {
+    assert hasRecordedTimestamps(info);
+    final Map<String,String> diagnostics = info.getDiagnostics();
+    if (!diagnostics.containsKey(MIN_DIAGNOSTIC)) {
+      return null;
+    }
+    return new Timestamps(Long.parseLong(diagnostics.get(MIN_DIAGNOSTIC)),
+        Long.parseLong(diagnostics.get(MAX_DIAGNOSTIC)),
+        Boolean.parseBoolean(diagnostics.get(ALL_DOCS_DIAGNOSTIC)));
+  }
+
+  private void recordTimestamps(SegmentInfo info, Timestamps ts) {
+    final Map<String,String> diagnostics = info.getDiagnostics();
+    diagnostics.put(FIELD_DIAGNOSTIC, field);
+    if (ts != null) {
+      diagnostics.put(MIN_DIAGNOSTIC, Long.toString(ts.min));
+      diagnostics.put(MAX_DIAGNOSTIC, Long.toString(ts.max));
+      diagnostics.put(ALL_DOCS_DIAGNOSTIC, Boolean.toString(ts.allDocs));
+    }
+  }
+
+  /** Returns the timestamps of the given reader, or null if
+   *  none of its documents has a timestamp. */
+  private Timestamps computeTimestamps(AtomicReader reader) throws IOException {
+    final NumericDocValues values = reader.getNumericDocValues(field);
+    if (values == null) {
+      return null;
+    }
+    return computeTimestamps(values, reader.getDocsWithField(field), reader.maxDoc());
+  }
+
+  private static Timestamps computeTimestamps(NumericDocValues values, Bits docsWithField, int maxDoc) {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    boolean allDocs = true;
+    boolean hasValue = false;
+    for (int doc = 0; doc < maxDoc; ++doc) {
+      if (docsWithField.get(doc)) {
+        final long value = values.get(doc);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        hasValue = true;
+      } else {
+        allDocs = false;
+      }
+    }
+    return hasValue ? new Timestamps(min, max, allDocs) : null;
+  }
+
+  /** Returns the timestamps of the given segment, or null if
+   *  none of its documents has a timestamp. */
+  private Timestamps getTimestamps(SegmentCommitInfo info) throws IOException {
+    if (timestamps.containsKey(info.info)) {
+      return timestamps.get(info.info);
+    }
+    Timestamps ts;
+    if (hasRecordedTimestamps(info.info)) {
+      ts = readTimestamps(info.info);
+    } else {
+      // the segment was written without this policy
+      final SegmentReader reader = new SegmentReader(info, IOContext.READONCE);
+      try {
+        ts = computeTimestamps(reader);
+      } finally {
+        reader.close();
+      }
+    }
+    timestamps.put(info.info, ts);
+    return ts;
+  }
+
+  @Override
+  public void segmentFlushed(SegmentReadState state) throws IOException {
+    final FieldInfo fieldInfo = state.fieldInfos.fieldInfo(field);
+    Timestamps ts = null;
+    if (fieldInfo != null && fieldInfo.getDocValuesType() == FieldInfo.DocValuesType.NUMERIC) {
+      final DocValuesProducer producer = state.segmentInfo.getCodec().docValuesFormat().fieldsProducer(state);
+      try {
+        ts = computeTimestamps(producer.getNumeric(fieldInfo), producer.getDocsWithField(fieldInfo),
+            state.segmentInfo.getDocCount());
+      } finally {
+        producer.close();
+      }
+    }
+    recordTimestamps(state.segmentInfo, ts);
+  }
+
+  private long window(Timestamps ts) {
+    if (ts == null) {
+      return NO_WINDOW;
+    }
+    // round down, including for negative timestamps
+    final long window = ts.max / windowSize;
+    return ts.max < 0 && ts.max % windowSize != 0 ? window - 1 : window;
+  }
+
+  /** Groups the given segments by window, from oldest to newest. */
+  private TreeMap<Long,List<SegmentCommitInfo>> groupByWindow(Collection<SegmentCommitInfo> infos) throws IOException {
+    final TreeMap<Long,List<SegmentCommitInfo>> windows = new TreeMap<>();
+    for (SegmentCommitInfo info : infos) {
+      final long window = window(getTimestamps(info));
+      List<SegmentCommitInfo> segments = windows.get(window);
+      if (segments == null) {
+        segments = new ArrayList<>();
+        windows.put(window, segments);
+      }
+      segments.add(info);
+    }
+    return windows;
+  }
+
+  /** A merge which records the timestamps of its segments
+   *  in the diagnostics of the merged segment. */
+  private class TimeSeriesOneMerge extends OneMerge {
+
+    private final Timestamps timestamps;
+
+    TimeSeriesOneMerge(List<SegmentCommitInfo> segments) throws IOException {
+      super(segments);
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      boolean allDocs = true;
+      boolean hasValue = false;
+      for (SegmentCommitInfo info : segments) {
+        final Timestamps ts = getTimestamps(info);
+        if (ts == null) {
+          allDocs = false;
+        } else {
+          min = Math.min(min, ts.min);
+          max = Math.max(max, ts.max);
+          allDocs &= ts.allDocs;
+          hasValue = true;
+        }
+      }
+      this.timestamps = hasValue ? new Timestamps(min, max, allDocs) : null;
+    }
+
+    @Override
+    public void setInfo(SegmentCommitInfo info) {
+      recordTimestamps(info.info, timestamps);
+      super.setInfo(info);
+    }
+  }
+
+  private class SegmentByteSizeAscending implements Comparator<SegmentCommitInfo> {
+
+    private final IndexWriter writer;
+
+    SegmentByteSizeAscending(IndexWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public int compare(SegmentCommitInfo o1, SegmentCommitInfo o2) {
+      try {
+        final long sz1 = size(o1, writer);
+        final long sz2 = size(o2, writer);
+        if (sz1 < sz2) {
+          return -1;
+        } else if (sz2 < sz1) {
+          return 1;
+        } else {
+          return o1.info.name.compareTo(o2.info.name);
+        }
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+    }
+  }
+
+  private void addMerge(MergeSpecification spec, List<SegmentCommitInfo> segments, IndexWriter writer) throws IOException {
+    final OneMerge merge = new TimeSeriesOneMerge(segments);
+    if (verbose(writer)) {
+      message("  add merge=" + writer.segString(merge.segments), writer);
+    }
+    spec.add(merge);
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findMerges: " + infos.size() + " segments", writer);
+    }
+    if (infos.size() == 0) {
+      return null;
+    }
+
+    final TreeMap<Long,List<SegmentCommitInfo>> windows = groupByWindow(infos.asList());
+    long maxTimestamp = Long.MIN_VALUE;
+    for (SegmentCommitInfo info : infos) {
+      final Timestamps ts = getTimestamps(info);
+      if (ts != null) {
+        maxTimestamp = Math.max(maxTimestamp, ts.max);
+      }
+    }
+    final long newestWindow = windows.lastKey();
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+
+    MergeSpecification spec = null;
+    for (Map.Entry<Long,List<SegmentCommitInfo>> entry : windows.entrySet()) {
+      final long window = entry.getKey();
+      if (window != NO_WINDOW && maxMergeAge != Long.MAX_VALUE) {
+        // compare the end of the window with maxTimestamp - maxMergeAge
+        // without overflowing
+        final long windowEnd = window * windowSize + (windowSize - 1);
+        if (windowEnd < maxTimestamp && maxTimestamp - windowEnd > maxMergeAge) {
+          if (verbose(writer)) {
+            message("  skip window=" + window + ": older than maxMergeAge", writer);
+          }
+          continue;
+        }
+      }
+
+      final List<SegmentCommitInfo> eligible = new ArrayList<>();
+      boolean hasRunningMerge = false;
+      for (SegmentCommitInfo info : entry.getValue()) {
+        if (merging.contains(info)) {
+          hasRunningMerge = true;
+        } else if (size(info, writer) < maxMergedSegmentBytes/2.0) {
+          eligible.add(info);
+        }
+      }
+      if (eligible.size() < 2) {
+        continue;
+      }
+      Collections.sort(eligible, new SegmentByteSizeAscending(writer));
+
+      if (window != newestWindow && window != NO_WINDOW) {
+        // the window doesn't receive new data anymore: merge it down to one segment
+        if (hasRunningMerge) {
+          continue;
+        }
+        final List<SegmentCommitInfo> candidate = new ArrayList<>();
+        long candidateBytes = 0;
+        for (SegmentCommitInfo info : eligible) {
+          final long segBytes = size(info, writer);
+          if (candidate.size() == maxMergeAtOnce || candidateBytes + segBytes > maxMergedSegmentBytes) {
+            break;
+          }
+          candidate.add(info);
+          candidateBytes += segBytes;
+        }
+        if (candidate.size() >= 2) {
+          if (spec == null) {
+            spec = new MergeSpecification();
+          }
+          if (verbose(writer)) {
+            message("  compact window=" + window, writer);
+          }
+          addMerge(spec, candidate, writer);
+        }
+        continue;
+      }
+
+      // merge segments of the same level of size, level i holding segments
+      // of floorSegmentBytes * segmentsPerWindow^(i-1) to
+      // floorSegmentBytes * segmentsPerWindow^i bytes
+      int start = 0;
+      while (start < eligible.size()) {
+        final double level = Math.floor(Math.log(floorSize(size(eligible.get(start), writer)) / (double) floorSegmentBytes)
+            / Math.log(segmentsPerWindow));
+        int end = start + 1;
+        while (end < eligible.size()
+            && Math.floor(Math.log(floorSize(size(eligible.get(end), writer)) / (double) floorSegmentBytes)
+                / Math.log(segmentsPerWindow)) == level) {
+          ++end;
+        }
+        if (end - start >= segmentsPerWindow) {
+          final List<SegmentCommitInfo> candidate = new ArrayList<>();
+          long candidateBytes = 0;
+          for (SegmentCommitInfo info : eligible.subList(start, end)) {
+            final long segBytes = size(info, writer);
+            if (candidate.size() == maxMergeAtOnce || candidateBytes + segBytes > maxMergedSegmentBytes) {
+              break;
+            }
+            candidate.add(info);
+            candidateBytes += segBytes;
+          }
+          if (candidate.size() >= 2) {
+            if (spec == null) {
+              spec = new MergeSpecification();
+            }
+            if (verbose(writer)) {
+              message("  merge window=" + window + " level=" + level, writer);
+            }
+            addMerge(spec, candidate, writer);
+          }
+        }
+        start = end;
+      }
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos infos, int maxSegmentCount, Map<SegmentCommitInfo,Boolean> segmentsToMerge, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findForcedMerges maxSegmentCount=" + maxSegmentCount + " infos=" + writer.segString(infos) + " segmentsToMerge=" + segmentsToMerge, writer);
+    }
+
+    final List<SegmentCommitInfo> candidates = new ArrayList<>();
+    for (SegmentCommitInfo info : infos) {
+      if (segmentsToMerge.containsKey(info)) {
+        candidates.add(info);
+      }
+    }
+    if (maxSegmentCount > 1 && candidates.size() <= maxSegmentCount) {
+      if (verbose(writer)) {
+        message("already merged", writer);
+      }
+      return null;
+    }
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+
+    MergeSpecification spec = null;
+    for (Map.Entry<Long,List<SegmentCommitInfo>> entry : groupByWindow(candidates).entrySet()) {
+      final List<SegmentCommitInfo> segments = entry.getValue();
+      boolean forceMergeRunning = false;
+      for (SegmentCommitInfo info : segments) {
+        forceMergeRunning |= merging.contains(info);
+      }
+      if (forceMergeRunning) {
+        // wait for the running merge to complete, we'll be called again
+        continue;
+      }
+      if (segments.size() == 1) {
+        final SegmentCommitInfo info = segments.get(0);
+        if (!segmentsToMerge.get(info) || isMerged(infos, info, writer)) {
+          continue;
+        }
+      }
+      if (spec == null) {
+        spec = new MergeSpecification();
+      }
+      if (verbose(writer)) {
+        message("  force merge window=" + entry.getKey(), writer);
+      }
+      for (int start = 0; start < segments.size(); start += maxMergeAtOnceExplicit) {
+        addMerge(spec, segments.subList(start, Math.min(start + maxMergeAtOnceExplicit, segments.size())), writer);
+      }
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos infos, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findForcedDeletesMerges infos=" + writer.segString(infos) + " forceMergeDeletesPctAllowed=" + forceMergeDeletesPctAllowed, writer);
+    }
+    final List<SegmentCommitInfo> eligible = new ArrayList<>();
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+    for (SegmentCommitInfo info : infos) {
+      double pctDeletes = 100.*((double) writer.numDeletedDocs(info))/info.info.getDocCount();
+      if (pctDeletes > forceMergeDeletesPctAllowed && !merging.contains(info)) {
+        eligible.add(info);
+      }
+    }
+
+    MergeSpecification spec = null;
+    for (List<SegmentCommitInfo> segments : groupByWindow(eligible).values()) {
+      if (spec == null) {
+        spec = new MergeSpecification();
+      }
+      for (int start = 0; start < segments.size(); start += maxMergeAtOnceExplicit) {
+        addMerge(spec, segments.subList(start, Math.min(start + maxMergeAtOnceExplicit, segments.size())), writer);
+      }
+    }
+    return spec;
+  }
+
+  /**
+   * Returns a query which matches documents whose timestamp is
+   * strictly less than <code>timestamp</code>, and which is
+   * meant to be passed to {@link IndexWriter#deleteDocuments(Query...)}
+   * in order to expire old data. Segments whose timestamps are
+   * all older are matched entirely without reading their
+   * timestamps, and segments whose timestamps are all more
+   * recent are skipped. Documents without a timestamp never
+   * match.
+   */
+  public Query newOlderThanQuery(final long timestamp) {
+    return new ConstantScoreQuery(new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final AtomicReader reader = context.reader();
+        Timestamps ts = null;
+        boolean known = false;
+        if (reader instanceof SegmentReader) {
+          final SegmentInfo info = ((SegmentReader) reader).getSegmentInfo().info;
+          if (timestamps.containsKey(info)) {
+            ts = timestamps.get(info);
+            known = true;
+          } else if (hasRecordedTimestamps(info)) {
+            ts = readTimestamps(info);
+            known = true;
+          }
+        }
+        if (!known) {
+          ts = computeTimestamps(reader);
+        }
+        if (ts == null || ts.min >= timestamp) {
+          return null;
+        }
+        if (ts.max < timestamp && ts.allDocs) {
+          return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+            @Override
+            protected boolean matchDoc(int doc) {
+              return true;
+            }
+          };
+        }
+        final NumericDocValues values = reader.getNumericDocValues(field);
+        final Bits docsWithField = reader.getDocsWithField(field);
+        return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+          @Override
+          protected boolean matchDoc(int doc) {
+            return docsWithField.get(doc) && values.get(doc) < timestamp;
+          }
+        };
+      }
+
+      @Override
+      public String toString() {
+        return field + ":[* TO " + timestamp + "}";
+      }
+    });
+  }
+
+  private long floorSize(long bytes) {
+    return Math.max(floorSegmentBytes, bytes);
+  }
+
+  private boolean verbose(IndexWriter writer) {
+    return writer != null && writer.infoStream.isEnabled("TSMP");
+  }
+
+  private void message(String message, IndexWriter writer) {
+    writer.infoStream.message("TSMP", message);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[" + getClass().getSimpleName() + ": ");
+    sb.append("field=").append(field).append(", ");
+    sb.append("windowSize=").append(windowSize).append(", ");
+    sb.append("maxMergeAge=").append(maxMergeAge).append(", ");
+    sb.append("segmentsPerWindow=").append(segmentsPerWindow).append(", ");
+    sb.append("maxMergeAtOnce=").append(maxMergeAtOnce).append(", ");
+    sb.append("maxMergeAtOnceExplicit=").append(maxMergeAtOnceExplicit).append(", ");
+    sb.append("maxMergedSegmentMB=").append(maxMergedSegmentBytes/1024/1024.).append(", ");
+    sb.append("floorSegmentMB=").append(floorSegmentBytes/1024/1024.).append(", ");
+    sb.append("forceMergeDeletesPctAllowed=").append(forceMergeDeletesPctAllowed).append(", ");
+    sb.append("maxCFSSegmentSizeMB=").append(getMaxCFSSegmentSizeMB()).append(", ");
+    sb.append("noCFSRatio=").append(noCFSRatio);
+    return sb.toString();
+  }
+}
@@ -132,6 +132,11 @@ public class UpgradeIndexMergePolicy extends MergePolicy {
   public boolean useCompoundFile(SegmentInfos segments, SegmentCommitInfo newSegment, IndexWriter writer) throws IOException {
     return base.useCompoundFile(segments, newSegment, writer);
   }
+
+  @Override
+  public void segmentFlushed(SegmentReadState state) throws IOException {
+    base.segmentFlushed(state);
+  }
   
   @Override
   public String toString() {
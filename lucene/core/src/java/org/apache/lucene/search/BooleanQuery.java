@@ -308,6 +308,13 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
     public BulkScorer bulkScorer(AtomicReaderContext context, boolean scoreDocsInOrder,
                                  PostingFeatures flags, Bits acceptDocs) throws IOException {
 
+      if (!scoreDocsInOrder && isPureConjunction()
+          && (flags == PostingFeatures.DOCS_ONLY || flags == PostingFeatures.DOCS_AND_FREQS)) {
+        // pure conjunctions can be scored in windows; FakeScorer doesn't
+        // support intervals, hence the restriction on flags
+        return conjunctionBulkScorer(context, flags, acceptDocs);
+      }
+
       if (scoreDocsInOrder || minNrShouldMatch > 1) {
         // TODO: (LUCENE-4872) in some cases BooleanScorer may be faster for minNrShouldMatch
         // but the same is even true of pure conjunctions...
@@ -339,6 +346,32 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       return new BooleanScorer(this, disableCoord, minNrShouldMatch, optional, prohibited, maxCoord);
     }
 
+    /** Returns true if this weight only has MUST clauses, at least 2, in
+     *  which case out-of-order collectors use {@link ConjunctionBulkScorer}. */
+    private boolean isPureConjunction() {
+      if (minNrShouldMatch != 0 || weights.size() < 2) {
+        return false;
+      }
+      for (BooleanClause c : clauses) {
+        if (c.getOccur() != Occur.MUST) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private BulkScorer conjunctionBulkScorer(AtomicReaderContext context, PostingFeatures flags, Bits acceptDocs) throws IOException {
+      final Scorer[] scorers = new Scorer[weights.size()];
+      for (int i = 0; i < scorers.length; ++i) {
+        final Scorer scorer = weights.get(i).scorer(context, flags, acceptDocs);
+        if (scorer == null) {
+          return null;
+        }
+        scorers[i] = scorer;
+      }
+      return new ConjunctionBulkScorer(scorers, disableCoord ? 1.0F : coord(scorers.length, maxCoord));
+    }
+
     @Override
     public Scorer scorer(AtomicReaderContext context, PostingFeatures flags, Bits acceptDocs)
         throws IOException {
@@ -433,6 +466,11 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
     
     @Override
     public boolean scoresDocsOutOfOrder() {
+      if (isPureConjunction()) {
+        // ConjunctionBulkScorer collects in order but gives collectors a
+        // FakeScorer, so it is only used for out-of-order collection
+        return true;
+      }
       if (minNrShouldMatch > 1) {
         // BS2 (in-order) will be used by scorer()
         return false;
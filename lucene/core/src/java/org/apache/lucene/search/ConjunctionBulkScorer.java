@@ -0,0 +1,136 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Comparator;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * {@link BulkScorer} for pure conjunctions. Instead of collecting every
+ * match as soon as the sub scorers agree on a document, it leapfrogs over
+ * the sub scorers to fill a window of up to {@link #WINDOW_SIZE} matches
+ * together with their scores, and only then feeds the window to the
+ * {@link LeafCollector}. This keeps the tight intersection loop separate
+ * from the collection logic.
+ * <p>
+ * Like {@link BooleanScorer}, the collector is given a {@link FakeScorer},
+ * so this scorer is only used when the collector accepts documents out of
+ * order (even though documents are actually collected in order). This is why
+ * {@link BooleanQuery} reports that it scores pure conjunctions out of order.
+ */
+final class ConjunctionBulkScorer extends BulkScorer {
+
+  static final int WINDOW_SIZE = 1 << 11;
+
+  private final Scorer[] scorers;
+  private final Scorer lead;
+  private final float coord;
+
+  private final FakeScorer fakeScorer = new FakeScorer();
+  private final int[] docs = new int[WINDOW_SIZE];
+  private final float[] scores = new float[WINDOW_SIZE];
+
+  // the current candidate of the lead scorer, -1 if not started yet
+  private int doc = -1;
+
+  ConjunctionBulkScorer(Scorer[] scorers, float coord) {
+    if (scorers.length < 2) {
+      throw new IllegalArgumentException("There must be at least 2 scorers");
+    }
+    this.scorers = scorers.clone();
+    // Sort the array the first time to allow the least frequent scorer to
+    // lead the matching. We use the same (stable) order as ConjunctionScorer
+    // so that scores are summed in the same order.
+    ArrayUtil.timSort(this.scorers, new Comparator<Scorer>() {
+      @Override
+      public int compare(Scorer o1, Scorer o2) {
+        return Long.compare(o1.cost(), o2.cost());
+      }
+    });
+    this.lead = this.scorers[0];
+    this.coord = coord;
+    fakeScorer.freq = scorers.length;
+  }
+
+  @Override
+  public boolean score(LeafCollector collector, int max) throws IOException {
+    collector.setScorer(fakeScorer);
+    if (doc == -1) {
+      doc = lead.nextDoc();
+    }
+    while (doc < max) {
+      // fill a window of matches
+      int upTo = 0;
+      do {
+        doc = doNext(doc);
+        if (doc >= max) {
+          break;
+        }
+        docs[upTo] = doc;
+        scores[upTo] = score();
+        ++upTo;
+        doc = lead.nextDoc();
+      } while (upTo < WINDOW_SIZE && doc < max);
+
+      // and collect it
+      for (int i = 0; i < upTo; ++i) {
+        fakeScorer.doc = docs[i];
+        fakeScorer.score = scores[i];
+        collector.collect(docs[i]);
+      }
+    }
+    return doc != DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  /** Return the first doc, greater than or equal to <code>doc</code> which is
+   *  a candidate of the lead scorer, on which all scorers agree. */
+  private int doNext(int doc) throws IOException {
+    // doc may already be NO_MORE_DOCS here, but we don't check explicitly
+    // since all scorers should advance to NO_MORE_DOCS, match, then
+    // return that value.
+    advanceHead:
+    for (;;) {
+      for (int i = 1; i < scorers.length; ++i) {
+        final Scorer scorer = scorers[i];
+        // the scorer may already be on doc if a previous window stopped on
+        // a match beyond max
+        if (scorer.docID() < doc) {
+          final int next = scorer.advance(doc);
+          if (next > doc) {
+            // beyond the current doc - advance lead to the new highest doc.
+            doc = lead.advance(next);
+            continue advanceHead;
+          }
+        }
+      }
+      // success - all scorers are on the same doc
+      return doc;
+    }
+  }
+
+  private float score() throws IOException {
+    float sum = 0.0f;
+    for (Scorer scorer : scorers) {
+      sum += scorer.score();
+    }
+    return sum * coord;
+  }
+
+}
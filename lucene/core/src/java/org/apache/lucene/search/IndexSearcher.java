@@ -24,6 +24,7 @@ import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentInfo; // javadocs
 import org.apache.lucene.index.StoredDocument;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
@@ -32,10 +33,13 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.search.similarities.DefaultSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.CollectionUtil;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -105,6 +109,12 @@ public class IndexSearcher {
   /** The Similarity implementation used by this searcher. */
   private Similarity similarity = defaultSimilarity;
 
+  /** Optional cache of term states, null by default. */
+  private TermStateCache termStateCache;
+
+  /** Whether sorted searches may terminate sorted segments early. */
+  private boolean earlyTerminateSortedSegments;
+
   /** Creates a searcher searching the provided index. */
   public IndexSearcher(IndexReader r) {
     this(r, null);
@@ -215,6 +225,63 @@ public class IndexSearcher {
     return similarity;
   }
   
+  /** Expert: Set the {@link TermStateCache} used by this IndexSearcher in
+   *  {@link #buildTermContext(Term)}, or <code>null</code> to always look
+   *  terms up in the terms dictionary (the default).
+   *
+   *  @lucene.experimental */
+  public void setTermStateCache(TermStateCache termStateCache) {
+    this.termStateCache = termStateCache;
+  }
+
+  /** Return the {@link TermStateCache} used by this IndexSearcher, or
+   *  <code>null</code> if none is set.
+   *
+   *  @lucene.experimental */
+  public TermStateCache getTermStateCache() {
+    return termStateCache;
+  }
+
+  /** Expert: if set to true, searches sorted by a {@link Sort} stop
+   *  collecting a segment as soon as a non-competitive hit is found when the
+   *  documents of the segment are sorted according to the same criteria (see
+   *  {@link SegmentInfo#isSortedBy(Sort)}) and the max score is not tracked.
+   *  {@link TopFieldDocs#totalHits} is then only a lower bound of the number
+   *  of matches, see {@link TopFieldDocs#isEarlyTerminated()}. Sorted
+   *  searches always collect documents in order when this is enabled. This
+   *  is <code>false</code> by default.
+   *
+   *  @see TopFieldCollector#setEarlyTerminateSortedSegments(boolean)
+   *  @lucene.experimental */
+  public void setEarlyTerminateSortedSegments(boolean earlyTerminateSortedSegments) {
+    this.earlyTerminateSortedSegments = earlyTerminateSortedSegments;
+  }
+
+  /** Return whether sorted searches may terminate sorted segments early.
+   *
+   *  @see #setEarlyTerminateSortedSegments(boolean)
+   *  @lucene.experimental */
+  public boolean getEarlyTerminateSortedSegments() {
+    return earlyTerminateSortedSegments;
+  }
+
+  /**
+   * Build a {@link TermContext} for the given term over the
+   * {@link #getTopReaderContext() top-level context} of this searcher. This
+   * looks up the term in the terms dictionary of every segment, unless a
+   * {@link TermStateCache} has been set.
+   *
+   * @lucene.experimental
+   */
+  public TermContext buildTermContext(Term term) throws IOException {
+    final TermStateCache termStateCache = this.termStateCache;
+    if (termStateCache == null) {
+      return TermContext.build(readerContext, term);
+    } else {
+      return termStateCache.build(readerContext, term);
+    }
+  }
+
   /** @lucene.internal */
   protected Query wrapFilter(Query query, Filter filter) {
     return (filter == null) ? query : new FilteredQuery(query, filter);
@@ -289,6 +356,50 @@ public class IndexSearcher {
     search(leafContexts, createNormalizedWeight(wrapFilter(query, filter)), results);
   }
 
+  /** Lower-level search API with a time budget.
+   *
+   * <p>Unlike wrapping the collector in a {@link TimeLimitingCollector}, this
+   * never fails because of the time budget: once it is exhausted, collection
+   * of the current segment is terminated and the remaining segments are
+   * skipped. In order to make the best use of the budget, segments are
+   * visited by decreasing number of live documents, since large segments
+   * are the most likely to contain good hits. Use
+   * {@link TimeBudgetCollector#isApproximate()} to know whether all matches
+   * were collected.
+   *
+   * <p><b>NOTE:</b> since segments are not visited in index order, this
+   * method must not be used with collectors which expect documents in
+   * increasing order across segments. In-order {@link TopScoreDocCollector}s
+   * work, but might break ties between hits that compare equal differently
+   * than {@link #search(Query, Filter, Collector)}. Pass the
+   * {@link TimeBudgetCollector} to {@link #search(Query, Filter, Collector)}
+   * in order to visit segments in index order.
+   *
+   * <p><b>NOTE:</b> this method always searches in the current thread, even
+   * if an {@link ExecutorService} was provided.
+   *
+   * @param query to match documents
+   * @param filter if non-null, used to permit documents to be collected.
+   * @param results to receive hits
+   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+   * @lucene.experimental
+   */
+  public void searchWithBudget(Query query, Filter filter, TimeBudgetCollector results)
+    throws IOException {
+    final Weight weight = createNormalizedWeight(wrapFilter(query, filter));
+    final List<AtomicReaderContext> leaves = new ArrayList<>(leafContexts);
+    CollectionUtil.timSort(leaves, LARGEST_LEAF_FIRST);
+    search(leaves, weight, results);
+  }
+
+  private static final Comparator<AtomicReaderContext> LARGEST_LEAF_FIRST = new Comparator<AtomicReaderContext>() {
+    @Override
+    public int compare(AtomicReaderContext o1, AtomicReaderContext o2) {
+      return Integer.compare(o2.reader().numDocs(), o1.reader().numDocs());
+    }
+  };
+
   /** Lower-level search API.
    *
    * <p>{@link LeafCollector#collect(int)} is called for every matching document.
@@ -310,6 +421,12 @@ public class IndexSearcher {
    * {@link IndexSearcher#search(Query,Filter,int,Sort,boolean,boolean)} to
    * control scoring.
    *
+   * <p>NOTE: if {@link #setEarlyTerminateSortedSegments(boolean) enabled},
+   * segments whose documents are sorted according to <code>sort</code> stop
+   * being collected as soon as a non-competitive hit is found. In that case,
+   * {@link TopDocs#totalHits} is only a lower bound of the number of matches
+   * and {@link TopFieldDocs#isEarlyTerminated()} returns true.
+   *
    * @throws BooleanQuery.TooManyClauses If a query would exceed 
    *         {@link BooleanQuery#getMaxClauseCount()} clauses.
    */
@@ -539,16 +656,20 @@ public class IndexSearcher {
       }
       int totalHits = 0;
       float maxScore = Float.NEGATIVE_INFINITY;
+      boolean earlyTerminated = false;
       for (final TopFieldDocs topFieldDocs : runner) {
         if (topFieldDocs.totalHits != 0) {
           totalHits += topFieldDocs.totalHits;
           maxScore = Math.max(maxScore, topFieldDocs.getMaxScore());
         }
+        earlyTerminated |= topFieldDocs.isEarlyTerminated();
       }
 
       final TopFieldDocs topDocs = (TopFieldDocs) topCollector.topDocs();
 
-      return new TopFieldDocs(totalHits, topDocs.scoreDocs, topDocs.fields, topDocs.getMaxScore());
+      final TopFieldDocs merged = new TopFieldDocs(totalHits, topDocs.scoreDocs, topDocs.fields, topDocs.getMaxScore());
+      merged.setEarlyTerminated(earlyTerminated);
+      return merged;
     }
   }
   
@@ -567,9 +688,12 @@ public class IndexSearcher {
     }
     nDocs = Math.min(nDocs, limit);
 
+    // only in-order collectors can early terminate sorted segments
+    final boolean docsScoredInOrder = earlyTerminateSortedSegments || !weight.scoresDocsOutOfOrder();
     TopFieldCollector collector = TopFieldCollector.create(sort, nDocs, after,
                                                            fillFields, doDocScores,
-                                                           doMaxScore, !weight.scoresDocsOutOfOrder());
+                                                           doMaxScore, docsScoredInOrder);
+    collector.setEarlyTerminateSortedSegments(earlyTerminateSortedSegments);
     search(leaves, weight, collector);
     return (TopFieldDocs) collector.topDocs();
   }
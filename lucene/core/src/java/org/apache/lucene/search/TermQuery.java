@@ -183,7 +183,7 @@ public class TermQuery extends Query {
 
     if (perReaderTermState == null || perReaderTermState.topReaderContext != context) {
       // make TermQuery single-pass if we don't have a PRTS or if the context differs!
-      termState = TermContext.build(context, term);
+      termState = searcher.buildTermContext(term);
     } else {
       // PRTS was pre-build for this IS
       termState = this.perReaderTermState;
@@ -0,0 +1,230 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * A bounded LRU cache of {@link TermState}s, keyed by segment core and
+ * {@link Term}. When set on an {@link IndexSearcher} through
+ * {@link IndexSearcher#setTermStateCache(TermStateCache)}, queries that are
+ * run over and over again skip the terms dictionary lookups that
+ * {@link TermContext#build(IndexReaderContext, Term)} performs on every
+ * segment.
+ * <p>
+ * Term states only depend on the terms dictionary of a segment, so the
+ * cache is keyed on {@link AtomicReader#getCoreCacheKey()} and entries are
+ * evicted when the core is closed. A single instance can be shared by all
+ * {@link IndexSearcher}s that are opened on successive point-in-time views of
+ * the same index (eg. by a {@link SearcherManager}), so that segments which
+ * did not change across reopens keep their cached entries. Only
+ * {@link SegmentReader} leaves are cached, other leaves always perform a
+ * lookup in the terms dictionary.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @lucene.experimental
+ */
+public final class TermStateCache {
+
+  private static final CachedTermState ABSENT = new CachedTermState(null, 0, 0);
+
+  private final int maxSize;
+  private final Map<Key,CachedTermState> cache;
+  private final Set<Object> registeredCores;
+  private final AtomicReader.CoreClosedListener purgeCore;
+  private long hitCount, missCount;
+
+  /** Create a new cache which will store at most <code>maxSize</code> entries. */
+  public TermStateCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be > 0, got " + maxSize);
+    }
+    this.maxSize = maxSize;
+    cache = new LinkedHashMap<Key,CachedTermState>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key,CachedTermState> eldest) {
+        return size() > TermStateCache.this.maxSize;
+      }
+    };
+    registeredCores = new HashSet<>();
+    purgeCore = new AtomicReader.CoreClosedListener() {
+      @Override
+      public void onClose(Object ownerCoreCacheKey) {
+        purge(ownerCoreCacheKey);
+      }
+    };
+  }
+
+  /**
+   * Same as {@link TermContext#build(IndexReaderContext, Term)} but reuses
+   * cached term states when possible.
+   */
+  public TermContext build(IndexReaderContext context, Term term) throws IOException {
+    assert context != null && context.isTopLevel;
+    final TermContext termContext = new TermContext(context);
+    Term cachedTerm = null;
+    for (final AtomicReaderContext ctx : context.leaves()) {
+      final AtomicReader reader = ctx.reader();
+      if (!(reader instanceof SegmentReader)) {
+        register(termContext, ctx.ord, lookup(reader, term));
+        continue;
+      }
+
+      final Object coreKey = reader.getCoreCacheKey();
+      if (cachedTerm == null) {
+        // Term doesn't copy its bytes, make sure that the key can't be modified
+        cachedTerm = new Term(term.field(), BytesRef.deepCopyOf(term.bytes()));
+      }
+      final Key key = new Key(coreKey, cachedTerm);
+      CachedTermState cached;
+      synchronized (this) {
+        cached = cache.get(key);
+        if (cached != null) {
+          ++hitCount;
+        } else {
+          ++missCount;
+        }
+      }
+      if (cached == null) {
+        cached = lookup(reader, term);
+        synchronized (this) {
+          if (registeredCores.add(coreKey)) {
+            reader.addCoreClosedListener(purgeCore);
+          }
+          cache.put(key, cached);
+        }
+      }
+      register(termContext, ctx.ord, cached);
+    }
+    return termContext;
+  }
+
+  private static void register(TermContext termContext, int ord, CachedTermState cached) {
+    if (cached != ABSENT) {
+      termContext.register(cached.state, ord, cached.docFreq, cached.totalTermFreq);
+    }
+  }
+
+  private static CachedTermState lookup(AtomicReader reader, Term term) throws IOException {
+    final Fields fields = reader.fields();
+    if (fields != null) {
+      final Terms terms = fields.terms(term.field());
+      if (terms != null) {
+        final TermsEnum termsEnum = terms.iterator(null);
+        if (termsEnum.seekExact(term.bytes())) {
+          return new CachedTermState(termsEnum.termState(), termsEnum.docFreq(), termsEnum.totalTermFreq());
+        }
+      }
+    }
+    return ABSENT;
+  }
+
+  private synchronized void purge(Object coreKey) {
+    registeredCores.remove(coreKey);
+    for (Iterator<Key> it = cache.keySet().iterator(); it.hasNext(); ) {
+      if (it.next().coreKey == coreKey) {
+        it.remove();
+      }
+    }
+  }
+
+  /** Remove all entries from this cache. */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  /** Return the number of cached entries. */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /** Return the number of per-segment lookups that could be served by the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Return the number of per-segment lookups that had to hit the terms dictionary. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public String toString() {
+    return "TermStateCache(maxSize=" + maxSize + ")";
+  }
+
+  private static final class Key {
+
+    final Object coreKey;
+    final Term term;
+
+    Key(Object coreKey, Term term) {
+      this.coreKey = coreKey;
+      this.term = term;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) obj;
+      return coreKey == that.coreKey && term.equals(that.term);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(coreKey) + term.hashCode();
+    }
+
+  }
+
+  private static final class CachedTermState {
+
+    // term states are only read by TermsEnum.seekExact(BytesRef, TermState),
+    // so they can be shared across TermContexts
+    final TermState state;
+    final int docFreq;
+    final long totalTermFreq;
+
+    CachedTermState(TermState state, int docFreq, long totalTermFreq) {
+      this.state = state;
+      this.docFreq = docFreq;
+      this.totalTermFreq = totalTermFreq;
+    }
+
+  }
+}
@@ -0,0 +1,121 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.Counter;
+
+/**
+ * A {@link Collector} wrapper that stops collecting once a time budget is
+ * exhausted, but unlike {@link TimeLimitingCollector}, never fails the search:
+ * it terminates the current leaf and skips the remaining ones by throwing
+ * {@link CollectionTerminatedException}, so that the wrapped collector
+ * retains the best hits that could be found within the budget. Use
+ * {@link #isApproximate()} after the search to know whether collection was
+ * cut short.
+ * <p>
+ * This collector is best used with
+ * {@link IndexSearcher#searchWithBudget(Query, Filter, TimeBudgetCollector)}, which
+ * visits the segments that are the most likely to contain good hits first.
+ *
+ * @lucene.experimental
+ */
+public class TimeBudgetCollector implements Collector {
+
+  private final Collector collector;
+  private final Counter clock;
+  private final long ticksAllowed;
+  private long t0 = Long.MIN_VALUE;
+  private long timeout = Long.MIN_VALUE;
+  private boolean approximate;
+
+  /**
+   * Create a new {@link TimeBudgetCollector} wrapping <code>collector</code>.
+   * @param collector the wrapped {@link Collector}
+   * @param clock the timer clock, eg. {@link TimeLimitingCollector#getGlobalCounter()}
+   * @param ticksAllowed max time allowed for collecting hits
+   */
+  public TimeBudgetCollector(Collector collector, Counter clock, long ticksAllowed) {
+    if (ticksAllowed < 0) {
+      throw new IllegalArgumentException("ticksAllowed must be >= 0, got " + ticksAllowed);
+    }
+    this.collector = collector;
+    this.clock = clock;
+    this.ticksAllowed = ticksAllowed;
+  }
+
+  /**
+   * Sets the baseline for this collector. By default the baseline is
+   * initialized once the first reader is passed to the collector. Set it
+   * explicitly to include the time spent preparing the search in the budget.
+   * @see TimeLimitingCollector#setBaseline(long)
+   */
+  public void setBaseline(long clockTime) {
+    t0 = clockTime;
+    timeout = t0 + ticksAllowed;
+  }
+
+  /**
+   * Syntactic sugar for {@link #setBaseline(long)} using {@link Counter#get()}
+   * on the clock passed to the constructor.
+   */
+  public void setBaseline() {
+    setBaseline(clock.get());
+  }
+
+  /** Return the wrapped collector. */
+  public Collector getCollector() {
+    return collector;
+  }
+
+  /**
+   * Return <code>true</code> if the time budget was exhausted before all
+   * matches could be collected, in which case the wrapped collector only saw
+   * a subset of the matching documents.
+   */
+  public boolean isApproximate() {
+    return approximate;
+  }
+
+  private void checkBudget() {
+    if (approximate || timeout < clock.get()) {
+      approximate = true;
+      throw new CollectionTerminatedException();
+    }
+  }
+
+  @Override
+  public LeafCollector getLeafCollector(AtomicReaderContext context) throws IOException {
+    if (Long.MIN_VALUE == t0) {
+      setBaseline();
+    }
+    checkBudget();
+    return new FilterLeafCollector(collector.getLeafCollector(context)) {
+
+      @Override
+      public void collect(int doc) throws IOException {
+        checkBudget();
+        in.collect(doc);
+      }
+
+    };
+  }
+
+}
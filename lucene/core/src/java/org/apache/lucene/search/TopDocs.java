@@ -273,7 +273,13 @@ public class TopDocs {
     if (sort == null) {
       return new TopDocs(totalHitCount, hits, maxScore);
     } else {
-      return new TopFieldDocs(totalHitCount, hits, sort.getSort(), maxScore);
+      final TopFieldDocs topDocs = new TopFieldDocs(totalHitCount, hits, sort.getSort(), maxScore);
+      for (TopDocs shard : shardHits) {
+        if (shard instanceof TopFieldDocs && ((TopFieldDocs) shard).isEarlyTerminated()) {
+          topDocs.setEarlyTerminated(true);
+        }
+      }
+      return topDocs;
     }
   }
 }
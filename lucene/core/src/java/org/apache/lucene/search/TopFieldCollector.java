@@ -19,7 +19,10 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.search.FieldValueHitQueue.Entry;
 import org.apache.lucene.util.PriorityQueue;
 
@@ -29,6 +32,11 @@ import org.apache.lucene.util.PriorityQueue;
  * <p/>
  * See the {@link #create(org.apache.lucene.search.Sort, int, boolean, boolean, boolean, boolean)} method
  * for instantiating a TopFieldCollector.
+ * <p/>
+ * When documents are collected in order and the max score is not tracked,
+ * this collector can stop collecting a segment as soon as it finds a
+ * non-competitive document if the segment is sorted according to the same
+ * criteria, see {@link #setEarlyTerminateSortedSegments(boolean)}.
  * 
  * @lucene.experimental
  */
@@ -72,6 +80,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
           // since docs are visited in doc Id order, if compare is 0, it means
           // this document is larger than anything else in the queue, and
           // therefore not competitive.
+          if (segmentSorted) {
+            terminateSegment();
+          }
           return;
         }
         
@@ -94,6 +105,7 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
     @Override
     protected void doSetNextReader(AtomicReaderContext context) throws IOException {
       this.docBase = context.docBase;
+      segmentSorted = isSegmentSorted(context);
       queue.setComparator(0, comparator.setNextReader(context));
       comparator = queue.firstComparator;
     }
@@ -179,6 +191,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
           // since docs are visited in doc Id order, if compare is 0, it means
           // this document is largest than anything else in the queue, and
           // therefore not competitive.
+          if (segmentSorted) {
+            terminateSegment();
+          }
           return;
         }
         
@@ -407,6 +422,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
           final int c = reverseMul[i] * comparators[i].compareBottom(doc);
           if (c < 0) {
             // Definitely not competitive.
+            if (segmentSorted) {
+              terminateSegment();
+            }
             return;
           } else if (c > 0) {
             // Definitely competitive.
@@ -415,6 +433,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
             // Here c=0. If we're at the last comparator, this doc is not
             // competitive, since docs are visited in doc Id order, which means
             // this doc cannot compete with any other document in the queue.
+            if (segmentSorted) {
+              terminateSegment();
+            }
             return;
           }
         }
@@ -448,6 +469,7 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
     @Override
     protected void doSetNextReader(AtomicReaderContext context) throws IOException {
       docBase = context.docBase;
+      segmentSorted = isSegmentSorted(context);
       for (int i = 0; i < comparators.length; i++) {
         queue.setComparator(i, comparators[i].setNextReader(context));
       }
@@ -711,6 +733,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
           final int c = reverseMul[i] * comparators[i].compareBottom(doc);
           if (c < 0) {
             // Definitely not competitive.
+            if (segmentSorted) {
+              terminateSegment();
+            }
             return;
           } else if (c > 0) {
             // Definitely competitive.
@@ -719,6 +744,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
             // Here c=0. If we're at the last comparator, this doc is not
             // competitive, since docs are visited in doc Id order, which means
             // this doc cannot compete with any other document in the queue.
+            if (segmentSorted) {
+              terminateSegment();
+            }
             return;
           }
         }
@@ -1024,6 +1052,11 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
   FieldValueHitQueue.Entry bottom = null;
   boolean queueFull;
   int docBase;
+
+  private boolean earlyTerminateSortedSegments;
+  // whether the current segment is sorted by the same criteria as this collector
+  boolean segmentSorted;
+  private boolean earlyTerminated;
   
   // Declaring the constructor private prevents extending this class by anyone
   // else. Note that the class cannot be final since it's extended by the
@@ -1184,6 +1217,50 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
     }
   }
   
+  /**
+   * Expert: if set to true, this collector stops collecting a segment as soon
+   * as it finds a non-competitive document, provided that the documents of the
+   * segment are sorted according to the same criteria as this collector, see
+   * {@link SegmentInfo#isSortedBy(Sort)}. This only applies to collectors
+   * which collect documents in order and which don't track the max score.
+   * <p>
+   * <b>NOTE</b>: when a segment is terminated early,
+   * {@link #getTotalHits()} is only a lower bound of the number of matches,
+   * see {@link #isEarlyTerminated()} and {@link TopFieldDocs#isEarlyTerminated()}. Don't enable this option if this
+   * collector is wrapped by a collector which needs to see all matches, such
+   * as a {@link MultiCollector}.
+   */
+  public void setEarlyTerminateSortedSegments(boolean earlyTerminateSortedSegments) {
+    this.earlyTerminateSortedSegments = earlyTerminateSortedSegments;
+  }
+
+  /**
+   * Returns true if the collection of at least one segment was terminated
+   * early, in which case {@link #getTotalHits()} is a lower bound of the
+   * number of matches.
+   */
+  public boolean isEarlyTerminated() {
+    return earlyTerminated;
+  }
+
+  final boolean isSegmentSorted(AtomicReaderContext context) {
+    if (earlyTerminateSortedSegments) {
+      final AtomicReader reader = context.reader();
+      if (reader instanceof SegmentReader) {
+        final Sort sort = new Sort(((FieldValueHitQueue<Entry>) pq).getFields());
+        return ((SegmentReader) reader).getSegmentInfo().info.isSortedBy(sort);
+      }
+    }
+    return false;
+  }
+
+  final void terminateSegment() {
+    // documents of this segment are sorted by the same criteria, so none of
+    // the remaining documents can be competitive
+    earlyTerminated = true;
+    throw new CollectionTerminatedException();
+  }
+
   final void add(int slot, int doc, float score) {
     bottom = pq.add(new Entry(slot, docBase + doc, score));
     queueFull = totalHits == numHits;
@@ -1219,7 +1296,9 @@ public abstract class TopFieldCollector extends TopDocsCollector<Entry> {
     }
 
     // If this is a maxScoring tracking collector and there were no results, 
-    return new TopFieldDocs(totalHits, results, ((FieldValueHitQueue<Entry>) pq).getFields(), maxScore);
+    final TopFieldDocs topDocs = new TopFieldDocs(totalHits, results, ((FieldValueHitQueue<Entry>) pq).getFields(), maxScore);
+    topDocs.setEarlyTerminated(earlyTerminated);
+    return topDocs;
   }
   
   @Override
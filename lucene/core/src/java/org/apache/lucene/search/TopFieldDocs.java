@@ -25,6 +25,9 @@ public class TopFieldDocs extends TopDocs {
 
   /** The fields which were used to sort results by. */
   public SortField[] fields;
+
+  /** Whether {@link #totalHits} is a lower bound of the number of matches. */
+  private boolean earlyTerminated;
         
   /** Creates one of these objects.
    * @param totalHits  Total number of hits for the query.
@@ -36,4 +39,19 @@ public class TopFieldDocs extends TopDocs {
     super (totalHits, scoreDocs, maxScore);
     this.fields = fields;
   }
+
+  /**
+   * Returns true if the collection of at least one segment was terminated
+   * early, in which case {@link #totalHits} is only a lower bound of the
+   * number of matches.
+   * @see TopFieldCollector#setEarlyTerminateSortedSegments(boolean)
+   */
+  public boolean isEarlyTerminated() {
+    return earlyTerminated;
+  }
+
+  /** Sets whether the collection of at least one segment was terminated early. */
+  public void setEarlyTerminated(boolean earlyTerminated) {
+    this.earlyTerminated = earlyTerminated;
+  }
 }
\ No newline at end of file
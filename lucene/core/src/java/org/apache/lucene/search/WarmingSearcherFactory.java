@@ -0,0 +1,71 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ConcurrentSegmentWarmer; // javadocs
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+
+/**
+ * A {@link SearcherFactory} which warms the segments of new readers with an
+ * {@link IndexReaderWarmer}, such as {@link ConcurrentSegmentWarmer}, before
+ * creating their searcher. Since {@link SearcherManager} only publishes a
+ * searcher once it has been created, the new segments of near-real-time
+ * readers are warmed before they become searchable. Segments are only warmed
+ * once, the first time that a reader that contains them is opened.
+ *
+ * @lucene.experimental
+ */
+public class WarmingSearcherFactory extends SearcherFactory {
+  private final IndexReaderWarmer warmer;
+  private final SearcherFactory delegate;
+  // core cache keys of the segments which have already been warmed
+  private final Map<Object,Boolean> warmed = Collections.synchronizedMap(new WeakHashMap<Object,Boolean>());
+
+  /** Creates a new WarmingSearcherFactory, which warms segments with
+   *  <code>warmer</code> and then creates searchers with
+   *  <code>delegate</code>. */
+  public WarmingSearcherFactory(IndexReaderWarmer warmer, SearcherFactory delegate) {
+    this.warmer = warmer;
+    this.delegate = delegate;
+  }
+
+  /** Creates a new WarmingSearcherFactory, which warms segments with
+   *  <code>warmer</code> and then creates default searchers. */
+  public WarmingSearcherFactory(IndexReaderWarmer warmer) {
+    this(warmer, new SearcherFactory());
+  }
+
+  @Override
+  public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+    for (AtomicReaderContext context : reader.leaves()) {
+      final Object key = context.reader().getCoreCacheKey();
+      if (!warmed.containsKey(key)) {
+        warmer.warm(context.reader());
+        warmed.put(key, Boolean.TRUE);
+      }
+    }
+    return delegate.newSearcher(reader);
+  }
+}
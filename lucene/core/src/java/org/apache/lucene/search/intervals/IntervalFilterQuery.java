@@ -140,7 +140,7 @@ public class IntervalFilterQuery extends Query implements Cloneable {
       int i = 0;
       TermStatistics[] termStats = new TermStatistics[terms.size()];
       for (Term term : terms) {
-        TermContext state = TermContext.build(searcher.getTopReaderContext(), term);
+        TermContext state = searcher.buildTermContext(term);
         termStats[i] = searcher.termStatistics(term, state);
         i++;
       }
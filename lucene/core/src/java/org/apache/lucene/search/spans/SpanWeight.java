@@ -18,7 +18,6 @@ package org.apache.lucene.search.spans;
  */
 
 import org.apache.lucene.index.AtomicReaderContext;
-import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.*;
@@ -48,11 +47,10 @@ public class SpanWeight extends Weight {
     termContexts = new HashMap<>();
     TreeSet<Term> terms = new TreeSet<>();
     query.extractTerms(terms);
-    final IndexReaderContext context = searcher.getTopReaderContext();
     final TermStatistics termStats[] = new TermStatistics[terms.size()];
     int i = 0;
     for (Term term : terms) {
-      TermContext state = TermContext.build(context, term);
+      TermContext state = searcher.buildTermContext(term);
       termStats[i] = searcher.termStatistics(term, state);
       termContexts.put(term, state);
       i++;
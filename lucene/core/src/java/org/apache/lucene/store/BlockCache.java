@@ -0,0 +1,222 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of fixed-size blocks of files, which are stored off-heap in slabs
+ * of direct {@link ByteBuffer}s that are allocated once. Blocks are evicted
+ * with the CLOCK algorithm, an approximation of LRU which doesn't need to
+ * reorder entries on hits. The number of blocks of files of a given
+ * extension can be limited by a quota.
+ *
+ * @see BlockCachingDirectory
+ */
+final class BlockCache {
+
+  /** Maximum size of a slab. */
+  private static final int MAX_SLAB_SIZE = 1 << 30;
+  /** Number of locks which protect reads of slots from concurrent writes. */
+  private static final int NUM_LOCKS = 64;
+
+  /** Identifies a block of a file. */
+  static final class BlockKey {
+    final long fileId;
+    final long block;
+
+    BlockKey(long fileId, long block) {
+      this.fileId = fileId;
+      this.block = block;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof BlockKey)) {
+        return false;
+      }
+      final BlockKey other = (BlockKey) obj;
+      return fileId == other.fileId && block == other.block;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (fileId * 31 + block) ^ (int) ((fileId * 31 + block) >>> 32);
+    }
+  }
+
+  final int blockSize;
+  private final int numSlots;
+  private final int slotsPerSlab;
+  private final ByteBuffer[] slabs;
+  private final Map<BlockKey,Integer> slots = new ConcurrentHashMap<>();
+  // keys of slots, guarded by the lock of the slot
+  private final BlockKey[] keys;
+  private final Object[] locks;
+  // CLOCK reference bits
+  private final AtomicIntegerArray referenced;
+
+  // guarded by this
+  private final String[] extensions;
+  private final Map<String,Integer> quotas = new HashMap<>();
+  private final Map<String,Integer> counts = new HashMap<>();
+  private int numUsedSlots;
+  private int hand;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  BlockCache(long maxBytes, int blockSize) {
+    this.blockSize = blockSize;
+    final long numSlots = maxBytes / blockSize;
+    if (numSlots > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("too many blocks: maxBytes=" + maxBytes + ", blockSize=" + blockSize);
+    }
+    this.numSlots = (int) numSlots;
+    this.slotsPerSlab = MAX_SLAB_SIZE / blockSize;
+    final int numSlabs = (this.numSlots + slotsPerSlab - 1) / slotsPerSlab;
+    slabs = new ByteBuffer[numSlabs];
+    for (int i = 0; i < numSlabs; ++i) {
+      final int slabSlots = Math.min(slotsPerSlab, this.numSlots - i * slotsPerSlab);
+      slabs[i] = ByteBuffer.allocateDirect(slabSlots * blockSize);
+    }
+    keys = new BlockKey[this.numSlots];
+    extensions = new String[this.numSlots];
+    referenced = new AtomicIntegerArray(this.numSlots);
+    locks = new Object[NUM_LOCKS];
+    for (int i = 0; i < NUM_LOCKS; ++i) {
+      locks[i] = new Object();
+    }
+  }
+
+  /** Limits the number of bytes of blocks of files with the given
+   *  extension. */
+  synchronized void setQuota(String extension, long maxBytes) {
+    quotas.put(extension, (int) Math.min(numSlots, maxBytes / blockSize));
+  }
+
+  private ByteBuffer slot(int slot) {
+    final ByteBuffer slab = slabs[slot / slotsPerSlab].duplicate();
+    slab.position((slot % slotsPerSlab) * blockSize);
+    return slab;
+  }
+
+  /**
+   * Copies <code>length</code> bytes of the given block, starting at
+   * <code>offsetInBlock</code>, into <code>b</code> if the block is cached,
+   * and returns whether it was.
+   */
+  boolean read(BlockKey key, int offsetInBlock, byte[] b, int offset, int length) {
+    assert offsetInBlock + length <= blockSize;
+    final Integer slot = slots.get(key);
+    if (slot != null) {
+      synchronized (locks[slot % NUM_LOCKS]) {
+        // the slot may have been reused since it was looked up
+        if (key.equals(keys[slot])) {
+          final ByteBuffer buffer = slot(slot);
+          buffer.position(buffer.position() + offsetInBlock);
+          buffer.get(b, offset, length);
+          referenced.set(slot, 1);
+          hitCount.incrementAndGet();
+          return true;
+        }
+      }
+    }
+    missCount.incrementAndGet();
+    return false;
+  }
+
+  /** Caches the first <code>length</code> bytes of <code>b</code> as the
+   *  content of the given block of a file with the given extension. */
+  synchronized void store(BlockKey key, String extension, byte[] b, int length) {
+    assert length <= blockSize;
+    if (numSlots == 0 || slots.containsKey(key)) {
+      return;
+    }
+    final Integer quota = quotas.get(extension);
+    final Integer count = counts.get(extension);
+    final int slot;
+    if (quota != null && (count == null ? 0 : count) >= quota) {
+      if (quota == 0) {
+        return;
+      }
+      slot = victim(extension);
+    } else if (numUsedSlots < numSlots) {
+      slot = numUsedSlots++;
+    } else {
+      slot = victim(null);
+    }
+
+    synchronized (locks[slot % NUM_LOCKS]) {
+      if (keys[slot] != null) {
+        slots.remove(keys[slot]);
+        counts.put(extensions[slot], counts.get(extensions[slot]) - 1);
+        evictionCount.incrementAndGet();
+      }
+      keys[slot] = key;
+      slot(slot).put(b, 0, length);
+    }
+    extensions[slot] = extension;
+    final Integer newCount = counts.get(extension);
+    counts.put(extension, newCount == null ? 1 : newCount + 1);
+    referenced.set(slot, 0);
+    slots.put(key, slot);
+  }
+
+  /** Returns the slot to evict, among the slots of files with the given
+   *  extension if it is not null. */
+  private int victim(String extension) {
+    // two rounds are enough to find a slot, since the first one clears all
+    // reference bits, unless hits keep setting them concurrently
+    int candidate = -1;
+    for (int i = 0; i < 2 * numSlots; ++i) {
+      hand = (hand + 1) % numSlots;
+      if (extension != null && !extension.equals(extensions[hand])) {
+        continue;
+      }
+      if (referenced.getAndSet(hand, 0) == 0) {
+        return hand;
+      }
+      candidate = hand;
+    }
+    assert candidate != -1;
+    return candidate;
+  }
+
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  synchronized long getCachedBytes() {
+    return (long) slots.size() * blockSize;
+  }
+}
@@ -0,0 +1,256 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.BlockCache.BlockKey;
+
+/**
+ * Wraps a {@link Directory} and caches blocks of the files that it reads in
+ * memory which is allocated off-heap once, so that the amount of memory used
+ * to cache the index is bounded and doesn't rely on the page cache of the
+ * operating system, eg. in front of an {@link NIOFSDirectory} in
+ * environments which limit the page cache.
+ * <p>
+ * Only files which are opened for searching populate the cache: files which
+ * are opened for merging or with {@link IOContext#READONCE} may be read
+ * from the cache but their blocks are never added to it, since they are
+ * only read once. The memory used by files of a given extension can be
+ * limited, see {@link #setMaxCachedBytes(String, long)}.
+ * <p>
+ * Files are expected not to be modified once they have been written, which
+ * is the case of all files that Lucene writes. Writing a new file with the
+ * name of a deleted file invalidates the blocks of the deleted file.
+ * <p>
+ * Here's a simple example usage:
+ *
+ * <pre class="prettyprint">
+ *   Directory fsDir = new NIOFSDirectory(new File("/path/to/index"));
+ *   BlockCachingDirectory cachedFSDir = new BlockCachingDirectory(fsDir, 512 * 1024 * 1024L);
+ *   // don't let stored fields evict postings
+ *   cachedFSDir.setMaxCachedBytes("fdt", 64 * 1024 * 1024L);
+ *   IndexWriterConfig conf = new IndexWriterConfig(analyzer);
+ *   IndexWriter writer = new IndexWriter(cachedFSDir, conf);
+ * </pre>
+ *
+ * @lucene.experimental
+ */
+public class BlockCachingDirectory extends FilterDirectory {
+
+  /** Default size of the blocks that are cached. */
+  public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+  private final BlockCache cache;
+  // ids of files, which identify their blocks in the cache
+  private final ConcurrentMap<String,Long> fileIds = new ConcurrentHashMap<>();
+  private final AtomicLong nextFileId = new AtomicLong();
+
+  /** Creates a new BlockCachingDirectory which caches up to
+   *  <code>maxCachedBytes</code> of blocks of {@link #DEFAULT_BLOCK_SIZE}
+   *  bytes. */
+  public BlockCachingDirectory(Directory in, long maxCachedBytes) {
+    this(in, maxCachedBytes, DEFAULT_BLOCK_SIZE);
+  }
+
+  /** Creates a new BlockCachingDirectory which caches up to
+   *  <code>maxCachedBytes</code> of blocks of <code>blockSize</code>
+   *  bytes, which must be a power of 2. */
+  public BlockCachingDirectory(Directory in, long maxCachedBytes, int blockSize) {
+    super(in);
+    if (maxCachedBytes < 0) {
+      throw new IllegalArgumentException("maxCachedBytes must be >= 0 (got " + maxCachedBytes + ")");
+    }
+    if (blockSize < BufferedIndexInput.MIN_BUFFER_SIZE || Integer.bitCount(blockSize) != 1) {
+      throw new IllegalArgumentException("blockSize must be a power of 2 >= " + BufferedIndexInput.MIN_BUFFER_SIZE + " (got " + blockSize + ")");
+    }
+    this.cache = new BlockCache(maxCachedBytes, blockSize);
+  }
+
+  /** Limits the number of bytes of the cache that blocks of files with
+   *  the given extension may use. By default, the cache is not limited per
+   *  extension. */
+  public void setMaxCachedBytes(String extension, long maxCachedBytes) {
+    if (maxCachedBytes < 0) {
+      throw new IllegalArgumentException("maxCachedBytes must be >= 0 (got " + maxCachedBytes + ")");
+    }
+    cache.setQuota(extension, maxCachedBytes);
+  }
+
+  /** Returns the number of reads of blocks which were served by the cache. */
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  /** Returns the number of reads of blocks which were not served by the
+   *  cache. */
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+
+  /** Returns the number of blocks which were evicted from the cache to make
+   *  room for other blocks. */
+  public long getEvictionCount() {
+    return cache.getEvictionCount();
+  }
+
+  /** Returns the number of bytes of the cache which are used by blocks. */
+  public long getCachedBytes() {
+    return cache.getCachedBytes();
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    fileIds.remove(name);
+    return in.createOutput(name, context);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    fileIds.remove(name);
+    in.deleteFile(name);
+  }
+
+  private long fileId(String name) {
+    Long id = fileIds.get(name);
+    if (id == null) {
+      final Long newId = nextFileId.getAndIncrement();
+      id = fileIds.putIfAbsent(name, newId);
+      if (id == null) {
+        id = newId;
+      }
+    }
+    return id;
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    final IndexInput input = in.openInput(name, context);
+    // merges and read-once files are read sequentially, once: don't let them evict other blocks
+    final boolean populateCache = context.context != IOContext.Context.MERGE && !context.readOnce;
+    return new CachedIndexInput("BlockCachingIndexInput(" + input + ")", input, fileId(name),
+        FileSwitchDirectory.getExtension(name), 0L, input.length(), populateCache, cache);
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCachingDirectory(" + in + ")";
+  }
+
+  /** An {@link IndexInput} which reads blocks from the cache, and blocks
+   *  that are not cached from the wrapped input. */
+  private static final class CachedIndexInput extends BufferedIndexInput {
+    private IndexInput in;
+    private final long fileId;
+    private final String extension;
+    private final long fileLength;
+    /** start offset: non-zero in the slice case */
+    private final long off;
+    private final long length;
+    private final boolean populateCache;
+    private final BlockCache cache;
+    private byte[] block;
+    /** is this instance a clone and hence does not own the file to close it */
+    private boolean isClone;
+
+    CachedIndexInput(String resourceDesc, IndexInput in, long fileId, String extension, long off, long length,
+        boolean populateCache, BlockCache cache) throws IOException {
+      super(resourceDesc, cache.blockSize);
+      this.in = in;
+      this.fileId = fileId;
+      this.extension = extension;
+      this.fileLength = in.length();
+      this.off = off;
+      this.length = length;
+      this.populateCache = populateCache;
+      this.cache = cache;
+    }
+
+    @Override
+    protected void readInternal(byte[] b, int offset, int len) throws IOException {
+      if (getFilePointer() + len > length) {
+        throw new EOFException("read past EOF: " + this);
+      }
+      final int blockSize = cache.blockSize;
+      long pos = off + getFilePointer();
+      while (len > 0) {
+        final long blockIndex = pos / blockSize;
+        final int offsetInBlock = (int) (pos % blockSize);
+        final int n = Math.min(len, blockSize - offsetInBlock);
+        final BlockKey key = new BlockKey(fileId, blockIndex);
+        if (!cache.read(key, offsetInBlock, b, offset, n)) {
+          if (populateCache) {
+            final int blockLength = (int) Math.min(blockSize, fileLength - blockIndex * blockSize);
+            if (block == null) {
+              block = new byte[blockSize];
+            }
+            in.seek(blockIndex * blockSize);
+            in.readBytes(block, 0, blockLength);
+            cache.store(key, extension, block, blockLength);
+            System.arraycopy(block, offsetInBlock, b, offset, n);
+          } else {
+            in.seek(pos);
+            in.readBytes(b, offset, n);
+          }
+        }
+        pos += n;
+        offset += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    protected void seekInternal(long pos) throws IOException {}
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public CachedIndexInput clone() {
+      final CachedIndexInput clone = (CachedIndexInput) super.clone();
+      clone.in = in.clone();
+      clone.block = null;
+      clone.isClone = true;
+      return clone;
+    }
+
+    @Override
+    public IndexInput slice(String sliceDescription, long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > this.length) {
+        throw new IllegalArgumentException("slice() " + sliceDescription + " out of bounds: "  + this);
+      }
+      final CachedIndexInput slice = new CachedIndexInput(toString() + " [slice=" + sliceDescription + "]", in.clone(),
+          fileId, extension, off + offset, length, populateCache, cache);
+      slice.isClone = true;
+      return slice;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!isClone) {
+        in.close();
+      }
+    }
+  }
+}
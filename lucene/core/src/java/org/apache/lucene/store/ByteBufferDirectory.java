@@ -0,0 +1,331 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.lucene.util.Accountable;
+
+/**
+ * A memory-resident {@link Directory} which stores files off-heap, in large
+ * pages of direct {@link ByteBuffer}s, so that it can hold large indexes
+ * without putting pressure on the garbage collector like {@link RAMDirectory}
+ * does with its many small {@code byte[]} buffers. Locking implementation is
+ * by default the {@link SingleInstanceLockFactory} but can be changed with
+ * {@link #setLockFactory}.
+ * <p>
+ * Files are read with the same {@link IndexInput} implementation as
+ * {@link MMapDirectory}, so reads, clones and slices don't need any locking.
+ * Files can't be modified once they have been written, so pages are only
+ * written to by the {@link IndexOutput} which creates them. Pages which are
+ * being written are taken from a pool, which avoids allocating new direct
+ * buffers for every file that is written.
+ * <p>
+ * The memory of a file is released by the garbage collector once it has been
+ * deleted and all inputs which read it have been closed and are unreachable,
+ * since inputs which are still open may keep reading it.
+ *
+ * @lucene.experimental
+ */
+public class ByteBufferDirectory extends BaseDirectory implements Accountable {
+
+  /** Default size of pages: 1 MB. */
+  public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+  /** Maximum number of free pages that are kept in the pool. */
+  private static final int MAX_POOLED_PAGES = 16;
+
+  private final ConcurrentMap<String,PagedFile> files = new ConcurrentHashMap<>();
+  private final AtomicLong sizeInBytes = new AtomicLong();
+  private final int pageShift;
+  private final int pageSize;
+  private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger poolSize = new AtomicInteger();
+
+  /** Constructs an empty {@link Directory} with pages of
+   *  {@link #DEFAULT_PAGE_SIZE} bytes. */
+  public ByteBufferDirectory() {
+    this(DEFAULT_PAGE_SIZE);
+  }
+
+  /** Constructs an empty {@link Directory} with pages of
+   *  <code>pageSize</code> bytes, which must be a power of 2 between 1 KB
+   *  and 1 GB. */
+  public ByteBufferDirectory(int pageSize) {
+    if (pageSize < 1024 || pageSize > (1 << 30) || Integer.bitCount(pageSize) != 1) {
+      throw new IllegalArgumentException("pageSize must be a power of 2 between 1024 and 2^30 (got " + pageSize + ")");
+    }
+    this.pageSize = pageSize;
+    this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+    try {
+      setLockFactory(new SingleInstanceLockFactory());
+    } catch (IOException e) {
+      // Cannot happen
+    }
+  }
+
+  /**
+   * Creates a new <code>ByteBufferDirectory</code> instance from a different
+   * <code>Directory</code> implementation, with pages of
+   * {@link #DEFAULT_PAGE_SIZE} bytes. This can be used to load a disk-based
+   * index into memory.
+   * <p>
+   * Note that the resulting <code>ByteBufferDirectory</code> instance is fully
+   * independent from the original <code>Directory</code> (it is a complete
+   * copy). Any subsequent changes to the original <code>Directory</code> will
+   * not be visible in the <code>ByteBufferDirectory</code> instance.
+   */
+  public ByteBufferDirectory(Directory dir, IOContext context) throws IOException {
+    this();
+    for (String file : dir.listAll()) {
+      dir.copy(this, file, file, context);
+    }
+  }
+
+  /** Returns the size of pages. */
+  public final int getPageSize() {
+    return pageSize;
+  }
+
+  @Override
+  public String getLockID() {
+    return "lucene-" + Integer.toHexString(hashCode());
+  }
+
+  @Override
+  public final String[] listAll() {
+    ensureOpen();
+    final List<String> names = new ArrayList<>(files.size());
+    for (String name : files.keySet()) {
+      names.add(name);
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /** Returns the length in bytes of a file in the directory.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public final long fileLength(String name) throws IOException {
+    ensureOpen();
+    final PagedFile file = files.get(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    return file.length;
+  }
+
+  /** Returns the number of bytes of off-heap memory which are used by the
+   *  files of this directory. */
+  @Override
+  public final long ramBytesUsed() {
+    ensureOpen();
+    return sizeInBytes.get();
+  }
+
+  /** Removes an existing file in the directory.
+   * @throws IOException if the file does not exist
+   */
+  @Override
+  public void deleteFile(String name) throws IOException {
+    ensureOpen();
+    final PagedFile file = files.remove(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    sizeInBytes.addAndGet(-file.sizeInBytes);
+  }
+
+  /** Creates a new, empty file in the directory with the given name. Returns
+   *  a stream writing this file, which is only visible to readers once the
+   *  stream is closed. */
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    final PagedFile placeholder = new PagedFile(new ByteBuffer[] { ByteBuffer.allocate(0) }, 0L, 0L);
+    final PagedFile existing = files.put(name, placeholder);
+    if (existing != null) {
+      sizeInBytes.addAndGet(-existing.sizeInBytes);
+    }
+    return new PagedIndexOutput(name, placeholder);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+  }
+
+  /** Returns a stream reading an existing file. */
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    ensureOpen();
+    final PagedFile file = files.get(name);
+    if (file == null) {
+      throw new FileNotFoundException(name);
+    }
+    // inputs move the positions of their buffers
+    final ByteBuffer[] buffers = new ByteBuffer[file.pages.length];
+    for (int i = 0; i < buffers.length; ++i) {
+      buffers[i] = file.pages[i].duplicate();
+    }
+    return ByteBufferIndexInput.newInstance("ByteBufferIndexInput(name=" + name + ")", buffers, file.length, pageShift, null, false);
+  }
+
+  /** Closes the store to future operations, releasing associated memory. */
+  @Override
+  public void close() {
+    isOpen = false;
+    files.clear();
+    pool.clear();
+    sizeInBytes.set(0);
+  }
+
+  private ByteBuffer newPage() {
+    final ByteBuffer page = pool.poll();
+    if (page == null) {
+      return ByteBuffer.allocateDirect(pageSize);
+    }
+    poolSize.decrementAndGet();
+    return page;
+  }
+
+  private void releasePage(ByteBuffer page) {
+    if (poolSize.incrementAndGet() <= MAX_POOLED_PAGES) {
+      page.clear();
+      pool.offer(page);
+    } else {
+      poolSize.decrementAndGet();
+    }
+  }
+
+  /** The content of a file, which is never modified: all pages are full,
+   *  except the last one which has the exact size of the end of the file
+   *  and may be empty. */
+  private static final class PagedFile {
+    final ByteBuffer[] pages;
+    final long length;
+    final long sizeInBytes;
+
+    PagedFile(ByteBuffer[] pages, long length, long sizeInBytes) {
+      this.pages = pages;
+      this.length = length;
+      this.sizeInBytes = sizeInBytes;
+    }
+  }
+
+  /** Writes pages and publishes them as a {@link PagedFile} on close. */
+  private final class PagedIndexOutput extends IndexOutput {
+    private final String name;
+    private final PagedFile placeholder;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private final Checksum crc = new BufferedChecksum(new CRC32());
+    private ByteBuffer page;
+    private boolean closed;
+
+    PagedIndexOutput(String name, PagedFile placeholder) {
+      this.name = name;
+      this.placeholder = placeholder;
+    }
+
+    private void nextPage() {
+      page = newPage();
+      pages.add(page);
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      if (page == null || !page.hasRemaining()) {
+        nextPage();
+      }
+      page.put(b);
+      crc.update(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      crc.update(b, offset, length);
+      while (length > 0) {
+        if (page == null || !page.hasRemaining()) {
+          nextPage();
+        }
+        final int n = Math.min(length, page.remaining());
+        page.put(b, offset, n);
+        offset += n;
+        length -= n;
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return page == null ? 0L : ((long) (pages.size() - 1) << pageShift) + page.position();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      final long length = getFilePointer();
+      final int numFullPages = (int) (length >>> pageShift);
+      final ByteBuffer[] buffers = new ByteBuffer[numFullPages + 1];
+      for (int i = 0; i < numFullPages; ++i) {
+        final ByteBuffer full = pages.get(i);
+        full.clear();
+        buffers[i] = full.asReadOnlyBuffer();
+      }
+      // copy the end of the file to a buffer of the exact size so that
+      // small files don't use a whole page
+      final int tailLength = (int) (length & (pageSize - 1));
+      final ByteBuffer tail = ByteBuffer.allocateDirect(tailLength);
+      if (numFullPages < pages.size()) {
+        final ByteBuffer last = pages.get(numFullPages);
+        last.flip();
+        tail.put(last);
+        tail.flip();
+        releasePage(last);
+      }
+      buffers[numFullPages] = tail.asReadOnlyBuffer();
+      pages.clear();
+      page = null;
+
+      final PagedFile file = new PagedFile(buffers, length, ((long) numFullPages << pageShift) + tailLength);
+      // the file may have been deleted or overwritten while it was written
+      if (files.replace(name, placeholder, file)) {
+        sizeInBytes.addAndGet(file.sizeInBytes);
+      }
+    }
+  }
+}
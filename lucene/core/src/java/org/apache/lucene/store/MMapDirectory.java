@@ -20,6 +20,7 @@ package org.apache.lucene.store;
 import java.io.IOException;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException; // javadoc @link
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -28,7 +29,12 @@ import java.nio.file.StandardOpenOption;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.lang.reflect.Method;
 
 import org.apache.lucene.store.ByteBufferIndexInput.BufferCleaner;
@@ -77,6 +83,11 @@ import org.apache.lucene.util.Constants;
  * blocked on IO. The channel will remain closed and subsequent access
  * to {@link MMapDirectory} will throw a {@link ClosedChannelException}. 
  * </p>
+ * <p>Files with the extensions given to {@link #setPreloadExtensions} can be
+ * loaded into physical memory when they are opened, so that the first random
+ * reads of a cold index, for instance of the terms index or of norms, do not
+ * each take a page fault. Pages are loaded by touching them, optionally in
+ * the background (see {@link #setPreloadExecutor}).
  * @see <a href="http://blog.thetaphi.de/2012/07/use-lucenes-mmapdirectory-on-64bit.html">Blog post about MMapDirectory</a>
  */
 public class MMapDirectory extends FSDirectory {
@@ -87,6 +98,17 @@ public class MMapDirectory extends FSDirectory {
    */
   public static final int DEFAULT_MAX_BUFF = Constants.JRE_IS_64BIT ? (1 << 30) : (1 << 28);
   final int chunkSizePower;
+  private volatile Set<String> preloadExtensions = Collections.emptySet();
+  private volatile Executor preloadExecutor;
+  private final AtomicLong preloadedBytes = new AtomicLong();
+  private final AtomicLong alreadyLoadedBytes = new AtomicLong();
+
+  /** Size of the pages that are touched in order to preload them, which is
+   *  the smallest page size of common platforms. */
+  private static final int PAGE_SIZE = 4096;
+  /** Number of bytes that are preloaded at once, while holding the lock that
+   *  prevents the buffers from being unmapped. */
+  private static final int PRELOAD_BATCH_SIZE = 1 << 20;
 
   /** Create a new MMapDirectory for the named location.
    *
@@ -180,6 +202,66 @@ public class MMapDirectory extends FSDirectory {
     return useUnmapHack;
   }
   
+  /**
+   * Sets the extensions of the files which are loaded into physical memory
+   * when they are opened for searching, eg. <code>tip</code> for the
+   * terms index and <code>nvd</code> for norms. Files that are opened for
+   * merging or with {@link IOContext#READONCE} are never preloaded, since
+   * they are read sequentially, which the read-ahead of the operating
+   * system already handles well. Default is no extensions.
+   * <p><b>NOTE</b>: files of compound files are only preloaded if the
+   * <code>cfs</code> extension is given, in which case the whole
+   * compound file is preloaded.
+   */
+  public void setPreloadExtensions(Set<String> extensions) {
+    this.preloadExtensions = Collections.unmodifiableSet(new HashSet<>(extensions));
+  }
+
+  /**
+   * Returns the extensions of the files which are preloaded.
+   * @see #setPreloadExtensions
+   */
+  public Set<String> getPreloadExtensions() {
+    return preloadExtensions;
+  }
+
+  /**
+   * Sets the {@link Executor} that preloads files in the background, so
+   * that opening them does not wait for them to be loaded. If
+   * <code>null</code>, which is the default, files are preloaded by the
+   * thread which opens them, before {@link #openInput} returns.
+   */
+  public void setPreloadExecutor(Executor executor) {
+    this.preloadExecutor = executor;
+  }
+
+  /**
+   * Returns the {@link Executor} that preloads files in the background.
+   * @see #setPreloadExecutor
+   */
+  public Executor getPreloadExecutor() {
+    return preloadExecutor;
+  }
+
+  /**
+   * Returns the number of bytes that were loaded into physical memory ahead
+   * of reads. Divided by the page size, this is an upper bound of the number
+   * of page faults that reads avoided.
+   * @see #setPreloadExtensions
+   */
+  public long getPreloadedBytes() {
+    return preloadedBytes.get();
+  }
+
+  /**
+   * Returns the number of bytes that were not preloaded since they were
+   * already in physical memory.
+   * @see #setPreloadExtensions
+   */
+  public long getAlreadyLoadedBytes() {
+    return alreadyLoadedBytes.get();
+  }
+
   /**
    * Returns the current mmap chunk size.
    * @see #MMapDirectory(File, LockFactory, int)
@@ -196,9 +278,82 @@ public class MMapDirectory extends FSDirectory {
     try (FileChannel c = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
       final String resourceDescription = "MMapIndexInput(path=\"" + file.toString() + "\")";
       final boolean useUnmap = getUseUnmap();
+      final ByteBuffer[] buffers = map(resourceDescription, c, 0, c.size());
+      BufferCleaner cleaner = useUnmap ? CLEANER : null;
+      if (shouldPreload(name, context)) {
+        final Preloader preloader = new Preloader(buffers, cleaner);
+        if (useUnmap) {
+          // don't unmap the buffers while they are being preloaded
+          cleaner = preloader;
+        }
+        final Executor executor = preloadExecutor;
+        if (executor == null) {
+          preloader.run();
+        } else {
+          executor.execute(preloader);
+        }
+      }
       return ByteBufferIndexInput.newInstance(resourceDescription,
-          map(resourceDescription, c, 0, c.size()), 
-          c.size(), chunkSizePower, useUnmap ? CLEANER : null, useUnmap);
+          buffers, c.size(), chunkSizePower, cleaner, useUnmap);
+    }
+  }
+
+  private boolean shouldPreload(String name, IOContext context) {
+    if (context.context == IOContext.Context.MERGE || context.readOnce) {
+      return false;
+    }
+    return preloadExtensions.contains(FileSwitchDirectory.getExtension(name));
+  }
+
+  /** Loads the pages of the buffers of a file into physical memory. */
+  private final class Preloader implements Runnable, BufferCleaner {
+    private final ByteBuffer[] buffers;
+    private final BufferCleaner cleaner;
+    private boolean closed;
+    // makes sure that reads which touch pages are not optimized away
+    @SuppressWarnings("unused")
+    private int sink;
+
+    Preloader(ByteBuffer[] buffers, BufferCleaner cleaner) {
+      this.buffers = buffers;
+      this.cleaner = cleaner;
+    }
+
+    @Override
+    public void run() {
+      for (ByteBuffer buffer : buffers) {
+        synchronized (this) {
+          if (closed) {
+            return;
+          }
+          if (buffer instanceof MappedByteBuffer && ((MappedByteBuffer) buffer).isLoaded()) {
+            alreadyLoadedBytes.addAndGet(buffer.limit());
+            continue;
+          }
+        }
+        for (int start = 0; start < buffer.limit(); start += PRELOAD_BATCH_SIZE) {
+          final int end = Math.min(buffer.limit(), start + PRELOAD_BATCH_SIZE);
+          synchronized (this) {
+            if (closed) {
+              return;
+            }
+            int sum = 0;
+            for (int i = start; i < end; i += PAGE_SIZE) {
+              sum += buffer.get(i);
+            }
+            sink += sum;
+          }
+          preloadedBytes.addAndGet(end - start);
+        }
+      }
+    }
+
+    @Override
+    public void freeBuffer(ByteBufferIndexInput parent, ByteBuffer buffer) throws IOException {
+      synchronized (this) {
+        closed = true;
+      }
+      cleaner.freeBuffer(parent, buffer);
     }
   }
 
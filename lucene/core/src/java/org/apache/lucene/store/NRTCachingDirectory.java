@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.store.RAMDirectory;      // javadocs
@@ -61,6 +63,12 @@ import org.apache.lucene.util.IOUtils;
  * cached bytes exceeds 60 MB at which point all writes will
  * not be cached (until the net bytes falls below 60 MB).</p>
  *
+ * <p>If an {@link Executor} is passed to {@link
+ * #NRTCachingDirectory(Directory, double, double, Executor)}, cached files
+ * are also evicted in the background, largest first, whenever the cache
+ * uses more than 3/4 of <code>maxCachedMB</code>, so that new flushed
+ * segments keep being cached between commits.</p>
+ *
  * @lucene.experimental
  */
 
@@ -71,6 +79,12 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
 
   private final long maxMergeSizeBytes;
   private final long maxCachedBytes;
+  private final Executor evictionExecutor;
+
+  // cached files which are still being written, and can't be evicted yet
+  private final Set<String> openCachedOutputs = new HashSet<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private volatile boolean closed;
 
   private static final boolean VERBOSE = false;
 
@@ -80,9 +94,22 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
    *  maxMergeSizeMB, and 2) the total cached bytes is <=
    *  maxCachedMB */
   public NRTCachingDirectory(Directory delegate, double maxMergeSizeMB, double maxCachedMB) {
+    this(delegate, maxMergeSizeMB, maxCachedMB, null);
+  }
+
+  /**
+   *  Same as {@link #NRTCachingDirectory(Directory, double, double)}, but
+   *  cached files are also evicted to the delegate directory by tasks of
+   *  the given executor when the cache uses more than 3/4 of
+   *  maxCachedMB, until it uses at most half of it. */
+  public NRTCachingDirectory(Directory delegate, double maxMergeSizeMB, double maxCachedMB, Executor evictionExecutor) {
     super(delegate);
     maxMergeSizeBytes = (long) (maxMergeSizeMB*1024*1024);
     maxCachedBytes = (long) (maxCachedMB*1024*1024);
+    this.evictionExecutor = evictionExecutor;
+    for (int i = 0; i < uncacheLocks.length; ++i) {
+      uncacheLocks[i] = new Object();
+    }
   }
 
 
@@ -157,7 +184,14 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
       } catch (IOException ioe) {
         // This is fine: file may not exist
       }
-      return cache.createOutput(name, context);
+      final IndexOutput out = cache.createOutput(name, context);
+      if (evictionExecutor == null) {
+        return out;
+      }
+      synchronized (this) {
+        openCachedOutputs.add(name);
+      }
+      return new CachedIndexOutput(name, out);
     } else {
       try {
         cache.deleteFile(name);
@@ -203,6 +237,7 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
     // it for defensive reasons... or in case the app is
     // doing something custom (creating outputs directly w/o
     // using IndexWriter):
+    closed = true;
     for(String fileName : cache.listAll()) {
       unCache(fileName);
     }
@@ -225,12 +260,13 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
     return !name.equals(IndexFileNames.SEGMENTS_GEN) && (bytes <= maxMergeSizeBytes) && (bytes + cache.ramBytesUsed()) <= maxCachedBytes;
   }
 
-  private final Object uncacheLock = new Object();
+  private final Object[] uncacheLocks = new Object[32];
 
   private void unCache(String fileName) throws IOException {
-    // Only let one thread uncache at a time; this only
-    // happens during commit() or close():
-    synchronized(uncacheLock) {
+    // Only let one thread uncache a given file at a time, but
+    // let commit() and eviction uncache different files
+    // concurrently:
+    synchronized(uncacheLocks[(fileName.hashCode() & 0x7fffffff) % uncacheLocks.length]) {
       if (VERBOSE) {
         System.out.println("nrtdir.unCache name=" + fileName);
       }
@@ -248,12 +284,108 @@ public class NRTCachingDirectory extends FilterDirectory implements Accountable
         IOUtils.close(in, out);
       }
 
-      // Lock order: uncacheLock -> this
+      // Lock order: uncacheLocks -> this
       synchronized(this) {
         // Must sync here because other sync methods have
         // if (cache.fileNameExists(name)) { ... } else { ... }:
-        cache.deleteFile(fileName);
+        if (cache.fileNameExists(fileName)) {
+          cache.deleteFile(fileName);
+        } else {
+          // the file was deleted while we were copying it
+          IOUtils.deleteFilesIgnoringExceptions(this.in, fileName);
+        }
+      }
+    }
+  }
+
+  private void maybeEvict() {
+    if (evictionExecutor != null && !closed
+        && cache.ramBytesUsed() > maxCachedBytes / 4 * 3
+        && evicting.compareAndSet(false, true)) {
+      evictionExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            evict();
+          } catch (IOException | AlreadyClosedException e) {
+            // files that could not be evicted stay in the cache, until
+            // they get sync'd or the directory gets closed
+          } finally {
+            evicting.set(false);
+          }
+        }
+      });
+    }
+  }
+
+  private void evict() throws IOException {
+    while (!closed && cache.ramBytesUsed() > maxCachedBytes / 2) {
+      // evict the largest file first, which frees the most memory with the
+      // fewest copies and is the least likely to be a new flushed segment
+      String largest = null;
+      long largestLength = -1;
+      synchronized (this) {
+        for (String fileName : cache.listAll()) {
+          if (!openCachedOutputs.contains(fileName)) {
+            final long length = cache.fileLength(fileName);
+            if (length > largestLength) {
+              largest = fileName;
+              largestLength = length;
+            }
+          }
+        }
+      }
+      if (largest == null) {
+        break;
+      }
+      if (VERBOSE) {
+        System.out.println("nrtdir.evict name=" + largest);
+      }
+      unCache(largest);
+    }
+  }
+
+  /** Tracks outputs of cached files, which can't be evicted until they
+   *  are closed. */
+  private final class CachedIndexOutput extends IndexOutput {
+    private final String name;
+    private final IndexOutput out;
+
+    CachedIndexOutput(String name, IndexOutput out) {
+      this.name = name;
+      this.out = out;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    @Override
+    public long getChecksum() throws IOException {
+      return out.getChecksum();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        synchronized (NRTCachingDirectory.this) {
+          openCachedOutputs.remove(name);
+        }
       }
+      maybeEvict();
     }
   }
 
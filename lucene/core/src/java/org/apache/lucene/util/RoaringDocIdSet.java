@@ -0,0 +1,562 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * {@link DocIdSet} implementation inspired from http://roaringbitmap.org/
+ *
+ * The space is divided into blocks of 2^16 bits and each block is encoded
+ * independently. In each block, if less than 2^12 bits are set, then
+ * documents are simply stored in a short[]. If more than 2^16-2^12 bits are
+ * set, then the inverse of the set is encoded in a simple short[]. Otherwise
+ * a {@link FixedBitSet} is used.
+ *
+ * @lucene.experimental
+ */
+public class RoaringDocIdSet extends DocIdSet {
+
+  // Number of documents in a block
+  private static final int BLOCK_SIZE = 1 << 16;
+  // The maximum length for an array, beyond that point we switch to a bitset
+  private static final int MAX_ARRAY_LENGTH = 1 << 12;
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(RoaringDocIdSet.class);
+
+  /** A builder of {@link RoaringDocIdSet}s. */
+  public static class Builder {
+
+    private final int maxDoc;
+    private final DocIdSet[] sets;
+
+    private int cardinality;
+    private int lastDocId;
+    private int currentBlock;
+    private int currentBlockCardinality;
+
+    // We start by filling the buffer and when it's full we copy the content of
+    // the buffer to the FixedBitSet and put further documents in that bitset
+    private final short[] buffer;
+    private FixedBitSet denseBuffer;
+
+    /** Sole constructor. */
+    public Builder(int maxDoc) {
+      this.maxDoc = maxDoc;
+      sets = new DocIdSet[(maxDoc + BLOCK_SIZE - 1) >>> 16];
+      lastDocId = -1;
+      currentBlock = -1;
+      buffer = new short[MAX_ARRAY_LENGTH];
+    }
+
+    private void flush() {
+      assert currentBlockCardinality <= BLOCK_SIZE;
+      if (currentBlockCardinality <= MAX_ARRAY_LENGTH) {
+        // Use sparse encoding
+        assert denseBuffer == null;
+        if (currentBlockCardinality > 0) {
+          sets[currentBlock] = new ShortArrayDocIdSet(Arrays.copyOf(buffer, currentBlockCardinality));
+        }
+      } else {
+        assert denseBuffer != null;
+        sets[currentBlock] = encode(denseBuffer, currentBlockCardinality);
+        denseBuffer = null;
+      }
+
+      cardinality += currentBlockCardinality;
+      currentBlockCardinality = 0;
+    }
+
+    /**
+     * Add a new doc-id to this builder.
+     * NOTE: doc ids must be added in order.
+     */
+    public Builder add(int docId) {
+      if (docId <= lastDocId) {
+        throw new IllegalArgumentException("Doc ids must be added in-order, got " + docId + " which is <= lastDocID=" + lastDocId);
+      }
+      if (docId >= maxDoc) {
+        throw new IllegalArgumentException("Doc ids must be < maxDoc=" + maxDoc + ", got " + docId);
+      }
+      final int block = docId >>> 16;
+      if (block != currentBlock) {
+        // we went to a different block, let's flush what we buffered and start from fresh
+        if (currentBlock != -1) {
+          flush();
+        }
+        currentBlock = block;
+      }
+
+      if (currentBlockCardinality < MAX_ARRAY_LENGTH) {
+        buffer[currentBlockCardinality] = (short) docId;
+      } else {
+        if (denseBuffer == null) {
+          // the buffer is full, let's move to a fixed bit set
+          denseBuffer = new FixedBitSet(blockLength(maxDoc, currentBlock));
+          for (short doc : buffer) {
+            denseBuffer.set(doc & 0xFFFF);
+          }
+        }
+        denseBuffer.set(docId & 0xFFFF);
+      }
+
+      lastDocId = docId;
+      currentBlockCardinality += 1;
+      return this;
+    }
+
+    /** Add the content of the provided {@link DocIdSetIterator}. */
+    public Builder add(DocIdSetIterator disi) throws IOException {
+      for (int doc = disi.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = disi.nextDoc()) {
+        add(doc);
+      }
+      return this;
+    }
+
+    /** Build an instance. */
+    public RoaringDocIdSet build() {
+      if (currentBlock != -1) {
+        flush();
+      }
+      return new RoaringDocIdSet(maxDoc, sets, cardinality);
+    }
+
+  }
+
+  /** Number of documents in the given block, only the last block may be incomplete. */
+  private static int blockLength(int maxDoc, int block) {
+    return Math.min(BLOCK_SIZE, maxDoc - (block << 16));
+  }
+
+  /** Pick the most compact encoding for a block whose documents are the bits
+   *  set in <code>bits</code>. */
+  private static DocIdSet encode(FixedBitSet bits, int cardinality) {
+    assert bits.cardinality() == cardinality;
+    final int length = bits.length();
+    if (cardinality == 0) {
+      return null;
+    } else if (cardinality <= MAX_ARRAY_LENGTH) {
+      final short[] docs = new short[cardinality];
+      int doc = -1;
+      for (int i = 0; i < docs.length; ++i) {
+        doc = bits.nextSetBit(doc + 1);
+        docs[i] = (short) doc;
+      }
+      return new ShortArrayDocIdSet(docs);
+    } else if (length - cardinality < MAX_ARRAY_LENGTH) {
+      // Doc ids are very dense, inverse the encoding
+      final short[] excludedDocs = new short[length - cardinality];
+      int excludedDoc = -1;
+      for (int i = 0; i < excludedDocs.length; ++i) {
+        excludedDoc = nextClearBit(bits, excludedDoc + 1);
+        excludedDocs[i] = (short) excludedDoc;
+      }
+      return new NotShortArrayDocIdSet(excludedDocs, length);
+    } else {
+      // Neither sparse nor super dense, use a fixed bit set
+      return bits;
+    }
+  }
+
+  private static int nextClearBit(FixedBitSet bits, int index) {
+    while (bits.get(index)) {
+      ++index;
+    }
+    return index;
+  }
+
+  /** Copy the content of a block into a {@link FixedBitSet}. */
+  private static FixedBitSet toBitSet(DocIdSet set, int length) throws IOException {
+    if (set instanceof FixedBitSet) {
+      return ((FixedBitSet) set).clone();
+    }
+    final FixedBitSet bits = new FixedBitSet(length);
+    bits.or(set.iterator());
+    return bits;
+  }
+
+  private static int maxDoc(Collection<RoaringDocIdSet> docIdSets) {
+    if (docIdSets.isEmpty()) {
+      throw new IllegalArgumentException("Cannot combine an empty collection of sets");
+    }
+    int maxDoc = -1;
+    for (RoaringDocIdSet set : docIdSets) {
+      if (maxDoc == -1) {
+        maxDoc = set.maxDoc;
+      } else if (maxDoc != set.maxDoc) {
+        throw new IllegalArgumentException("All sets must have the same maxDoc, got " + maxDoc + " and " + set.maxDoc);
+      }
+    }
+    return maxDoc;
+  }
+
+  /**
+   * Compute the union of the provided sets. This method is much faster than
+   * computing the union manually since it operates directly at the block level.
+   * All sets must have been built with the same <code>maxDoc</code>.
+   */
+  public static RoaringDocIdSet union(Collection<RoaringDocIdSet> docIdSets) throws IOException {
+    final int maxDoc = maxDoc(docIdSets);
+    final DocIdSet[] sets = new DocIdSet[(maxDoc + BLOCK_SIZE - 1) >>> 16];
+    int cardinality = 0;
+    for (int block = 0; block < sets.length; ++block) {
+      DocIdSet first = null;
+      FixedBitSet bits = null;
+      for (RoaringDocIdSet set : docIdSets) {
+        final DocIdSet sub = set.docIdSets[block];
+        if (sub == null) {
+          continue;
+        }
+        if (first == null) {
+          first = sub;
+        } else {
+          if (bits == null) {
+            bits = toBitSet(first, blockLength(maxDoc, block));
+          }
+          bits.or(sub.iterator());
+        }
+      }
+      if (bits != null) {
+        final int blockCardinality = bits.cardinality();
+        sets[block] = encode(bits, blockCardinality);
+        cardinality += blockCardinality;
+      } else if (first != null) {
+        // blocks are immutable, so a block which only exists in one set can be shared
+        sets[block] = first;
+        cardinality += cardinality(first);
+      }
+    }
+    return new RoaringDocIdSet(maxDoc, sets, cardinality);
+  }
+
+  /**
+   * Compute the intersection of the provided sets. This method is much faster
+   * than computing the intersection manually since it operates directly at the
+   * block level. All sets must have been built with the same <code>maxDoc</code>.
+   */
+  public static RoaringDocIdSet intersect(Collection<RoaringDocIdSet> docIdSets) throws IOException {
+    final int maxDoc = maxDoc(docIdSets);
+    final DocIdSet[] sets = new DocIdSet[(maxDoc + BLOCK_SIZE - 1) >>> 16];
+    int cardinality = 0;
+    blocks:
+    for (int block = 0; block < sets.length; ++block) {
+      // start from the sparsest block so that the intersection is cheap
+      DocIdSet smallest = null;
+      for (RoaringDocIdSet set : docIdSets) {
+        final DocIdSet sub = set.docIdSets[block];
+        if (sub == null) {
+          continue blocks;
+        }
+        if (smallest == null || cardinality(sub) < cardinality(smallest)) {
+          smallest = sub;
+        }
+      }
+      final FixedBitSet bits = toBitSet(smallest, blockLength(maxDoc, block));
+      for (RoaringDocIdSet set : docIdSets) {
+        final DocIdSet sub = set.docIdSets[block];
+        if (sub != smallest) {
+          bits.and(sub.iterator());
+        }
+      }
+      final int blockCardinality = bits.cardinality();
+      sets[block] = encode(bits, blockCardinality);
+      cardinality += blockCardinality;
+    }
+    return new RoaringDocIdSet(maxDoc, sets, cardinality);
+  }
+
+  private static int cardinality(DocIdSet set) {
+    if (set instanceof ShortArrayDocIdSet) {
+      return ((ShortArrayDocIdSet) set).docIDs.length;
+    } else if (set instanceof NotShortArrayDocIdSet) {
+      final NotShortArrayDocIdSet notSet = (NotShortArrayDocIdSet) set;
+      return notSet.length - notSet.excludedDocs.length;
+    } else {
+      return ((FixedBitSet) set).cardinality();
+    }
+  }
+
+  /**
+   * {@link DocIdSet} implementation that can store documents up to 2^16-1 in a short[].
+   */
+  private static class ShortArrayDocIdSet extends DocIdSet {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(ShortArrayDocIdSet.class);
+
+    private final short[] docIDs;
+
+    private ShortArrayDocIdSet(short[] docIDs) {
+      this.docIDs = docIDs;
+    }
+
+    @Override
+    public boolean isCacheable() {
+      return true;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(docIDs);
+    }
+
+    @Override
+    public DocIdSetIterator iterator() throws IOException {
+      return new DocIdSetIterator() {
+
+        int i = -1; // this is the index of the current document in the array
+        int doc = -1;
+
+        private int docId(int i) {
+          return docIDs[i] & 0xFFFF;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+          if (++i >= docIDs.length) {
+            return doc = NO_MORE_DOCS;
+          }
+          return doc = docId(i);
+        }
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public long cost() {
+          return docIDs.length;
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+          // binary search
+          int lo = i + 1;
+          int hi = docIDs.length - 1;
+          while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int midDoc = docId(mid);
+            if (midDoc < target) {
+              lo = mid + 1;
+            } else {
+              hi = mid - 1;
+            }
+          }
+          if (lo == docIDs.length) {
+            i = docIDs.length;
+            return doc = NO_MORE_DOCS;
+          } else {
+            i = lo;
+            return doc = docId(i);
+          }
+        }
+      };
+    }
+
+  }
+
+  /**
+   * {@link DocIdSet} implementation for very dense blocks: it stores the
+   * documents up to 2^16-1 that are <b>not</b> in the set in a short[].
+   */
+  private static class NotShortArrayDocIdSet extends DocIdSet {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(NotShortArrayDocIdSet.class);
+
+    private final short[] excludedDocs;
+    private final int length;
+
+    private NotShortArrayDocIdSet(short[] excludedDocs, int length) {
+      this.excludedDocs = excludedDocs;
+      this.length = length;
+    }
+
+    @Override
+    public boolean isCacheable() {
+      return true;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(excludedDocs);
+    }
+
+    @Override
+    public DocIdSetIterator iterator() throws IOException {
+      return new DocIdSetIterator() {
+
+        int i = 0; // index of the next excluded document in the array
+        int doc = -1;
+
+        private int excludedDoc(int i) {
+          return i < excludedDocs.length ? excludedDocs[i] & 0xFFFF : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+          return advance(doc + 1);
+        }
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public long cost() {
+          return length - excludedDocs.length;
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+          while (target < length) {
+            // skip over excluded docs which are before the target
+            while (excludedDoc(i) < target) {
+              ++i;
+            }
+            if (excludedDoc(i) != target) {
+              return doc = target;
+            }
+            ++target;
+          }
+          return doc = NO_MORE_DOCS;
+        }
+      };
+    }
+
+  }
+
+  private final int maxDoc;
+  private final DocIdSet[] docIdSets;
+  private final int cardinality;
+  private final long ramBytesUsed;
+
+  private RoaringDocIdSet(int maxDoc, DocIdSet[] docIdSets, int cardinality) {
+    this.maxDoc = maxDoc;
+    this.docIdSets = docIdSets;
+    this.cardinality = cardinality;
+    long ramBytesUsed = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(docIdSets);
+    for (DocIdSet set : this.docIdSets) {
+      if (set != null) {
+        ramBytesUsed += set.ramBytesUsed();
+      }
+    }
+    this.ramBytesUsed = ramBytesUsed;
+  }
+
+  @Override
+  public boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  @Override
+  public DocIdSetIterator iterator() throws IOException {
+    if (cardinality == 0) {
+      return null;
+    }
+    return new Iterator();
+  }
+
+  private class Iterator extends DocIdSetIterator {
+
+    int block;
+    DocIdSetIterator sub;
+    int doc;
+
+    Iterator() {
+      doc = -1;
+      block = -1;
+      sub = DocIdSetIterator.empty();
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      final int subNext = sub.nextDoc();
+      if (subNext == NO_MORE_DOCS) {
+        return firstDocFromNextBlock();
+      }
+      return doc = (block << 16) | subNext;
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      final int targetBlock = target >>> 16;
+      if (targetBlock != block) {
+        block = targetBlock;
+        if (block >= docIdSets.length) {
+          sub = null;
+          return doc = NO_MORE_DOCS;
+        }
+        if (docIdSets[block] == null) {
+          return firstDocFromNextBlock();
+        }
+        sub = docIdSets[block].iterator();
+      }
+      final int subNext = sub.advance(target & 0xFFFF);
+      if (subNext == NO_MORE_DOCS) {
+        return firstDocFromNextBlock();
+      }
+      return doc = (block << 16) | subNext;
+    }
+
+    private int firstDocFromNextBlock() throws IOException {
+      while (true) {
+        block += 1;
+        if (block >= docIdSets.length) {
+          sub = null;
+          return doc = NO_MORE_DOCS;
+        } else if (docIdSets[block] != null) {
+          sub = docIdSets[block].iterator();
+          final int subNext = sub.nextDoc();
+          assert subNext != NO_MORE_DOCS;
+          return doc = (block << 16) | subNext;
+        }
+      }
+    }
+
+    @Override
+    public long cost() {
+      return cardinality;
+    }
+
+  }
+
+  /** Return the exact number of documents that are contained in this set. */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringDocIdSet(cardinality=" + cardinality + ")";
+  }
+}
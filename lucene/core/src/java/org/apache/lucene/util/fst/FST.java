@@ -32,9 +32,11 @@ import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.ByteArrayDataOutput;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.store.RAMOutputStream;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Constants;
@@ -153,6 +155,10 @@ public final class FST<T> implements Accountable {
 
   final BytesStore bytes;
 
+  // if non-null, the bytes of this FST are read from this
+  // input instead of being loaded in bytes
+  private final IndexInput offHeapBytes;
+
   private long startNode = -1;
 
   public final Outputs<T> outputs;
@@ -298,6 +304,7 @@ public final class FST<T> implements Accountable {
     this.allowArrayArcs = allowArrayArcs;
     version = VERSION_CURRENT;
     bytes = new BytesStore(bytesPageBits);
+    offHeapBytes = null;
     // pad: ensure no node gets address 0 which is reserved to mean
     // the stop state w/ no arcs
     bytes.writeByte((byte) 0);
@@ -325,6 +332,19 @@ public final class FST<T> implements Accountable {
   /** Load a previously saved FST; maxBlockBits allows you to
    *  control the size of the byte[] pages used to hold the FST bytes. */
   public FST(DataInput in, Outputs<T> outputs, int maxBlockBits) throws IOException {
+    this(in, outputs, maxBlockBits, false);
+  }
+
+  /** Load a previously saved FST; if <code>offHeap</code> is true, the
+   *  bytes of the FST are not loaded in memory but read from a slice of
+   *  <code>in</code> when the FST is used, so that only the root arcs use
+   *  heap memory: <code>in</code> must not be closed as long as the FST is
+   *  used. This is mostly useful when <code>in</code> is memory-mapped. */
+  public FST(IndexInput in, Outputs<T> outputs, boolean offHeap) throws IOException {
+    this(in, outputs, DEFAULT_MAX_BLOCK_BITS, offHeap);
+  }
+
+  private FST(DataInput in, Outputs<T> outputs, int maxBlockBits, boolean offHeap) throws IOException {
     this.outputs = outputs;
 
     if (maxBlockBits < 1 || maxBlockBits > 30) {
@@ -384,7 +404,15 @@ public final class FST<T> implements Accountable {
     arcWithOutputCount = in.readVLong();
 
     long numBytes = in.readVLong();
-    bytes = new BytesStore(in, numBytes, 1<<maxBlockBits);
+    if (offHeap) {
+      final IndexInput indexIn = (IndexInput) in;
+      offHeapBytes = indexIn.slice("fst", indexIn.getFilePointer(), numBytes);
+      indexIn.seek(indexIn.getFilePointer() + numBytes);
+      bytes = null;
+    } else {
+      bytes = new BytesStore(in, numBytes, 1<<maxBlockBits);
+      offHeapBytes = null;
+    }
     
     NO_OUTPUT = outputs.getNoOutput();
 
@@ -433,7 +461,9 @@ public final class FST<T> implements Accountable {
   @Override
   public long ramBytesUsed() {
     long size = BASE_RAM_BYTES_USED;
-    size += bytes.ramBytesUsed();
+    if (bytes != null) {
+      size += bytes.ramBytesUsed();
+    }
     if (packed) {
       size += nodeRefToAddress.ramBytesUsed();
     } else if (nodeAddress != null) {
@@ -606,9 +636,16 @@ public final class FST<T> implements Accountable {
     out.writeVLong(nodeCount);
     out.writeVLong(arcCount);
     out.writeVLong(arcWithOutputCount);
-    long numBytes = bytes.getPosition();
-    out.writeVLong(numBytes);
-    bytes.writeTo(out);
+    if (offHeapBytes != null) {
+      final IndexInput in = offHeapBytes.clone();
+      in.seek(0);
+      out.writeVLong(in.length());
+      out.copyBytes(in, in.length());
+    } else {
+      long numBytes = bytes.getPosition();
+      out.writeVLong(numBytes);
+      bytes.writeTo(out);
+    }
   }
   
   /**
@@ -1355,7 +1392,9 @@ public final class FST<T> implements Accountable {
    *  position 0. */
   public BytesReader getBytesReader() {
     BytesReader in;
-    if (packed) {
+    if (offHeapBytes != null) {
+      in = new OffHeapBytesReader(offHeapBytes.clone(), !packed);
+    } else if (packed) {
       in = bytes.getForwardReader();
     } else {
       in = bytes.getReverseReader();
@@ -1376,6 +1415,75 @@ public final class FST<T> implements Accountable {
     public abstract boolean reversed();
   }
 
+  /** Reads the bytes of an FST which is not loaded in memory. */
+  private static final class OffHeapBytesReader extends BytesReader {
+    private final IndexInput in;
+    // non-null if in supports random access, eg. if it is memory-mapped
+    private final RandomAccessInput randomAccess;
+    private final boolean reversed;
+    private long pos;
+
+    OffHeapBytesReader(IndexInput in, boolean reversed) {
+      this.in = in;
+      this.randomAccess = in instanceof RandomAccessInput ? (RandomAccessInput) in : null;
+      this.reversed = reversed;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      final byte b;
+      if (randomAccess != null) {
+        b = randomAccess.readByte(pos);
+      } else {
+        in.seek(pos);
+        b = in.readByte();
+      }
+      if (reversed) {
+        pos--;
+      } else {
+        pos++;
+      }
+      return b;
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      if (reversed || randomAccess != null) {
+        for (int i = 0; i < len; i++) {
+          b[offset + i] = readByte();
+        }
+      } else {
+        in.seek(pos);
+        in.readBytes(b, offset, len);
+        pos += len;
+      }
+    }
+
+    @Override
+    public void skipBytes(long count) {
+      if (reversed) {
+        pos -= count;
+      } else {
+        pos += count;
+      }
+    }
+
+    @Override
+    public long getPosition() {
+      return pos;
+    }
+
+    @Override
+    public void setPosition(long pos) {
+      this.pos = pos;
+    }
+
+    @Override
+    public boolean reversed() {
+      return reversed;
+    }
+  }
+
   private static class ArcAndState<T> {
     final Arc<T> arc;
     final IntsRef chain;
@@ -1500,6 +1608,7 @@ public final class FST<T> implements Accountable {
     packed = true;
     this.inputType = inputType;
     bytes = new BytesStore(bytesPageBits);
+    offHeapBytes = null;
     this.outputs = outputs;
     NO_OUTPUT = outputs.getNoOutput();
     
@@ -18,6 +18,7 @@ package org.apache.lucene.codecs.compressing;
  */
 
 import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.codecs.Codec;
@@ -26,10 +27,20 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.BaseStoredFieldsFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.StoredDocument;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
 import org.junit.Test;
 
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
@@ -93,4 +104,57 @@ public class TestCompressingStoredFieldsFormat extends BaseStoredFieldsFormatTes
       dir.close();
     }
   }
+
+  public void testLargeFields() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwConf = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwConf.setMaxBufferedDocs(RandomInts.randomIntBetween(random(), 2, 30));
+    iwConf.setCodec(CompressingCodec.randomInstance(random()));
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwConf);
+
+    final int numDocs = atLeast(200);
+    final String[] bodies = new String[numDocs];
+    final byte[][] binaries = new byte[numDocs][];
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Store.YES));
+      // some values are larger than CompressingStoredFieldsWriter.MIN_LARGE_FIELD_LENGTH
+      bodies[i] = TestUtil.randomUnicodeString(random(), random().nextBoolean() ? 10 : 3000);
+      doc.add(new StoredField("body", bodies[i]));
+      binaries[i] = new byte[random().nextBoolean() ? 10 : RandomInts.randomIntBetween(random(), 1024, 5000)];
+      random().nextBytes(binaries[i]);
+      doc.add(new StoredField("binary", binaries[i]));
+      doc.add(new IntField("num", i, Store.YES));
+      iw.addDocument(doc);
+      if (random().nextInt(10) == 0) {
+        iw.deleteDocuments(new Term("id", Integer.toString(random().nextInt(i + 1))));
+      }
+    }
+
+    for (int iter = 0; iter < 2; ++iter) {
+      if (iter == 1) {
+        iw.forceMerge(1);
+      }
+      final DirectoryReader reader = iw.getReader();
+      final Bits liveDocs = MultiFields.getLiveDocs(reader);
+      for (int docID = 0; docID < reader.maxDoc(); ++docID) {
+        if (liveDocs != null && !liveDocs.get(docID)) {
+          continue;
+        }
+        final StoredDocument doc = reader.document(docID);
+        final int id = Integer.parseInt(doc.get("id"));
+        assertEquals(bodies[id], doc.get("body"));
+        assertEquals(new BytesRef(binaries[id]), doc.getBinaryValue("binary"));
+        assertEquals(id, doc.getField("num").numericValue().intValue());
+
+        // only load the fields which are after the large fields
+        final StoredDocument numOnly = reader.document(docID, Collections.singleton("num"));
+        assertNull(numOnly.get("body"));
+        assertEquals(id, numOnly.getField("num").numericValue().intValue());
+      }
+      reader.close();
+    }
+    iw.close();
+    dir.close();
+  }
 }
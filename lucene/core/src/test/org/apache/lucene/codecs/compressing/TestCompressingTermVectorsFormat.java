@@ -1,18 +1,30 @@
 package org.apache.lucene.codecs.compressing;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.BaseTermVectorsFormatTestCase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
 
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 
@@ -72,4 +84,118 @@ public class TestCompressingTermVectorsFormat extends BaseTermVectorsFormatTestC
     iw.close();
     dir.close();
   }
+
+  // merges copy compressed chunks that have no deleted docs, check that
+  // mixing copied chunks with re-encoded docs gives the right vectors
+  public void testMergeWithDeletions() throws Exception {
+    final Codec codec = getCodec();
+    final FieldType ft = new FieldType(TextField.TYPE_NOT_STORED);
+    ft.setStoreTermVectors(true);
+    ft.setStoreTermVectorPositions(random().nextBoolean());
+    ft.setStoreTermVectorOffsets(random().nextBoolean());
+    final int numDocs = atLeast(1000);
+    final List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      if (random().nextInt(10) != 0) {
+        doc.add(new Field("body", TestUtil.randomSimpleString(random()) + " " + TestUtil.randomSimpleString(random()), ft));
+      }
+      docs.add(doc);
+    }
+    // either a few scattered deletions or large ranges of deleted docs
+    final boolean[] deleted = new boolean[numDocs];
+    final boolean clustered = random().nextBoolean();
+    for (int i = 0; i < numDocs; ++i) {
+      deleted[i] = clustered ? (i / 200) % 2 == 0 && random().nextInt(3) == 0 : random().nextInt(50) == 0;
+    }
+
+    final Directory dir = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 20, 300));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    for (Document doc : docs) {
+      w.addDocument(doc);
+    }
+    w.commit();
+    for (int i = 0; i < numDocs; ++i) {
+      if (deleted[i]) {
+        w.deleteDocuments(new Term("id", Integer.toString(i)));
+      }
+    }
+    w.close();
+    // LogDocMergePolicy keeps the order of documents
+    iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    iwc.setMergePolicy(new LogDocMergePolicy());
+    w = new IndexWriter(dir, iwc);
+    w.forceMerge(1);
+    w.close();
+
+    final Directory expectedDir = newDirectory();
+    iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    iwc.setMergePolicy(new LogDocMergePolicy());
+    w = new IndexWriter(expectedDir, iwc);
+    for (int i = 0; i < numDocs; ++i) {
+      if (!deleted[i]) {
+        w.addDocument(docs.get(i));
+      }
+    }
+    w.forceMerge(1);
+    w.close();
+
+    final DirectoryReader expected = DirectoryReader.open(expectedDir);
+    final DirectoryReader actual = DirectoryReader.open(dir);
+    assertReaderEquals("merge with deletions", expected, actual);
+    expected.close();
+    actual.close();
+    expectedDir.close();
+    dir.close();
+  }
+
+  // incomplete chunks must be re-encoded on merge rather than copied, so that
+  // merging many small segments doesn't create many small chunks
+  public void testMergeSmallSegments() throws Exception {
+    // chunks of small docs are cut at MAX_DOCUMENTS_PER_CHUNK docs
+    final Codec codec = CompressingCodec.randomInstance(random(), 1 << 16, false);
+    final FieldType ft = new FieldType(TextField.TYPE_NOT_STORED);
+    ft.setStoreTermVectors(true);
+    final int numDocs = atLeast(2000);
+    final Directory dir = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 2, 30));
+    final LogDocMergePolicy mp = new LogDocMergePolicy();
+    mp.setMergeFactor(TestUtil.nextInt(random(), 2, 4));
+    iwc.setMergePolicy(mp);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final Document doc = new Document();
+    final Field field = new Field("body", "", ft);
+    doc.add(field);
+    for (int i = 0; i < numDocs; ++i) {
+      field.setStringValue("a" + (i % 10) + " b" + (i % 7));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    w.close();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    final CompressingTermVectorsReader vectorsReader =
+        (CompressingTermVectorsReader) getOnlySegmentReader(reader).getTermVectorsReader();
+    final CompressingStoredFieldsIndexReader index = vectorsReader.getIndex();
+    int numChunks = 1;
+    for (int i = 1; i < numDocs; ++i) {
+      if (index.getStartPointer(i) != index.getStartPointer(i - 1)) {
+        ++numChunks;
+      }
+    }
+    // all chunks but the last one are full
+    final int maxChunkDocs = CompressingTermVectorsWriter.MAX_DOCUMENTS_PER_CHUNK;
+    assertEquals((numDocs + maxChunkDocs - 1) / maxChunkDocs, numChunks);
+    reader.close();
+    dir.close();
+  }
 }
@@ -0,0 +1,93 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+
+public class TestHighCompressionWithDictionaryMode extends AbstractTestCompressionMode {
+
+  DictionaryCompressionMode dictionaryMode;
+  byte[] dictionary;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    mode = dictionaryMode = (DictionaryCompressionMode) CompressionMode.HIGH_COMPRESSION_WITH_DICTIONARY;
+    final byte[] sample = randomArray();
+    dictionary = dictionaryMode.trainDictionary(sample, 0, sample.length);
+  }
+
+  @Override
+  byte[] compress(byte[] decompressed, int off, int len) throws IOException {
+    return compress(dictionaryMode.newCompressor(dictionary), decompressed, off, len);
+  }
+
+  @Override
+  byte[] decompress(byte[] compressed, int originalLength) throws IOException {
+    return decompress(dictionaryMode.newDecompressor(dictionary), compressed, originalLength);
+  }
+
+  @Override
+  byte[] decompress(byte[] compressed, int originalLength, int offset, int length) throws IOException {
+    final Decompressor decompressor = dictionaryMode.newDecompressor(dictionary).clone();
+    final BytesRef bytes = new BytesRef();
+    decompressor.decompress(new ByteArrayDataInput(compressed), originalLength, offset, length, bytes);
+    return Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset + bytes.length);
+  }
+
+  public void testDictionaryImprovesCompressionOfSmallDocuments() throws IOException {
+    final StringBuilder sample = new StringBuilder();
+    for (int i = 0; i < 200; ++i) {
+      sample.append(randomJson());
+    }
+    final byte[] sampleBytes = sample.toString().getBytes(StandardCharsets.UTF_8);
+    dictionary = dictionaryMode.trainDictionary(sampleBytes, 0, sampleBytes.length);
+    assertTrue(dictionary.length > 0);
+
+    final byte[] doc = randomJson().getBytes(StandardCharsets.UTF_8);
+    final byte[] withDictionary = compress(doc, 0, doc.length);
+    final byte[] withoutDictionary = compress(mode.newCompressor(), doc, 0, doc.length);
+    assertTrue(withDictionary.length < withoutDictionary.length);
+    assertArrayEquals(doc, decompress(withDictionary, doc.length));
+  }
+
+  public void testTrainOnPrefix() {
+    final byte[] sample = new byte[TestUtil.nextInt(random(), DictionaryTrainer.MAX_SAMPLE_LENGTH + 1, 1 << 20)];
+    for (int i = 0; i < sample.length; ++i) {
+      // compressible data so that segments get selected
+      sample[i] = (byte) ('a' + random().nextInt(4));
+    }
+    final byte[] expected = dictionaryMode.trainDictionary(sample, 0, DictionaryTrainer.MAX_SAMPLE_LENGTH);
+    assertTrue(expected.length > 0);
+    assertArrayEquals(expected, dictionaryMode.trainDictionary(sample, 0, sample.length));
+  }
+
+  private static String randomJson() {
+    return "{\"id\":\"" + TestUtil.randomSimpleString(random(), 8, 8)
+        + "\",\"title\":\"" + TestUtil.randomSimpleString(random(), 5, 20)
+        + "\",\"category\":\"" + (random().nextBoolean() ? "books" : "electronics")
+        + "\",\"price\":" + random().nextInt(1000)
+        + ",\"in_stock\":" + random().nextBoolean() + "}";
+  }
+}
@@ -0,0 +1,67 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+/** Base class for tests which check that running parts of indexing on an
+ *  {@link ExecutorService} produces the same index as running them on the
+ *  indexing thread. */
+abstract class SameIndexTestCase extends LuceneTestCase {
+
+  /** Builds an index out of a seed. */
+  interface IndexBuilder {
+    /** Index documents that only depend on <code>seed</code> into
+     *  <code>dir</code>, using <code>executor</code>, which may be null. */
+    void build(Directory dir, long seed, ExecutorService executor) throws IOException;
+  }
+
+  /** Builds an index with the same seed twice, once without and once with an
+   *  executor, and checks that both indexes are equal. */
+  void assertSameIndex(String info, IndexBuilder builder) throws Exception {
+    final long seed = random().nextLong();
+    final ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory(getClass().getSimpleName()));
+    try {
+      final Directory expectedDir = newDirectory();
+      final Directory actualDir = newDirectory();
+      builder.build(expectedDir, seed, null);
+      builder.build(actualDir, seed, executor);
+
+      final DirectoryReader expected = DirectoryReader.open(expectedDir);
+      final DirectoryReader actual = DirectoryReader.open(actualDir);
+      assertEquals(expected.leaves().size(), actual.leaves().size());
+      assertReaderEquals(info, expected, actual);
+      expected.close();
+      actual.close();
+
+      expectedDir.close();
+      actualDir.close();
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+    }
+  }
+
+}
@@ -0,0 +1,297 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+/** Tests that analyzing blocks of documents with an analysis executor
+ *  produces the same index as analyzing them on the indexing thread. */
+public class TestConcurrentAnalysis extends SameIndexTestCase {
+
+  /** Throws an exception when it sees the "boom" token. */
+  private static final class BoomAnalyzer extends Analyzer {
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+      final MockTokenizer tokenizer = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+      // the stream is closed without being ended when it throws
+      tokenizer.setEnableChecks(false);
+      final TokenStream stream = new TokenFilter(tokenizer) {
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+        @Override
+        public boolean incrementToken() throws IOException {
+          if (!input.incrementToken()) {
+            return false;
+          }
+          if (termAtt.toString().equals("boom")) {
+            throw new IOException("boom");
+          }
+          return true;
+        }
+      };
+      return new TokenStreamComponents(tokenizer, stream);
+    }
+  }
+
+  private static String randomText(Random random) {
+    final StringBuilder text = new StringBuilder();
+    final int numTerms = random.nextInt(20);
+    for (int i = 0; i < numTerms; ++i) {
+      text.append(TestUtil.randomSimpleString(random)).append(' ');
+    }
+    return text.toString();
+  }
+
+  private void indexDocs(Directory dir, long seed, int numBlocks, ExecutorService executor) throws IOException {
+    final Random random = new Random(seed);
+    final IndexWriterConfig iwc = new IndexWriterConfig(new BoomAnalyzer());
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random, 50, 500));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    iwc.setAnalysisExecutor(executor);
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+
+    final FieldType vectors = new FieldType(TextField.TYPE_STORED);
+    vectors.setStoreTermVectors(true);
+    vectors.setStoreTermVectorPositions(true);
+    vectors.setStoreTermVectorOffsets(true);
+    int id = 0;
+    for (int i = 0; i < numBlocks; ++i) {
+      final List<Document> block = new ArrayList<>();
+      final int numDocs = TestUtil.nextInt(random, 1, 2 * ConcurrentAnalysis.MAX_PENDING_DOCS);
+      for (int j = 0; j < numDocs; ++j) {
+        final Document doc = new Document();
+        doc.add(new StringField("id", Integer.toString(id++), Field.Store.YES));
+        final int numFields = TestUtil.nextInt(random, 1, 3);
+        for (int k = 0; k < numFields; ++k) {
+          doc.add(new TextField("body", randomText(random), Field.Store.NO));
+        }
+        if (random.nextBoolean()) {
+          doc.add(new Field("vectors", randomText(random), vectors));
+        }
+        if (random.nextBoolean()) {
+          doc.add(new TextField("reader", new StringReader(randomText(random))));
+        }
+        doc.add(new IntField("int", random.nextInt(1000), Field.Store.NO));
+        if (random.nextInt(1000) == 0) {
+          doc.add(new TextField("body", "foo boom bar", Field.Store.NO));
+        }
+        block.add(doc);
+      }
+      try {
+        if (random.nextBoolean()) {
+          writer.addDocuments(block);
+        } else {
+          writer.updateDocuments(new Term("id", Integer.toString(random.nextInt(id))), block);
+        }
+      } catch (IOException e) {
+        assertEquals("boom", e.getMessage());
+      }
+    }
+    writer.close();
+  }
+
+  public void testSameIndex() throws Exception {
+    final int numBlocks = atLeast(20);
+    assertSameIndex("concurrent analysis", new IndexBuilder() {
+      @Override
+      public void build(Directory dir, long seed, ExecutorService executor) throws IOException {
+        indexDocs(dir, seed, numBlocks, executor);
+      }
+    });
+  }
+
+  public void testReusedDocument() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory("TestConcurrentAnalysis"));
+    try {
+      final Directory dir = newDirectory();
+      final IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+      iwc.setAnalysisExecutor(executor);
+      final IndexWriter writer = new IndexWriter(dir, iwc);
+      // a single document whose value changes on every call to next()
+      final Document doc = new Document();
+      final Field field = new TextField("body", "", Field.Store.YES);
+      doc.add(field);
+      final int numDocs = TestUtil.nextInt(random(), 2, 10);
+      final Iterable<Document> docs = new Iterable<Document>() {
+        @Override
+        public Iterator<Document> iterator() {
+          return new Iterator<Document>() {
+            int upto;
+
+            @Override
+            public boolean hasNext() {
+              return upto < numDocs;
+            }
+
+            @Override
+            public Document next() {
+              field.setStringValue("value" + upto++);
+              return doc;
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+      try {
+        writer.addDocuments(docs);
+        fail();
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+      // documents which are added one at a time can still be reused
+      for (int i = 0; i < numDocs; ++i) {
+        field.setStringValue("single" + i);
+        writer.addDocument(doc);
+      }
+      writer.close();
+
+      final DirectoryReader reader = DirectoryReader.open(dir);
+      assertEquals(numDocs, reader.numDocs());
+      for (int i = 0; i < numDocs; ++i) {
+        assertEquals(1, reader.docFreq(new Term("body", "single" + i)));
+      }
+      reader.close();
+      dir.close();
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+    }
+  }
+
+
+  public void testIteratorThrows() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4),
+        new NamedThreadFactory("TestConcurrentAnalysis"));
+    try {
+      final Thread indexingThread = Thread.currentThread();
+      final AtomicBoolean returned = new AtomicBoolean();
+      final AtomicBoolean analyzedAfterReturn = new AtomicBoolean();
+      final Analyzer analyzer = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+          final MockTokenizer tokenizer = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+          final TokenStream stream = new TokenFilter(tokenizer) {
+            @Override
+            public boolean incrementToken() throws IOException {
+              if (returned.get() && Thread.currentThread() != indexingThread) {
+                analyzedAfterReturn.set(true);
+              }
+              return input.incrementToken();
+            }
+          };
+          return new TokenStreamComponents(tokenizer, stream);
+        }
+      };
+      final Directory dir = newDirectory();
+      final IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
+      iwc.setAnalysisExecutor(executor);
+      final IndexWriter writer = new IndexWriter(dir, iwc);
+
+      final List<Document> block = new ArrayList<>();
+      for (int i = 0; i < ConcurrentAnalysis.MAX_PENDING_DOCS; ++i) {
+        final Document doc = new Document();
+        doc.add(new TextField("body", randomText(random()) + " foo", Field.Store.NO));
+        block.add(doc);
+      }
+      // fails while analysis tasks are still pending
+      final int failAt = TestUtil.nextInt(random(), 1, block.size() - 1);
+      final Iterable<Document> docs = new Iterable<Document>() {
+        @Override
+        public Iterator<Document> iterator() {
+          final Iterator<Document> it = block.iterator();
+          return new Iterator<Document>() {
+            int upto;
+
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Document next() {
+              if (upto++ == failAt) {
+                throw new IllegalStateException("fail");
+              }
+              return it.next();
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+      try {
+        writer.addDocuments(docs);
+        fail();
+      } catch (IllegalStateException expected) {
+        assertEquals("fail", expected.getMessage());
+      }
+      returned.set(true);
+      // the caller owns the documents again
+      for (Document doc : block) {
+        ((Field) doc.getField("body")).setStringValue("bar");
+      }
+      writer.addDocument(block.get(0));
+      writer.close();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+      assertFalse(analyzedAfterReturn.get());
+
+      final DirectoryReader reader = DirectoryReader.open(dir);
+      assertEquals(1, reader.numDocs());
+      assertEquals(0, reader.docFreq(new Term("body", "foo")));
+      assertEquals(1, reader.docFreq(new Term("body", "bar")));
+      reader.close();
+      dir.close();
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+
+/** Tests that flushing segments and resolving deletes with a flush executor
+ *  produces the same index as doing it on the indexing thread. */
+public class TestConcurrentFlush extends SameIndexTestCase {
+
+  private void indexDocs(Directory dir, long seed, int numDocs, ExecutorService executor) throws IOException {
+    final Random random = new Random(seed);
+    final IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random));
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random, 50, 500));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    iwc.setFlushExecutor(executor);
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+
+    final FieldType vectors = new FieldType(TextField.TYPE_STORED);
+    vectors.setStoreTermVectors(true);
+    vectors.setStoreTermVectorPositions(true);
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      final int numFields = TestUtil.nextInt(random, 1, 5);
+      for (int j = 0; j < numFields; ++j) {
+        doc.add(new TextField("text" + j, TestUtil.randomSimpleString(random) + " " + random.nextInt(100), Field.Store.NO));
+      }
+      if (random.nextBoolean()) {
+        doc.add(new Field("vectors", "foo bar " + random.nextInt(10), vectors));
+      }
+      doc.add(new NumericDocValuesField("numeric", random.nextLong()));
+      doc.add(new BinaryDocValuesField("binary", new BytesRef(TestUtil.randomSimpleString(random))));
+      doc.add(new SortedDocValuesField("sorted", new BytesRef(Integer.toString(random.nextInt(50)))));
+      if (defaultCodecSupportsSortedSet()) {
+        doc.add(new SortedSetDocValuesField("sortedset", new BytesRef(Integer.toString(random.nextInt(50)))));
+      }
+      if (defaultCodecSupportsSortedNumeric()) {
+        doc.add(new SortedNumericDocValuesField("sortednumeric", random.nextInt(1000)));
+      }
+      writer.addDocument(doc);
+      if (random.nextInt(100) == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(random.nextInt(i + 1))));
+      }
+    }
+    writer.close();
+  }
+
+  public void testSameIndex() throws Exception {
+    final int numDocs = atLeast(1000);
+    assertSameIndex("concurrent flush", new IndexBuilder() {
+      @Override
+      public void build(Directory dir, long seed, ExecutorService executor) throws IOException {
+        indexDocs(dir, seed, numDocs, executor);
+      }
+    });
+  }
+
+  private void updateDocs(Directory dir, long seed, int numDocs, ExecutorService executor) throws IOException {
+    final Random random = new Random(seed);
+    final IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random));
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random, 20, 200));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    iwc.setFlushExecutor(executor);
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+
+    final int numIds = numDocs / 2;
+    DirectoryReader reader = null;
+    for (int i = 0; i < numDocs; ++i) {
+      final String id = Integer.toString(random.nextInt(numIds));
+      final Document doc = new Document();
+      doc.add(new StringField("id", id, Field.Store.YES));
+      doc.add(new StringField("group", Integer.toString(random.nextInt(20)), Field.Store.NO));
+      doc.add(new NumericDocValuesField("numeric", random.nextInt(1000)));
+      doc.add(new BinaryDocValuesField("binary", new BytesRef(TestUtil.randomSimpleString(random))));
+      if (random.nextBoolean()) {
+        writer.updateDocument(new Term("id", id), doc);
+      } else {
+        writer.addDocument(doc);
+      }
+      if (random.nextInt(20) == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(random.nextInt(numIds))),
+            new Term("id", Integer.toString(random.nextInt(numIds))));
+      }
+      if (random.nextInt(300) == 0) {
+        writer.deleteDocuments(new TermQuery(new Term("group", Integer.toString(random.nextInt(20)))));
+      }
+      if (random.nextInt(30) == 0) {
+        writer.updateNumericDocValue(new Term("group", Integer.toString(random.nextInt(20))), "numeric", (long) random.nextInt(1000));
+      }
+      if (random.nextInt(60) == 0) {
+        writer.updateBinaryDocValue(new Term("id", Integer.toString(random.nextInt(numIds))), "binary", new BytesRef(TestUtil.randomSimpleString(random)));
+      }
+      if (random.nextInt(500) == 0) {
+        // resolve deletes and updates against all segments
+        if (reader == null) {
+          reader = DirectoryReader.open(writer, true);
+        } else {
+          final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer, true);
+          if (newReader != null) {
+            reader.close();
+            reader = newReader;
+          }
+        }
+      }
+    }
+    if (reader != null) {
+      reader.close();
+    }
+    writer.close();
+  }
+
+  public void testSameIndexWithUpdates() throws Exception {
+    final int numDocs = atLeast(2000);
+    assertSameIndex("concurrent deletes resolution", new IndexBuilder() {
+      @Override
+      public void build(Directory dir, long seed, ExecutorService executor) throws IOException {
+        updateDocs(dir, seed, numDocs, executor);
+      }
+    });
+  }
+
+}
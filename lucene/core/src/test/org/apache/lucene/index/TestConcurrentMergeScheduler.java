@@ -27,6 +27,8 @@ import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
@@ -451,4 +453,108 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
     w.close();
     d.close();
   }
+
+  public void testAutoIOThrottle() throws Exception {
+    Directory d = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(-1);
+    LogDocMergePolicy mp = new LogDocMergePolicy();
+    mp.setMergeFactor(2);
+    iwc.setMergePolicy(mp);
+
+    final AtomicInteger naturalMergeCount = new AtomicInteger();
+    final AtomicInteger forcedMergeCount = new AtomicInteger();
+    final AtomicBoolean failed = new AtomicBoolean();
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler() {
+        @Override
+        protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+          if (merge.maxNumSegments == -1) {
+            naturalMergeCount.incrementAndGet();
+            if (merge.getRateLimiter() == null) {
+              failed.set(true);
+            }
+          } else {
+            forcedMergeCount.incrementAndGet();
+            if (merge.getRateLimiter() != null) {
+              failed.set(true);
+            }
+          }
+          super.doMerge(merge);
+        }
+      };
+    assertFalse(cms.getAutoIOThrottle());
+    assertEquals(Double.POSITIVE_INFINITY, cms.getIORateLimitMBPerSec(), 0.0);
+    cms.enableAutoIOThrottle();
+    assertTrue(cms.getAutoIOThrottle());
+    assertEquals(ConcurrentMergeScheduler.START_MB_PER_SEC, cms.getIORateLimitMBPerSec(), 0.0);
+    iwc.setMergeScheduler(cms);
+
+    IndexWriter w = new IndexWriter(d, iwc);
+    for(int i=0;i<100;i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+    w.close();
+
+    assertTrue(naturalMergeCount.get() > 0);
+    assertTrue(forcedMergeCount.get() > 0);
+    assertFalse(failed.get());
+    // all merges were small: the throttle may only have been increased
+    // because of stalled indexing threads
+    assertTrue(cms.getIORateLimitMBPerSec() >= ConcurrentMergeScheduler.START_MB_PER_SEC);
+    assertEquals(0, cms.getMergeBacklog());
+
+    cms.disableAutoIOThrottle();
+    assertEquals(Double.POSITIVE_INFINITY, cms.getIORateLimitMBPerSec(), 0.0);
+    d.close();
+  }
+
+  public void testMergePartsThreadCount() throws Exception {
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    assertEquals(0, cms.getMergePartsThreadCount());
+    assertNull(cms.getMergePartsExecutor());
+    try {
+      cms.setMergePartsThreadCount(-1);
+      fail();
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    cms.setMergePartsThreadCount(TestUtil.nextInt(random(), 1, 4));
+    assertNotNull(cms.getMergePartsExecutor());
+
+    Directory d = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 10, 100));
+    iwc.setMergeScheduler(cms);
+    IndexWriter w = new IndexWriter(d, iwc);
+    FieldType vectors = new FieldType(TextField.TYPE_STORED);
+    vectors.setStoreTermVectors(true);
+    final int numDocs = atLeast(500);
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(new Field("body", TestUtil.randomSimpleString(random()) + " " + i, vectors));
+      doc.add(new NumericDocValuesField("number", i));
+      w.addDocument(doc);
+    }
+    // resizing while merges may be running
+    cms.setMergePartsThreadCount(TestUtil.nextInt(random(), 1, 4));
+    w.forceMerge(1);
+    w.close();
+
+    DirectoryReader reader = DirectoryReader.open(d);
+    assertEquals(1, reader.leaves().size());
+    assertEquals(numDocs, reader.numDocs());
+    AtomicReader leaf = reader.leaves().get(0).reader();
+    NumericDocValues numbers = leaf.getNumericDocValues("number");
+    for (int i = 0; i < numDocs; ++i) {
+      assertEquals(Integer.parseInt(leaf.document(i).get("id")), numbers.get(i));
+      assertNotNull(leaf.getTermVector(i, "body"));
+    }
+    reader.close();
+    d.close();
+  }
 }
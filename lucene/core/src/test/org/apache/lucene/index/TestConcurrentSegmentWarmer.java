@@ -0,0 +1,144 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.WarmingSearcherFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+public class TestConcurrentSegmentWarmer extends LuceneTestCase {
+
+  private static Document newDoc(int id) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+    doc.add(new TextField("body", "foo bar " + random().nextInt(10), Field.Store.NO));
+    doc.add(new NumericDocValuesField("numeric", random().nextLong()));
+    doc.add(new BinaryDocValuesField("binary", new BytesRef(TestUtil.randomSimpleString(random()))));
+    doc.add(new SortedDocValuesField("sorted", new BytesRef(Integer.toString(random().nextInt(50)))));
+    if (defaultCodecSupportsSortedSet()) {
+      doc.add(new SortedSetDocValuesField("sortedset", new BytesRef(Integer.toString(random().nextInt(50)))));
+    }
+    if (defaultCodecSupportsSortedNumeric()) {
+      doc.add(new SortedNumericDocValuesField("sortednumeric", random().nextInt(1000)));
+    }
+    return doc;
+  }
+
+  public void testMergedSegmentWarmer() throws Exception {
+    final AtomicInteger warmed = new AtomicInteger();
+    InfoStream infoStream = new InfoStream() {
+      @Override
+      public void close() throws IOException {
+      }
+
+      @Override
+      public void message(String component, String message) {
+        if ("CSW".equals(component)) {
+          warmed.incrementAndGet();
+        }
+      }
+
+      @Override
+      public boolean isEnabled(String component) {
+        return "CSW".equals(component);
+      }
+    };
+    final ExecutorService executor = random().nextBoolean() ? null
+        : Executors.newFixedThreadPool(TestUtil.nextInt(random(), 1, 4), new NamedThreadFactory("TestConcurrentSegmentWarmer"));
+    try {
+      Directory dir = newDirectory();
+      List<Term> hotTerms = Arrays.asList(new Term("body", "foo"), new Term("body", "3"), new Term("id", "42"), new Term("missing", "foo"));
+      IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random()))
+          .setMaxBufferedDocs(2)
+          .setMergedSegmentWarmer(new ConcurrentSegmentWarmer(infoStream, executor, hotTerms))
+          .setMergePolicy(newLogMergePolicy(10)));
+      for (int i = 0; i < 100; ++i) {
+        w.addDocument(newDoc(i));
+      }
+      w.waitForMerges();
+      w.close();
+      dir.close();
+      assertTrue(warmed.get() > 0);
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+    }
+  }
+
+  public void testWarmingSearcherFactory() throws Exception {
+    final List<Object> warmed = new ArrayList<>();
+    final IndexReaderWarmer delegate = new ConcurrentSegmentWarmer(InfoStream.NO_OUTPUT, null, Arrays.asList(new Term("body", "foo")));
+    final IndexReaderWarmer warmer = new IndexReaderWarmer() {
+      @Override
+      public void warm(AtomicReader reader) throws IOException {
+        delegate.warm(reader);
+        warmed.add(reader.getCoreCacheKey());
+      }
+    };
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    SearcherManager mgr = new SearcherManager(w, true, new WarmingSearcherFactory(warmer));
+    int id = 0;
+    for (int iter = 0; iter < 10; ++iter) {
+      final int numDocs = TestUtil.nextInt(random(), 1, 20);
+      for (int i = 0; i < numDocs; ++i) {
+        w.addDocument(newDoc(id++));
+      }
+      mgr.maybeRefreshBlocking();
+      final IndexSearcher searcher = mgr.acquire();
+      try {
+        // all segments of a published searcher have been warmed
+        for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+          assertTrue(warmed.contains(context.reader().getCoreCacheKey()));
+        }
+      } finally {
+        mgr.release(searcher);
+      }
+    }
+    // segments were warmed once
+    assertEquals(warmed.size(), new HashSet<>(warmed).size());
+    mgr.close();
+    w.close();
+    dir.close();
+  }
+}
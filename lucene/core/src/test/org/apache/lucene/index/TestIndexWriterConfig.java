@@ -75,6 +75,10 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertEquals(DocumentsWriterPerThreadPool.class, conf.getIndexerThreadPool().getClass());
     assertEquals(FlushByRamOrCountsPolicy.class, conf.getFlushPolicy().getClass());
     assertEquals(IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB, conf.getRAMPerThreadHardLimitMB());
+    assertNull(conf.getFlushExecutor());
+    assertNull(conf.getAnalysisExecutor());
+    assertEquals(IndexWriterConfig.DEFAULT_MAX_POOLED_BUFFER_MB, conf.getMaxPooledBufferMB(), 0.0);
+    assertEquals(IndexWriterConfig.DEFAULT_MAX_SPARSE_UPDATES_RATIO, conf.getMaxSparseUpdatesRatio(), 0.0);
     assertEquals(Codec.getDefault(), conf.getCodec());
     assertEquals(InfoStream.getDefault(), conf.getInfoStream());
     assertEquals(IndexWriterConfig.DEFAULT_USE_COMPOUND_FILE_SYSTEM, conf.getUseCompoundFile());
@@ -100,6 +104,10 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     getters.add("getIndexerThreadPool");
     getters.add("getFlushPolicy");
     getters.add("getRAMPerThreadHardLimitMB");
+    getters.add("getFlushExecutor");
+    getters.add("getAnalysisExecutor");
+    getters.add("getMaxPooledBufferMB");
+    getters.add("getMaxSparseUpdatesRatio");
     getters.add("getCodec");
     getters.add("getInfoStream");
     getters.add("getUseCompoundFile");
@@ -303,6 +311,20 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     } catch (IllegalArgumentException e) {
       // this is expected
     }
+
+    try {
+      conf.setMaxPooledBufferMB(-1);
+      fail("should not have succeeded to set maxPooledBufferMB to a negative value");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
+
+    try {
+      conf.setMaxSparseUpdatesRatio(1.5);
+      fail("should not have succeeded to set maxSparseUpdatesRatio to a value > 1");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
     
     // Test MergePolicy
     assertEquals(TieredMergePolicy.class, conf.getMergePolicy().getClass());
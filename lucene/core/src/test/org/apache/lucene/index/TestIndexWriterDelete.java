@@ -22,8 +22,13 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,12 +42,15 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
@@ -1233,4 +1241,75 @@ public class TestIndexWriterDelete extends LuceneTestCase {
     r.close();
     d.close();
   }
+
+  // deletes and updates by id, which segments only hold a range of
+  public void testDeleteByPrimaryKey() throws Exception {
+    Directory d = newDirectory();
+    IndexWriterConfig iwc = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(d, iwc);
+
+    final int numSegments = TestUtil.nextInt(random(), 2, 5);
+    final int docsPerSegment = atLeast(50);
+    final Set<Integer> liveIds = new HashSet<>();
+    for (int seg = 0; seg < numSegments; ++seg) {
+      // leave a gap of ids between segments
+      for (int i = 0; i < docsPerSegment; ++i) {
+        final int id = 2 * seg * docsPerSegment + i;
+        Document doc = new Document();
+        doc.add(new StringField("id", String.format(Locale.ROOT, "%08d", id), Field.Store.NO));
+        doc.add(new NumericDocValuesField("value", 0));
+        w.addDocument(doc);
+        liveIds.add(id);
+      }
+      w.commit();
+    }
+
+    final Map<Integer,Long> values = new HashMap<>();
+    final int maxId = 2 * numSegments * docsPerSegment + 10;
+    final int numOps = atLeast(100);
+    for (int i = 0; i < numOps; ++i) {
+      final int id = random().nextInt(maxId);
+      final Term term = new Term("id", String.format(Locale.ROOT, "%08d", id));
+      if (random().nextBoolean()) {
+        w.deleteDocuments(term);
+        liveIds.remove(id);
+        values.remove(id);
+      } else {
+        final long value = random().nextInt(1000);
+        w.updateNumericDocValue(term, "value", value);
+        if (liveIds.contains(id)) {
+          values.put(id, value);
+        }
+      }
+      if (random().nextInt(20) == 0) {
+        DirectoryReader.open(w, true).close();
+      }
+    }
+    w.close();
+
+    DirectoryReader r = DirectoryReader.open(d);
+    assertEquals(liveIds.size(), r.numDocs());
+    for (AtomicReaderContext context : r.leaves()) {
+      final AtomicReader reader = context.reader();
+      final NumericDocValues dv = reader.getNumericDocValues("value");
+      final Bits liveDocs = reader.getLiveDocs();
+      final TermsEnum termsEnum = reader.terms("id").iterator(null);
+      DocsEnum docs = null;
+      for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+        final int id = Integer.parseInt(term.utf8ToString());
+        docs = termsEnum.docs(liveDocs, docs, DocsEnum.FLAG_NONE);
+        final int doc = docs.nextDoc();
+        if (liveIds.contains(id)) {
+          assertTrue(doc != DocIdSetIterator.NO_MORE_DOCS);
+          final Long value = values.get(id);
+          assertEquals(value == null ? 0 : value.longValue(), dv.get(doc));
+        } else {
+          assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+        }
+      }
+    }
+    r.close();
+    d.close();
+  }
 }
@@ -1363,4 +1363,122 @@ public class TestNumericDocValuesUpdates extends LuceneTestCase {
     IOUtils.close(reader, writer, cachingDir);
   }
   
+  @Test
+  public void testSparseUpdates() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.INSTANCE);
+    conf.setMaxSparseUpdatesRatio(0.1);
+    // a single segment, updates to tiny segments would exceed the ratio
+    conf.setRAMBufferSizeMB(256.0);
+    conf.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    final int numDocs = atLeast(200);
+    final long[] expected = new long[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      writer.addDocument(doc(i));
+      expected[i] = i + 1; // doc(i) sets val to i+1
+    }
+    writer.commit();
+
+    // few updates are written sparsely, on top of the values of the segment
+    final int numUpdates = atLeast(5);
+    for (int i = 0; i < numUpdates; i++) {
+      final int doc = random().nextInt(numDocs);
+      expected[doc] = random().nextLong();
+      writer.updateNumericDocValue(new Term("id", "doc-" + doc), "val", expected[doc]);
+      if (random().nextBoolean()) {
+        writer.commit();
+      }
+    }
+    writer.commit();
+    boolean hasSparseUpdates = false;
+    for (String file : dir.listAll()) {
+      hasSparseUpdates |= file.endsWith("." + SparseNumericDocValuesUpdates.EXTENSION);
+    }
+    assertTrue(hasSparseUpdates);
+    assertValues(dir, expected);
+
+    // updating all documents rewrites the field
+    final Term[] terms = new Term[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      terms[i] = new Term("id", "doc-" + i);
+      expected[i] = random().nextLong();
+    }
+    writer.updateNumericDocValues("val", terms, expected);
+    writer.commit();
+    for (String file : dir.listAll()) {
+      assertFalse(file.endsWith("." + SparseNumericDocValuesUpdates.EXTENSION));
+    }
+    assertValues(dir, expected);
+
+    // sparse updates survive merges
+    final int doc = random().nextInt(numDocs);
+    expected[doc] = random().nextLong();
+    writer.updateNumericDocValue(new Term("id", "doc-" + doc), "val", expected[doc]);
+    writer.close();
+    conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergePolicy(new LogDocMergePolicy()); // keeps docs in order
+    writer = new IndexWriter(dir, conf);
+    writer.forceMerge(1);
+    writer.close();
+    assertValues(dir, expected);
+    dir.close();
+  }
+
+  // docs must be in the order they were added, ie. doc(i) has docID i
+  private static void assertValues(Directory dir, long[] expected) throws IOException {
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(expected.length, reader.maxDoc());
+    for (AtomicReaderContext context : reader.leaves()) {
+      AtomicReader r = context.reader();
+      NumericDocValues ndv = r.getNumericDocValues("val");
+      Bits docsWithField = r.getDocsWithField("val");
+      for (int i = 0; i < r.maxDoc(); i++) {
+        assertTrue(docsWithField.get(i));
+        assertEquals(expected[context.docBase + i], ndv.get(i));
+      }
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testBulkUpdates() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergePolicy(NoMergePolicy.INSTANCE); // keeps docs in order
+    IndexWriter writer = new IndexWriter(dir, conf);
+    for (int i = 0; i < 10; i++) {
+      writer.addDocument(doc(i));
+    }
+    try {
+      writer.updateNumericDocValues("val", new Term[] { new Term("id", "doc-0") }, new long[0]);
+      fail("should not have succeeded to update with a different number of terms and values");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      writer.updateNumericDocValues("foo", new Term[] { new Term("id", "doc-0") }, new long[] { 1L });
+      fail("should not have succeeded to update a non-existing field");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // later updates win
+    writer.updateNumericDocValues("val",
+        new Term[] { new Term("id", "doc-2"), new Term("id", "doc-5"), new Term("id", "doc-2") },
+        new long[] { 17L, 42L, 3L });
+    final DirectoryReader reader = DirectoryReader.open(writer, true);
+    final long[] expected = new long[10];
+    for (int i = 0; i < 10; i++) {
+      expected[i] = i + 1;
+    }
+    expected[2] = 3L;
+    expected[5] = 42L;
+    final NumericDocValues ndv = MultiDocValues.getNumericValues(reader, "val");
+    for (int i = 0; i < reader.maxDoc(); i++) {
+      assertEquals(expected[i], ndv.get(i));
+    }
+    IOUtils.close(reader, writer, dir);
+  }
+
 }
@@ -0,0 +1,132 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.RecyclingByteBlockAllocator;
+import org.apache.lucene.util.RecyclingIntBlockAllocator;
+import org.apache.lucene.util.TestUtil;
+
+public class TestRecyclingIndexingBuffers extends LuceneTestCase {
+
+  private static FieldType vectorsType() {
+    final FieldType vectors = new FieldType(TextField.TYPE_NOT_STORED);
+    vectors.setStoreTermVectors(true);
+    vectors.setStoreTermVectorPositions(true);
+    vectors.setStoreTermVectorOffsets(true);
+    vectors.freeze();
+    return vectors;
+  }
+
+  public void testMaxPooledBlocks() throws Exception {
+    final Directory dir = newDirectory();
+    final Analyzer analyzer = new MockAnalyzer(random(), MockTokenizer.WHITESPACE, false);
+    final IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
+    // 2 blocks of each kind
+    iwc.setMaxPooledBufferMB(2.0 * ByteBlockPool.BYTE_BLOCK_SIZE / 1024 / 1024);
+    final DocumentsWriterPerThread dwpt = new DocumentsWriterPerThread("_0", dir, iwc, InfoStream.NO_OUTPUT,
+        new DocumentsWriterDeleteQueue(), new FieldInfos.Builder(), new AtomicLong());
+    final RecyclingByteBlockAllocator byteAllocator = (RecyclingByteBlockAllocator) dwpt.byteBlockAllocator;
+    final RecyclingIntBlockAllocator intAllocator = (RecyclingIntBlockAllocator) dwpt.intBlockAllocator;
+    assertEquals(2, byteAllocator.maxBufferedBlocks());
+    assertEquals(2, intAllocator.maxBufferedBlocks());
+
+    // enough unique terms for the term vectors to need more than 2 blocks of each kind
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; ++i) {
+      text.append("t").append(i).append(' ');
+    }
+    final FieldType vectors = vectorsType();
+    for (int i = 0; i < 3; ++i) {
+      final Document doc = new Document();
+      doc.add(new Field("vectors", text.toString(), vectors));
+      dwpt.updateDocument(doc, analyzer, null);
+      // term vectors are reset after every document: only the cap is kept
+      assertEquals(2, byteAllocator.numBufferedBlocks());
+      assertEquals(2, intAllocator.numBufferedBlocks());
+    }
+
+    dwpt.abort(new HashSet<String>());
+    dir.close();
+  }
+
+  public void testRecycledBlocksAreCleared() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random(), MockTokenizer.WHITESPACE, false));
+    // sometimes use a small cap so that some blocks are not recycled
+    iwc.setMaxPooledBufferMB(random().nextBoolean() ? 0.1 : 16);
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+    final FieldType vectors = vectorsType();
+    final int numDocs = atLeast(200);
+    final String[] texts = new String[numDocs];
+    for (int i = 0; i < numDocs; ++i) {
+      // vary the number of terms a lot so that documents write over the
+      // slices of larger previous documents
+      final int numTerms = random().nextInt(10) == 0 ? TestUtil.nextInt(random(), 1000, 5000) : TestUtil.nextInt(random(), 1, 20);
+      final StringBuilder text = new StringBuilder();
+      for (int j = 0; j < numTerms; ++j) {
+        text.append(TestUtil.randomSimpleString(random(), 1, 10)).append(' ');
+      }
+      texts[i] = text.toString();
+      final Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), vectors));
+      doc.add(new Field("vectors", texts[i], vectors));
+      writer.addDocument(doc);
+    }
+    final DirectoryReader reader = writer.getReader();
+    writer.close();
+
+    for (int i = 0; i < numDocs; ++i) {
+      final Map<String,Integer> expected = new TreeMap<>();
+      for (String term : texts[i].split(" ")) {
+        final Integer freq = expected.get(term);
+        expected.put(term, freq == null ? 1 : freq + 1);
+      }
+      final Fields fields = reader.getTermVectors(i);
+      final int id = Integer.parseInt(fields.terms("id").iterator(null).next().utf8ToString());
+      assertEquals(i, id);
+      final TermsEnum termsEnum = fields.terms("vectors").iterator(null);
+      for (Map.Entry<String,Integer> entry : expected.entrySet()) {
+        final BytesRef term = termsEnum.next();
+        assertNotNull(term);
+        assertEquals(entry.getKey(), term.utf8ToString());
+        assertEquals(entry.getValue().longValue(), termsEnum.totalTermFreq());
+      }
+      assertNull(termsEnum.next());
+    }
+    reader.close();
+    dir.close();
+  }
+
+}
@@ -0,0 +1,204 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.TestUtil;
+
+public class TestTimeSeriesMergePolicy extends BaseMergePolicyTestCase {
+
+  private static final long WINDOW_SIZE = 1000;
+
+  public MergePolicy mergePolicy() {
+    return new TimeSeriesMergePolicy("timestamp", WINDOW_SIZE);
+  }
+
+  private IndexWriter newWriter(Directory dir, TimeSeriesMergePolicy mp) throws IOException {
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    conf.setMergePolicy(mp);
+    conf.setMaxBufferedDocs(TestUtil.nextInt(random(), 10, 50));
+    conf.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    return new IndexWriter(dir, conf);
+  }
+
+  /** Adds documents whose timestamps increase, with some jitter, and returns
+   *  their timestamps. */
+  private long[] addDocs(IndexWriter w, int numDocs) throws IOException {
+    long[] timestamps = new long[numDocs];
+    for (int i = 0; i < numDocs; ++i) {
+      timestamps[i] = i + random().nextInt(50);
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(new NumericDocValuesField("timestamp", timestamps[i]));
+      w.addDocument(doc);
+    }
+    return timestamps;
+  }
+
+  /** Checks that no segment has timestamps of different windows, except for
+   *  documents whose timestamp is close to the end of the previous window. */
+  private void assertWindows(DirectoryReader reader) throws IOException {
+    for (AtomicReaderContext context : reader.leaves()) {
+      NumericDocValues values = context.reader().getNumericDocValues("timestamp");
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      for (int doc = 0; doc < context.reader().maxDoc(); ++doc) {
+        min = Math.min(min, values.get(doc));
+        max = Math.max(max, values.get(doc));
+      }
+      assertTrue("min=" + min + ", max=" + max, max / WINDOW_SIZE * WINDOW_SIZE - min < 100);
+    }
+  }
+
+  public void testMergesWithinWindows() throws Exception {
+    Directory dir = newDirectory();
+    TimeSeriesMergePolicy mp = new TimeSeriesMergePolicy("timestamp", WINDOW_SIZE);
+    mp.setSegmentsPerWindow(TestUtil.nextInt(random(), 2, 5));
+    IndexWriter w = newWriter(dir, mp);
+    final long[] timestamps = addDocs(w, atLeast(3000));
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    assertEquals(timestamps.length, reader.numDocs());
+    assertWindows(reader);
+    reader.close();
+
+    w.forceMerge(1);
+    reader = DirectoryReader.open(w, true);
+    assertEquals(timestamps.length, reader.numDocs());
+    assertWindows(reader);
+    // forceMerge leaves one segment per window
+    long maxTimestamp = 0;
+    for (long timestamp : timestamps) {
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+    assertEquals(maxTimestamp / WINDOW_SIZE + 1, reader.leaves().size());
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testMaxMergeAge() throws Exception {
+    Directory dir = newDirectory();
+    TimeSeriesMergePolicy mp = new TimeSeriesMergePolicy("timestamp", WINDOW_SIZE);
+    mp.setSegmentsPerWindow(2);
+    mp.setMaxMergeAge(0);
+    IndexWriter w = newWriter(dir, mp);
+    addDocs(w, atLeast(3000));
+    // makes all windows of the index older than maxMergeAge
+    Document doc = new Document();
+    doc.add(new NumericDocValuesField("timestamp", 100 * WINDOW_SIZE));
+    w.addDocument(doc);
+    w.commit();
+
+    SegmentInfos infos = new SegmentInfos();
+    infos.read(dir);
+    assertNull(mp.findMerges(MergeTrigger.EXPLICIT, infos, w));
+    w.close();
+    dir.close();
+  }
+
+  public void testOlderThanQuery() throws Exception {
+    Directory dir = newDirectory();
+    TimeSeriesMergePolicy mp = new TimeSeriesMergePolicy("timestamp", WINDOW_SIZE);
+    IndexWriter w = newWriter(dir, mp);
+    final long[] timestamps = addDocs(w, atLeast(3000));
+    // documents without a timestamp are never expired
+    Document doc = new Document();
+    doc.add(new StringField("id", "none", Field.Store.YES));
+    w.addDocument(doc);
+    if (random().nextBoolean()) {
+      w.forceMerge(1);
+    }
+
+    final long expiration = TestUtil.nextInt(random(), 0, timestamps.length);
+    int expectedNumDocs = 1;
+    for (long timestamp : timestamps) {
+      if (timestamp >= expiration) {
+        expectedNumDocs++;
+      }
+    }
+    w.deleteDocuments(mp.newOlderThanQuery(expiration));
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    assertEquals(expectedNumDocs, reader.numDocs());
+    for (AtomicReaderContext context : reader.leaves()) {
+      AtomicReader leaf = context.reader();
+      NumericDocValues values = leaf.getNumericDocValues("timestamp");
+      Bits docsWithField = leaf.getDocsWithField("timestamp");
+      Bits liveDocs = leaf.getLiveDocs();
+      // segments whose documents all expired are dropped
+      assertTrue(leaf.numDocs() > 0);
+      for (int i = 0; i < leaf.maxDoc(); ++i) {
+        if (liveDocs == null || liveDocs.get(i)) {
+          assertTrue(docsWithField == null || !docsWithField.get(i) || values.get(i) >= expiration);
+        }
+      }
+    }
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testTimestampsRecordedInDiagnostics() throws Exception {
+    Directory dir = newDirectory();
+    TimeSeriesMergePolicy mp = new TimeSeriesMergePolicy("timestamp", WINDOW_SIZE);
+    mp.setNoCFSRatio(random().nextBoolean() ? 0 : 1);
+    IndexWriter w = newWriter(dir, mp);
+    addDocs(w, atLeast(1000));
+    // a segment without timestamps
+    w.commit();
+    Document doc = new Document();
+    doc.add(new StringField("id", "none", Field.Store.YES));
+    w.addDocument(doc);
+    w.close();
+
+    // flushed and merged segments record their bounds, so that merges can be
+    // selected without reading the segments
+    DirectoryReader reader = DirectoryReader.open(dir);
+    for (AtomicReaderContext context : reader.leaves()) {
+      SegmentReader leaf = (SegmentReader) context.reader();
+      Map<String,String> diagnostics = leaf.getSegmentInfo().info.getDiagnostics();
+      assertEquals("timestamp", diagnostics.get("timeSeriesField"));
+      NumericDocValues values = leaf.getNumericDocValues("timestamp");
+      if (values == null) {
+        assertNull(diagnostics.get("timeSeriesMin"));
+        assertNull(diagnostics.get("timeSeriesMax"));
+        continue;
+      }
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      for (int i = 0; i < leaf.maxDoc(); ++i) {
+        min = Math.min(min, values.get(i));
+        max = Math.max(max, values.get(i));
+      }
+      assertEquals(Long.toString(min), diagnostics.get("timeSeriesMin"));
+      assertEquals(Long.toString(max), diagnostics.get("timeSeriesMax"));
+      assertEquals("true", diagnostics.get("timeSeriesAllDocs"));
+    }
+    reader.close();
+    dir.close();
+  }
+
+}
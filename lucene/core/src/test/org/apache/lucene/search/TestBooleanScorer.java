@@ -28,6 +28,7 @@ import org.apache.lucene.search.BooleanQuery.BooleanWeight;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -251,4 +252,105 @@ public class TestBooleanScorer extends LuceneTestCase {
     r.close();
     dir.close();
   }
+
+  public void testConjunctionBulkScorer() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final String[] terms = new String[] { "a", "b", "c", "d" };
+    final int numDocs = atLeast(2000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      for (String term : terms) {
+        if (random().nextInt(4) != 0) {
+          doc.add(newStringField(FIELD, term, Field.Store.NO));
+        }
+      }
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      BooleanQuery q = new BooleanQuery(random().nextBoolean());
+      final int numClauses = TestUtil.nextInt(random(), 2, terms.length);
+      for (int i = 0; i < numClauses; i++) {
+        q.add(new TermQuery(new Term(FIELD, terms[random().nextInt(terms.length)])), BooleanClause.Occur.MUST);
+      }
+
+      // out-of-order collection uses ConjunctionBulkScorer, in-order
+      // collection uses ConjunctionScorer
+      TopScoreDocCollector inOrder = TopScoreDocCollector.create(numDocs, true);
+      TopScoreDocCollector outOfOrder = TopScoreDocCollector.create(numDocs, false);
+      s.search(q, inOrder);
+      s.search(q, outOfOrder);
+      TopDocs expected = inOrder.topDocs();
+      TopDocs actual = outOfOrder.topDocs();
+      assertEquals(expected.totalHits, actual.totalHits);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+    r.close();
+    dir.close();
+  }
+
+  public void testIndexSearcherUsesConjunctionBulkScorer() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newStringField(FIELD, "a", Field.Store.NO));
+      if (random().nextBoolean()) {
+        doc.add(newStringField(FIELD, "b", Field.Store.NO));
+      }
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    final List<Class<?>> bulkScorers = new ArrayList<>();
+    // not newSearcher: AssertingWeight randomizes scoresDocsOutOfOrder
+    IndexSearcher s = new IndexSearcher(r) {
+      @Override
+      protected void search(List<AtomicReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+        for (AtomicReaderContext ctx : leaves) {
+          final LeafCollector leafCollector = collector.getLeafCollector(ctx);
+          BulkScorer scorer = weight.bulkScorer(ctx, !leafCollector.acceptsDocsOutOfOrder(), leafCollector.postingFeatures(), ctx.reader().getLiveDocs());
+          if (scorer != null) {
+            bulkScorers.add(scorer.getClass());
+            scorer.score(leafCollector);
+          }
+        }
+      }
+    };
+
+    BooleanQuery q = new BooleanQuery();
+    q.add(new TermQuery(new Term(FIELD, "a")), BooleanClause.Occur.MUST);
+    q.add(new TermQuery(new Term(FIELD, "b")), BooleanClause.Occur.MUST);
+    assertTrue(s.createNormalizedWeight(q).scoresDocsOutOfOrder());
+
+    TopDocs topDocs = s.search(q, 10);
+    assertFalse(bulkScorers.isEmpty());
+    for (Class<?> clazz : bulkScorers) {
+      assertEquals(ConjunctionBulkScorer.class, clazz);
+    }
+
+    // same hits as ConjunctionScorer
+    TopScoreDocCollector inOrder = TopScoreDocCollector.create(10, true);
+    newSearcher(r).search(q, inOrder);
+    TopDocs expected = inOrder.topDocs();
+    assertEquals(expected.totalHits, topDocs.totalHits);
+    assertEquals(expected.scoreDocs.length, topDocs.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, topDocs.scoreDocs[i].doc);
+      assertEquals(expected.scoreDocs[i].score, topDocs.scoreDocs[i].score, 0f);
+    }
+
+    r.close();
+    dir.close();
+  }
 }
@@ -0,0 +1,111 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermStateCache extends LuceneTestCase {
+
+  private static Directory newIndex() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("f", random().nextBoolean() ? "a" : "b", Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(20) == 0) {
+        w.commit();
+      }
+    }
+    w.close();
+    return dir;
+  }
+
+  public void testSameResults() throws Exception {
+    Directory dir = newIndex();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    final int numLeaves = reader.leaves().size();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    IndexSearcher cachingSearcher = new IndexSearcher(reader);
+    TermStateCache cache = new TermStateCache(100);
+    cachingSearcher.setTermStateCache(cache);
+    assertSame(cache, cachingSearcher.getTermStateCache());
+
+    for (String term : new String[] { "a", "b", "c" }) {
+      final Query query = new TermQuery(new Term("f", term));
+      final TopDocs expected = searcher.search(query, 10);
+      for (int i = 0; i < 3; ++i) {
+        final TopDocs actual = cachingSearcher.search(query, 10);
+        assertEquals(expected.totalHits, actual.totalHits);
+        for (int j = 0; j < expected.scoreDocs.length; ++j) {
+          assertEquals(expected.scoreDocs[j].doc, actual.scoreDocs[j].doc);
+          assertEquals(expected.scoreDocs[j].score, actual.scoreDocs[j].score, 0f);
+        }
+      }
+
+      final TermContext expectedContext = searcher.buildTermContext(new Term("f", term));
+      final TermContext actualContext = cachingSearcher.buildTermContext(new Term("f", term));
+      assertEquals(expectedContext.docFreq(), actualContext.docFreq());
+      assertEquals(expectedContext.totalTermFreq(), actualContext.totalTermFreq());
+      for (int ord = 0; ord < numLeaves; ++ord) {
+        assertEquals(expectedContext.get(ord) == null, actualContext.get(ord) == null);
+      }
+    }
+    // 3 terms, one miss per leaf then only hits
+    assertEquals(3 * numLeaves, cache.getMissCount());
+    assertEquals(3 * 3 * numLeaves, cache.getHitCount());
+    assertEquals(3 * numLeaves, cache.size());
+
+    // entries are evicted on close
+    reader.close();
+    assertEquals(0, cache.size());
+    dir.close();
+  }
+
+  public void testMaxSize() throws Exception {
+    Directory dir = newIndex();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    TermStateCache cache = new TermStateCache(1);
+    searcher.setTermStateCache(cache);
+    searcher.search(new TermQuery(new Term("f", "a")), 10);
+    searcher.search(new TermQuery(new Term("f", "b")), 10);
+    assertEquals(1, cache.size());
+    reader.close();
+    dir.close();
+  }
+
+  public void testIllegalMaxSize() {
+    try {
+      new TermStateCache(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // ok
+    }
+  }
+
+}
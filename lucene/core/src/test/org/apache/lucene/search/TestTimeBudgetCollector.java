@@ -0,0 +1,135 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTimeBudgetCollector extends LuceneTestCase {
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("f", "v", Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        w.commit();
+      }
+    }
+    reader = w.getReader();
+    w.close();
+    searcher = newSearcher(reader);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  /** A collector that advances the clock by one tick on every hit. */
+  private static class TickingCollector extends SimpleCollector {
+
+    final Counter clock;
+    final List<Integer> leafSizes = new ArrayList<>();
+    int count;
+
+    TickingCollector(Counter clock) {
+      this.clock = clock;
+    }
+
+    @Override
+    protected void doSetNextReader(AtomicReaderContext context) throws IOException {
+      leafSizes.add(context.reader().numDocs());
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      ++count;
+      clock.addAndGet(1);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return true;
+    }
+
+  }
+
+  public void testWithinBudget() throws IOException {
+    final Counter clock = Counter.newCounter();
+    final TickingCollector collector = new TickingCollector(clock);
+    final TimeBudgetCollector budgetCollector = new TimeBudgetCollector(collector, clock, Long.MAX_VALUE / 2);
+    searcher.searchWithBudget(new MatchAllDocsQuery(), null, budgetCollector);
+    assertFalse(budgetCollector.isApproximate());
+    assertEquals(reader.numDocs(), collector.count);
+  }
+
+  public void testBudgetExceeded() throws IOException {
+    final Counter clock = Counter.newCounter();
+    final TickingCollector collector = new TickingCollector(clock);
+    final int ticksAllowed = reader.numDocs() / 3;
+    final TimeBudgetCollector budgetCollector = new TimeBudgetCollector(collector, clock, ticksAllowed);
+    // no exception
+    searcher.searchWithBudget(new MatchAllDocsQuery(), null, budgetCollector);
+    assertTrue(budgetCollector.isApproximate());
+    // the document which exceeds the budget is not collected
+    assertEquals(ticksAllowed + 1, collector.count);
+  }
+
+  public void testLargestSegmentsFirst() throws IOException {
+    final Counter clock = Counter.newCounter();
+    final TickingCollector collector = new TickingCollector(clock);
+    searcher.searchWithBudget(new MatchAllDocsQuery(), null, new TimeBudgetCollector(collector, clock, Long.MAX_VALUE / 2));
+    for (int i = 1; i < collector.leafSizes.size(); ++i) {
+      assertTrue(collector.leafSizes.get(i - 1) >= collector.leafSizes.get(i));
+    }
+  }
+
+  public void testTopDocs() throws IOException {
+    final TopScoreDocCollector expected = TopScoreDocCollector.create(10, false);
+    searcher.search(new MatchAllDocsQuery(), null, expected);
+    final TopScoreDocCollector actual = TopScoreDocCollector.create(10, false);
+    final TimeBudgetCollector budgetCollector = new TimeBudgetCollector(actual, TimeLimitingCollector.getGlobalCounter(), 100000);
+    searcher.searchWithBudget(new MatchAllDocsQuery(), null, budgetCollector);
+    assertFalse(budgetCollector.isApproximate());
+    CheckHits.checkEqual(new MatchAllDocsQuery(), expected.topDocs().scoreDocs, actual.topDocs().scoreDocs);
+  }
+
+}
@@ -17,13 +17,23 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.FieldValueHitQueue.Entry;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
 
 public class TestTopFieldCollector extends LuceneTestCase {
   private IndexSearcher is;
@@ -264,4 +274,94 @@ public class TestTopFieldCollector extends LuceneTestCase {
       assertTrue(Float.isNaN(td.getMaxScore()));
     }
   }  
+
+  public void testEarlyTerminationOnSortedSegments() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    // merges could interleave documents of different segments
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new NumericDocValuesField("ndv", i / 3));
+      doc.add(new StringField("s", random().nextBoolean() ? "a" : "b", Store.NO));
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    IndexReader reader = iw.getReader();
+    iw.close();
+
+    // documents have been added in "ndv" order
+    final Sort sort;
+    if (random().nextBoolean()) {
+      sort = new Sort(new SortField("ndv", SortField.Type.LONG));
+    } else {
+      sort = new Sort(new SortField("ndv", SortField.Type.LONG), SortField.FIELD_DOC);
+    }
+    for (AtomicReaderContext context : reader.leaves()) {
+      ((SegmentReader) context.reader()).getSegmentInfo().info.setSortedBy(sort);
+    }
+
+    IndexSearcher searcher = newSearcher(reader, false);
+    final int iters = atLeast(10);
+    for (int i = 0; i < iters; ++i) {
+      final int numHits = i == 0 ? 1 : TestUtil.nextInt(random(), 1, numDocs);
+      final Query query = i == 0 || random().nextBoolean()
+          ? new MatchAllDocsQuery()
+          : new TermQuery(new Term("s", "a"));
+      final boolean trackDocScores = random().nextBoolean();
+      final TopFieldCollector expected = TopFieldCollector.create(sort, numHits, true, trackDocScores, false, true);
+      searcher.search(query, expected);
+      final TopFieldCollector actual = TopFieldCollector.create(sort, numHits, true, trackDocScores, false, true);
+      actual.setEarlyTerminateSortedSegments(true);
+      searcher.search(query, actual);
+
+      assertTrue(expected.getTotalHits() >= actual.getTotalHits());
+      if (expected.getTotalHits() != actual.getTotalHits()) {
+        assertTrue(actual.isEarlyTerminated());
+      }
+      if (i == 0 && reader.maxDoc() > reader.leaves().size()) {
+        // at least one segment has more than one document
+        assertTrue(actual.isEarlyTerminated());
+      }
+      final TopFieldDocs actualTopDocs = (TopFieldDocs) actual.topDocs();
+      assertEquals(actual.isEarlyTerminated(), actualTopDocs.isEarlyTerminated());
+      final ScoreDoc[] expectedScoreDocs = expected.topDocs().scoreDocs;
+      final ScoreDoc[] actualScoreDocs = actualTopDocs.scoreDocs;
+      assertEquals(expectedScoreDocs.length, actualScoreDocs.length);
+      for (int j = 0; j < expectedScoreDocs.length; ++j) {
+        assertEquals(expectedScoreDocs[j].doc, actualScoreDocs[j].doc);
+        assertEquals(expectedScoreDocs[j].score, actualScoreDocs[j].score, 0f);
+      }
+
+      // IndexSearcher only terminates early when asked to
+      searcher.setEarlyTerminateSortedSegments(false);
+      TopFieldDocs searcherTopDocs = searcher.search(query, numHits, sort);
+      assertFalse(searcherTopDocs.isEarlyTerminated());
+      assertEquals(expected.getTotalHits(), searcherTopDocs.totalHits);
+      assertEquals(expectedScoreDocs.length, searcherTopDocs.scoreDocs.length);
+      for (int j = 0; j < expectedScoreDocs.length; ++j) {
+        assertEquals(expectedScoreDocs[j].doc, searcherTopDocs.scoreDocs[j].doc);
+      }
+      searcher.setEarlyTerminateSortedSegments(true);
+      searcherTopDocs = searcher.search(query, numHits, sort);
+      assertTrue(expected.getTotalHits() >= searcherTopDocs.totalHits);
+      if (expected.getTotalHits() != searcherTopDocs.totalHits) {
+        assertTrue(searcherTopDocs.isEarlyTerminated());
+      }
+      if (i == 0 && reader.maxDoc() > reader.leaves().size()) {
+        assertTrue(searcherTopDocs.isEarlyTerminated());
+      }
+      assertEquals(expectedScoreDocs.length, searcherTopDocs.scoreDocs.length);
+      for (int j = 0; j < expectedScoreDocs.length; ++j) {
+        assertEquals(expectedScoreDocs[j].doc, searcherTopDocs.scoreDocs[j].doc);
+      }
+    }
+
+    reader.close();
+    dir.close();
+  }
 }
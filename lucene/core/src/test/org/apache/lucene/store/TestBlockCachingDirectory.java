@@ -0,0 +1,131 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.TestUtil;
+
+public class TestBlockCachingDirectory extends BaseDirectoryTestCase {
+
+  @Override
+  protected Directory getDirectory(File path) throws IOException {
+    final BlockCachingDirectory dir = new BlockCachingDirectory(new RAMDirectory(),
+        TestUtil.nextInt(random(), 0, 1 << 20), 1 << TestUtil.nextInt(random(), 3, 14));
+    if (random().nextBoolean()) {
+      dir.setMaxCachedBytes("", TestUtil.nextInt(random(), 0, 1 << 16));
+    }
+    return dir;
+  }
+
+  private static void writeFile(Directory dir, String name, byte[] bytes) throws IOException {
+    IndexOutput out = dir.createOutput(name, IOContext.DEFAULT);
+    out.writeBytes(bytes, bytes.length);
+    out.close();
+  }
+
+  private static void readFile(Directory dir, String name, IOContext context, byte[] expected) throws IOException {
+    IndexInput in = dir.openInput(name, context);
+    final byte[] bytes = new byte[expected.length];
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    assertArrayEquals(expected, bytes);
+  }
+
+  public void testHitsAndMisses() throws Exception {
+    BlockCachingDirectory dir = new BlockCachingDirectory(new RAMDirectory(), 1 << 16, 1024);
+    final byte[] bytes = new byte[4096];
+    random().nextBytes(bytes);
+    writeFile(dir, "_0.tim", bytes);
+
+    // merges don't populate the cache
+    readFile(dir, "_0.tim", new IOContext(new MergeInfo(1, bytes.length, false, 1)), bytes);
+    readFile(dir, "_0.tim", IOContext.READONCE, bytes);
+    assertEquals(0, dir.getHitCount());
+    assertEquals(0, dir.getCachedBytes());
+
+    readFile(dir, "_0.tim", IOContext.DEFAULT, bytes);
+    assertEquals(0, dir.getHitCount());
+    assertEquals(12, dir.getMissCount());
+    assertEquals(bytes.length, dir.getCachedBytes());
+    readFile(dir, "_0.tim", IOContext.READONCE, bytes);
+    assertEquals(4, dir.getHitCount());
+
+    // overwriting a file invalidates its blocks
+    random().nextBytes(bytes);
+    dir.deleteFile("_0.tim");
+    writeFile(dir, "_0.tim", bytes);
+    readFile(dir, "_0.tim", IOContext.DEFAULT, bytes);
+    assertEquals(4, dir.getHitCount());
+    dir.close();
+  }
+
+  public void testMaxCachedBytes() throws Exception {
+    BlockCachingDirectory dir = new BlockCachingDirectory(new RAMDirectory(), 1 << 16, 1024);
+    dir.setMaxCachedBytes("fdt", 2048);
+    final byte[] bytes = new byte[8192];
+    random().nextBytes(bytes);
+    writeFile(dir, "_0.fdt", bytes);
+    writeFile(dir, "_0.tim", bytes);
+    readFile(dir, "_0.fdt", IOContext.DEFAULT, bytes);
+    assertEquals(2048, dir.getCachedBytes());
+    assertEquals(6, dir.getEvictionCount());
+    readFile(dir, "_0.tim", IOContext.DEFAULT, bytes);
+    assertEquals(2048 + bytes.length, dir.getCachedBytes());
+
+    // the cache is full: blocks of other files are evicted
+    writeFile(dir, "_1.tim", new byte[1 << 16]);
+    readFile(dir, "_1.tim", IOContext.DEFAULT, new byte[1 << 16]);
+    assertEquals(1 << 16, dir.getCachedBytes());
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    Directory dir = new BlockCachingDirectory(newDirectory(), TestUtil.nextInt(random(), 0, 1 << 20));
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, conf);
+    final LineFileDocs docs = new LineFileDocs(random(), true);
+    final int numDocs = TestUtil.nextInt(random(), 100, 400);
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = docs.nextDoc();
+      w.addDocument(doc);
+    }
+    DirectoryReader r = w.getReader();
+    w.close();
+    assertEquals(numDocs, r.numDocs());
+    final IndexSearcher s = newSearcher(r);
+    // just make sure search can run, the same way twice
+    assertEquals(s.search(new TermQuery(new Term("body", "the")), 10).totalHits,
+        s.search(new TermQuery(new Term("body", "the")), 10).totalHits);
+    TestUtil.checkIndex(dir);
+    r.close();
+    docs.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,112 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.TestUtil;
+
+public class TestByteBufferDirectory extends BaseDirectoryTestCase {
+
+  @Override
+  protected Directory getDirectory(File path) throws IOException {
+    return new ByteBufferDirectory(1 << TestUtil.nextInt(random(), 10, 20));
+  }
+
+  public void testFilesSpanningPages() throws Exception {
+    ByteBufferDirectory dir = new ByteBufferDirectory(1024);
+    for (int length : new int[] { 0, 1, 1023, 1024, 1025, 2048, 5000 }) {
+      final String name = "file" + length;
+      final byte[] bytes = new byte[length];
+      random().nextBytes(bytes);
+      IndexOutput out = dir.createOutput(name, newIOContext(random()));
+      out.writeBytes(bytes, bytes.length);
+      assertEquals(length, out.getFilePointer());
+      out.close();
+      assertEquals(length, dir.fileLength(name));
+
+      IndexInput in = dir.openInput(name, newIOContext(random()));
+      final byte[] read = new byte[length];
+      in.readBytes(read, 0, length);
+      assertArrayEquals(bytes, read);
+      if (length > 10) {
+        IndexInput slice = in.slice("slice", 5, length - 10);
+        slice.seek(length - 11);
+        assertEquals(bytes[length - 6], slice.readByte());
+      }
+      in.close();
+    }
+    assertEquals(0 + 1 + 1023 + 1024 + 1025 + 2048 + 5000, dir.ramBytesUsed());
+    dir.deleteFile("file5000");
+    assertEquals(1 + 1023 + 1024 + 1025 + 2048, dir.ramBytesUsed());
+    dir.close();
+  }
+
+  public void testFileIsPublishedOnClose() throws Exception {
+    ByteBufferDirectory dir = new ByteBufferDirectory(1024);
+    IndexOutput out = dir.createOutput("foo", newIOContext(random()));
+    out.writeBytes(new byte[3000], 3000);
+    assertEquals(0, dir.fileLength("foo"));
+    assertEquals(0, dir.ramBytesUsed());
+    out.close();
+    assertEquals(3000, dir.fileLength("foo"));
+    assertEquals(3000, dir.ramBytesUsed());
+
+    // files which are deleted while they are written are not published
+    out = dir.createOutput("bar", newIOContext(random()));
+    out.writeBytes(new byte[3000], 3000);
+    dir.deleteFile("bar");
+    out.close();
+    assertFalse(slowFileExists(dir, "bar"));
+    assertEquals(3000, dir.ramBytesUsed());
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    Directory dir = new ByteBufferDirectory(1 << TestUtil.nextInt(random(), 10, 16));
+    IndexWriterConfig conf = newIndexWriterConfig(new MockAnalyzer(random()));
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir, conf);
+    final LineFileDocs docs = new LineFileDocs(random(), true);
+    final int numDocs = TestUtil.nextInt(random(), 100, 400);
+    for (int i = 0; i < numDocs; ++i) {
+      w.addDocument(docs.nextDoc());
+    }
+    w.forceMerge(1);
+    DirectoryReader r = w.getReader();
+    w.close();
+    assertEquals(numDocs, r.numDocs());
+    TestUtil.checkIndex(dir);
+    r.close();
+
+    // copy constructor
+    Directory copy = new ByteBufferDirectory(dir, newIOContext(random()));
+    r = DirectoryReader.open(copy);
+    assertEquals(numDocs, r.numDocs());
+    r.close();
+    copy.close();
+    docs.close();
+    dir.close();
+  }
+}
@@ -19,6 +19,12 @@ package org.apache.lucene.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
 
 /**
  * Tests MMapDirectory
@@ -29,4 +35,50 @@ public class TestMmapDirectory extends BaseDirectoryTestCase {
   protected Directory getDirectory(File path) throws IOException {
     return new MMapDirectory(path);
   }
+
+  public void testPreload() throws Exception {
+    MMapDirectory dir = new MMapDirectory(createTempDir("testPreload"), null, 1 << TestUtil.nextInt(random(), 10, 20));
+    dir.setPreloadExtensions(Collections.singleton("tip"));
+    final boolean background = random().nextBoolean();
+    final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("testPreload"));
+    if (background) {
+      dir.setPreloadExecutor(executor);
+    }
+    try {
+      final int numBytes = TestUtil.nextInt(random(), 1, 1 << 22);
+      final byte[] bytes = new byte[numBytes];
+      random().nextBytes(bytes);
+      for (String name : new String[] {"_0.tip", "_0.tim"}) {
+        IndexOutput out = dir.createOutput(name, newIOContext(random()));
+        out.writeBytes(bytes, bytes.length);
+        out.close();
+      }
+
+      // files with other extensions are not preloaded
+      IndexInput in = dir.openInput("_0.tim", IOContext.DEFAULT);
+      in.close();
+      // neither are files which are read once or merged
+      in = dir.openInput("_0.tip", IOContext.READONCE);
+      in.close();
+      assertEquals(0, dir.getPreloadedBytes() + dir.getAlreadyLoadedBytes());
+
+      in = dir.openInput("_0.tip", IOContext.DEFAULT);
+      final byte[] read = new byte[numBytes];
+      in.readBytes(read, 0, read.length);
+      assertArrayEquals(bytes, read);
+      in.close();
+      if (background) {
+        TestUtil.shutdownExecutorService(executor);
+      }
+      // the file may have been closed before being fully preloaded
+      assertTrue(dir.getPreloadedBytes() + dir.getAlreadyLoadedBytes() <= numBytes);
+      if (!background) {
+        assertEquals(numBytes, dir.getPreloadedBytes() + dir.getAlreadyLoadedBytes());
+      }
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+      dir.close();
+    }
+  }
+
 }
@@ -21,6 +21,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -35,6 +38,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LineFileDocs;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.TestUtil;
 
 public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
@@ -44,6 +48,18 @@ public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
   // would be good to investigate further...
   @Override
   protected Directory getDirectory(File path) throws IOException {
+    if (random().nextBoolean()) {
+      // evict in the thread which closes outputs
+      return new NRTCachingDirectory(new RAMDirectory(),
+                                     .1 + 2.0*random().nextDouble(),
+                                     .1 + 5.0*random().nextDouble(),
+                                     new Executor() {
+                                       @Override
+                                       public void execute(Runnable command) {
+                                         command.run();
+                                       }
+                                     });
+    }
     return new NRTCachingDirectory(new RAMDirectory(),
                                    .1 + 2.0*random().nextDouble(),
                                    .1 + 5.0*random().nextDouble());
@@ -110,6 +126,59 @@ public class TestNRTCachingDirectory extends BaseDirectoryTestCase {
     docs.close();
   }
 
+  public void testBackgroundEviction() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("testBackgroundEviction"));
+    try {
+      Directory dir = newDirectory();
+      NRTCachingDirectory cachedDir = new NRTCachingDirectory(dir, 2.0, 0.5, executor);
+      MockAnalyzer analyzer = new MockAnalyzer(random());
+      analyzer.setMaxTokenLength(TestUtil.nextInt(random(), 1, IndexWriter.MAX_TERM_LENGTH));
+      IndexWriterConfig conf = newIndexWriterConfig(analyzer);
+      RandomIndexWriter w = new RandomIndexWriter(random(), cachedDir, conf);
+      final LineFileDocs docs = new LineFileDocs(random(), true);
+      final int numDocs = TestUtil.nextInt(random(), 100, 400);
+
+      final List<BytesRef> ids = new ArrayList<>();
+      DirectoryReader r = null;
+      for(int docCount=0;docCount<numDocs;docCount++) {
+        final Document doc = docs.nextDoc();
+        ids.add(new BytesRef(doc.get("docid")));
+        w.addDocument(doc);
+        if (random().nextInt(20) == 17) {
+          if (r == null) {
+            r = DirectoryReader.open(w.w, false);
+          } else {
+            final DirectoryReader r2 = DirectoryReader.openIfChanged(r);
+            if (r2 != null) {
+              r.close();
+              r = r2;
+            }
+          }
+          assertEquals(1+docCount, r.numDocs());
+          for(BytesRef id : ids) {
+            assertEquals(1, r.docFreq(new Term("docid", id)));
+          }
+        }
+      }
+
+      if (r != null) {
+        r.close();
+      }
+      w.close();
+      assertEquals(0, cachedDir.listCachedFiles().length);
+
+      r = DirectoryReader.open(dir);
+      for(BytesRef id : ids) {
+        assertEquals(1, r.docFreq(new Term("docid", id)));
+      }
+      r.close();
+      cachedDir.close();
+      docs.close();
+    } finally {
+      TestUtil.shutdownExecutorService(executor);
+    }
+  }
+
   // NOTE: not a test; just here to make sure the code frag
   // in the javadocs is correct!
   public void verifyCompiles() throws Exception {
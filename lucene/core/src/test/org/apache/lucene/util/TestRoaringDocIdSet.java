@@ -0,0 +1,111 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class TestRoaringDocIdSet extends BaseDocIdSetTestCase<RoaringDocIdSet> {
+
+  @Override
+  public RoaringDocIdSet copyOf(BitSet bs, int length) throws IOException {
+    final RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(length);
+    for (int i = bs.nextSetBit(0); i != -1; i = bs.nextSetBit(i + 1)) {
+      builder.add(i);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public void assertEquals(int numBits, BitSet ds1, RoaringDocIdSet ds2)
+      throws IOException {
+    super.assertEquals(numBits, ds1, ds2);
+    assertEquals(ds1.cardinality(), ds2.cardinality());
+  }
+
+  public void testUnion() throws IOException {
+    final int numBits = TestUtil.nextInt(random(), 100, 1 << 20);
+    final int numDocIdSets = TestUtil.nextInt(random(), 1, 4);
+    final List<BitSet> fixedSets = new ArrayList<>(numDocIdSets);
+    for (int i = 0; i < numDocIdSets; ++i) {
+      fixedSets.add(randomSet(numBits, random().nextBoolean() ? random().nextFloat() / 16 : random().nextFloat()));
+    }
+    final List<RoaringDocIdSet> compressedSets = new ArrayList<>(numDocIdSets);
+    for (BitSet set : fixedSets) {
+      compressedSets.add(copyOf(set, numBits));
+    }
+
+    final RoaringDocIdSet union = RoaringDocIdSet.union(compressedSets);
+    final BitSet expected = new BitSet(numBits);
+    for (BitSet set : fixedSets) {
+      for (int doc = set.nextSetBit(0); doc != -1; doc = set.nextSetBit(doc + 1)) {
+        expected.set(doc);
+      }
+    }
+    assertEquals(numBits, expected, union);
+  }
+
+  public void testIntersection() throws IOException {
+    final int numBits = TestUtil.nextInt(random(), 100, 1 << 20);
+    final int numDocIdSets = TestUtil.nextInt(random(), 1, 4);
+    final List<BitSet> fixedSets = new ArrayList<>(numDocIdSets);
+    for (int i = 0; i < numDocIdSets; ++i) {
+      fixedSets.add(randomSet(numBits, random().nextFloat()));
+    }
+    final List<RoaringDocIdSet> compressedSets = new ArrayList<>(numDocIdSets);
+    for (BitSet set : fixedSets) {
+      compressedSets.add(copyOf(set, numBits));
+    }
+
+    final RoaringDocIdSet intersection = RoaringDocIdSet.intersect(compressedSets);
+    final BitSet expected = new BitSet(numBits);
+    expected.set(0, expected.size());
+    for (BitSet set : fixedSets) {
+      for (int previousDoc = -1, doc = set.nextSetBit(0); ; previousDoc = doc, doc = set.nextSetBit(doc + 1)) {
+        if (doc == -1) {
+          expected.clear(previousDoc + 1, set.size());
+          break;
+        } else {
+          expected.clear(previousDoc + 1, doc);
+        }
+      }
+    }
+    assertEquals(numBits, expected, intersection);
+  }
+
+  public void testDifferentMaxDoc() throws IOException {
+    final List<RoaringDocIdSet> sets = new ArrayList<>();
+    sets.add(new RoaringDocIdSet.Builder(10).add(3).build());
+    sets.add(new RoaringDocIdSet.Builder(11).add(3).build());
+    try {
+      RoaringDocIdSet.union(sets);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // ok
+    }
+    try {
+      RoaringDocIdSet.intersect(sets);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // ok
+    }
+  }
+
+}
@@ -1203,6 +1203,60 @@ public class TestFSTs extends LuceneTestCase {
     dir.close();
   }
 
+  public void testOffHeap() throws Exception {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+    final boolean doPack = random().nextBoolean();
+    final Builder<Long> b = new Builder<>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs,
+                                          doPack, PackedInts.DEFAULT, true, 15);
+    final Set<BytesRef> termsSet = new HashSet<>();
+    final int numTerms = atLeast(1000);
+    while (termsSet.size() < numTerms) {
+      termsSet.add(new BytesRef(TestUtil.randomSimpleString(random(), 1, 20)));
+    }
+    final List<BytesRef> terms = new ArrayList<>(termsSet);
+    Collections.sort(terms);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    for (int i = 0; i < terms.size(); i++) {
+      b.add(Util.toIntsRef(terms.get(i), scratch), (long) i);
+    }
+    final FST<Long> fst = b.finish();
+
+    Directory dir = newDirectory();
+    IndexOutput out = dir.createOutput("fst", IOContext.DEFAULT);
+    out.writeVInt(42); // the fst doesn't start at the beginning of the file
+    fst.save(out);
+    out.close();
+
+    IndexInput in = dir.openInput("fst", IOContext.DEFAULT);
+    assertEquals(42, in.readVInt());
+    final FST<Long> offHeap = new FST<>(in, outputs, true);
+    assertTrue(offHeap.ramBytesUsed() < fst.ramBytesUsed());
+    for (int i = 0; i < terms.size(); i++) {
+      assertEquals(Long.valueOf(i), Util.get(offHeap, terms.get(i)));
+    }
+    assertNull(Util.get(offHeap, new BytesRef("a term which is too long to be generated")));
+
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<>(offHeap);
+    for (int i = 0; i < terms.size(); i++) {
+      final InputOutput<Long> io = fstEnum.next();
+      assertEquals(terms.get(i), io.input);
+      assertEquals(Long.valueOf(i), io.output);
+    }
+    assertNull(fstEnum.next());
+
+    // saving an off-heap fst writes the same bytes
+    out = dir.createOutput("fst2", IOContext.DEFAULT);
+    offHeap.save(out);
+    out.close();
+    in.close();
+    assertEquals(dir.fileLength("fst") - 1, dir.fileLength("fst2"));
+    in = dir.openInput("fst2", IOContext.DEFAULT);
+    final FST<Long> fst2 = new FST<>(in, outputs);
+    in.close();
+    assertEquals(Long.valueOf(terms.size() - 1), Util.get(fst2, terms.get(terms.size() - 1)));
+    dir.close();
+  }
+
   private void checkStopNodes(FST<Long> fst, PositiveIntOutputs outputs) throws Exception {
     final Long nothing = outputs.getNoOutput();
     FST.Arc<Long> startArc = fst.getFirstArc(new FST.Arc<Long>());
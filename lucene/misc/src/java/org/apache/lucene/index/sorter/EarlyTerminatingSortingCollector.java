@@ -26,8 +26,10 @@ import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.FilterLeafCollector;
 import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 
 /**
@@ -48,6 +50,13 @@ import org.apache.lucene.search.TotalHitCountCollector;
  * hit count} will be underestimated since not all matching documents will have
  * been collected.
  * <p>
+ * <b>NOTE</b>: {@link TopFieldCollector}s which collect documents in order
+ * can already early terminate sorted segments on their own, see
+ * {@link TopFieldCollector#setEarlyTerminateSortedSegments(boolean)} and
+ * {@link IndexSearcher#setEarlyTerminateSortedSegments(boolean)}. This collector is
+ * useful to wrap other collectors, or to stop after a fixed number of
+ * documents per segment.
+ * <p>
  * <b>NOTE</b>: This {@code Collector} uses {@link Sort#toString()} to detect
  * whether a segment was sorted with the same {@code Sort}. This has
  * two implications:
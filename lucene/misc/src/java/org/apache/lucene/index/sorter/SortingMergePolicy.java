@@ -33,6 +33,7 @@ import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.SegmentCommitInfo;
 import org.apache.lucene.index.SegmentInfo;
 import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.search.Sort;
@@ -60,16 +61,18 @@ public final class SortingMergePolicy extends MergePolicy {
    * Put in the {@link SegmentInfo#getDiagnostics() diagnostics} to denote that
    * this segment is sorted.
    */
-  public static final String SORTER_ID_PROP = "sorter";
+  public static final String SORTER_ID_PROP = SegmentInfo.SORT_DIAGNOSTIC;
   
   class SortingOneMerge extends OneMerge {
 
+    final OneMerge wrapped;
     List<AtomicReader> unsortedReaders;
     Sorter.DocMap docMap;
     AtomicReader sortedView;
 
-    SortingOneMerge(List<SegmentCommitInfo> segments) {
-      super(segments);
+    SortingOneMerge(OneMerge wrapped) {
+      super(wrapped.segments);
+      this.wrapped = wrapped;
     }
 
     @Override
@@ -92,8 +95,9 @@ public final class SortingMergePolicy extends MergePolicy {
     
     @Override
     public void setInfo(SegmentCommitInfo info) {
-      Map<String,String> diagnostics = info.info.getDiagnostics();
-      diagnostics.put(SORTER_ID_PROP, sorter.getID());
+      info.info.setSortedBy(sorter.sort);
+      // let the wrapped merge record its diagnostics too
+      wrapped.setInfo(info);
       super.setInfo(info);
     }
 
@@ -140,7 +144,7 @@ public final class SortingMergePolicy extends MergePolicy {
 
     @Override
     public void add(OneMerge merge) {
-      super.add(new SortingOneMerge(merge.segments));
+      super.add(new SortingOneMerge(merge));
     }
 
     @Override
@@ -154,10 +158,7 @@ public final class SortingMergePolicy extends MergePolicy {
   public static boolean isSorted(AtomicReader reader, Sort sort) {
     if (reader instanceof SegmentReader) {
       final SegmentReader segReader = (SegmentReader) reader;
-      final Map<String, String> diagnostics = segReader.getSegmentInfo().info.getDiagnostics();
-      if (diagnostics != null && sort.toString().equals(diagnostics.get(SORTER_ID_PROP))) {
-        return true;
-      }
+      return segReader.getSegmentInfo().info.isSortedBy(sort);
     }
     return false;
   }
@@ -209,6 +210,11 @@ public final class SortingMergePolicy extends MergePolicy {
     return in.useCompoundFile(segments, newSegment, writer);
   }
 
+  @Override
+  public void segmentFlushed(SegmentReadState state) throws IOException {
+    in.segmentFlushed(state);
+  }
+
   @Override
   public String toString() {
     return "SortingMergePolicy(" + in + ", sorter=" + sorter + ")";
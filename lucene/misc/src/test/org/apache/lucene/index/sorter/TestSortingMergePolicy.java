@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
@@ -32,11 +33,16 @@ import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LogMergePolicy;
 import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeTrigger;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TieredMergePolicy;
@@ -186,4 +192,54 @@ public class TestSortingMergePolicy extends LuceneTestCase {
     }
   }
 
+  public void testWrappedMergeSetsDiagnostics() throws IOException {
+    // a merge policy whose merges record diagnostics, like TimeSeriesMergePolicy
+    final MergePolicy in = new TieredMergePolicy() {
+      @Override
+      public MergeSpecification findMerges(MergeTrigger trigger, SegmentInfos infos, IndexWriter writer) {
+        // only forced merges
+        return null;
+      }
+
+      @Override
+      public MergeSpecification findForcedMerges(SegmentInfos infos, int maxSegmentCount,
+          Map<SegmentCommitInfo,Boolean> segmentsToMerge, IndexWriter writer) throws IOException {
+        final MergeSpecification spec = super.findForcedMerges(infos, maxSegmentCount, segmentsToMerge, writer);
+        if (spec == null) {
+          return null;
+        }
+        final MergeSpecification wrapped = new MergeSpecification();
+        for (OneMerge merge : spec.merges) {
+          wrapped.add(new OneMerge(merge.segments) {
+            @Override
+            public void setInfo(SegmentCommitInfo info) {
+              info.info.getDiagnostics().put("wrapped", "true");
+              super.setInfo(info);
+            }
+          });
+        }
+        return wrapped;
+      }
+    };
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(new SortingMergePolicy(in, sort));
+    final IndexWriter w = new IndexWriter(dir, iwc);
+    for (int i = 0; i < 10; ++i) {
+      w.addDocument(randomDocument());
+      w.commit();
+    }
+    w.forceMerge(1);
+    w.close();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(1, reader.leaves().size());
+    final SegmentReader segReader = (SegmentReader) reader.leaves().get(0).reader();
+    final Map<String,String> diagnostics = segReader.getSegmentInfo().info.getDiagnostics();
+    assertEquals("true", diagnostics.get("wrapped"));
+    assertTrue(SortingMergePolicy.isSorted(segReader, sort));
+    reader.close();
+    dir.close();
+  }
+
 }
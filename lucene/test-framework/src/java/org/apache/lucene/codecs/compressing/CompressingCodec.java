@@ -37,7 +37,7 @@ public abstract class CompressingCodec extends FilterCodec {
    * Create a random instance.
    */
   public static CompressingCodec randomInstance(Random random, int chunkSize, boolean withSegmentSuffix) {
-    switch (random.nextInt(4)) {
+    switch (random.nextInt(5)) {
     case 0:
       return new FastCompressingCodec(chunkSize, withSegmentSuffix);
     case 1:
@@ -46,6 +46,8 @@ public abstract class CompressingCodec extends FilterCodec {
       return new HighCompressionCompressingCodec(chunkSize, withSegmentSuffix);
     case 3:
       return new DummyCompressingCodec(chunkSize, withSegmentSuffix);
+    case 4:
+      return new HighCompressionWithDictionaryCompressingCodec(chunkSize, withSegmentSuffix);
     default:
       throw new AssertionError();
     }
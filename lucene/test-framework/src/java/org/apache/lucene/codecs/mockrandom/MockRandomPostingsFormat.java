@@ -328,6 +328,11 @@ public final class MockRandomPostingsFormat extends PostingsFormat {
         System.out.println("MockRandomCodec: reading BlockTree terms dict");
       }
 
+      final boolean offHeapIndex = random.nextBoolean();
+      if (LuceneTestCase.VERBOSE) {
+        System.out.println("MockRandomCodec: offHeapIndex=" + offHeapIndex);
+      }
+
       boolean success = false;
       try {
         fields = new BlockTreeTermsReader(state.directory,
@@ -335,7 +340,8 @@ public final class MockRandomPostingsFormat extends PostingsFormat {
                                           state.segmentInfo,
                                           postingsReader,
                                           state.context,
-                                          state.segmentSuffix);
+                                          state.segmentSuffix,
+                                          offHeapIndex);
         success = true;
       } finally {
         if (!success) {
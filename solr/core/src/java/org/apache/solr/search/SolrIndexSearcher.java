@@ -65,6 +65,7 @@ import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TimeBudgetCollector;
 import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
@@ -212,26 +213,28 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       collector = new EarlyTerminatingCollector(collector, cmd.len);
     }
 
-    final long timeAllowed = cmd.getTimeAllowed();
-    if( timeAllowed > 0 ) {
-      collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowed);
-    }
-    
     if (postFilter != null) {
       postFilter.setLastDelegate(collector);
       collector = postFilter;
     }
-    
-    try {
-      super.search(query, luceneFilter, collector);
-      if(collector instanceof DelegatingCollector) {
-        ((DelegatingCollector)collector).finish();
+
+    final long timeAllowed = cmd.getTimeAllowed();
+    if( timeAllowed > 0 ) {
+      // degrade gracefully: keep the hits collected within the budget and
+      // skip the remaining documents instead of failing. Segments are still
+      // visited in index order since DocSetCollector relies on it.
+      final TimeBudgetCollector budgetCollector = new TimeBudgetCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowed);
+      super.search(query, luceneFilter, budgetCollector);
+      if (budgetCollector.isApproximate()) {
+        log.warn( "Query: " + query + "; Exceeded allowed search time: " + timeAllowed + " ms." );
+        qr.setPartialResults(true);
       }
+    } else {
+      super.search(query, luceneFilter, collector);
+    }
+    if(collector instanceof DelegatingCollector) {
+      ((DelegatingCollector)collector).finish();
     }
-    catch( TimeLimitingCollector.TimeExceededException x ) {
-      log.warn( "Query: " + query + "; " + x.getMessage() );
-      qr.setPartialResults(true);
-    }        
   }
   
   public SolrIndexSearcher(SolrCore core, String path, IndexSchema schema, SolrIndexConfig config, String name, boolean enableCache, DirectoryFactory directoryFactory) throws IOException {